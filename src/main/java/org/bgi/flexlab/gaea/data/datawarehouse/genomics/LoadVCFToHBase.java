@@ -66,7 +66,7 @@ public class LoadVCFToHBase extends ToolsRunner{
 		createTable(conf,options.getTableName());
 		
 		MultipleVCFHeader vcfHeaders = new MultipleVCFHeader();
-		vcfHeaders.mergeHeader(new Path(options.getInput()),options.getHeaderOutput(), job, false);
+		vcfHeaders.mergeHeader(new Path(options.getInput()),options.getHeaderOutput(), job, true);
 
 		job.setJobName("vcf to hbase");
 		job.setNumReduceTasks(options.getReducerNumber());
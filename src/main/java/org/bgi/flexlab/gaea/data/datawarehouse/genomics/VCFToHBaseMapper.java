@@ -14,7 +14,6 @@ import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.bgi.flexlab.gaea.data.exception.UserException;
-import org.bgi.flexlab.gaea.data.structure.header.GaeaVCFHeader;
 import org.bgi.flexlab.gaea.data.structure.header.MultipleVCFHeader;
 import org.bgi.flexlab.gaea.util.Utils;
 import org.seqdoop.hadoop_bam.VariantContextWritable;
@@ -29,7 +28,7 @@ public class VCFToHBaseMapper extends Mapper<LongWritable, VariantContextWritabl
 	@Override
 	protected void setup(Context context) throws IOException, InterruptedException {
 		Configuration conf = context.getConfiguration();
-		MultipleVCFHeader headers = (MultipleVCFHeader) GaeaVCFHeader.loadVcfHeader(false, conf);
+		MultipleVCFHeader headers = MultipleVCFHeader.load(conf);
 
 		for (String sample : headers.getSampleNames(0)) {
 			sampleNames.add(sample);
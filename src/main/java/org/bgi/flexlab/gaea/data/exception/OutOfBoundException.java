@@ -24,6 +24,10 @@ public class OutOfBoundException extends UserException{
 		super(String.format("Offset %d cannot be greater than length %d", offset,length));
 	}
 
+	public OutOfBoundException(long length,long offset) {
+		super(String.format("Offset %d cannot be greater than length %d", offset,length));
+	}
+
 	public OutOfBoundException(String descr) {
 		super(descr);
 	}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.input.fastq;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A class for finding BGZF block starts inside an area of a BGZF compressed
+ * fastq file.
+ */
+public class FastqBGZFSplitGuesser {
+	private final static int BGZF_HEADER_SIZE = 18;
+	private final static int BGZF_MAGIC = 0x04088b1f;
+	private final static int BGZF_MAGIC_SUB = 0x00024342;
+	private final static int BGZF_XLEN = 6;
+	private final static int MAX_BLOCK_SIZE = 0x10000;
+
+	private final FSDataInputStream in;
+	private final long fileLength;
+
+	public FastqBGZFSplitGuesser(FSDataInputStream in, long fileLength) {
+		this.in = in;
+		this.fileLength = fileLength;
+	}
+
+	/**
+	 * Whether the stream starts with a BGZF block header. The stream position
+	 * is left unchanged.
+	 */
+	public static boolean isBGZF(FSDataInputStream in) throws IOException {
+		byte[] header = new byte[BGZF_HEADER_SIZE];
+		try {
+			in.readFully(0, header);
+		} catch (EOFException e) {
+			return false;
+		}
+		return isBlockHeader(ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN), 0);
+	}
+
+	/**
+	 * Finds a BGZF block start in the physical position range [beg,end).
+	 * Returns end if no block starts in the range.
+	 */
+	public long guessNextBGZFBlockStart(long beg, long end) throws IOException {
+		// a block is at most 64KB, so the next block header, and the header
+		// following it, are both inside this buffer if the file goes on
+		int length = (int) Math.min(fileLength - beg, 2L * MAX_BLOCK_SIZE + BGZF_HEADER_SIZE);
+		if (length < BGZF_HEADER_SIZE)
+			return end;
+		byte[] arr = new byte[length];
+		in.readFully(beg, arr);
+		ByteBuffer buf = ByteBuffer.wrap(arr).order(ByteOrder.LITTLE_ENDIAN);
+
+		int searchEnd = (int) Math.min(end - beg, length - BGZF_HEADER_SIZE + 1);
+		for (int p = 0; p < searchEnd; p++) {
+			if (!isBlockHeader(buf, p))
+				continue;
+
+			// accept the header only if the block it describes is followed by
+			// another block header or by the end of the file
+			long next = beg + p + (buf.getShort(p + 16) & 0xffff) + 1;
+			if (next == fileLength)
+				return beg + p;
+			int nextP = (int) (next - beg);
+			if (next < fileLength && nextP + BGZF_HEADER_SIZE <= length && isBlockHeader(buf, nextP))
+				return beg + p;
+		}
+		return end;
+	}
+
+	private static boolean isBlockHeader(ByteBuffer buf, int p) {
+		return buf.getInt(p) == BGZF_MAGIC && (buf.getShort(p + 10) & 0xffff) == BGZF_XLEN
+				&& buf.getInt(p + 12) == BGZF_MAGIC_SUB;
+	}
+}
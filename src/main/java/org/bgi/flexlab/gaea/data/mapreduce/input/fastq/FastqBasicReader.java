@@ -16,6 +16,7 @@
  *******************************************************************************/
 package org.bgi.flexlab.gaea.data.mapreduce.input.fastq;
 
+import htsjdk.samtools.util.BlockCompressedInputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -26,6 +27,7 @@ import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.util.LineReader;
+import org.seqdoop.hadoop_bam.util.WrapSeekable;
 
 import java.io.IOException;
 
@@ -38,6 +40,8 @@ public abstract class FastqBasicReader {
 	protected long pos;
 	protected long end;
 	protected LineReader in;
+	protected BlockCompressedInputStream bgzfIn = null;
+	protected long firstRecordStart;
 	protected int maxLineLength;
 	protected byte[] recordDelimiterBytes;
 	protected String firstLine = "";
@@ -46,22 +50,17 @@ public abstract class FastqBasicReader {
 
 	public void getFirstFastqLine() throws IOException {
 		Text tmpline = new Text();
-		int size;
-		while ((size = in.readLine(tmpline, maxLineLength, Math.max(
-				(int) Math.min(Integer.MAX_VALUE, end - pos), maxLineLength))) != 0) {
-			start += size;
+		long lineStart = pos;
+		while (readLine(tmpline) != 0) {
 			if (tmpline.toString().startsWith("@")) {
 				firstLine = tmpline.toString();
-				if ((size = in.readLine(tmpline, maxLineLength, Math.max(
-						(int) Math.min(Integer.MAX_VALUE, end - pos),
-						maxLineLength))) != 0) {
-					start += size;
+				firstRecordStart = lineStart;
+				lineStart = pos;
+				if (readLine(tmpline) != 0) {
 					if (tmpline.toString().startsWith("@")) {
 						firstLine = tmpline.toString();
-						if ((size = in.readLine(tmpline,maxLineLength,
-								Math.max((int) Math.min(Integer.MAX_VALUE, end
-												- pos), maxLineLength))) != 0) {
-							start += size;
+						firstRecordStart = lineStart;
+						if (readLine(tmpline) != 0) {
 							secondLine = tmpline.toString();
 						}
 					} else {
@@ -70,6 +69,7 @@ public abstract class FastqBasicReader {
 				}
 				break;
 			}
+			lineStart = pos;
 		}
 	}
 
@@ -108,7 +108,19 @@ public abstract class FastqBasicReader {
 		FileSystem fs = split.getPath().getFileSystem(job);
 		FSDataInputStream fileIn = fs.open(split.getPath());
 		boolean skipFirstLine = false;
-		if (codec != null) {
+		if (codec != null && FastqBGZFSplitGuesser.isBGZF(fileIn)) {
+			// splits start at BGZF block starts, positions are virtual offsets
+			bgzfIn = new BlockCompressedInputStream(
+					new WrapSeekable<FSDataInputStream>(fileIn, fs
+							.getFileStatus(split.getPath()).getLen(), split
+							.getPath()));
+			start <<= 16;
+			end <<= 16;
+			if (start != 0) {
+				skipFirstLine = true;
+				bgzfIn.seek(start);
+			}
+		} else if (codec != null) {
 			if (null == this.recordDelimiterBytes) {
 				in = new LineReader(codec.createInputStream(fileIn), job);
 			} else {
@@ -129,12 +141,80 @@ public abstract class FastqBasicReader {
 			}
 		}
 
+		this.pos = start;
 		if (skipFirstLine) { // skip first line and re-establish "start".
-			start += in.readLine(new Text(), 0,
-					(int) Math.min((long) Integer.MAX_VALUE, end - start));
+			readLine(new Text(), 0);
 		}
 		getFirstFastqLine();
-		this.pos = start;
+		if (bgzfIn != null) {
+			// a record belongs to the split its header line starts in
+			if (firstLine != "")
+				this.pos = firstRecordStart;
+		} else {
+			start = pos;
+		}
+	}
+
+	/**
+	 * Restrict a BGZF reader to the records starting in [virtualStart,
+	 * virtualEnd). virtualStart must be the start of a record, as the mate
+	 * split of paired input does not begin at a block start.
+	 */
+	public void seekVirtual(long virtualStart, long virtualEnd)
+			throws IOException {
+		if (bgzfIn == null)
+			throw new IllegalStateException("not a BGZF reader");
+		bgzfIn.seek(virtualStart);
+		start = pos = virtualStart;
+		// hasNextRecord keeps records starting at end
+		end = virtualEnd - 1;
+		firstLine = "";
+		secondLine = "";
+		getFirstFastqLine();
+		if (firstLine != "")
+			this.pos = firstRecordStart;
+	}
+
+	/**
+	 * Offset of the header line of the first record in the split, a virtual
+	 * offset for BGZF input. Only valid if the split holds a record.
+	 */
+	public long getFirstRecordStart() {
+		return firstRecordStart;
+	}
+
+	/**
+	 * Whether the next record starts inside this split. A BGZF split also owns
+	 * the record starting exactly at its end, as the next split always skips
+	 * its first line.
+	 */
+	protected boolean hasNextRecord() {
+		if (bgzfIn != null)
+			return pos <= end;
+		return pos < end;
+	}
+
+	protected int readLine(Text line) throws IOException {
+		return readLine(line, maxLineLength);
+	}
+
+	/**
+	 * Read one line and move pos past it. Returns the number of bytes read,
+	 * 0 at the end of the file.
+	 */
+	protected int readLine(Text line, int maxLength) throws IOException {
+		if (bgzfIn != null) {
+			String str = bgzfIn.readLine();
+			if (str == null)
+				return 0;
+			line.set(str);
+			pos = bgzfIn.getFilePointer();
+			return str.length() + 1;
+		}
+		int size = in.readLine(line, maxLength, Math.max(
+				(int) Math.min(Integer.MAX_VALUE, end - pos), maxLineLength));
+		pos += size;
+		return size;
 	}
 
 	/**
@@ -152,6 +232,9 @@ public abstract class FastqBasicReader {
 		if (in != null) {
 			in.close();
 		}
+		if (bgzfIn != null) {
+			bgzfIn.close();
+		}
 	}
 
 	public synchronized long getPos() throws IOException {
@@ -16,6 +16,9 @@
  *******************************************************************************/
 package org.bgi.flexlab.gaea.data.mapreduce.input.fastq;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.InputSplit;
@@ -23,8 +26,11 @@ import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class FastqInputFormat  extends FileInputFormat<Text, Text>{
 	@Override
@@ -33,10 +39,80 @@ public class FastqInputFormat  extends FileInputFormat<Text, Text>{
 		return new FastqRecordReader();
 	}
 
+	@Override
+	public List<InputSplit> getSplits(JobContext job) throws IOException {
+		List<InputSplit> splits = super.getSplits(job);
+		List<InputSplit> newSplits = new ArrayList<InputSplit>(splits.size());
+
+		for (int i = 0; i < splits.size();) {
+			Path file = ((FileSplit) splits.get(i)).getPath();
+			int fileEnd = i + 1;
+			while (fileEnd < splits.size()
+					&& file.equals(((FileSplit) splits.get(fileEnd)).getPath()))
+				fileEnd++;
+
+			// only BGZF files are split among the gzip files
+			if (fileEnd - i > 1 && file.toString().endsWith(".gz"))
+				addBGZFSplits(splits, i, fileEnd, newSplits, job.getConfiguration());
+			else
+				newSplits.addAll(splits.subList(i, fileEnd));
+			i = fileEnd;
+		}
+		return newSplits;
+	}
+
+	/**
+	 * move every split start to the first BGZF block starting inside it, so
+	 * readers can begin decompressing at the split start.
+	 */
+	static void addBGZFSplits(List<InputSplit> splits, int from, int to,
+			List<InputSplit> newSplits, Configuration conf) throws IOException {
+		Path file = ((FileSplit) splits.get(from)).getPath();
+		FileSystem fs = file.getFileSystem(conf);
+		long fileLength = fs.getFileStatus(file).getLen();
+		FSDataInputStream in = fs.open(file);
+
+		try {
+			FastqBGZFSplitGuesser guesser = new FastqBGZFSplitGuesser(in, fileLength);
+			FileSplit previousSplit = null;
+			long previousStart = 0;
+			for (int i = from; i < to; i++) {
+				FileSplit split = (FileSplit) splits.get(i);
+				long splitEnd = split.getStart() + split.getLength();
+				long blockStart = i == from ? split.getStart()
+						: guesser.guessNextBGZFBlockStart(split.getStart(), splitEnd);
+
+				// no block starts inside this split, the previous one covers it
+				if (blockStart == splitEnd)
+					continue;
+				if (previousSplit != null)
+					newSplits.add(new FileSplit(file, previousStart, blockStart
+							- previousStart, previousSplit.getLocations()));
+				previousSplit = split;
+				previousStart = blockStart;
+			}
+			newSplits.add(new FileSplit(file, previousStart, fileLength
+					- previousStart, previousSplit.getLocations()));
+		} finally {
+			in.close();
+		}
+	}
+
 	@Override
 	protected boolean isSplitable(JobContext context, Path file){
-		if (file.toString().endsWith(".gz"))
+		if (!file.toString().endsWith(".gz"))
+			return true;
+
+		try {
+			FSDataInputStream in = file.getFileSystem(
+					context.getConfiguration()).open(file);
+			try {
+				return FastqBGZFSplitGuesser.isBGZF(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
 			return false;
-		return true;
+		}
 	}
 }
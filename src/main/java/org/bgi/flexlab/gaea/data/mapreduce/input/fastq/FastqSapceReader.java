@@ -39,7 +39,7 @@ public class FastqSapceReader extends FastqBasicReader{
 		}
 		int newSize = 0;
 		boolean iswrongFq = false;
-		while (pos < end) {
+		while (hasNextRecord()) {
 			Text tmp = new Text();
 			String[] st = new String[4];
 			int startIndex = 0;
@@ -53,15 +53,12 @@ public class FastqSapceReader extends FastqBasicReader{
 			}
 
 			for (int i = startIndex; i < 4; i++) {
-				newSize = in.readLine(tmp, maxLineLength, Math.max(
-						(int) Math.min(Integer.MAX_VALUE, end - pos),
-						maxLineLength));
+				newSize = readLine(tmp);
 
 				if (newSize == 0) {
 					iswrongFq = true;
 					break;
 				}
-				pos += newSize;
 				st[i] = tmp.toString();
 			}
 			if (!iswrongFq) {
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.input.fastq;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input format reading fq1 and fq2 of a pair side by side, so reads can be
+ * paired without a shuffle. fq1 is split as usual, the matching split of fq2
+ * is found by looking up the first read of every fq1 split in fq2, starting
+ * at the proportional offset. BGZF files are split like FastqInputFormat
+ * does, other compressed pairs are read as one split.
+ */
+public class PairedFastqInputFormat extends FileInputFormat<Text, Text> {
+	private final static String MATE_PREFIX = "paired.fastq.mate.";
+	private final static long INITIAL_SEARCH_WINDOW = 1 << 20;
+
+	public static void addInputPair(Job job, Path fq1, Path fq2)
+			throws IOException {
+		Configuration conf = job.getConfiguration();
+		Path file1 = fq1.getFileSystem(conf).makeQualified(fq1);
+		FileInputFormat.addInputPath(job, file1);
+		if (fq2 != null)
+			conf.set(MATE_PREFIX + file1.toString(), fq2.getFileSystem(conf)
+					.makeQualified(fq2).toString());
+	}
+
+	private static Path getMate(Configuration conf, Path file) {
+		String mate = conf.get(MATE_PREFIX + file.toString());
+		return mate == null ? null : new Path(mate);
+	}
+
+	@Override
+	public RecordReader<Text, Text> createRecordReader(InputSplit split,
+			TaskAttemptContext context) throws IOException, InterruptedException {
+		return new PairedFastqRecordReader();
+	}
+
+	@Override
+	public List<InputSplit> getSplits(JobContext job) throws IOException {
+		Configuration conf = job.getConfiguration();
+		List<InputSplit> splits = super.getSplits(job);
+		List<InputSplit> newSplits = new ArrayList<InputSplit>(splits.size());
+
+		for (int i = 0; i < splits.size();) {
+			Path file = ((FileSplit) splits.get(i)).getPath();
+			int fileEnd = i + 1;
+			while (fileEnd < splits.size()
+					&& file.equals(((FileSplit) splits.get(fileEnd)).getPath()))
+				fileEnd++;
+
+			Path mate = getMate(conf, file);
+			if (mate == null) {
+				for (int j = i; j < fileEnd; j++)
+					newSplits.add(new PairedFastqSplit((FileSplit) splits.get(j), null));
+			} else {
+				addPairedSplits(splits.subList(i, fileEnd), mate, newSplits, conf);
+			}
+			i = fileEnd;
+		}
+		return newSplits;
+	}
+
+	private void addPairedSplits(List<InputSplit> splits, Path mate,
+			List<InputSplit> newSplits, Configuration conf) throws IOException {
+		Path file = ((FileSplit) splits.get(0)).getPath();
+		long length1 = file.getFileSystem(conf).getFileStatus(file).getLen();
+		long length2 = mate.getFileSystem(conf).getFileStatus(mate).getLen();
+
+		// BGZF fq1 splits start at block starts and own the records whose
+		// header starts in them, BGZF fq2 splits are bounded by the virtual
+		// offsets of the mates
+		boolean bgzf1 = isBGZF(conf, file);
+		boolean bgzf2 = isBGZF(conf, mate);
+		if (bgzf1 && splits.size() > 1) {
+			List<InputSplit> blockSplits = new ArrayList<InputSplit>(splits.size());
+			FastqInputFormat.addBGZFSplits(splits, 0, splits.size(), blockSplits, conf);
+			splits = blockSplits;
+		}
+
+		long[] starts1 = new long[splits.size() + 1];
+		long[] starts2 = new long[splits.size() + 1];
+		starts1[splits.size()] = length1;
+		starts2[splits.size()] = bgzf2 ? length2 << 16 : length2;
+
+		FSDataInputStream mateIn = bgzf2 ? mate.getFileSystem(conf).open(mate) : null;
+		try {
+			FastqBGZFSplitGuesser guesser = bgzf2 ? new FastqBGZFSplitGuesser(mateIn, length2) : null;
+			Text key = new Text();
+			Text value = new Text();
+			for (int j = 1; j < splits.size(); j++) {
+				long splitStart = ((FileSplit) splits.get(j)).getStart();
+				FastqBasicReader reader = FastqRecordReader.createReader(conf,
+						new FileSplit(file, splitStart, length1 - splitStart, null));
+				boolean found = reader.next(key, value);
+				long recordStart = reader.getFirstRecordStart();
+				reader.close();
+
+				if (!found) {
+					starts1[j] = length1;
+					starts2[j] = starts2[splits.size()];
+					continue;
+				}
+				starts1[j] = bgzf1 ? splitStart : recordStart;
+				long offset1 = bgzf1 ? recordStart >>> 16 : recordStart;
+				starts2[j] = findMate(conf, mate, length2, guesser, key,
+						(long) ((double) offset1 / length1 * length2));
+				if (starts2[j] < starts2[j - 1])
+					throw new RuntimeException("reads of " + file + " and " + mate
+							+ " are not in the same order at " + key);
+			}
+		} finally {
+			if (mateIn != null)
+				mateIn.close();
+		}
+
+		for (int j = 0; j < splits.size(); j++) {
+			if (starts1[j + 1] <= starts1[j])
+				continue;
+			FileSplit split1 = new FileSplit(file, starts1[j], starts1[j + 1]
+					- starts1[j], ((FileSplit) splits.get(j)).getLocations());
+			if (bgzf2) {
+				long blockStart = starts2[j] >>> 16;
+				FileSplit split2 = new FileSplit(mate, blockStart,
+						(starts2[j + 1] >>> 16) - blockStart, null);
+				newSplits.add(new PairedFastqSplit(split1, split2, starts2[j], starts2[j + 1]));
+			} else {
+				FileSplit split2 = new FileSplit(mate, starts2[j], starts2[j + 1]
+						- starts2[j], null);
+				newSplits.add(new PairedFastqSplit(split1, split2));
+			}
+		}
+	}
+
+	/**
+	 * find the start of the read named name in the mate file, searching a
+	 * growing window around guess. The start is a virtual offset if guesser
+	 * is given for a BGZF mate.
+	 */
+	private long findMate(Configuration conf, Path mate, long length,
+			FastqBGZFSplitGuesser guesser, Text name, long guess) throws IOException {
+		Text key = new Text();
+		Text value = new Text();
+		for (long window = INITIAL_SEARCH_WINDOW;; window <<= 2) {
+			long begin = Math.max(0, guess - window);
+			long end = Math.min(length, guess + window);
+			// BGZF readers must start at a block start
+			long readerBegin = guesser == null || begin == 0 ? begin
+					: guesser.guessNextBGZFBlockStart(begin, end);
+			if (readerBegin < end) {
+				FastqBasicReader reader = FastqRecordReader.createReader(conf,
+						new FileSplit(mate, readerBegin, end - readerBegin, null));
+				try {
+					// pos is the end of the last record read, so the start of
+					// the next one
+					long recordStart = reader.getFirstRecordStart();
+					while (reader.next(key, value)) {
+						if (key.equals(name))
+							return recordStart;
+						recordStart = reader.getPos();
+					}
+				} finally {
+					reader.close();
+				}
+			}
+
+			if (begin == 0 && end == length)
+				throw new RuntimeException("cannot find mate of read " + name
+						+ " in " + mate);
+		}
+	}
+
+	/**
+	 * whether file is BGZF compressed, the only compressed fastq that can be
+	 * split
+	 */
+	private static boolean isBGZF(Configuration conf, Path file) throws IOException {
+		if (new CompressionCodecFactory(conf).getCodec(file) == null)
+			return false;
+		FSDataInputStream in = file.getFileSystem(conf).open(file);
+		try {
+			return FastqBGZFSplitGuesser.isBGZF(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	@Override
+	protected boolean isSplitable(JobContext context, Path file) {
+		Configuration conf = context.getConfiguration();
+		CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+		Path mate = getMate(conf, file);
+		try {
+			return (codecs.getCodec(file) == null || isBGZF(conf, file))
+					&& (mate == null || codecs.getCodec(mate) == null || isBGZF(conf, mate));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
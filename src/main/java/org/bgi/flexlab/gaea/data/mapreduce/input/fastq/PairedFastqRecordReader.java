@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.input.fastq;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.io.IOException;
+
+/**
+ * Reads fq1 and fq2 of a PairedFastqSplit side by side. The value holds the
+ * read of fq1 and its mate of fq2 separated by a line break.
+ */
+public class PairedFastqRecordReader extends RecordReader<Text, Text> {
+	private final static byte[] NEW_LINE = {'\n'};
+
+	private FastqBasicReader reader1 = null;
+	private FastqBasicReader reader2 = null;
+	private Text key = new Text();
+	private Text value = new Text();
+	private Text key2 = new Text();
+	private Text value2 = new Text();
+
+	@Override
+	public void initialize(InputSplit split, TaskAttemptContext context)
+			throws IOException, InterruptedException {
+		Configuration conf = context.getConfiguration();
+		PairedFastqSplit pairedSplit = (PairedFastqSplit) split;
+		reader1 = FastqRecordReader.createReader(conf,
+				pairedSplit.getFirstSplit());
+		if (pairedSplit.getSecondSplit() != null) {
+			reader2 = FastqRecordReader.createReader(conf,
+					pairedSplit.getSecondSplit());
+			if (pairedSplit.isSecondVirtual())
+				reader2.seekVirtual(pairedSplit.getSecondVirtualStart(),
+						pairedSplit.getSecondVirtualEnd());
+		}
+	}
+
+	@Override
+	public boolean nextKeyValue() throws IOException, InterruptedException {
+		if (!reader1.next(key, value)) {
+			if (reader2 != null && reader2.next(key2, value2))
+				throw new RuntimeException("fq1 has no mate for read " + key2);
+			return false;
+		}
+		if (reader2 == null)
+			return true;
+
+		if (!reader2.next(key2, value2))
+			throw new RuntimeException("fq2 has no mate for read " + key);
+		if (!key.equals(key2))
+			throw new RuntimeException("reads of fq1 and fq2 are not in the same order at "
+					+ key + " and " + key2);
+		value.append(NEW_LINE, 0, NEW_LINE.length);
+		value.append(value2.getBytes(), 0, value2.getLength());
+		return true;
+	}
+
+	@Override
+	public Text getCurrentKey() throws IOException, InterruptedException {
+		return key;
+	}
+
+	@Override
+	public Text getCurrentValue() throws IOException, InterruptedException {
+		return value;
+	}
+
+	@Override
+	public float getProgress() throws IOException {
+		return reader1.getProgress();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (reader1 != null)
+			reader1.close();
+		if (reader2 != null)
+			reader2.close();
+	}
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.input.fastq;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A split of fq1 together with the split of fq2 holding the mates of its
+ * reads. fq2 split is null for single end data. For BGZF fq2 the mates start
+ * inside blocks, so the split also keeps their exact virtual offsets.
+ */
+public class PairedFastqSplit extends InputSplit implements Writable {
+	private FileSplit split1;
+	private FileSplit split2;
+	private long virtualStart2 = -1;
+	private long virtualEnd2 = -1;
+
+	public PairedFastqSplit() {
+	}
+
+	public PairedFastqSplit(FileSplit split1, FileSplit split2) {
+		this.split1 = split1;
+		this.split2 = split2;
+	}
+
+	public PairedFastqSplit(FileSplit split1, FileSplit split2,
+			long virtualStart2, long virtualEnd2) {
+		this(split1, split2);
+		this.virtualStart2 = virtualStart2;
+		this.virtualEnd2 = virtualEnd2;
+	}
+
+	public FileSplit getFirstSplit() {
+		return split1;
+	}
+
+	public FileSplit getSecondSplit() {
+		return split2;
+	}
+
+	/**
+	 * whether the records of fq2 are bounded by virtual offsets
+	 */
+	public boolean isSecondVirtual() {
+		return virtualStart2 >= 0;
+	}
+
+	public long getSecondVirtualStart() {
+		return virtualStart2;
+	}
+
+	public long getSecondVirtualEnd() {
+		return virtualEnd2;
+	}
+
+	@Override
+	public long getLength() throws IOException, InterruptedException {
+		return split1.getLength() + (split2 == null ? 0 : split2.getLength());
+	}
+
+	@Override
+	public String[] getLocations() throws IOException, InterruptedException {
+		return split1.getLocations();
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		split1.write(out);
+		out.writeBoolean(split2 != null);
+		if (split2 != null) {
+			split2.write(out);
+			out.writeLong(virtualStart2);
+			out.writeLong(virtualEnd2);
+		}
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		split1 = new FileSplit();
+		split1.readFields(in);
+		split2 = null;
+		virtualStart2 = virtualEnd2 = -1;
+		if (in.readBoolean()) {
+			split2 = new FileSplit();
+			split2.readFields(in);
+			virtualStart2 = in.readLong();
+			virtualEnd2 = in.readLong();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return split1 + (split2 == null ? "" : "," + split2);
+	}
+}
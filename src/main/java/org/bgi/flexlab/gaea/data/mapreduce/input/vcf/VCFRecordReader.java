@@ -57,7 +57,6 @@ import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.bgi.flexlab.gaea.data.mapreduce.util.HdfsFileManager;
-import org.bgi.flexlab.gaea.data.structure.header.GaeaVCFHeader;
 import org.bgi.flexlab.gaea.data.structure.header.MultipleVCFHeader;
 import org.seqdoop.hadoop_bam.VariantContextWritable;
 
@@ -78,6 +77,10 @@ public class VCFRecordReader extends RecordReader<LongWritable, VariantContextWr
 	
 	private long start;
 	private long length;
+	/**
+	 * lines starting before this position of the iterator belong to the split
+	 */
+	private long limit;
 	private long currentPos;
 	
 	private MultipleVCFHeader mVcfHeader;
@@ -92,7 +95,7 @@ public class VCFRecordReader extends RecordReader<LongWritable, VariantContextWr
 //  used for reading multiple vcf file but not proceed sorting
 	public VCFRecordReader(Configuration conf, boolean sort) {
 		this.conf = conf;
-		mVcfHeader = (MultipleVCFHeader) GaeaVCFHeader.loadVcfHeader(false, conf);
+		mVcfHeader = MultipleVCFHeader.load(conf);
 		this.sort = sort;
 	}
 	
@@ -126,7 +129,10 @@ public class VCFRecordReader extends RecordReader<LongWritable, VariantContextWr
 	    	reader = new AsciiLineReader(is);
 	    	reader.readLine();
 	    	it = new AsciiLineReaderIterator(reader);
+	    	// positions are relative to start - 1
+	    	limit = length + 1;
 	    } else {
+	    	limit = length;
 	    	currentPos = it.getPosition();
 	    	is.seek(0);
 	    	reader = new AsciiLineReader(is);
@@ -180,7 +186,7 @@ public class VCFRecordReader extends RecordReader<LongWritable, VariantContextWr
 	
 	@Override 
 	public boolean nextKeyValue() throws IOException {
-		if( !it.hasNext() || it.getPosition() > length) {
+		if( !it.hasNext() || it.getPosition() >= limit) {
 			return false;
 		}
 		final String line = it.next();
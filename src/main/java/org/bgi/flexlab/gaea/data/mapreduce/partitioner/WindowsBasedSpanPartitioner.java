@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.partitioner;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
+
+/*
+ * send consecutive windows of one span to the same reducer, so reads
+ * overlapping neighbouring windows can be carried over on the reducer side
+ */
+public class WindowsBasedSpanPartitioner<T> extends Partitioner<WindowsBasedWritable, T> implements Configurable {
+	public final static String WINDOWS_SPAN = "windows.read.once.span";
+	public final static int DEFAULT_WINDOWS_SPAN = 100;
+
+	private Configuration conf = null;
+	private int windowsSpan = DEFAULT_WINDOWS_SPAN;
+
+	@Override
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+		windowsSpan = conf.getInt(WINDOWS_SPAN, DEFAULT_WINDOWS_SPAN);
+	}
+
+	@Override
+	public Configuration getConf() {
+		return conf;
+	}
+
+	@Override
+	public int getPartition(WindowsBasedWritable key, T v, int numPartitioner) {
+		int hashcode = key.partition(windowsSpan);
+		return Math.abs(hashcode) % numPartitioner;
+	}
+}
@@ -0,0 +1,425 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.bgi.flexlab.gaea.util.GaeaVCFConstants;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFConstants;
+
+/*
+ * compact record of one gVCF line for the joint calling shuffle.
+ * contig is taken from the key and the sample is an index of the input order,
+ * genotypes are stored with their index in the sample list of that input,
+ * reference blocks only keep their reference base and span, and numeric
+ * genotype and attribute values are written as variable length integers.
+ */
+public class GvcfRecordWritable implements Writable {
+	private final static String SOURCE = "Unknown";
+
+	private final static int REFERENCE_BLOCK = 1;
+	private final static int HAS_ID = 1 << 1;
+	private final static int HAS_QUAL = 1 << 2;
+	private final static int FILTERS_APPLIED = 1 << 3;
+	private final static int HAS_END = 1 << 4;
+
+	/* allele codes, larger codes are ALLELE_BASES plus the length of the allele bases */
+	private final static int NON_REF_ALLELE = 0;
+	private final static int SPAN_DEL_ALLELE = 1;
+	private final static int ALLELE_BASES = 2;
+
+	/* attribute value types */
+	private final static byte STRING_VALUE = 0;
+	private final static byte LIST_VALUE = 1;
+	private final static byte FLAG_VALUE = 2;
+	private final static byte INTEGERS_VALUE = 3;
+
+	private final static int MAX_INTEGER_DIGITS = 9;
+
+	private int sampleIndex;
+	private byte[] record = new byte[0];
+	private int length = 0;
+
+	private final DataOutputBuffer output = new DataOutputBuffer();
+	private final DataInputBuffer input = new DataInputBuffer();
+
+	public void set(VariantContext vc, int sampleIndex) {
+		this.sampleIndex = sampleIndex;
+		output.reset();
+		try {
+			encode(vc, output);
+		} catch (IOException e) {
+			throw new RuntimeException(e.toString());
+		}
+		record = output.getData();
+		length = output.getLength();
+	}
+
+	public int getSampleIndex() {
+		return sampleIndex;
+	}
+
+	/*
+	 * sampleNames are the genotype samples of the input header, in header order
+	 */
+	public VariantContext getVariantContext(String contig, String[] sampleNames) {
+		input.reset(record, length);
+		try {
+			return decode(input, contig, sampleNames);
+		} catch (IOException e) {
+			throw new RuntimeException(e.toString());
+		}
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, sampleIndex);
+		WritableUtils.writeVInt(out, length);
+		out.write(record, 0, length);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		sampleIndex = WritableUtils.readVInt(in);
+		length = WritableUtils.readVInt(in);
+		if (record.length < length || record == output.getData())
+			record = new byte[Math.max(length, 256)];
+		in.readFully(record, 0, length);
+	}
+
+	private static boolean isReferenceBlock(VariantContext vc) {
+		return vc.getNAlleles() == 2 && vc.getReference().length() == 1
+				&& vc.getAlternateAllele(0).equals(GaeaVCFConstants.NON_REF_SYMBOLIC_ALLELE);
+	}
+
+	private static void encode(VariantContext vc, DataOutput out) throws IOException {
+		boolean block = isReferenceBlock(vc);
+		Map<String, Object> attributes = vc.getAttributes();
+		int flags = (block ? REFERENCE_BLOCK : 0) | (vc.hasID() ? HAS_ID : 0) | (vc.hasLog10PError() ? HAS_QUAL : 0)
+				| (vc.filtersWereApplied() ? FILTERS_APPLIED : 0)
+				| (attributes.containsKey(VCFConstants.END_KEY) ? HAS_END : 0);
+		out.writeByte(flags);
+		WritableUtils.writeVInt(out, vc.getStart());
+		WritableUtils.writeVInt(out, vc.getEnd() - vc.getStart());
+
+		List<Allele> alleles = vc.getAlleles();
+		if (block) {
+			out.writeByte(vc.getReference().getBases()[0]);
+		} else {
+			WritableUtils.writeVInt(out, alleles.size());
+			for (Allele allele : alleles)
+				writeAllele(out, allele);
+		}
+
+		if (vc.hasID())
+			Text.writeString(out, vc.getID());
+		if (vc.hasLog10PError())
+			out.writeDouble(vc.getLog10PError());
+		if (vc.filtersWereApplied()) {
+			Set<String> filters = vc.getFilters();
+			WritableUtils.writeVInt(out, filters.size());
+			for (String filter : filters)
+				Text.writeString(out, filter);
+		}
+
+		int attributeCount = 0;
+		for (String key : attributes.keySet()) {
+			if (isStoredAttribute(key))
+				attributeCount++;
+		}
+		WritableUtils.writeVInt(out, attributeCount);
+		for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+			if (!isStoredAttribute(entry.getKey()))
+				continue;
+			Text.writeString(out, entry.getKey());
+			writeValue(out, entry.getValue());
+		}
+
+		GenotypesContext genotypes = vc.getGenotypes();
+		boolean multiSample = genotypes.size() > 1;
+		int genotypeCount = 0;
+		for (Genotype genotype : genotypes) {
+			if (!multiSample || !isEmpty(genotype))
+				genotypeCount++;
+		}
+		WritableUtils.writeVInt(out, genotypeCount);
+		for (int i = 0; i < genotypes.size(); i++) {
+			Genotype genotype = genotypes.get(i);
+			if (multiSample && isEmpty(genotype))
+				continue;
+			WritableUtils.writeVInt(out, i);
+			writeGenotype(out, genotype, alleles);
+		}
+	}
+
+	/* samples a multiple sample gVCF line has no record for */
+	private static boolean isEmpty(Genotype genotype) {
+		return genotype.isNoCall() && !genotype.hasGQ() && !genotype.hasDP() && !genotype.hasAD() && !genotype.hasPL()
+				&& genotype.getExtendedAttributes().isEmpty();
+	}
+
+	/* END is rebuilt from the span and the sample comes from the index */
+	private static boolean isStoredAttribute(String key) {
+		return !key.equals(VCFConstants.END_KEY) && !key.equals("SM");
+	}
+
+	private static void writeGenotype(DataOutput out, Genotype genotype, List<Allele> alleles) throws IOException {
+		out.writeBoolean(genotype.isPhased());
+		WritableUtils.writeVInt(out, genotype.getPloidy());
+		for (Allele allele : genotype.getAlleles())
+			WritableUtils.writeVInt(out, allele.isNoCall() ? 0 : alleles.indexOf(allele) + 1);
+
+		WritableUtils.writeVInt(out, genotype.hasGQ() ? genotype.getGQ() + 1 : 0);
+		WritableUtils.writeVInt(out, genotype.hasDP() ? genotype.getDP() + 1 : 0);
+		writeIntegers(out, genotype.hasAD() ? genotype.getAD() : null);
+		writeIntegers(out, genotype.hasPL() ? genotype.getPL() : null);
+
+		String filters = genotype.getFilters();
+		out.writeBoolean(filters != null);
+		if (filters != null)
+			Text.writeString(out, filters);
+
+		Map<String, Object> extended = genotype.getExtendedAttributes();
+		WritableUtils.writeVInt(out, extended.size());
+		for (Map.Entry<String, Object> entry : extended.entrySet()) {
+			Text.writeString(out, entry.getKey());
+			writeValue(out, entry.getValue());
+		}
+	}
+
+	private static void writeIntegers(DataOutput out, int[] values) throws IOException {
+		if (values == null) {
+			WritableUtils.writeVInt(out, 0);
+			return;
+		}
+		WritableUtils.writeVInt(out, values.length + 1);
+		for (int value : values)
+			WritableUtils.writeVInt(out, value);
+	}
+
+	private static int[] readIntegers(DataInput in) throws IOException {
+		int size = WritableUtils.readVInt(in) - 1;
+		if (size < 0)
+			return null;
+		int[] values = new int[size];
+		for (int i = 0; i < size; i++)
+			values[i] = WritableUtils.readVInt(in);
+		return values;
+	}
+
+	private static void writeAllele(DataOutput out, Allele allele) throws IOException {
+		if (allele.equals(GaeaVCFConstants.NON_REF_SYMBOLIC_ALLELE)) {
+			WritableUtils.writeVInt(out, NON_REF_ALLELE);
+		} else if (allele.equals(Allele.SPAN_DEL)) {
+			WritableUtils.writeVInt(out, SPAN_DEL_ALLELE);
+		} else {
+			byte[] bases = allele.getDisplayBases();
+			WritableUtils.writeVInt(out, bases.length + ALLELE_BASES);
+			out.write(bases);
+		}
+	}
+
+	private static Allele readAllele(DataInput in, boolean isReference) throws IOException {
+		int code = WritableUtils.readVInt(in);
+		if (code == NON_REF_ALLELE)
+			return GaeaVCFConstants.NON_REF_SYMBOLIC_ALLELE;
+		if (code == SPAN_DEL_ALLELE)
+			return Allele.SPAN_DEL;
+		byte[] bases = new byte[code - ALLELE_BASES];
+		in.readFully(bases);
+		return Allele.create(bases, isReference);
+	}
+
+	/*
+	 * comma separated integers as written by the VCF codec, without signs
+	 * or zeros that would not survive a round trip
+	 */
+	private static int[] parseIntegers(String value) {
+		if (value.isEmpty())
+			return null;
+		String[] parts = value.split(",", -1);
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			String part = parts[i];
+			int offset = part.startsWith("-") ? 1 : 0;
+			int digits = part.length() - offset;
+			if (digits == 0 || digits > MAX_INTEGER_DIGITS || (digits > 1 && part.charAt(offset) == '0')
+					|| (offset == 1 && part.equals("-0")))
+				return null;
+			for (int j = offset; j < part.length(); j++) {
+				if (!Character.isDigit(part.charAt(j)))
+					return null;
+			}
+			values[i] = Integer.parseInt(part);
+		}
+		return values;
+	}
+
+	private static void writeValue(DataOutput out, Object value) throws IOException {
+		if (value instanceof Boolean) {
+			out.writeByte(FLAG_VALUE);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			out.writeByte(LIST_VALUE);
+			WritableUtils.writeVInt(out, list.size());
+			for (Object element : list)
+				Text.writeString(out, String.valueOf(element));
+		} else {
+			String string = String.valueOf(value);
+			int[] integers = parseIntegers(string);
+			if (integers != null) {
+				out.writeByte(INTEGERS_VALUE);
+				writeIntegers(out, integers);
+			} else {
+				out.writeByte(STRING_VALUE);
+				Text.writeString(out, string);
+			}
+		}
+	}
+
+	private static Object readValue(DataInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case FLAG_VALUE:
+			return in.readBoolean();
+		case LIST_VALUE:
+			int size = WritableUtils.readVInt(in);
+			List<String> list = new ArrayList<String>(size);
+			for (int i = 0; i < size; i++)
+				list.add(Text.readString(in));
+			return list;
+		case INTEGERS_VALUE:
+			int[] integers = readIntegers(in);
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < integers.length; i++) {
+				if (i > 0)
+					sb.append(',');
+				sb.append(integers[i]);
+			}
+			return sb.toString();
+		default:
+			return Text.readString(in);
+		}
+	}
+
+	private static VariantContext decode(DataInput in, String contig, String[] sampleNames) throws IOException {
+		int flags = in.readByte();
+		int start = WritableUtils.readVInt(in);
+		int end = start + WritableUtils.readVInt(in);
+
+		List<Allele> alleles;
+		if ((flags & REFERENCE_BLOCK) != 0) {
+			alleles = Arrays.asList(Allele.create(in.readByte(), true), GaeaVCFConstants.NON_REF_SYMBOLIC_ALLELE);
+		} else {
+			int size = WritableUtils.readVInt(in);
+			alleles = new ArrayList<Allele>(size);
+			for (int i = 0; i < size; i++)
+				alleles.add(readAllele(in, i == 0));
+		}
+
+		VariantContextBuilder builder = new VariantContextBuilder(SOURCE, contig, start, end, alleles);
+		if ((flags & HAS_ID) != 0)
+			builder.id(Text.readString(in));
+		if ((flags & HAS_QUAL) != 0)
+			builder.log10PError(in.readDouble());
+		if ((flags & FILTERS_APPLIED) != 0) {
+			int size = WritableUtils.readVInt(in);
+			if (size == 0) {
+				builder.passFilters();
+			} else {
+				Set<String> filters = new LinkedHashSet<String>();
+				for (int i = 0; i < size; i++)
+					filters.add(Text.readString(in));
+				builder.filters(filters);
+			}
+		}
+
+		Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+		if ((flags & HAS_END) != 0)
+			attributes.put(VCFConstants.END_KEY, String.valueOf(end));
+		int attributeCount = WritableUtils.readVInt(in);
+		for (int i = 0; i < attributeCount; i++) {
+			String key = Text.readString(in);
+			attributes.put(key, readValue(in));
+		}
+		builder.attributes(attributes);
+
+		int genotypeCount = WritableUtils.readVInt(in);
+		List<Genotype> genotypes = new ArrayList<Genotype>(genotypeCount);
+		for (int i = 0; i < genotypeCount; i++) {
+			String sampleName = sampleNames[WritableUtils.readVInt(in)];
+			genotypes.add(readGenotype(in, sampleName, alleles));
+		}
+		builder.genotypes(genotypes);
+		return builder.make();
+	}
+
+	private static Genotype readGenotype(DataInput in, String sampleName, List<Allele> alleles) throws IOException {
+		boolean phased = in.readBoolean();
+		int ploidy = WritableUtils.readVInt(in);
+		List<Allele> genotypeAlleles = new ArrayList<Allele>(ploidy);
+		for (int i = 0; i < ploidy; i++) {
+			int index = WritableUtils.readVInt(in);
+			genotypeAlleles.add(index == 0 ? Allele.NO_CALL : alleles.get(index - 1));
+		}
+
+		GenotypeBuilder builder = new GenotypeBuilder(sampleName, genotypeAlleles).phased(phased);
+		int gq = WritableUtils.readVInt(in);
+		if (gq > 0)
+			builder.GQ(gq - 1);
+		int dp = WritableUtils.readVInt(in);
+		if (dp > 0)
+			builder.DP(dp - 1);
+		int[] ad = readIntegers(in);
+		if (ad != null)
+			builder.AD(ad);
+		int[] pl = readIntegers(in);
+		if (pl != null)
+			builder.PL(pl);
+		if (in.readBoolean())
+			builder.filter(Text.readString(in));
+
+		int size = WritableUtils.readVInt(in);
+		for (int i = 0; i < size; i++) {
+			String key = Text.readString(in);
+			builder.attribute(key, readValue(in));
+		}
+		return builder.make();
+	}
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.writable;
+
+import org.apache.hadoop.io.Writable;
+import org.bgi.flexlab.gaea.util.SamRecordDatum;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/*
+ * bam quality control fields of a read in binary form
+ */
+public class SamRecordDatumWritable implements Writable {
+	private SamRecordDatum datum;
+
+	public SamRecordDatumWritable() {
+		datum = new SamRecordDatum();
+	}
+
+	public void set(SamRecordDatum datum) {
+		this.datum = datum;
+	}
+
+	public SamRecordDatum get() {
+		return datum;
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		datum.writeBamQC(out);
+	}
+
+	/*
+	 * one new datum per value, like the reducer parsed them before
+	 */
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		datum = new SamRecordDatum();
+		datum.readBamQC(in);
+	}
+}
@@ -44,45 +44,190 @@ package org.bgi.flexlab.gaea.data.mapreduce.writable;
 
 import htsjdk.samtools.BAMRecordCodec;
 import htsjdk.samtools.SAMRecord;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.Writable;
 import org.seqdoop.hadoop_bam.LazyBAMRecordFactory;
-import org.seqdoop.hadoop_bam.util.DataInputWrapper;
-import org.seqdoop.hadoop_bam.util.DataOutputWrapper;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 
-public class SamRecordWritable implements Writable{
-	private static final BamRecordCodec lazyCodec =
-			new BamRecordCodec(null, new LazyBAMRecordFactory());
+public class SamRecordWritable implements Writable, Configurable {
+	/*
+	 * keep the serialized record in a reused buffer and decode it only when
+	 * get() is called, values never decoded are written back unchanged
+	 */
+	public final static String REUSE_RECORD_BUFFER = "sam.record.writable.reuse.buffer";
+
+	private final static int BLOCK_SIZE_LENGTH = 4;
+
+	private static final ThreadLocal<RecordCodec> codecs = new ThreadLocal<RecordCodec>() {
+		@Override
+		protected RecordCodec initialValue() {
+			return new RecordCodec();
+		}
+	};
 
 		private SAMRecord record;
 
-		public SAMRecord get()            { return record; }
-		public void      set(SAMRecord r) { record = r; }
+		private Configuration conf = null;
+		private boolean reuseBuffer = false;
+		private byte[] buffer = null;
+		private int bufferLength = -1;
+
+		public SAMRecord get() {
+			if (record == null && bufferLength >= 0) {
+				RecordCodec codec = codecs.get();
+				codec.inputBuffer.reset(buffer, 0, bufferLength);
+				record = codec.decode(codec.inputBuffer);
+				bufferLength = -1;
+			}
+			return record;
+		}
+
+		public void set(SAMRecord r) {
+			record = r;
+			bufferLength = -1;
+		}
+
+		public static void setReuseRecordBuffer(Configuration conf, boolean reuse) {
+			conf.setBoolean(REUSE_RECORD_BUFFER, reuse);
+		}
+
+		@Override
+		public void setConf(Configuration conf) {
+			this.conf = conf;
+			reuseBuffer = conf.getBoolean(REUSE_RECORD_BUFFER, false);
+		}
+
+		@Override
+		public Configuration getConf() {
+			return conf;
+		}
 
 		@Override 
 		public void write(DataOutput out) throws IOException {
+			if (bufferLength >= 0) {
+				out.write(buffer, 0, bufferLength);
+				return;
+			}
 			// In theory, it shouldn't matter whether we give a header to
 			// BAMRecordCodec or not, since the representation of an alignment in BAM
 			// doesn't depend on the header data at all. Only its interpretation
 			// does, and a simple read/write codec shouldn't really have anything to
 			// say about that. (But in practice, it already does matter for decode(),
 			// which is why LazyBAMRecordFactory exists.)
-			final BAMRecordCodec codec = new BAMRecordCodec(record.getHeader());
-			codec.setOutputStream(new DataOutputWrapper(out));
-			codec.encode(record);
+			codecs.get().encode(record, out);
 		}
 		
 		@Override 
 		public void readFields(DataInput in) throws IOException {
-			lazyCodec.setInputStream(new DataInputWrapper(in));
-			record = lazyCodec.decode();
+			if (!reuseBuffer) {
+				record = codecs.get().decode(in);
+				return;
+			}
+
+			if (buffer == null)
+				buffer = new byte[1024];
+			in.readFully(buffer, 0, BLOCK_SIZE_LENGTH);
+			int blockSize = (buffer[0] & 0xff) | ((buffer[1] & 0xff) << 8) | ((buffer[2] & 0xff) << 16)
+					| ((buffer[3] & 0xff) << 24);
+			int length = BLOCK_SIZE_LENGTH + blockSize;
+			if (buffer.length < length)
+				buffer = Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+			in.readFully(buffer, BLOCK_SIZE_LENGTH, blockSize);
+
+			bufferLength = length;
+			record = null;
 		}
 
 		@Override
 		public String toString() {
-			return record.getSAMString().trim(); // remove trailing newline
+			return get().getSAMString().trim(); // remove trailing newline
+		}
+
+	/*
+	 * per thread codec and stream wrappers, reset for every record instead of
+	 * being created again
+	 */
+	private static class RecordCodec {
+		private final BAMRecordCodec encoder = new BAMRecordCodec(null);
+		private final BamRecordCodec decoder = new BamRecordCodec(null, new LazyBAMRecordFactory());
+		private final DataOutputStream output = new DataOutputStream();
+		private final DataInputStream input = new DataInputStream();
+		private final DataInputBuffer inputBuffer = new DataInputBuffer();
+
+		public RecordCodec() {
+			encoder.setOutputStream(output);
+			decoder.setInputStream(input);
+		}
+
+		public void encode(SAMRecord record, DataOutput out) {
+			output.out = out;
+			try {
+				encoder.encode(record);
+			} finally {
+				output.out = null;
+			}
+		}
+
+		public SAMRecord decode(DataInput in) {
+			input.in = in;
+			try {
+				return decoder.decode();
+			} finally {
+				input.in = null;
+			}
+		}
+	}
+
+	private static class DataOutputStream extends OutputStream {
+		private DataOutput out = null;
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+	}
+
+	private static class DataInputStream extends InputStream {
+		private DataInput in = null;
+
+		@Override
+		public int read() throws IOException {
+			try {
+				return in.readUnsignedByte();
+			} catch (EOFException e) {
+				return -1;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				in.readFully(b, off, len);
+			} catch (EOFException e) {
+				return -1;
+			}
+			return len;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			for (long i = 0; i < n; i += Integer.MAX_VALUE)
+				in.skipBytes((int) Math.min(n - i, Integer.MAX_VALUE));
+			return n;
 		}
+	}
 }
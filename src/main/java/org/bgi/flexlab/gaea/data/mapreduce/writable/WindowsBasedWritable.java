@@ -20,6 +20,7 @@ import htsjdk.samtools.SAMRecord;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
 import org.bgi.flexlab.gaea.data.exception.OutOfBoundException;
 
 import java.io.DataInput;
@@ -41,6 +42,12 @@ public class WindowsBasedWritable implements WritableComparable<WindowsBasedWrit
 	private final static int SAMPLE_BITS_MASK = (int) (Math.pow(2, SAMPLE_BITS) - 1);
 	private final static int WINDOW_NUMBER_MASK = (int) (Math.pow(2, WINDOW_NUMBER_BITS) - 1);
 
+	/*
+	 * serialized layout: 8 bytes windows key followed by 4 bytes position,
+	 * both big-endian as written by LongWritable and IntWritable
+	 */
+	private final static int POSITION_OFFSET = Long.BYTES;
+
 	public void set(long sample, long chromosome, long winNum, int pos) {
 		if (sample >= MAX_SAMPLE_ID)
 			throw new OutOfBoundException(String.format("sample size %d is more than 4194304", (int) sample));
@@ -121,6 +128,14 @@ public class WindowsBasedWritable implements WritableComparable<WindowsBasedWrit
 		return (int)(hashcode & 0xffffffff);
 	}
 
+	public int partition(int windowsSpan) {
+		int hashcode = (getChromosomeIndex() + 1);
+		hashcode += (getWindowsNumber() / windowsSpan + 1);
+		hashcode += (getSampleID() + 1);
+
+		return (int) (hashcode & 0xffffffff);
+	}
+
 	@Override
 	public boolean equals(Object other) {
 		if (other instanceof WindowsBasedWritable) {
@@ -133,12 +148,23 @@ public class WindowsBasedWritable implements WritableComparable<WindowsBasedWrit
 
 	@Override
 	public int compareTo(WindowsBasedWritable tp) {
-		long cmp = windowsInfo.get() - tp.getWindows();
-		if (cmp != 0) {
-			if (cmp > 0)
-				return 1;
-			return -1;
-		}
+		int cmp = Long.compare(windowsInfo.get(), tp.getWindows());
+		if (cmp != 0)
+			return cmp;
 		return position.compareTo(tp.position);
 	}
+
+	/*
+	 * read windows key from serialized bytes without deserializing
+	 */
+	public static long readWindows(byte[] bytes, int start) {
+		return WritableComparator.readLong(bytes, start);
+	}
+
+	/*
+	 * read position from serialized bytes without deserializing
+	 */
+	public static int readPosition(byte[] bytes, int start) {
+		return WritableComparator.readInt(bytes, start + POSITION_OFFSET);
+	}
 }
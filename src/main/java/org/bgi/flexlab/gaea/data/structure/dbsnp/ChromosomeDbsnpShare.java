@@ -85,25 +85,17 @@ public class ChromosomeDbsnpShare extends BioMemoryShare {
 		int minWinNum = startWinNum * multipe;
 		int maxWinNum = endWinNum * multipe;
 		
-		if(minWinNum * CAPACITY >= fcSize)
+		long start = (long) minWinNum * CAPACITY;
+		if(start >= fcSize)
 			return -1;
-		int end = maxWinNum * CAPACITY - 1;
-		if(end >= fcSize)
-			end = (fcSize - 1);
-			
-		byte[] indexs = getGA4GHBytes(minWinNum * CAPACITY, end);
-
-		long position = 0;
+		long end = (long) maxWinNum * CAPACITY;
+		if(end > fcSize)
+			end = fcSize;
 
-		for (int j = 0; j < indexs.length; j += CAPACITY) {
-			for (int i = 0; i < CAPACITY; i++) {
-				position <<= CAPACITY;
-				position |= (indexs[j + i] & 0xff);
-			}
+		for (long index = start; index + CAPACITY <= end; index += CAPACITY) {
+			long position = getLong(index);
 			if (position != 0)
 				return position;
-
-			position = 0;
 		}
 
 		return -1;
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.structure.dbsnp;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFConstants;
+import org.bgi.flexlab.gaea.data.structure.memoryshare.BioMemoryShare;
+import org.bgi.flexlab.gaea.util.ChromosomeUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * memory mapped binary known sites built by VcfIndex.
+ * 
+ * layout : index entries (start, end, data offset) of all contigs, record
+ * data (id and alleles), footer of contigs, data offset, footer offset and
+ * magic number. Entries of a contig are sorted by start so a range query is
+ * a binary search followed by a scan.
+ */
+public class KnownSitesShare extends BioMemoryShare {
+	public final static String SITES_SUFFIX = ".sites.bin";
+	public final static int MAGIC = 0x4b534954;
+	final static int INDEX_ENTRY_SIZE = Integer.BYTES * 2 + Long.BYTES;
+	private final static int TRAILER_SIZE = Long.BYTES * 2 + Integer.BYTES;
+	private final static String SOURCE = "KnownSites";
+
+	private Map<String, Contig> contigs = new HashMap<String, Contig>();
+	private long dataOffset;
+
+	private static class Contig {
+		private String name;
+		private long index;
+		private int count;
+	}
+
+	public KnownSitesShare(String path) {
+		super(1);
+		loadChromosome(path);
+		readFooter();
+	}
+
+	public static String getSitesPath(String vcf) {
+		if (vcf.startsWith("file://"))
+			vcf = vcf.substring("file://".length());
+		return vcf + SITES_SUFFIX;
+	}
+
+	/**
+	 * load binary known sites of vcf, return null if it isn't built
+	 */
+	public static KnownSitesShare load(String vcf) {
+		if (vcf == null)
+			return null;
+		String path = getSitesPath(vcf);
+		if (!new File(path).exists())
+			return null;
+		return new KnownSitesShare(path);
+	}
+
+	private void readFooter() {
+		long trailer = fcSize - TRAILER_SIZE;
+		if (trailer < 0 || getInt(trailer + Long.BYTES * 2) != MAGIC)
+			throw new RuntimeException("not a binary known sites file!");
+		dataOffset = getLong(trailer);
+		long offset = getLong(trailer + Long.BYTES);
+
+		int size = getInt(offset);
+		offset += Integer.BYTES;
+		for (int i = 0; i < size; i++) {
+			Contig contig = new Contig();
+			contig.name = readString(offset);
+			offset += Integer.BYTES + getInt(offset);
+			contig.index = getLong(offset);
+			offset += Long.BYTES;
+			contig.count = getInt(offset);
+			offset += Integer.BYTES;
+			contigs.put(ChromosomeUtils.formatChrName(contig.name), contig);
+		}
+	}
+
+	private String readString(long offset) {
+		byte[] bytes = new byte[getInt(offset)];
+		getBytes(offset + Integer.BYTES, bytes, 0, bytes.length);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int getStart(Contig contig, int i) {
+		return getInt(contig.index + (long) i * INDEX_ENTRY_SIZE);
+	}
+
+	/**
+	 * index of first site start is not less than position
+	 */
+	private int lowerBound(Contig contig, int position) {
+		int low = 0, high = contig.count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (getStart(contig, mid) < position)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private VariantContext decode(Contig contig, int i) {
+		long entry = contig.index + (long) i * INDEX_ENTRY_SIZE;
+		int start = getInt(entry);
+		int end = getInt(entry + Integer.BYTES);
+		long offset = dataOffset + getLong(entry + Integer.BYTES * 2);
+
+		String id = readString(offset);
+		offset += Integer.BYTES + getInt(offset);
+		int alleleNumber = getShort(offset);
+		offset += Short.BYTES;
+
+		ArrayList<Allele> alleles = new ArrayList<Allele>(alleleNumber);
+		for (int j = 0; j < alleleNumber; j++) {
+			alleles.add(Allele.create(readString(offset), j == 0));
+			offset += Integer.BYTES + getInt(offset);
+		}
+
+		VariantContextBuilder builder = new VariantContextBuilder(SOURCE, contig.name, start, end, alleles).id(id);
+		if (end != start + alleles.get(0).length() - 1)
+			builder.attribute(VCFConstants.END_KEY, end);
+		return builder.make();
+	}
+
+	/**
+	 * sites of chromosome with start in [start, end]
+	 */
+	public ArrayList<VariantContext> query(String chrName, int start, int end) {
+		ArrayList<VariantContext> contexts = new ArrayList<VariantContext>();
+		Contig contig = contigs.get(ChromosomeUtils.formatChrName(chrName));
+		if (contig == null)
+			return contexts;
+
+		for (int i = lowerBound(contig, start); i < contig.count; i++) {
+			if (getStart(contig, i) > end)
+				break;
+			contexts.add(decode(contig, i));
+		}
+		return contexts;
+	}
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.structure.dbsnp;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.bgi.flexlab.gaea.util.ChromosomeUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * write known sites of a sorted vcf into binary store read by
+ * KnownSitesShare. Index entries and record data are streamed into two
+ * temporary files, and merged with a footer of contigs when closed.
+ */
+public class KnownSitesWriter {
+	private String output;
+	private File indexFile;
+	private File dataFile;
+	private DataOutputStream index;
+	private DataOutputStream data;
+	private long dataSize = 0;
+	private long indexSize = 0;
+
+	private ArrayList<String> contigs = new ArrayList<String>();
+	private ArrayList<Long> contigIndexs = new ArrayList<Long>();
+	private ArrayList<Integer> contigCounts = new ArrayList<Integer>();
+	private HashSet<String> finishedContigs = new HashSet<String>();
+	private String lastContig = null;
+	private int count = 0;
+
+	public KnownSitesWriter(String output) throws IOException {
+		this.output = output;
+		indexFile = new File(output + ".index.tmp");
+		dataFile = new File(output + ".data.tmp");
+		index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+		try {
+			data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)));
+		} catch (IOException e) {
+			index.close();
+			indexFile.delete();
+			throw e;
+		}
+	}
+
+	public void add(VariantContext context) throws IOException {
+		if (lastContig == null || !lastContig.equals(context.getContig())) {
+			finishContig();
+			String chrName = ChromosomeUtils.formatChrName(context.getContig());
+			if (!finishedContigs.add(chrName))
+				throw new RuntimeException("known sites vcf is not sorted by contig : " + context.getContig());
+			lastContig = context.getContig();
+			contigs.add(lastContig);
+			contigIndexs.add(indexSize);
+		}
+
+		index.writeInt(context.getStart());
+		index.writeInt(context.getEnd());
+		index.writeLong(dataSize);
+		indexSize += KnownSitesShare.INDEX_ENTRY_SIZE;
+		count++;
+
+		dataSize += writeString(data, context.getID());
+		data.writeShort(context.getNAlleles());
+		dataSize += Short.BYTES;
+		for (Allele allele : context.getAlleles())
+			dataSize += writeString(data, allele.getDisplayString());
+	}
+
+	private void finishContig() {
+		if (lastContig != null)
+			contigCounts.add(count);
+		count = 0;
+	}
+
+	private static int writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		return Integer.BYTES + bytes.length;
+	}
+
+	private static void copy(File file, OutputStream out) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			byte[] buffer = new byte[1 << 16];
+			int length;
+			while ((length = in.read(buffer)) > 0)
+				out.write(buffer, 0, length);
+		} finally {
+			in.close();
+		}
+	}
+
+	private void closeTemporary() throws IOException {
+		try {
+			index.close();
+		} finally {
+			data.close();
+		}
+	}
+
+	private void deleteTemporary() {
+		indexFile.delete();
+		dataFile.delete();
+	}
+
+	public void close() throws IOException {
+		finishContig();
+		boolean written = false;
+		try {
+			closeTemporary();
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)));
+			try {
+				copy(indexFile, out);
+				copy(dataFile, out);
+
+				out.writeInt(contigs.size());
+				for (int i = 0; i < contigs.size(); i++) {
+					writeString(out, contigs.get(i));
+					out.writeLong(contigIndexs.get(i));
+					out.writeInt(contigCounts.get(i));
+				}
+				out.writeLong(indexSize);
+				out.writeLong(indexSize + dataSize);
+				out.writeInt(KnownSitesShare.MAGIC);
+			} finally {
+				out.close();
+			}
+			written = true;
+		} finally {
+			deleteTemporary();
+			if (!written)
+				new File(output).delete();
+		}
+	}
+
+	/**
+	 * close and delete the temporary files without writing the output, so a
+	 * failed build doesn't leave a partial store to be loaded
+	 */
+	public void abort() {
+		try {
+			closeTemporary();
+		} catch (IOException e) {
+			// the files are deleted anyway
+		} finally {
+			deleteTemporary();
+		}
+	}
+}
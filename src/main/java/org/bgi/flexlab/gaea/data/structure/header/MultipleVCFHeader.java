@@ -25,8 +25,6 @@ import org.apache.hadoop.mapreduce.Job;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +36,11 @@ public class MultipleVCFHeader extends  GaeaVCFHeader implements Serializable{
 	 */
 	private static final long serialVersionUID = -5677604795673775528L;
 
+	/**
+	 * distributed cache link of the header dictionary
+	 */
+	public static final String CACHE_LINK = "VcfHeaderObj";
+	
 	/**
 	 * fileName 2 ID
 	 */
@@ -49,9 +52,34 @@ public class MultipleVCFHeader extends  GaeaVCFHeader implements Serializable{
 	private Map<Integer, SingleVCFHeader> ID2SingleVcfHeader = new ConcurrentHashMap<Integer, SingleVCFHeader>();
 	
 	/**
-	 * global ID
+	 * headers of all inputs, indexed by ID
+	 */
+	private transient VCFHeaderDictionary dictionary = null;
+	
+	/**
+	 * input files collected by mergeHeader
+	 */
+	private transient List<Path> inputs = new ArrayList<Path>();
+	
+	/**
+	 * load header dictionary written by mergeHeader, mapped from the
+	 * distributed cache if the job shipped it
+	 * @param conf
+	 * @return
 	 */
-	private int id = 0;
+	public static MultipleVCFHeader load(Configuration conf) {
+		MultipleVCFHeader header = new MultipleVCFHeader();
+		header.dictionary = VCFHeaderDictionary.load(conf.get(VCF_HEADER_PROPERTY), CACHE_LINK, conf);
+		return header;
+	}
+	
+	private SingleVCFHeader getSingleVcfHeader(int id) {
+		return ID2SingleVcfHeader.computeIfAbsent(id, i -> {
+			SingleVCFHeader singleVcfHeader = new SingleVCFHeader();
+			singleVcfHeader.parseHeader(dictionary.getHeader(i));
+			return singleVcfHeader;
+		});
+	}
 	
 	/**
 	 * get vcf header
@@ -59,7 +87,7 @@ public class MultipleVCFHeader extends  GaeaVCFHeader implements Serializable{
 	 * @return header String
 	 */
 	public VCFHeader getVcfHeader(int id) {
-		return ID2SingleVcfHeader.get(id).getHeader();
+		return dictionary.getHeader(id);
 	}
 	
 	/**
@@ -69,7 +97,7 @@ public class MultipleVCFHeader extends  GaeaVCFHeader implements Serializable{
 	 */
 	public ArrayList<String> getVcfHeaderLines(int id) {
 		ArrayList<String> headerLines = new ArrayList<String>();
-		for(String line : ID2SingleVcfHeader.get(id).getHeaderInfoStringLines(null)){
+		for(String line : getSingleVcfHeader(id).getHeaderInfoStringLines(null)){
 			headerLines.add(line);
 		}
 		return headerLines;
@@ -81,7 +109,7 @@ public class MultipleVCFHeader extends  GaeaVCFHeader implements Serializable{
 	 * @return
 	 */
 	public int getSampleNum(int id) {
-		return ID2SingleVcfHeader.get(id).getSampleNames().size();
+		return getSampleNames(id).size();
 	}
 	
 	/**
@@ -90,7 +118,7 @@ public class MultipleVCFHeader extends  GaeaVCFHeader implements Serializable{
 	 * @return
 	 */
 	public List<String> getSampleNames(int id) {
-		return ID2SingleVcfHeader.get(id).getSampleNames();
+		return dictionary.getSampleNames(id);
 	}
 	
 	/**
@@ -99,39 +127,14 @@ public class MultipleVCFHeader extends  GaeaVCFHeader implements Serializable{
 	 * @return
 	 */
 	public int getId(String filePathName) {
-		//filePathName = formatFilePath(filePathName);
-		//System.err.println("getID:" + filePathName);
-		if(fileName2ID.containsKey(filePathName)) {
-			return fileName2ID.get(filePathName);
-		} else {
+		int id = dictionary.indexOf(filePathName);
+		if(id < 0)
 			throw new RuntimeException("this file is not in inputs!");
-		}
+		return id;
 	}
 	
 	public String getFile(int id) {
-		for(String file : fileName2ID.keySet()) {
-			if(id == fileName2ID.get(file)){
-				return file;
-			}
-		}
-		throw new RuntimeException("no such id in VCFHeader!");
-	}
-	
-	/**
-	 * read single vcf file
-	 * @param vcf
-	 * @param conf
-	 * @throws IOException
-	 */
-	private void readVcfHeader(Path vcf, Configuration conf) throws IOException {
-		SingleVCFHeader singleVcfHeader = new SingleVCFHeader();
-		singleVcfHeader.parseHeader(vcf, null, conf);
-		ID2SingleVcfHeader.put(id, singleVcfHeader);
-		
-		//String filePathName = formatFilePath(vcf.toString());
-		fileName2ID.put(vcf.toString(), id);
-		
-		id++;
+		return dictionary.getPath(id);
 	}
 	
 	@SuppressWarnings("unused")
@@ -146,31 +149,41 @@ public class MultipleVCFHeader extends  GaeaVCFHeader implements Serializable{
 		return filePathName.trim();
 	}
 	
+	private void collectInputs(Path inputPath, FileSystem fs) throws IOException {
+		if (fs.isFile(inputPath)) {
+			if(validPath(inputPath, fs)){
+				inputs.add(inputPath);
+			}
+		}else {
+			FileStatus stats[]=fs.listStatus(inputPath);
+			
+			for (FileStatus file : stats) {
+				collectInputs(file.getPath(), fs);
+			}
+		}
+	}
+	
 	public void mergeHeader(Path inputPath, String output, Job job, boolean distributeCacheHeader) {
 		Configuration conf = job.getConfiguration();
 		try {
 			FileSystem fs = inputPath.getFileSystem(conf);
-			fs = inputPath.getFileSystem(conf);
 			if (!fs.exists(inputPath)) {
 				System.out.println("Input File Path is not exist! Please check input var.");
 				System.exit(-1);
 			}
-			if (fs.isFile(inputPath)) {
-				if(validPath(inputPath, fs)){
-					readVcfHeader(inputPath, conf);	
-				}	
-			}else {		
-				FileStatus stats[]=fs.listStatus(inputPath);
-				
-				for (FileStatus file : stats) {
-					Path filePath = file.getPath();
-					mergeHeader(filePath, output, job, distributeCacheHeader);
-				}
-			}
-			fs.close();
+			inputs.clear();
+			collectInputs(inputPath, fs);
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
+		
+		dictionary = VCFHeaderDictionary.build(inputs, conf);
+		fileName2ID.clear();
+		ID2SingleVcfHeader.clear();
+		for(int id = 0; id < inputs.size(); id++) {
+			fileName2ID.put(inputs.get(id).toString(), id);
+		}
+		
 		if(distributeCacheHeader){
 			distributeCacheVcfHeader(output, job, conf);
 		} else {
@@ -182,26 +195,32 @@ public class MultipleVCFHeader extends  GaeaVCFHeader implements Serializable{
 		return (!inputPath.getName().startsWith("_")) && (fs.getFileStatus(inputPath).getLen() != 0);
 	}
 	
+	@Override
+	public void writeHeaderToHDFS(String outputPath, Configuration conf){
+		dictionary.write(new Path(conf.get(VCF_HEADER_PROPERTY)), conf);
+	}
+	
 	public boolean distributeCacheVcfHeader(String outputPath, Job job, Configuration conf) {
 		writeHeaderToHDFS(outputPath, conf);
-		try {
-			job.addCacheFile(new URI(conf.get(GaeaVCFHeader.VCF_HEADER_PROPERTY) + "#VcfHeaderObj"));
-		} catch (URISyntaxException e) {
-			e.printStackTrace();
-			return false;
-		}
+		VCFHeaderDictionary.distributeCache(new Path(conf.get(VCF_HEADER_PROPERTY)), CACHE_LINK, job);
 		return true;
 	}
 	
 	public int getFileNum() {
-		return fileName2ID.size();
+		return dictionary.size();
 	}
 
 	public Map<String, Integer> getFileName2ID() {
+		if(fileName2ID.isEmpty()) {
+			for(int id = 0; id < dictionary.size(); id++)
+				fileName2ID.put(dictionary.getPath(id), id);
+		}
 		return fileName2ID;
 	}
 
 	public Map<Integer, SingleVCFHeader> getID2SingleVcfHeader() {
+		for(int id = 0; id < dictionary.size(); id++)
+			getSingleVcfHeader(id);
 		return ID2SingleVcfHeader;
 	}
 	
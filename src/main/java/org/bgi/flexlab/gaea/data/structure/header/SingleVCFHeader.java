@@ -71,6 +71,17 @@ public class SingleVCFHeader extends GaeaVCFHeader implements Serializable{
 		}
 	}
 	
+	/**
+	 * take an already parsed header
+	 * @param header
+	 */
+	public void parseHeader(VCFHeader header) {
+		vcfHeader = header;
+		sampleNames.clear();
+		sampleNames.addAll(vcfHeader.getGenotypeSamples());
+		buildHeaderInfo();
+	}
+	
 	public void readHeaderFrom(Path path, FileSystem fs) throws IOException {
 		SeekableStream i = WrapSeekable.openPath(fs, path);
 		readHeaderFrom(i);
@@ -0,0 +1,402 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.structure.header;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.tribble.FeatureCodecHeader;
+import htsjdk.tribble.readers.AsciiLineReader;
+import htsjdk.tribble.readers.AsciiLineReaderIterator;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.seqdoop.hadoop_bam.util.VCFHeaderReader;
+import org.seqdoop.hadoop_bam.util.WrapSeekable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * headers of many VCF inputs in one binary file.
+ * 
+ * meta lines shared by the inputs are stored once, every input keeps its path,
+ * the indexes of its meta lines and its samples, and the inputs are also
+ * indexed by their first sample name. tasks map the file from the distributed
+ * cache and only decode the inputs they use.
+ */
+public class VCFHeaderDictionary {
+	private final static int MAGIC = 0x56484431;
+
+	public final static String THREADS_PROPERTY = "vcf.header.dictionary.threads";
+
+	private final static int DEFAULT_THREADS = 16;
+
+	private final static String COLUMN_LINE = VCFHeader.HEADER_INDICATOR + "CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO";
+
+	private final ByteBuffer buffer;
+
+	/**
+	 * meta lines of all inputs, with leading ##
+	 */
+	private final String[] lines;
+
+	private final int inputs;
+
+	/**
+	 * position of the input offsets and of the first sample index
+	 */
+	private final int offsetTable;
+	private final int sampleTable;
+
+	private final VCFHeader[] headers;
+
+	private Map<String, Integer> pathIndex = null;
+
+	private VCFHeaderDictionary(ByteBuffer buffer) {
+		this.buffer = buffer;
+		if (buffer.getInt(0) != MAGIC)
+			throw new RuntimeException("not a vcf header dictionary!");
+
+		int position = Integer.BYTES;
+		lines = new String[buffer.getInt(position)];
+		position += Integer.BYTES;
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = getString(position);
+			position += Integer.BYTES + buffer.getInt(position);
+		}
+
+		inputs = buffer.getInt(position);
+		offsetTable = position + Integer.BYTES;
+		sampleTable = offsetTable + inputs * Integer.BYTES;
+		headers = new VCFHeader[inputs];
+	}
+
+	private String getString(int position) {
+		byte[] bytes = new byte[buffer.getInt(position)];
+		ByteBuffer view = buffer.duplicate();
+		view.position(position + Integer.BYTES);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int getOffset(int index) {
+		if (index < 0 || index >= inputs)
+			throw new RuntimeException("no such id in vcf header dictionary : " + index);
+		return buffer.getInt(offsetTable + index * Integer.BYTES);
+	}
+
+	public int size() {
+		return inputs;
+	}
+
+	public String getPath(int index) {
+		return getString(getOffset(index));
+	}
+
+	public List<String> getSampleNames(int index) {
+		int position = getOffset(index);
+		position += Integer.BYTES + buffer.getInt(position);
+		position += Integer.BYTES * (1 + buffer.getInt(position));
+
+		int sampleNumber = buffer.getInt(position);
+		position += Integer.BYTES;
+		List<String> samples = new ArrayList<String>(sampleNumber);
+		for (int i = 0; i < sampleNumber; i++) {
+			String sample = getString(position);
+			position += Integer.BYTES + buffer.getInt(position);
+			samples.add(sample);
+		}
+		return samples;
+	}
+
+	private String getFirstSample(int index) {
+		int position = getOffset(index);
+		position += Integer.BYTES + buffer.getInt(position);
+		position += Integer.BYTES * (1 + buffer.getInt(position));
+		if (buffer.getInt(position) == 0)
+			return null;
+		return getString(position + Integer.BYTES);
+	}
+
+	/**
+	 * header of input index, parsed on first use
+	 */
+	public synchronized VCFHeader getHeader(int index) {
+		if (headers[index] != null)
+			return headers[index];
+
+		int position = getOffset(index);
+		position += Integer.BYTES + buffer.getInt(position);
+		int lineNumber = buffer.getInt(position);
+		position += Integer.BYTES;
+
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < lineNumber; i++) {
+			text.append(lines[buffer.getInt(position)]).append("\n");
+			position += Integer.BYTES;
+		}
+		text.append(COLUMN_LINE);
+		List<String> samples = getSampleNames(index);
+		if (!samples.isEmpty()) {
+			text.append("\tFORMAT");
+			for (String sample : samples)
+				text.append("\t").append(sample);
+		}
+		text.append("\n");
+
+		AsciiLineReaderIterator iterator = new AsciiLineReaderIterator(
+				new AsciiLineReader(new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8))));
+		headers[index] = (VCFHeader) ((FeatureCodecHeader) new VCFCodec().readHeader(iterator)).getHeaderValue();
+		return headers[index];
+	}
+
+	/**
+	 * input index of a path, -1 if the path is not an input
+	 */
+	public synchronized int indexOf(String path) {
+		if (pathIndex == null) {
+			pathIndex = new HashMap<String, Integer>();
+			for (int i = 0; i < inputs; i++)
+				pathIndex.put(getPath(i), i);
+		}
+		Integer index = pathIndex.get(path);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * index of the first input whose first sample is sample, -1 if none
+	 */
+	public int indexOfSample(String sample) {
+		int low = 0, high = inputs - 1, found = -1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int index = buffer.getInt(sampleTable + middle * Integer.BYTES);
+			String name = getFirstSample(index);
+			int compare = name == null ? -1 : name.compareTo(sample);
+			if (compare < 0) {
+				low = middle + 1;
+			} else {
+				if (compare == 0)
+					found = index;
+				high = middle - 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * read the headers of inputs on a thread pool, the order of inputs is kept
+	 */
+	public static VCFHeaderDictionary build(List<Path> paths, Configuration conf) {
+		int threads = Math.max(1, Math.min(conf.getInt(THREADS_PROPERTY, DEFAULT_THREADS), paths.size()));
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<VCFHeader>> futures = new ArrayList<Future<VCFHeader>>(paths.size());
+		for (Path path : paths) {
+			futures.add(pool.submit(() -> {
+				SeekableStream in = WrapSeekable.openPath(path.getFileSystem(conf), path);
+				VCFHeader header = VCFHeaderReader.readHeaderFrom(in);
+				in.close();
+				return header;
+			}));
+		}
+		pool.shutdown();
+
+		VCFHeader[] headers = new VCFHeader[paths.size()];
+		try {
+			for (int i = 0; i < headers.length; i++) {
+				headers[i] = futures.get(i).get();
+				if (headers[i] == null)
+					throw new RuntimeException("No VCF header found in " + paths.get(i));
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			pool.shutdownNow();
+			throw new RuntimeException(e.toString());
+		}
+
+		VCFHeaderDictionary dictionary = new VCFHeaderDictionary(ByteBuffer.wrap(encode(paths, headers)));
+		System.arraycopy(headers, 0, dictionary.headers, 0, headers.length);
+		return dictionary;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] encode(List<Path> paths, VCFHeader[] headers) {
+		Map<String, Integer> lineIndex = new LinkedHashMap<String, Integer>();
+		List<int[]> headerLines = new ArrayList<int[]>(headers.length);
+		String defaultFormat = "##" + VCFHeaderVersion.VCF4_2.getFormatString() + "="
+				+ VCFHeaderVersion.VCF4_2.getVersionString();
+
+		for (VCFHeader header : headers) {
+			// fileformat line has to be the first one
+			List<String> texts = new ArrayList<String>();
+			String format = defaultFormat;
+			for (VCFHeaderLine line : header.getMetaDataInInputOrder()) {
+				if (VCFHeaderVersion.isFormatString(line.getKey()))
+					format = "##" + line.toString();
+				else
+					texts.add("##" + line.toString());
+			}
+			texts.add(0, format);
+
+			int[] indexes = new int[texts.size()];
+			for (int i = 0; i < indexes.length; i++) {
+				Integer index = lineIndex.get(texts.get(i));
+				if (index == null) {
+					index = lineIndex.size();
+					lineIndex.put(texts.get(i), index);
+				}
+				indexes[i] = index;
+			}
+			headerLines.add(indexes);
+		}
+
+		Integer[] sampleOrder = new Integer[headers.length];
+		for (int i = 0; i < sampleOrder.length; i++)
+			sampleOrder[i] = i;
+		Arrays.sort(sampleOrder, (a, b) -> {
+			List<String> sa = headers[a].getGenotypeSamples(), sb = headers[b].getGenotypeSamples();
+			int compare = Boolean.compare(!sa.isEmpty(), !sb.isEmpty());
+			if (compare == 0 && !sa.isEmpty())
+				compare = sa.get(0).compareTo(sb.get(0));
+			return compare != 0 ? compare : Integer.compare(a, b);
+		});
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeInt(lineIndex.size());
+			for (String line : lineIndex.keySet())
+				writeString(out, line);
+
+			ByteArrayOutputStream records = new ByteArrayOutputStream();
+			DataOutputStream recordOut = new DataOutputStream(records);
+			int[] offsets = new int[headers.length];
+			int recordStart = out.size() + Integer.BYTES * (1 + 2 * headers.length);
+			for (int i = 0; i < headers.length; i++) {
+				offsets[i] = recordStart + recordOut.size();
+				writeString(recordOut, paths.get(i).toString());
+				recordOut.writeInt(headerLines.get(i).length);
+				for (int index : headerLines.get(i))
+					recordOut.writeInt(index);
+				List<String> samples = headers[i].getGenotypeSamples();
+				recordOut.writeInt(samples.size());
+				for (String sample : samples)
+					writeString(recordOut, sample);
+			}
+
+			out.writeInt(headers.length);
+			for (int offset : offsets)
+				out.writeInt(offset);
+			for (int index : sampleOrder)
+				out.writeInt(index);
+			records.writeTo(out);
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException(e.toString());
+		}
+	}
+
+	public void write(Path path, Configuration conf) {
+		try {
+			FileSystem fs = path.getFileSystem(conf);
+			byte[] bytes = new byte[buffer.limit()];
+			buffer.duplicate().get(bytes);
+			FSDataOutputStream out = fs.create(path);
+			out.write(bytes);
+			out.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e.toString());
+		}
+	}
+
+	/**
+	 * ship the dictionary to every task as link
+	 */
+	public static void distributeCache(Path path, String link, Job job) {
+		try {
+			job.addCacheFile(new URI(path.toString() + "#" + link));
+		} catch (URISyntaxException e) {
+			throw new RuntimeException(e.toString());
+		}
+	}
+
+	/**
+	 * map the distributed cache link when the task has it, otherwise read the
+	 * dictionary file from path
+	 */
+	public static VCFHeaderDictionary load(String path, String link, Configuration conf) {
+		try {
+			if (link != null && new File(link).isFile()) {
+				RandomAccessFile raf = new RandomAccessFile(link, "r");
+				FileChannel fc = raf.getChannel();
+				ByteBuffer buffer = fc.map(MapMode.READ_ONLY, 0, fc.size());
+				raf.close();
+				return new VCFHeaderDictionary(buffer);
+			}
+
+			Path dictionary = new Path(path);
+			FileSystem fs = dictionary.getFileSystem(conf);
+			byte[] bytes = new byte[(int) fs.getFileStatus(dictionary).getLen()];
+			FSDataInputStream in = fs.open(dictionary);
+			in.readFully(0, bytes);
+			in.close();
+			return new VCFHeaderDictionary(ByteBuffer.wrap(bytes));
+		} catch (IOException e) {
+			throw new RuntimeException(e.toString());
+		}
+	}
+
+	public List<VCFHeader> getHeaders() {
+		List<VCFHeader> list = new ArrayList<VCFHeader>(inputs);
+		for (int i = 0; i < inputs; i++)
+			list.add(getHeader(i));
+		return Collections.unmodifiableList(list);
+	}
+}
@@ -547,31 +547,13 @@ public class GenomeLocation implements Comparable<GenomeLocation>, Comparator<Ge
 			intervals.add(new GenomeLocation(chr, index, start, stop));
 			return ;
 		}
-		int length = stop - start;
-
-		BitSet bitSet = new BitSet(length);
-		for (int i = start; i < stop; i++) {
+		// jump from one region boundary to the next instead of testing every position
+		int i = start;
+		while (i < stop) {
+			int next = (int) Math.min(region.nextRegionBoundary(chr, i), stop);
 			if (region.isPositionInRegion(chr, i))
-				bitSet.set(i - start);
+				intervals.add(new GenomeLocation(chr, index, i, next));
+			i = next;
 		}
-
-		int intervalStart = -1;
-
-		for (int i = 0; i < length; i++) {
-			if (bitSet.get(i)) {
-				if (intervalStart == -1) {
-					intervalStart = i + start;
-				}
-			} else {
-				if (intervalStart != -1) {
-					intervals.add(new GenomeLocation(chr, index, intervalStart, i + start));
-					intervalStart = -1;
-				}
-			}
-		}
-		bitSet = null;
-
-		if (intervalStart != -1)
-			intervals.add(new GenomeLocation(chr, index, intervalStart, stop));
 	} 
 }
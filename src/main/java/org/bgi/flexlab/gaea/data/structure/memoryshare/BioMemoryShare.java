@@ -21,6 +21,7 @@ import org.bgi.flexlab.gaea.data.exception.OutOfBoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
@@ -28,11 +29,19 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 
 public class BioMemoryShare {
+	/**
+	 * file is mapped in segments of 1 GB, so segment and offset of a long
+	 * index are got by shift and mask
+	 */
+	protected final static int SEGMENT_SHIFT = 30;
+	protected final static long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+	protected final static long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
 	protected int capacity = Byte.SIZE / 4;
 	protected String chrName;
 	protected int length;
 	protected MappedByteBuffer[] byteBuffer = null;
-	protected int fcSize = 0;
+	protected long fcSize = 0;
 
 	protected BioMemoryShare(int capacity) {
 		this.capacity = capacity;
@@ -47,22 +56,23 @@ public class BioMemoryShare {
 	protected void loadInformation(String path) throws IOException {
 		RandomAccessFile raf = new RandomAccessFile(path, "r");
 		FileChannel fc = raf.getChannel();
-		fcSize = (int) (fc.size() & 0xffffffff);
-		int blocks = (int) ((fcSize / Integer.MAX_VALUE) + 1);
-		byteBuffer = new MappedByteBuffer[blocks];
-		int start = 0;
-		long remain = 0;
-		int size = 0;
+		fcSize = fc.size();
+		int blocks = (int) ((fcSize + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+		byteBuffer = new MappedByteBuffer[Math.max(blocks, 1)];
+		if (blocks == 0)
+			byteBuffer[0] = fc.map(MapMode.READ_ONLY, 0, 0);
 		for (int i = 0; i < blocks; i++) {
-			start = Integer.MAX_VALUE * i;
-			remain = (long) (fc.size() - start);
-			size = (int) ((remain > Integer.MAX_VALUE) ? Integer.MAX_VALUE : remain);
-			MappedByteBuffer mapedBB = fc.map(MapMode.READ_ONLY, start, size);
-			byteBuffer[i] = mapedBB;
+			long start = (long) i << SEGMENT_SHIFT;
+			long size = Math.min(SEGMENT_SIZE, fcSize - start);
+			byteBuffer[i] = fc.map(MapMode.READ_ONLY, start, size);
 		}
 		raf.close();
 	}
 
+	public long getFileSize() {
+		return fcSize;
+	}
+
 	public void loadChromosome(String path) {
 		try {
 			loadInformation(path);
@@ -87,12 +97,96 @@ public class BioMemoryShare {
 		return length;
 	}
 
+	/**
+	 * absolute read, buffer position is never changed so it is safe for
+	 * multiple threads
+	 */
+	public byte getByte(long index) {
+		return byteBuffer[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+	}
+
+	/**
+	 * copy len bytes start from absolute index into dst, the range may cross
+	 * segments
+	 */
+	public void getBytes(long index, byte[] dst, int offset, int len) {
+		while (len > 0) {
+			int segment = (int) (index >>> SEGMENT_SHIFT);
+			int position = (int) (index & SEGMENT_MASK);
+			int size = Math.min(len, byteBuffer[segment].limit() - position);
+			if (size <= 0)
+				throw new OutOfBoundException(fcSize, index);
+
+			ByteBuffer buffer = byteBuffer[segment].duplicate();
+			buffer.position(position);
+			buffer.get(dst, offset, size);
+
+			index += size;
+			offset += size;
+			len -= size;
+		}
+	}
+
+	/**
+	 * read only view of [index, index + len), copied only when the range
+	 * crosses segments
+	 */
+	public ByteBuffer slice(long index, int len) {
+		int segment = (int) (index >>> SEGMENT_SHIFT);
+		int position = (int) (index & SEGMENT_MASK);
+		if (position + len <= byteBuffer[segment].limit()) {
+			ByteBuffer buffer = byteBuffer[segment].duplicate();
+			buffer.position(position);
+			buffer.limit(position + len);
+			return buffer.slice().asReadOnlyBuffer();
+		}
+
+		byte[] bytes = new byte[len];
+		getBytes(index, bytes, 0, len);
+		return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+	}
+
+	public short getShort(long index) {
+		int position = (int) (index & SEGMENT_MASK);
+		MappedByteBuffer buffer = byteBuffer[(int) (index >>> SEGMENT_SHIFT)];
+		if (position + Short.BYTES <= buffer.limit())
+			return buffer.getShort(position);
+
+		return (short) (((getByte(index) & 0xff) << Byte.SIZE) | (getByte(index + 1) & 0xff));
+	}
+
+	public int getInt(long index) {
+		int position = (int) (index & SEGMENT_MASK);
+		MappedByteBuffer buffer = byteBuffer[(int) (index >>> SEGMENT_SHIFT)];
+		if (position + Integer.BYTES <= buffer.limit())
+			return buffer.getInt(position);
+
+		int value = 0;
+		for (int i = 0; i < Integer.BYTES; i++)
+			value = (value << Byte.SIZE) | (getByte(index + i) & 0xff);
+		return value;
+	}
+
+	public long getLong(long index) {
+		int position = (int) (index & SEGMENT_MASK);
+		MappedByteBuffer buffer = byteBuffer[(int) (index >>> SEGMENT_SHIFT)];
+		if (position + Long.BYTES <= buffer.limit())
+			return buffer.getLong(position);
+
+		long value = 0;
+		for (int i = 0; i < Long.BYTES; i++)
+			value = (value << Byte.SIZE) | (getByte(index + i) & 0xff);
+		return value;
+	}
+
+	public float getFloat(long index) {
+		return Float.intBitsToFloat(getInt(index));
+	}
+
 	public byte[] getGA4GHBytes(int start, int end) {
 		if (start >= length)
 			throw new OutOfBoundException(length, start);
 
-		byte[] bases;
-
 		int posi = start / capacity;
 		int pose;
 		if (end >= length) {
@@ -100,10 +194,8 @@ public class BioMemoryShare {
 		} else {
 			pose = end / capacity;
 		}
-		bases = new byte[pose - posi + 1];
-		byteBuffer[0].position(posi);
-		byteBuffer[0].get(bases, 0, pose - posi + 1);
-		byteBuffer[0].position(0);
+		byte[] bases = new byte[pose - posi + 1];
+		getBytes(posi, bases, 0, bases.length);
 
 		return bases;
 	}
@@ -16,9 +16,12 @@
  *******************************************************************************/
 package org.bgi.flexlab.gaea.data.structure.reference;
 
+import org.bgi.flexlab.gaea.data.exception.OutOfBoundException;
 import org.bgi.flexlab.gaea.data.structure.memoryshare.BioMemoryShare;
 import org.bgi.flexlab.gaea.util.SystemConfiguration;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * 染色体信息共享内存
  * 
@@ -26,6 +29,11 @@ import org.bgi.flexlab.gaea.util.SystemConfiguration;
  *
  */
 public class ChromosomeInformationShare extends BioMemoryShare {
+	private final static byte[] FASTA_BASES = new byte[16];
+	static {
+		for (int i = 0; i < FASTA_BASES.length; i++)
+			FASTA_BASES[i] = (byte) SystemConfiguration.getFastaAbb(i);
+	}
 
 	private int NonNbaselength = 0;
 
@@ -40,13 +48,48 @@ public class ChromosomeInformationShare extends BioMemoryShare {
 	 * @return base
 	 */
 	public byte getBinaryBase(int pos) {
-		byte curr = getGA4GHBytes(pos, pos)[0];
+		if (pos >= length)
+			throw new OutOfBoundException(length, pos);
+		byte curr = getByte(pos / capacity);
 
 		if ((pos & 0x1) == 0)
 			return (byte) (curr & 0x0f);
 		return (byte) ((curr >> 4) & 0x0f);
 	}
 
+	/**
+	 * decode 4 bit codes of [start, end] into dst
+	 * 
+	 * @return number of bases
+	 */
+	public int getBinaryBases(int start, int end, byte[] dst, int offset) {
+		if (start >= length)
+			throw new OutOfBoundException(length, start);
+		if (end >= length)
+			end = length - 1;
+
+		for (int i = start; i <= end; i++) {
+			byte curr = getByte(i / capacity);
+			if ((i & 0x1) == 0)
+				dst[offset++] = (byte) (curr & 0x0f);
+			else
+				dst[offset++] = (byte) ((curr >> 4) & 0x0f);
+		}
+		return end - start + 1;
+	}
+
+	/**
+	 * decode fasta bases of [start, end] into dst
+	 * 
+	 * @return number of bases
+	 */
+	public int getBases(int start, int end, byte[] dst, int offset) {
+		int size = getBinaryBases(start, end, dst, offset);
+		for (int i = offset; i < offset + size; i++)
+			dst[i] = FASTA_BASES[dst[i]];
+		return size;
+	}
+
 	/**
 	 * 获取碱基
 	 */
@@ -63,11 +106,21 @@ public class ChromosomeInformationShare extends BioMemoryShare {
 	}
 
 	public boolean[] isSNPs(int start, int end) {
+		if (start >= length)
+			throw new OutOfBoundException(length, start);
 		if(end >= length)
 			end = length - 1;
 		
-		byte[] bases = getGA4GHBytes(start, end);
-		return isSNPs(bases, start, end);
+		boolean[] snps = new boolean[end - start + 1];
+		for (int i = start; i <= end; i++) {
+			byte curr = getByte(i / capacity);
+			if ((i & 0x1) == 0)
+				snps[i - start] = ((curr >> 3) & 0x1) == 1;
+			else
+				snps[i - start] = ((curr >> 7) & 0x1) == 1;
+		}
+		
+		return snps;
 	}
 	
 	public boolean[] isSNPs(byte[] bases,int start,int end){
@@ -99,18 +152,15 @@ public class ChromosomeInformationShare extends BioMemoryShare {
 	 * @return String 序列
 	 */
 	public String getGA4GHBaseSequence(int start, int end) {
-		if(end >= length)
-			end = length -1;
-		
-		byte[] bases = getGA4GHBytes(start, end);
-		return getGA4GHBaseSequence(bases, start, end);
+		byte[] bases = getGA4GHBaseBytes(start, end);
+		return new String(bases, StandardCharsets.US_ASCII);
 	}
 	
 	public String getGA4GHBaseSequence(byte[] bases,int start,int end){
 		if(end >= length)
 			end = length-1;
 		
-		StringBuilder seq = new StringBuilder();
+		byte[] seq = new byte[end - start + 1];
 		
 		int deviation = (start & 0x1) == 1 ? 1 : 0;
 			
@@ -119,23 +169,30 @@ public class ChromosomeInformationShare extends BioMemoryShare {
 
 			try {
 				if ((i & 0x1) == 0)
-					seq.append(SystemConfiguration.getFastaAbb(bases[posi] & 0x0f));
+					seq[i - start] = FASTA_BASES[bases[posi] & 0x0f];
 				else
-					seq.append(SystemConfiguration.getFastaAbb((bases[posi] >> 4) & 0x0f));
+					seq[i - start] = FASTA_BASES[(bases[posi] >> 4) & 0x0f];
 			} catch(Exception e) {
 				throw  new RuntimeException(chrName+"\tstart-end:" + start + "-" + end + "\ti:" + i + "\tposi:" +posi+"\t"+bases.length);
 			}
 		}
 		
-		return seq.toString();
+		return new String(seq, StandardCharsets.US_ASCII);
 	}
 	
 	public byte[] getGA4GHBaseBytes(int start) {
-		return getGA4GHBaseSequence(start, start).getBytes();
+		return getGA4GHBaseBytes(start, start);
 	}
 
 	public byte[] getGA4GHBaseBytes(int start, int end) {
-		return getGA4GHBaseSequence(start, end).getBytes();
+		if (start >= length)
+			throw new OutOfBoundException(length, start);
+		if(end >= length)
+			end = length -1;
+		
+		byte[] bases = new byte[end - start + 1];
+		getBases(start, end, bases, 0);
+		return bases;
 	}
 
 	/**
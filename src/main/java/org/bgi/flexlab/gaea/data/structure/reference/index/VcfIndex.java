@@ -17,6 +17,8 @@
 package org.bgi.flexlab.gaea.data.structure.reference.index;
 
 import htsjdk.variant.variantcontext.VariantContext;
+import org.bgi.flexlab.gaea.data.structure.dbsnp.KnownSitesShare;
+import org.bgi.flexlab.gaea.data.structure.dbsnp.KnownSitesWriter;
 import org.bgi.flexlab.gaea.data.structure.reference.ChromosomeInformation;
 import org.bgi.flexlab.gaea.data.structure.vcf.AbstractVCFLoader.PositionalVariantContext;
 import org.bgi.flexlab.gaea.data.structure.vcf.VCFLocalLoader;
@@ -95,62 +97,81 @@ public class VcfIndex extends ReferenceIndex {
 			throw new RuntimeException(e1.toString());
 		}
 
-		int lastWinNum = -1;
-
-		while (reader.hasNext()) {
-			PositionalVariantContext posContext = reader.next();
-			long currPos = posContext.getPosition();
-			VariantContext context = posContext.getVariantContext();
-			String chrName = ChromosomeUtils.formatChrName(context.getContig());
-
-			if (lastChrName == null || !lastChrName.equals(chrName)) {
-				curChrInfo = chromosomeInfoMap.get(chrName);
-				if (null == curChrInfo)
-					throw new RuntimeException(
-							"> Failed appending dbSNP information. No information related to chromosome name: "
-									+ chrName);
-				int len = curChrInfo.getLength() / WINDOW_SIZE;
-				if ((curChrInfo.getLength() % WINDOW_SIZE) != 0)
-					len++;
-
-				if (lastChrName != null && !lastChrName.equals(chrName)) {
-					try {
-						saveAsBinary(outputPath + "/" + lastChrName + ".dbsnp.bn", binaryIndex);
-					} catch (IOException e) {
-						throw new RuntimeException(e.toString());
-					}
-					fileWriter(bnListWriter, outputPath, lastChrName, lastLength);
+		KnownSitesWriter sitesWriter = null;
+		try {
+			sitesWriter = new KnownSitesWriter(KnownSitesShare.getSitesPath(dbsnpPath));
+		} catch (IOException e1) {
+			throw new RuntimeException(e1.toString());
+		}
+
+		try {
+			int lastWinNum = -1;
+
+			while (reader.hasNext()) {
+				PositionalVariantContext posContext = reader.next();
+				long currPos = posContext.getPosition();
+				VariantContext context = posContext.getVariantContext();
+				try {
+					sitesWriter.add(context);
+				} catch (IOException e) {
+					throw new RuntimeException(e.toString());
 				}
+				String chrName = ChromosomeUtils.formatChrName(context.getContig());
+
+				if (lastChrName == null || !lastChrName.equals(chrName)) {
+					curChrInfo = chromosomeInfoMap.get(chrName);
+					if (null == curChrInfo)
+						throw new RuntimeException(
+								"> Failed appending dbSNP information. No information related to chromosome name: "
+										+ chrName);
+					int len = curChrInfo.getLength() / WINDOW_SIZE;
+					if ((curChrInfo.getLength() % WINDOW_SIZE) != 0)
+						len++;
+
+					if (lastChrName != null && !lastChrName.equals(chrName)) {
+						try {
+							saveAsBinary(outputPath + "/" + lastChrName + ".dbsnp.bn", binaryIndex);
+						} catch (IOException e) {
+							throw new RuntimeException(e.toString());
+						}
+						fileWriter(bnListWriter, outputPath, lastChrName, lastLength);
+					}
 				
-				binaryIndex = null;
-				binaryIndex = new byte[len * capacity];
-				Arrays.fill(binaryIndex, 0, binaryIndex.length, (byte) 0);
+					binaryIndex = null;
+					binaryIndex = new byte[len * capacity];
+					Arrays.fill(binaryIndex, 0, binaryIndex.length, (byte) 0);
 
-				lastChrName = chrName;
-				lastLength = curChrInfo.getLength();
-			}
+					lastChrName = chrName;
+					lastLength = curChrInfo.getLength();
+				}
+
+				int currWinNum = ((context.getStart() - 1) / WINDOW_SIZE);
 
-			int currWinNum = ((context.getStart() - 1) / WINDOW_SIZE);
+				if (lastWinNum != currWinNum) {
+					lastWinNum = currWinNum;
+					setBinaryIndex(currWinNum, binaryIndex, currPos);
+				}
 
-			if (lastWinNum != currWinNum) {
-				lastWinNum = currWinNum;
-				setBinaryIndex(currWinNum, binaryIndex, currPos);
+				insertSnpInformation(curChrInfo, context, binaryIndex);
 			}
 
-			insertSnpInformation(curChrInfo, context, binaryIndex);
-		}
+			try {
+				saveAsBinary(outputPath + "/" + lastChrName + ".dbsnp.bn", binaryIndex);
+			} catch (IOException e) {
+				throw new RuntimeException(e.toString());
+			}
 
-		try {
-			saveAsBinary(outputPath + "/" + lastChrName + ".dbsnp.bn", binaryIndex);
-		} catch (IOException e) {
-			throw new RuntimeException(e.toString());
+			fileWriter(bnListWriter, outputPath, lastChrName, lastLength);
+		} catch (RuntimeException e) {
+			// no partial known sites store is left to be loaded
+			sitesWriter.abort();
+			throw e;
 		}
 
-		fileWriter(bnListWriter, outputPath, lastChrName, lastLength);
-
 		reader.close();
 
 		try {
+			sitesWriter.close();
 			bnListWriter.close();
 		} catch (IOException e) {
 			throw new RuntimeException(e.toString());
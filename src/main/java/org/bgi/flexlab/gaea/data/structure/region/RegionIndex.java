@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.structure.region;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 区域索引：每条染色体的区域按起点排序并合并重叠区域，存为start/end两个int数组。
+ * 查询用二分查找，并先检查上一次命中的区域，按坐标顺序的连续查询不需要重新查找。
+ */
+public class RegionIndex {
+	
+	private final static int INITIAL_CAPACITY = 16;
+	
+	private ConcurrentHashMap<String, ChromosomeRegions> chromosomes;
+	
+	public RegionIndex() {
+		chromosomes = new ConcurrentHashMap<String, ChromosomeRegions>();
+	}
+	
+	/**
+	 * 添加区域[start, end]，坐标为0-based闭区间
+	 */
+	public void add(String chrName, int start, int end) {
+		ChromosomeRegions regions = chromosomes.get(chrName);
+		if(regions == null) {
+			regions = new ChromosomeRegions();
+			ChromosomeRegions old = chromosomes.putIfAbsent(chrName, regions);
+			if(old != null)
+				regions = old;
+		}
+		regions.add(start, end);
+	}
+	
+	public boolean isEmpty() {
+		return chromosomes.isEmpty();
+	}
+	
+	public Set<String> getChrNames() {
+		return chromosomes.keySet();
+	}
+	
+	/**
+	 * 染色体上区域覆盖的碱基数，重叠部分只计一次
+	 */
+	public long getCoveredLength(String chrName) {
+		ChromosomeRegions regions = chromosomes.get(chrName);
+		if(regions == null)
+			return 0;
+		regions.build();
+		if(regions.size == 0)
+			return 0;
+		int last = regions.size - 1;
+		return regions.lengthBefore[last] + regions.ends[last] - regions.starts[last] + 1;
+	}
+	
+	/**
+	 * position是染色体上区域覆盖的第几个碱基（从0开始），不在区域内时返回-1
+	 */
+	public long rank(String chrName, long position) {
+		ChromosomeRegions regions = chromosomes.get(chrName);
+		if(regions == null || position < 0 || position > Integer.MAX_VALUE)
+			return -1;
+		int i = regions.find((int) position);
+		if(i < 0 || regions.ends[i] < position)
+			return -1;
+		return regions.lengthBefore[i] + position - regions.starts[i];
+	}
+	
+	/**
+	 * 位置是否在某个区域内
+	 */
+	public boolean contains(String chrName, long position) {
+		ChromosomeRegions regions = chromosomes.get(chrName);
+		if(regions == null || position < 0 || position > Integer.MAX_VALUE)
+			return false;
+		int i = regions.find((int) position);
+		return i >= 0 && regions.ends[i] >= position;
+	}
+	
+	/**
+	 * [start, end]是否与某个区域重叠
+	 */
+	public boolean overlaps(String chrName, long start, long end) {
+		ChromosomeRegions regions = chromosomes.get(chrName);
+		if(regions == null || end < 0)
+			return false;
+		int i = regions.find((int) Math.min(end, Integer.MAX_VALUE));
+		return i >= 0 && regions.ends[i] >= start;
+	}
+	
+	/**
+	 * 包含position的区域{start, end}，不在区域内时返回null
+	 */
+	public int[] getRegion(String chrName, long position) {
+		ChromosomeRegions regions = chromosomes.get(chrName);
+		if(regions == null || position < 0 || position > Integer.MAX_VALUE)
+			return null;
+		int i = regions.find((int) position);
+		if(i < 0 || regions.ends[i] < position)
+			return null;
+		return new int[] {regions.starts[i], regions.ends[i]};
+	}
+	
+	/**
+	 * position之后第一个是否在区域内发生变化的位置：所在区域的end+1，或下一个区域的start。
+	 * 后面没有区域时返回Long.MAX_VALUE
+	 */
+	public long nextBoundary(String chrName, long position) {
+		ChromosomeRegions regions = chromosomes.get(chrName);
+		if(regions == null || position > Integer.MAX_VALUE)
+			return Long.MAX_VALUE;
+		int i = position < 0 ? -1 : regions.find((int) position);
+		if(i >= 0 && regions.ends[i] >= position)
+			return (long) regions.ends[i] + 1;
+		if(i + 1 < regions.size)
+			return regions.starts[i + 1];
+		return Long.MAX_VALUE;
+	}
+	
+	private static class ChromosomeRegions {
+		private int[] starts = new int[INITIAL_CAPACITY];
+		private int[] ends = new int[INITIAL_CAPACITY];
+		/**
+		 * 前面所有区域的碱基数之和，build时计算
+		 */
+		private long[] lengthBefore = new long[0];
+		private int size = 0;
+		private volatile boolean built = true;
+		/**
+		 * 上一次命中的区域下标，只作为查找起点，多线程下读到旧值也只是多一次二分查找
+		 */
+		private int cursor = 0;
+		
+		private synchronized void add(int start, int end) {
+			if(size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+			}
+			starts[size] = start;
+			ends[size] = end;
+			size++;
+			built = false;
+		}
+		
+		/**
+		 * 按起点排序，合并重叠或相邻的区域，合并后ends也是递增的
+		 */
+		private synchronized void build() {
+			if(built)
+				return;
+			long[] packed = new long[size];
+			for(int i = 0; i < size; i++)
+				packed[i] = ((long) starts[i] << 32) | (ends[i] & 0xffffffffL);
+			Arrays.sort(packed);
+			
+			int n = 0;
+			int[] newStarts = new int[size];
+			int[] newEnds = new int[size];
+			for(long p : packed) {
+				int start = (int) (p >> 32);
+				int end = (int) p;
+				if(n > 0 && start <= newEnds[n - 1] + 1) {
+					newEnds[n - 1] = Math.max(newEnds[n - 1], end);
+				} else {
+					newStarts[n] = start;
+					newEnds[n] = end;
+					n++;
+				}
+			}
+			starts = Arrays.copyOf(newStarts, n);
+			ends = Arrays.copyOf(newEnds, n);
+			lengthBefore = new long[n];
+			for(int i = 1; i < n; i++)
+				lengthBefore[i] = lengthBefore[i - 1] + ends[i - 1] - starts[i - 1] + 1;
+			size = n;
+			cursor = 0;
+			built = true;
+		}
+		
+		/**
+		 * 起点不大于position的最后一个区域的下标，没有时返回-1
+		 */
+		private int find(int position) {
+			if(!built)
+				build();
+			if(size == 0)
+				return -1;
+			
+			int c = cursor;
+			if(c < size && starts[c] <= position) {
+				if(c + 1 == size || starts[c + 1] > position)
+					return c;
+				if(c + 2 == size || starts[c + 2] > position) {
+					cursor = c + 1;
+					return c + 1;
+				}
+			}
+			
+			int low = 0, high = size - 1;
+			while(low <= high) {
+				int mid = (low + high) >>> 1;
+				if(starts[mid] <= position)
+					low = mid + 1;
+				else
+					high = mid - 1;
+			}
+			if(high >= 0)
+				cursor = high;
+			return high;
+		}
+	}
+}
@@ -28,10 +28,15 @@ import java.util.concurrent.ConcurrentHashMap;
 public class SingleRegion {
 	private ArrayList<Regiondata> regions;
 	Map<String, Integer[]> chrNameInterval;
+	/**
+	 * 所有区域合并后的索引，用于按位置快速判断是否在区域内
+	 */
+	private RegionIndex index;
 	
 	public SingleRegion() {
 		regions = new ArrayList<SingleRegion.Regiondata>();
 		chrNameInterval = new ConcurrentHashMap<String, Integer[]>();
+		index = new RegionIndex();
 	}
 	
 	public void parseRegionsFileFromHDFS(String regionsFilePath, boolean normalBed, int extendSize) throws IOException {
@@ -64,6 +69,10 @@ public class SingleRegion {
 		regions.add(lastRegionData);
 		chrNameInterval.put(lastRegionData.getChrName(), chrInterval);
 		it.close();
+		
+		for(Regiondata regionData : regions) {
+			index.add(regionData.getChrName(), regionData.getStart(), regionData.getEnd());
+		}
 	}
 	
 	private boolean canCombineRegion(Regiondata regionData, Regiondata lastRegionData, int extendSize) {
@@ -132,7 +141,7 @@ public class SingleRegion {
 	
 	public int posInRegion(String chrName, int pos) {
 		Integer[] chrInterval = chrNameInterval.get(chrName);
-		if(chrInterval == null || pos < 0) {
+		if(chrInterval == null || !index.contains(chrName, pos)) {
 			return -1;
 		}
 		
@@ -154,6 +163,25 @@ public class SingleRegion {
 		return -1;
 	}
 	
+	/**
+	 * [start, end]中第一个在区域内的位置所在的区域下标，没有时返回-1。
+	 * 用索引跳过不在区域内的位置，不需要逐个位置查找
+	 */
+	public int firstRegionInWindow(String chrName, int start, int end) {
+		long pos = start;
+		while(pos <= end) {
+			if(!index.contains(chrName, pos)) {
+				pos = index.nextBoundary(chrName, pos);
+				continue;
+			}
+			int regionIndex = posInRegion(chrName, (int) pos);
+			if(regionIndex >= 0)
+				return regionIndex;
+			pos++;
+		}
+		return -1;
+	}
+	
 	private int getFirstRegion(int index, int pos) {
 		int finalIndex = index;
 		String chrName = "";
@@ -177,6 +205,10 @@ public class SingleRegion {
 		return regions.get(i);
 	}
 	
+	public RegionIndex getIndex() {
+		return index;
+	}
+	
 	public Integer[] getChrInterval(String chrName) {
 		return chrNameInterval.get(chrName);
 	}
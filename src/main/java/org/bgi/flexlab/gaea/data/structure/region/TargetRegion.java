@@ -23,7 +23,6 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -44,58 +43,11 @@ public class TargetRegion extends Region {
 	}
 	
 	public void addRegionIndex(String chrName, int start, int end, boolean isAddFlank) {
-		for(int i = (int) start/1000; i <= (int) end/1000; i ++) {
-			int winStart, winEnd;
-			
-			winStart = initWinStart(start, i);
-			winEnd = initWinEnd(end, i);
-		
-			StringBuffer id = new StringBuffer();
-			id.append(chrName);
-			id.append(INDEX_SEPARATOR);
-			id.append(i);
-			
-			Integer[] winse = new Integer [2];
-			winse[0] = winStart;
-			winse[1] = winEnd;
-			if(!isAddFlank) {
-				addRegionIndex(this.index, id, winse);
-			} else {
-				addRegionIndex(flankRegion.getIndex(), id, winse);
-			}
-		}
-	}
-	
-	private void addRegionIndex(Map<String, ArrayList<Integer[]>> index, StringBuffer id,
-			Integer[] winse) {
-		if(!index.containsKey(id.toString())) {
-			ArrayList<Integer[]> wins = new ArrayList<Integer[]>();
-			wins.add(winse);
-			index.put(id.toString(), wins);
-		}
-		else {
-			index.get(id.toString()).add(winse);
-		}
-	}
-	
-	private int initWinStart(int start, int i) {
-		int winStart;
-		if(i == start/1000) {
-			winStart = start;
+		if(!isAddFlank) {
+			index.add(chrName, start, end);
 		} else {
-			winStart = i * 1000;
+			flankRegion.getIndex().add(chrName, start, end);
 		}
-		return winStart;
-	}
-	
-	private int initWinEnd(int end, int i) {
-		int winEnd;
-		if(i == end/1000) {
-			winEnd = end;
-		} else {
-			winEnd = i * 1000 + 999;
-		}
-		return winEnd;
 	}
 	
 	/**
@@ -128,35 +80,11 @@ public class TargetRegion extends Region {
 		}
 	}
 	
-	private void positionInRegion(String chrName,long position,ArrayList<Integer[]> list,HashSet<String> starts){
-		String id = formartID(position, chrName);
-		
-		if(index.containsKey(id)) {
-			//System.out.println(id.toString());
-			int regionNum = index.get(id).size();
-			int _start,_end;
-			for(int i = 0; i < regionNum; i++) {
-				_start = index.get(id).get(i)[0];
-				_end = index.get(id).get(i)[1];
-				if(_start > position)break;
-				if(position >= _start && position <= _end){
-					String k = _start+","+_end;
-					if(starts.contains(k))continue;
-					else{
-						Integer[] tmp = new Integer[2];
-						tmp[0] = _start;
-						tmp[1] = _end;
-						list.add(tmp);
-						starts.add(k);
-					}
-				}
-			}
-		}
-	}
-	
+	/**
+	 * 包含read起点或终点的区域
+	 */
 	public ArrayList<Integer[]> readInRegion(String chrName,long start,long end){
 		ArrayList<Integer[]> list = new ArrayList<Integer[]>();
-		HashSet<String> starts = new HashSet<String>();
 		
 		Integer[] wins = new Integer[2];
 		if(chrs.contains(chrName)) {
@@ -165,10 +93,12 @@ public class TargetRegion extends Region {
 			return list;
 		}
 		
-		positionInRegion(chrName,start,list,starts);
-		positionInRegion(chrName,end,list,starts);
-
-		starts.clear();
+		int[] startRegion = index.getRegion(chrName, start);
+		if(startRegion != null)
+			list.add(new Integer[] {startRegion[0], startRegion[1]});
+		int[] endRegion = index.getRegion(chrName, end);
+		if(endRegion != null && (startRegion == null || endRegion[0] != startRegion[0]))
+			list.add(new Integer[] {endRegion[0], endRegion[1]});
 		return list;
 	}
 	
@@ -324,7 +254,7 @@ public class TargetRegion extends Region {
 				|| !this.chrName.equals(flankRegion.getChrName());
 	}
 	
-	public  Map<String, ArrayList<Integer[]>> getFlankIndex() {
+	public RegionIndex getFlankIndex() {
 		return flankRegion.getIndex();
 	}
 	
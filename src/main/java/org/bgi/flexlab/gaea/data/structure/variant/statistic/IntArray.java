@@ -18,6 +18,11 @@ public class IntArray {
 		array[data.ordinal()]++;
 	}
 	
+	public void incr(IntArray other){
+		for(int i = 0; i < array.length; i++)
+			array[i] += other.array[i];
+	}
+	
 	public int get(VariantEnum data){
 		return get(data.ordinal());
 	}
@@ -1,5 +1,7 @@
 package org.bgi.flexlab.gaea.data.structure.variant.statistic;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -7,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
 import htsjdk.tribble.readers.AsciiLineReader;
@@ -409,6 +412,76 @@ public class VariantBasicStatistic {
 		return sb.toString();
 	}
 
+	/**
+	 * add up the statistics of another part of the same vcf
+	 */
+	public void merge(VariantBasicStatistic other) {
+		basicArray.incr(other.basicArray);
+		mixed += other.mixed;
+		if (sampleName == null)
+			sampleName = other.sampleName;
+		for (Map.Entry<String, IntArray> entry : other.sampleStatics.entrySet()) {
+			// single sample statistics share the basic array
+			if (entry.getValue() == other.basicArray) {
+				sampleStatics.put(entry.getKey(), basicArray);
+				continue;
+			}
+			IntArray array = sampleStatics.get(entry.getKey());
+			if (array == null) {
+				array = new IntArray(ALL_LENGTH, 0);
+				sampleStatics.put(entry.getKey(), array);
+			}
+			array.incr(entry.getValue());
+		}
+	}
+
+	private static void writeArray(DataOutput out, IntArray array) throws IOException {
+		for (int i = 0; i < array.length(); i++)
+			out.writeInt(array.get(i));
+	}
+
+	private static void readArray(DataInput in, IntArray array) throws IOException {
+		int[] values = array.get();
+		for (int i = 0; i < values.length; i++)
+			values[i] = in.readInt();
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeBoolean(individuals);
+		out.writeInt(mixed);
+		out.writeBoolean(sampleName != null);
+		if (sampleName != null)
+			out.writeUTF(sampleName);
+		writeArray(out, basicArray);
+		out.writeInt(sampleStatics.size());
+		for (Map.Entry<String, IntArray> entry : sampleStatics.entrySet()) {
+			out.writeUTF(entry.getKey());
+			boolean shared = entry.getValue() == basicArray;
+			out.writeBoolean(shared);
+			if (!shared)
+				writeArray(out, entry.getValue());
+		}
+	}
+
+	public static VariantBasicStatistic read(DataInput in) throws IOException {
+		VariantBasicStatistic statistic = new VariantBasicStatistic(in.readBoolean());
+		statistic.mixed = in.readInt();
+		if (in.readBoolean())
+			statistic.sampleName = in.readUTF();
+		readArray(in, statistic.basicArray);
+		int samples = in.readInt();
+		for (int i = 0; i < samples; i++) {
+			String name = in.readUTF();
+			IntArray array = statistic.basicArray;
+			if (!in.readBoolean()) {
+				array = new IntArray(ALL_LENGTH, 0);
+				readArray(in, array);
+			}
+			statistic.sampleStatics.put(name, array);
+		}
+		return statistic;
+	}
+
 	public String getSampleName() {
 		return this.sampleName;
 	}
@@ -28,9 +28,9 @@ public class ReportDatum {
 	private int ti;
 	private int tv;
 	private String snpChr;
-	private static Set<String> snpChrs = new HashSet<>();
+	private Set<String> snpChrs = new HashSet<>();
 	private String indelChr;
-	private static Set<String> indelChrs = new HashSet<>();
+	private Set<String> indelChrs = new HashSet<>();
 	private ReportDatum(Builder builder) {
 		this.snpCount = builder.snpCount;
 		this.indelCount = builder.indelCount;
@@ -38,8 +38,12 @@ public class ReportDatum {
 		this.tv = builder.tv;
 		this.snpChr = builder.snpChr;
 		this.indelChr = builder.indelChr;
-		snpChrs.add(this.snpChr);
-		indelChrs.add(this.indelChr);
+		snpChrs.addAll(builder.snpChrs);
+		indelChrs.addAll(builder.indelChrs);
+		if(snpChr != null)
+			snpChrs.add(snpChr);
+		if(indelChr != null)
+			indelChrs.add(indelChr);
 	}
 	
 	@Override
@@ -49,8 +53,8 @@ public class ReportDatum {
 		builder.append(ti);builder.append("\t");
 		builder.append(tv);builder.append("\t");
 		builder.append(indelCount);builder.append("\t");
-		builder.append(snpChr);builder.append("\t");
-		builder.append(indelChr);builder.append("\t");
+		builder.append(String.join(",", snpChrs));builder.append("\t");
+		builder.append(String.join(",", indelChrs));builder.append("\t");
 		return builder.toString();
 	}
 	
@@ -69,6 +73,8 @@ public class ReportDatum {
 		this.indelCount += vi.getIndelCount();
 		this.ti += vi.getTi();
 		this.tv += vi.getTv();
+		this.snpChrs.addAll(vi.snpChrs);
+		this.indelChrs.addAll(vi.indelChrs);
 		return this;
 	}
 	
@@ -104,6 +110,8 @@ public class ReportDatum {
 		private int tv;
 		private String snpChr;
 		private String indelChr;
+		private Set<String> snpChrs = new HashSet<>();
+		private Set<String> indelChrs = new HashSet<>();
 		private VariantContext vc;
 		
 		public Builder(VariantContext vc) {
@@ -139,16 +147,23 @@ public class ReportDatum {
 		}
 		
 		public ReportDatum buildFrom(String context) {
-			String[] info = context.split("\t");
+			String[] info = context.split("\t", -1);
 			snpCount = Integer.parseInt(info[0]);
 			ti = Integer.parseInt(info[1]);
 			tv = Integer.parseInt(info[2]);
 			indelCount = Integer.parseInt(info[3]);
-			snpChr = info[4];
-			indelChr = info[5];
+			addChrs(snpChrs, info[4]);
+			addChrs(indelChrs, info[5]);
 			return new ReportDatum(this);
 		}
 		
+		private void addChrs(Set<String> chrs, String info) {
+			for(String chr : info.split(",")) {
+				if(!chr.isEmpty())
+					chrs.add(chr);
+			}
+		}
+		
 		public ReportDatum build() {
 			return new ReportDatum(this);
 		}
@@ -17,6 +17,7 @@
 package org.bgi.flexlab.gaea.data.variant.filter;
 
 import htsjdk.variant.variantcontext.VariantContext;
+import org.bgi.flexlab.gaea.data.structure.dbsnp.KnownSitesShare;
 import org.bgi.flexlab.gaea.data.structure.vcf.VCFLocalLoader;
 
 import java.io.IOException;
@@ -52,4 +53,13 @@ public abstract class VariantFilter {
 			throw new RuntimeException(e.toString());
 		}
 	}
+
+	/**
+	 * load variants start in [start, end] from binary known sites
+	 */
+	public ArrayList<VariantContext> loadFilter(KnownSitesShare sites, String referenceName, int start, int end) {
+		if (start < 0)
+			throw new RuntimeException(String.format("start position  %d is less than zero", start));
+		return sites.query(referenceName, start, end);
+	}
 }
@@ -26,6 +26,7 @@ import org.bgi.flexlab.gaea.data.mapreduce.input.header.SamHdfsFileHeader;
 import org.bgi.flexlab.gaea.data.mapreduce.partitioner.WindowsBasedComparator;
 import org.bgi.flexlab.gaea.data.mapreduce.partitioner.WindowsBasedPartitioner;
 import org.bgi.flexlab.gaea.data.mapreduce.partitioner.WindowsBasedSort;
+import org.bgi.flexlab.gaea.data.mapreduce.partitioner.WindowsBasedSpanPartitioner;
 import org.bgi.flexlab.gaea.data.structure.bam.filter.util.SamRecordFilter;
 import org.seqdoop.hadoop_bam.SAMFormat;
 
@@ -64,6 +65,15 @@ public class BioJob extends Job {
 		setWindowsBasicMapperClass(cls, windowsSize);
 	}
 
+	/*
+	 * write every read once per windows span instead of once per windows,
+	 * reducer must rebuild windows overlap by WindowsBasedOverlapBuffer
+	 */
+	public void setReadOnceShuffle() {
+		conf.setBoolean(WindowsBasedMapper.READ_ONCE_SHUFFLE, true);
+		setPartitionerClass(WindowsBasedSpanPartitioner.class);
+	}
+
 	public void setOnlyBaseRecalibrator(boolean bqsr) {
 		conf.setBoolean(WindowsBasedMapper.BASERECALIBRATOR_ONLY, bqsr);
 	}
@@ -26,6 +26,7 @@ import org.apache.hadoop.mapreduce.Mapper;
 import org.bgi.flexlab.gaea.data.exception.FileNotExistException;
 import org.bgi.flexlab.gaea.data.mapreduce.input.bed.RegionHdfsParser;
 import org.bgi.flexlab.gaea.data.mapreduce.input.header.SamHdfsFileHeader;
+import org.bgi.flexlab.gaea.data.mapreduce.partitioner.WindowsBasedSpanPartitioner;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordWritable;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
 import org.bgi.flexlab.gaea.data.structure.bam.filter.util.SamRecordFilter;
@@ -45,11 +46,19 @@ public abstract class WindowsBasedMapper<VALUEOUT extends Writable> extends
 	public final static String REFERENCE_REGION = "reference.region.bed";
 	public final static String UNMAPPED_REFERENCE_NAME = "UNMAPPED";
 	public final static String BASERECALIBRATOR_ONLY = "base.recalibrator.only";
+	public final static String READ_ONCE_SHUFFLE = "windows.read.once";
+
+	/*
+	 * windows index of getExtendPosition in ascending order
+	 */
+	private final static int[] ASCENDING_WINDOWS_INDEX = { 1, 0, 2 };
 
 	protected int windowsSize;
 	protected int windowsExtendSize;
 	protected boolean multiSample;
 	protected boolean bqsrOnly = false;
+	protected boolean readOnce = false;
+	protected int windowsSpan;
 	protected SAMFileHeader header = null;
 
 	protected WindowsBasedWritable keyout = new WindowsBasedWritable();
@@ -58,6 +67,7 @@ public abstract class WindowsBasedMapper<VALUEOUT extends Writable> extends
 	protected VALUEOUT outputValue;
 
 	private HashMap<String, Integer> sampleIDs = null;
+	private final int[] outputWindows = new int[3];
 
 	abstract void otherSetup(Context context);
 	abstract void setOutputValue(SAMRecord samRecord);
@@ -70,6 +80,9 @@ public abstract class WindowsBasedMapper<VALUEOUT extends Writable> extends
 		windowsExtendSize = conf.getInt(WINDOWS_EXTEND_SIZE, 500);
 		multiSample = conf.getBoolean(MULTIPLE_SAMPLE, false);
 		bqsrOnly = conf.getBoolean(BASERECALIBRATOR_ONLY,false);
+		readOnce = conf.getBoolean(READ_ONCE_SHUFFLE, false);
+		windowsSpan = conf.getInt(WindowsBasedSpanPartitioner.WINDOWS_SPAN,
+				WindowsBasedSpanPartitioner.DEFAULT_WINDOWS_SPAN);
 		initOutputVaule();
 
 		header = SamHdfsFileHeader.getHeader(conf);
@@ -106,8 +119,22 @@ public abstract class WindowsBasedMapper<VALUEOUT extends Writable> extends
 	}
 
 	protected int[] getExtendPosition(int start, int end, int length) {
-		int[] winNum = new int[3];
+		return getExtendPosition(start, end, length, windowsSize, windowsExtendSize);
+	}
 
+	/*
+	 * windows of a read: 0 is home windows, 1 is extend left windows and 2 is
+	 * extend right windows
+	 */
+	public static int[] getExtendPosition(int start, int end, int length, int windowsSize, int windowsExtendSize) {
+		return getExtendPosition(start, end, length, windowsSize, windowsExtendSize, new int[3]);
+	}
+
+	/*
+	 * same as above, filling winNum instead of allocating a new array
+	 */
+	public static int[] getExtendPosition(int start, int end, int length, int windowsSize, int windowsExtendSize,
+			int[] winNum) {
 		winNum[1] = (int) (((start - windowsExtendSize) > 0 ? (start - windowsExtendSize) : 0) / windowsSize);
 		winNum[0] = start / windowsSize;
 		winNum[2] = (int) (((end + windowsExtendSize) > length ? length : (end + windowsExtendSize)) / windowsSize);
@@ -115,6 +142,35 @@ public abstract class WindowsBasedMapper<VALUEOUT extends Writable> extends
 		return winNum;
 	}
 
+	/*
+	 * windows a read is written to: home, extend left and extend right windows
+	 * for the default shuffle, or the first windows of every windows span the
+	 * read covers for the read once shuffle. fills windows and returns the count
+	 */
+	public static int getOutputWindows(int[] winNums, boolean readOnce, int windowsSpan, int[] windows) {
+		int count = 0;
+		if (readOnce) {
+			/* write read once for each windows span, reducer rebuilds the overlap */
+			int lastSpan = -1;
+			for (int i : ASCENDING_WINDOWS_INDEX) {
+				int span = winNums[i] / windowsSpan;
+				if (span == lastSpan)
+					continue;
+				lastSpan = span;
+				windows[count++] = winNums[i];
+			}
+			return count;
+		}
+
+		for (int i = 0; i < 3; i++) {
+			if (i != 0 && winNums[i] == winNums[0]) {
+				continue;
+			}
+			windows[count++] = winNums[i];
+		}
+		return count;
+	}
+
 	protected void setKey(SAMRecord sam, int winNum) {
 		setKey(sam.getReadGroup().getSample(), sam.getReferenceIndex(), winNum, sam.getAlignmentStart());
 	}
@@ -153,11 +209,10 @@ public abstract class WindowsBasedMapper<VALUEOUT extends Writable> extends
 
 		int[] winNums = getExtendPosition(sam.getAlignmentStart(), sam.getAlignmentEnd(),
 				header.getSequence(chrName).getSequenceLength());
-		for (int i = 0; i < 3; i++) {
-			if (i != 0 && winNums[i] == winNums[0]) {
-				continue;
-			}
-			setKey(sam, winNums[i]);
+
+		int count = getOutputWindows(winNums, readOnce, windowsSpan, outputWindows);
+		for (int i = 0; i < count; i++) {
+			setKey(sam, outputWindows[i]);
 			context.write(keyout, outputValue);
 		}
 	}
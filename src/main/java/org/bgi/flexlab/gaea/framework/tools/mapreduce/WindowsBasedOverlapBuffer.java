@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.framework.tools.mapreduce;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.bgi.flexlab.gaea.data.mapreduce.partitioner.WindowsBasedSpanPartitioner;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordWritable;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * reducer side of read once shuffle. Every read arrives once per windows
+ * span at the first windows it overlaps, and is carried over to the
+ * following windows of the span. Carried reads and reads of the key are
+ * merged by alignment start, so every windows sees the same reads in the
+ * same order as the default shuffle.
+ */
+public class WindowsBasedOverlapBuffer {
+
+	public interface WindowsProcessor {
+		void process(WindowsBasedWritable key, Iterable<SamRecordWritable> values)
+				throws IOException, InterruptedException;
+	}
+
+	/*
+	 * carried reads are pooled, value and windows are refilled by set()
+	 */
+	private class CarriedRead {
+		private final SamRecordWritable value = new SamRecordWritable();
+		private final int[] winNums = new int[3];
+		private int start;
+		private int span;
+		private int lastWindow;
+
+		public void set(SAMRecord sam, int[] winNums, int span, int lastWindow) {
+			this.value.set(sam);
+			this.start = sam.getAlignmentStart();
+			System.arraycopy(winNums, 0, this.winNums, 0, 3);
+			this.span = span;
+			this.lastWindow = lastWindow;
+		}
+
+		public boolean contains(int winNum) {
+			if (winNum / windowsSpan != span)
+				return false;
+			return winNum == winNums[0] || winNum == winNums[1] || winNum == winNums[2];
+		}
+	}
+
+	private class SampleWindows {
+		private int chrIndex = -1;
+		private int span = -1;
+		private int lastWindow = -1;
+		private ArrayList<CarriedRead> reads = new ArrayList<CarriedRead>();
+
+		private void removeBefore(int winNum) {
+			Iterator<CarriedRead> it = reads.iterator();
+			while (it.hasNext()) {
+				CarriedRead read = it.next();
+				if (read.lastWindow <= winNum) {
+					it.remove();
+					release(read);
+				}
+			}
+		}
+
+		private void clear() {
+			for (CarriedRead read : reads)
+				release(read);
+			reads.clear();
+		}
+	}
+
+	/*
+	 * values of one windows: carried reads merged with reads of the key by
+	 * alignment start, every call of iterator() shares one iterator like
+	 * hadoop reducer values
+	 */
+	private class OverlapValues implements Iterable<SamRecordWritable>, Iterator<SamRecordWritable> {
+		private final ArrayList<CarriedRead> carried;
+		private final Iterator<SamRecordWritable> values;
+		private final SampleWindows windows;
+		private final int winNum;
+		private final ArrayList<CarriedRead> newReads = new ArrayList<CarriedRead>();
+		private int carriedIndex = 0;
+		/* next read of the key, taken from values but not returned yet */
+		private SamRecordWritable pending = null;
+		private int pendingStart;
+
+		public OverlapValues(SampleWindows windows, int winNum, Iterable<SamRecordWritable> values) {
+			this.windows = windows;
+			this.winNum = winNum;
+			this.carried = carriedValues(windows, winNum);
+			this.values = values == null ? null : values.iterator();
+		}
+
+		@Override
+		public Iterator<SamRecordWritable> iterator() {
+			return this;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return carriedIndex < carried.size() || pending != null || (values != null && values.hasNext());
+		}
+
+		@Override
+		public SamRecordWritable next() {
+			if (pending == null && values != null && values.hasNext())
+				pending = take(values.next());
+
+			if (carriedIndex < carried.size()
+					&& (pending == null || carried.get(carriedIndex).start <= pendingStart))
+				return carried.get(carriedIndex++).value;
+
+			if (pending == null)
+				throw new NoSuchElementException();
+			SamRecordWritable value = pending;
+			pending = null;
+			return value;
+		}
+
+		/*
+		 * keep reads overlapping following windows of the span
+		 */
+		private SamRecordWritable take(SamRecordWritable value) {
+			SAMRecord sam = value.get();
+			pendingStart = sam.getAlignmentStart();
+			WindowsBasedMapper.getExtendPosition(sam.getAlignmentStart(), sam.getAlignmentEnd(),
+					header.getSequence(windows.chrIndex).getSequenceLength(), windowsSize, windowsExtendSize,
+					winNums);
+			int lastWindow = -1;
+			for (int num : winNums) {
+				if (num / windowsSpan == windows.span && num > lastWindow)
+					lastWindow = num;
+			}
+			if (lastWindow > winNum) {
+				CarriedRead read = acquire();
+				read.set(sam, winNums, windows.span, lastWindow);
+				newReads.add(read);
+			}
+			return value;
+		}
+
+		public void finish() {
+			while (hasNext())
+				next();
+			windows.removeBefore(winNum);
+			windows.reads.addAll(newReads);
+			windows.lastWindow = winNum;
+		}
+	}
+
+	private final static Comparator<CarriedRead> CARRIED_ORDER = (r1, r2) -> Integer.compare(r1.start, r2.start);
+
+	private final SAMFileHeader header;
+	private final int windowsSize;
+	private final int windowsExtendSize;
+	private final int windowsSpan;
+
+	private final HashMap<Integer, SampleWindows> samples = new HashMap<Integer, SampleWindows>();
+	private final WindowsBasedWritable windowsKey = new WindowsBasedWritable();
+	private final ArrayDeque<CarriedRead> pool = new ArrayDeque<CarriedRead>();
+	private final ArrayList<CarriedRead> carried = new ArrayList<CarriedRead>();
+	private final int[] winNums = new int[3];
+
+	public WindowsBasedOverlapBuffer(Configuration conf, SAMFileHeader header) {
+		this.header = header;
+		this.windowsSize = conf.getInt(WindowsBasedMapper.WINDOWS_SIZE, 10000);
+		this.windowsExtendSize = conf.getInt(WindowsBasedMapper.WINDOWS_EXTEND_SIZE, 500);
+		this.windowsSpan = conf.getInt(WindowsBasedSpanPartitioner.WINDOWS_SPAN,
+				WindowsBasedSpanPartitioner.DEFAULT_WINDOWS_SPAN);
+	}
+
+	public static boolean isReadOnce(Configuration conf) {
+		return conf.getBoolean(WindowsBasedMapper.READ_ONCE_SHUFFLE, false);
+	}
+
+	private CarriedRead acquire() {
+		CarriedRead read = pool.poll();
+		return read == null ? new CarriedRead() : read;
+	}
+
+	private void release(CarriedRead read) {
+		read.value.set(null);
+		pool.push(read);
+	}
+
+	/*
+	 * carried reads of a windows sorted by alignment start. Reads skipping
+	 * windows of the span arrive late, so the carried list is not sorted by
+	 * arrival. Windows are processed one by one, so the list is shared.
+	 */
+	private ArrayList<CarriedRead> carriedValues(SampleWindows windows, int winNum) {
+		carried.clear();
+		for (CarriedRead read : windows.reads) {
+			if (read.contains(winNum))
+				carried.add(read);
+		}
+		carried.sort(CARRIED_ORDER);
+		return carried;
+	}
+
+	private boolean containsWindows(SampleWindows windows, int winNum) {
+		for (CarriedRead read : windows.reads) {
+			if (read.contains(winNum))
+				return true;
+		}
+		return false;
+	}
+
+	/*
+	 * process windows before limit which only have carried reads
+	 */
+	private void flush(SampleWindows windows, int sampleID, int limit, WindowsProcessor processor)
+			throws IOException, InterruptedException {
+		for (int winNum = windows.lastWindow + 1; winNum < limit && !windows.reads.isEmpty(); winNum++) {
+			if (containsWindows(windows, winNum)) {
+				OverlapValues values = new OverlapValues(windows, winNum, null);
+				windowsKey.set(sampleID, windows.chrIndex, winNum, winNum * windowsSize);
+				processor.process(windowsKey, values);
+				values.finish();
+			} else {
+				windows.removeBefore(winNum);
+				windows.lastWindow = winNum;
+			}
+		}
+	}
+
+	public void reduce(WindowsBasedWritable key, Iterable<SamRecordWritable> values, WindowsProcessor processor)
+			throws IOException, InterruptedException {
+		int chrIndex = key.getChromosomeIndex();
+		if (chrIndex < 0) {
+			processor.process(key, values);
+			return;
+		}
+
+		int sampleID = key.getSampleID();
+		int winNum = key.getWindowsNumber();
+		int span = winNum / windowsSpan;
+
+		SampleWindows windows = samples.get(sampleID);
+		if (windows == null) {
+			windows = new SampleWindows();
+			samples.put(sampleID, windows);
+		}
+
+		if (windows.chrIndex != chrIndex || windows.span != span) {
+			flush(windows, sampleID, Integer.MAX_VALUE, processor);
+			windows.clear();
+			windows.chrIndex = chrIndex;
+			windows.span = span;
+			windows.lastWindow = -1;
+		} else {
+			flush(windows, sampleID, winNum, processor);
+		}
+
+		OverlapValues overlapValues = new OverlapValues(windows, winNum, values);
+		processor.process(key, overlapValues);
+		overlapValues.finish();
+	}
+
+	/*
+	 * process remaining carried reads, call at reducer cleanup
+	 */
+	public void flush(WindowsProcessor processor) throws IOException, InterruptedException {
+		for (Integer sampleID : samples.keySet()) {
+			SampleWindows windows = samples.get(sampleID);
+			flush(windows, sampleID, Integer.MAX_VALUE, processor);
+			windows.clear();
+		}
+	}
+}
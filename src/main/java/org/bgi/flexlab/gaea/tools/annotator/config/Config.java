@@ -299,6 +299,10 @@ public class Config implements Serializable {
 		return genome;
 	}
 
+	public void setGenome(Genome genome) {
+		this.genome = genome;
+	}
+
 	public String getGenomeVersion() {
 		return ref;
 	}
@@ -22,6 +22,9 @@ import org.apache.hadoop.hbase.util.MD5Hash;
 import org.bgi.flexlab.gaea.tools.annotator.config.DatabaseInfo;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,7 +38,7 @@ public class AnnoDBQuery extends DBQuery {
 	public Results query(Condition condition)throws IOException{
 		Results results = new Results();
 
-		HashMap<String,String> result = dbAdapter.getResult(condition.getRefTable().getIndexTable(), condition.getConditionString());
+		HashMap<String,String> result = getRow(condition.getRefTable().getIndexTable(), condition.getConditionString());
 		List<String> alts = condition.getAlts();
 		if (result ==null || result.isEmpty()) return null;
 		String[] indexAlts = result.get(INDEX_ALT_COLUMN_NAME).split(",");
@@ -50,23 +53,34 @@ public class AnnoDBQuery extends DBQuery {
 			int index = ArrayUtils.indexOf(indexAlts,alt);
 			String[] altMainKeys = mainKeys[index].split(",");
 			for(String altmk: altMainKeys){
-				HashMap<String,String> annoResult = dbAdapter.getResult(condition.getRefTable().getTable(), altmk, condition.getFields());
-				if (annoResult ==null || annoResult.isEmpty()){
+				HashMap<String,String> row = getRow(condition.getRefTable().getTable(), altmk);
+				if (row ==null || row.isEmpty()){
 					System.err.println("Cann't find value from table:"+condition.getRefTable().getTable()+". Key:"+altmk);
 					return null;
 				}
-				results.add(alt, annoResult);
+				results.add(alt, selectFields(row, condition.getFields()));
 			}
 		}
 		return results;
 	}
 
+	@Override
+	protected List<String> dataKeys(Condition condition, String indexKey, HashMap<String,String> indexRow) {
+		String mainKeyStr = indexRow.get(condition.getRefTable().getKey());
+		if (mainKeyStr == null) return Collections.emptyList();
+		List<String> keys = new ArrayList<>();
+		for (String altMainKeys : mainKeyStr.split(";"))
+			keys.addAll(Arrays.asList(altMainKeys.split(",")));
+		return keys;
+	}
+
 	public boolean insert(Condition condition,	Map<String,String>
 			fields )throws IOException{
 		HashMap<String,String> result = dbAdapter.getResult(condition.getRefTable().getIndexTable(), condition.getConditionString());
 		String mainKey = getHashRowKey(condition.getConditionString());
 		String alt =  fields.get("ALT");
 		Map<String, String> indexKV = new HashMap<>();
+		invalidate(condition.getRefTable().getIndexTable(), condition.getConditionString());
 		if (result ==null || result.isEmpty()){
 			indexKV.put(INDEX_ALT_COLUMN_NAME, alt);
 			indexKV.put(condition.getRefTable().getKey(), mainKey);
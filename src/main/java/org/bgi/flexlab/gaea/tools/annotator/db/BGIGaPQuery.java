@@ -45,4 +45,8 @@ public class BGIGaPQuery extends DBQuery {
 		dbAdapter.connection("base");
 	}
 
+	@Override
+	boolean prefetchable() {
+		return false;
+	}
 }
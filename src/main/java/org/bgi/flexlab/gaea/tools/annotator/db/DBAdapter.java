@@ -17,6 +17,7 @@
 package org.bgi.flexlab.gaea.tools.annotator.db;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -56,6 +57,26 @@ public abstract class DBAdapter {
 		return null;
 	}
 
+	/**
+	 * 批量查询多个rowKey，返回rowKey到该行所有字段的映射，查询不到的rowKey不在结果中。
+	 * 默认逐个调用getResult，支持批量请求的数据库应覆盖该方法
+	 *
+	 * @param tableName 表名
+	 * @param rowKeys conditionString集合
+	 * @return Map<String, HashMap<String, String>>
+	 * @throws IOException
+	 */
+	public Map<String, HashMap<String, String>> getResults(String tableName,
+														   Collection<String> rowKeys) throws IOException {
+		Map<String, HashMap<String, String>> results = new HashMap<>();
+		for (String rowKey : rowKeys) {
+			HashMap<String, String> result = getResult(tableName, rowKey);
+			if (result != null && !result.isEmpty())
+				results.put(rowKey, result);
+		}
+		return results;
+	}
+
 	public boolean insert(String tableName, String rowKey, Map<String, String> fields) throws IOException {
 		return false;
 	}
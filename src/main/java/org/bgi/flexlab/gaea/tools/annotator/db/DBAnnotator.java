@@ -62,6 +62,29 @@ public class DBAnnotator implements Serializable{
 		}
 	}
 
+	/**
+	 * batch the lookups of a window of variants into one request per table of
+	 * every database, later annotate calls of these variants hit the row cache
+	 */
+	public void prefetch(Collection<VcfAnnoContext> vacs) throws IOException {
+		for (String dbName : config.getDbNameList())
+			prefetch(vacs, dbName);
+	}
+
+	public void prefetch(Collection<VcfAnnoContext> vacs, String dbName) throws IOException {
+		Condition condition = dbConditionHashMap.get(dbName);
+		DBQuery dbQuery = DbQueryMap.get(dbName);
+		if (condition == null || dbQuery == null || !dbQuery.prefetchable() || vacs.isEmpty())
+			return;
+
+		Set<String> conditionStrings = new LinkedHashSet<>();
+		for (VcfAnnoContext vac : vacs) {
+			condition.createConditionMap(vac);
+			conditionStrings.add(condition.getConditionString());
+		}
+		dbQuery.prefetch(conditionStrings, condition);
+	}
+
 	public boolean annotate(VcfAnnoContext vac, String dbName) throws IOException {
 		Condition condition = dbConditionHashMap.get(dbName);
 
@@ -51,4 +51,8 @@ public class DBNSFPQuery extends DBQuery {
 		return results;
 	}
 
+	@Override
+	boolean prefetchable() {
+		return false;
+	}
 }
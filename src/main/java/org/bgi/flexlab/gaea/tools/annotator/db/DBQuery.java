@@ -17,6 +17,7 @@
 package org.bgi.flexlab.gaea.tools.annotator.db;
 
 import org.bgi.flexlab.gaea.tools.annotator.config.DatabaseInfo.DbType;
+import org.bgi.flexlab.gaea.tools.annotator.config.RefTableInfo;
 import org.bgi.flexlab.gaea.tools.annotator.AnnotationContext;
 
 import java.io.IOException;
@@ -27,10 +28,16 @@ import java.util.Map.Entry;
 public class DBQuery implements Serializable {
 
 	private static final long serialVersionUID = -897843908487603204L;
+
+	/**
+	 * 每个数据库缓存的行数上限（含查询不到的rowKey）
+	 */
+	static final int ROW_CACHE_SIZE = 20000;
 	
 	DBAdapter dbAdapter = null;
 	Results results = null;
 	Condition condition = null;
+	private transient LinkedHashMap<String, HashMap<String,String>> rowCache = null;
 	
 	/**
 	 * 执行query并判断结果，通过getResults方法获取结果
@@ -59,13 +66,13 @@ public class DBQuery implements Serializable {
 	public Results query(Condition condition)throws IOException{
 		Results results = new Results();
 
-		HashMap<String,String> result = dbAdapter.getResult(condition.getRefTable().getIndexTable(), condition.getConditionString());
+		HashMap<String,String> result = getRow(condition.getRefTable().getIndexTable(), condition.getConditionString());
 		if (result ==null || result.isEmpty()) return null;
 		List<String> alts = condition.getAlts();
 		String keyStr = result.get(condition.getRefTable().getKey());
 		String[] keys = keyStr.split(",");
 		for (String key : keys) {
-			result = dbAdapter.getResult(condition.getRefTable().getTable(), key);
+			result = getRow(condition.getRefTable().getTable(), key);
 
 			if (result ==null || result.isEmpty())
 				return null;
@@ -94,6 +101,131 @@ public class DBQuery implements Serializable {
 		return results;
 	}
 	
+	/**
+	 * 是否通过getRow查询，返回false的query不做预取
+	 */
+	boolean prefetchable() {
+		return true;
+	}
+
+	/**
+	 * 批量预取一组conditionString的索引行和数据行，每张表只发一次批量请求，结果放入行缓存
+	 * @param conditionStrings
+	 * @param condition 提供表信息
+	 * @throws IOException
+	 */
+	public void prefetch(Collection<String> conditionStrings, Condition condition) throws IOException {
+		RefTableInfo refTable = condition.getRefTable();
+		if (refTable.getIndexTable() == null) {
+			getRows(dataTable(condition), conditionStrings);
+			return;
+		}
+
+		Map<String, HashMap<String,String>> indexRows = getRows(refTable.getIndexTable(), conditionStrings);
+		Set<String> dataKeys = new LinkedHashSet<>();
+		for (Entry<String, HashMap<String,String>> entry : indexRows.entrySet()) {
+			dataKeys.addAll(dataKeys(condition, entry.getKey(), entry.getValue()));
+		}
+		getRows(dataTable(condition), dataKeys);
+	}
+
+	/**
+	 * 索引行中记录的数据表rowKey
+	 */
+	protected List<String> dataKeys(Condition condition, String indexKey, HashMap<String,String> indexRow) {
+		String keyStr = indexRow.get(condition.getRefTable().getKey());
+		if (keyStr == null) return Collections.emptyList();
+		return Arrays.asList(keyStr.split(","));
+	}
+
+	protected String dataTable(Condition condition) {
+		return condition.getRefTable().getTable();
+	}
+
+	/**
+	 * 先查行缓存，未命中时查询数据库并缓存结果，查询不到时返回null
+	 */
+	HashMap<String,String> getRow(String tableName, String rowKey) throws IOException {
+		String cacheKey = cacheKey(tableName, rowKey);
+		LinkedHashMap<String, HashMap<String,String>> cache = getRowCache();
+		if (cache.containsKey(cacheKey))
+			return cache.get(cacheKey);
+
+		HashMap<String,String> result = dbAdapter.getResult(tableName, rowKey);
+		if (result != null && result.isEmpty())
+			result = null;
+		cache.put(cacheKey, result);
+		return result;
+	}
+
+	/**
+	 * 批量版本的getRow，未命中缓存的rowKey通过一次getResults查询
+	 */
+	Map<String, HashMap<String,String>> getRows(String tableName, Collection<String> rowKeys) throws IOException {
+		LinkedHashMap<String, HashMap<String,String>> cache = getRowCache();
+		Map<String, HashMap<String,String>> rows = new HashMap<>();
+		Set<String> missed = new LinkedHashSet<>();
+		for (String rowKey : rowKeys) {
+			String cacheKey = cacheKey(tableName, rowKey);
+			if (cache.containsKey(cacheKey)) {
+				HashMap<String,String> row = cache.get(cacheKey);
+				if (row != null)
+					rows.put(rowKey, row);
+			} else
+				missed.add(rowKey);
+		}
+		if (missed.isEmpty())
+			return rows;
+
+		Map<String, HashMap<String,String>> fetched = dbAdapter.getResults(tableName, missed);
+		for (String rowKey : missed) {
+			HashMap<String,String> row = fetched.get(rowKey);
+			if (row != null && row.isEmpty())
+				row = null;
+			cache.put(cacheKey(tableName, rowKey), row);
+			if (row != null)
+				rows.put(rowKey, row);
+		}
+		return rows;
+	}
+
+	void invalidate(String tableName, String rowKey) {
+		getRowCache().remove(cacheKey(tableName, rowKey));
+	}
+
+	/**
+	 * 从整行结果中选取fields，与HbaseAdapter按字段查询的结果一致
+	 */
+	protected HashMap<String,String> selectFields(HashMap<String,String> row, List<String> fields) {
+		HashMap<String,String> resultMap = new HashMap<>();
+		for (String field : fields) {
+			String v = row.get(field);
+			if(v == null) continue;
+			if(v.contains("|"))
+				v = v.replaceAll("\\|","&");
+			resultMap.put(field, v);
+		}
+		return resultMap;
+	}
+
+	private static String cacheKey(String tableName, String rowKey) {
+		return tableName + "\t" + rowKey;
+	}
+
+	private LinkedHashMap<String, HashMap<String,String>> getRowCache() {
+		if (rowCache == null) {
+			rowCache = new LinkedHashMap<String, HashMap<String,String>>(1024, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Entry<String, HashMap<String,String>> eldest) {
+					return size() > ROW_CACHE_SIZE;
+				}
+			};
+		}
+		return rowCache;
+	}
+
 	/**
 	 * 对含多个变异的结果进行分割
 	 */
@@ -41,4 +41,8 @@ public class GeneDBQuery extends DBQuery {
 		return results.get(ac.getGeneName());
 	}
 
+	@Override
+	boolean prefetchable() {
+		return false;
+	}
 }
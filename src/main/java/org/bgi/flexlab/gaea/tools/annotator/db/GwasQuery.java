@@ -27,17 +27,18 @@ public class GwasQuery extends DBQuery {
 	public Results query(Condition condition)throws IOException{
 		Results results = new Results();
 
-		HashMap<String,String> result = dbAdapter.getResult(condition.getRefTable().getIndexTable(), condition.getConditionString());
+		HashMap<String,String> result = getRow(condition.getRefTable().getIndexTable(), condition.getConditionString());
 		if (result ==null || result.isEmpty()) return null;
 		String keyStr = result.get(condition.getRefTable().getKey());
 		String[] keys = keyStr.split(",");
 		for (String key : keys) {
-			HashMap<String,String> annoResult = dbAdapter.getResult(condition.getRefTable().getTable(), key, condition.getFields());
+			HashMap<String,String> row = getRow(condition.getRefTable().getTable(), key);
 			
-			if (annoResult ==null || annoResult.isEmpty()){
+			if (row ==null || row.isEmpty()){
 				System.err.println("Cann't find value from table:"+condition.getRefTable().getTable()+". Key:"+key);
 				return null;
 			}
+			HashMap<String,String> annoResult = selectFields(row, condition.getFields());
 			
 			for (String alt : condition.getAlts()) {
 				results.add(alt, annoResult);
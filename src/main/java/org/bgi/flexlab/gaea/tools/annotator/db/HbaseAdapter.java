@@ -26,6 +26,8 @@ import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.util.Bytes;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -60,13 +62,45 @@ public class HbaseAdapter extends DBAdapter {
 
     @Override
 	public HashMap<String, String> getResult(String tableName, String rowKey) throws IOException {
-		Get get = new Get(Bytes.toBytes(rowKey));
-		get.addFamily(Bytes.toBytes(getColumnFamily()));
 		Table table = conn.getTable(TableName.valueOf(tableName));
-		if (!table.exists(get))
+		Result result = table.get(createGet(rowKey));
+		table.close();
+		if (result.isEmpty())
 			return null;
-		Result result = table.get(get);
+		return toResultMap(result);
+	}
+
+	/**
+	 * one multi-get for all row keys instead of an exists and a get per key
+	 */
+	@Override
+	public Map<String, HashMap<String, String>> getResults(String tableName,
+			Collection<String> rowKeys) throws IOException {
+		List<String> keys = new ArrayList<>(rowKeys);
+		List<Get> gets = new ArrayList<>(keys.size());
+		for (String rowKey : keys)
+			gets.add(createGet(rowKey));
 
+		Table table = conn.getTable(TableName.valueOf(tableName));
+		Result[] results = table.get(gets);
+		table.close();
+
+		Map<String, HashMap<String, String>> resultMaps = new HashMap<>();
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == null || results[i].isEmpty())
+				continue;
+			resultMaps.put(keys.get(i), toResultMap(results[i]));
+		}
+		return resultMaps;
+	}
+
+	private Get createGet(String rowKey) {
+		Get get = new Get(Bytes.toBytes(rowKey));
+		get.addFamily(Bytes.toBytes(getColumnFamily()));
+		return get;
+	}
+
+	private HashMap<String, String> toResultMap(Result result) {
 		HashMap<String,String> resultMap = new HashMap<>();
 		for  (Cell cell : result.rawCells()) {
 			String key = Bytes.toString(CellUtil.cloneQualifier(cell));
@@ -80,11 +114,10 @@ public class HbaseAdapter extends DBAdapter {
 			String rowKey, List<String> fields) throws IOException{
 		HashMap<String,String> resultMap = new HashMap<>();
 		Table table = conn.getTable(TableName.valueOf(tableName));
-		Get get = new Get(Bytes.toBytes(rowKey));
-		get.addFamily(Bytes.toBytes(getColumnFamily()));
-		if (!table.exists(get))
+		Result result = table.get(createGet(rowKey));
+		table.close();
+		if (result.isEmpty())
 			return null;
-		Result result = table.get(get);
 		for (String field : fields) {
 			byte[] value = result.getValue(Bytes.toBytes(getColumnFamily()), Bytes.toBytes(field));
 			if(value == null) continue;
@@ -42,4 +42,9 @@ public class MybedQuery extends DBQuery {
 		dbAdapter = DBAdapterFactory.createDbAdapter(dbType, connInfo);
 		dbAdapter.connection(tableName);
 	}
+
+	@Override
+	boolean prefetchable() {
+		return false;
+	}
 }
@@ -84,51 +84,11 @@ public class TSVAdapter extends DBAdapter {
         HashMap<String,String> resultMap = new HashMap<>();
         if(tableName.contains("vcf"))//查找索引
         {
-            String chr = rowKey.split("-")[0];
-            long posSearch = Long.valueOf(rowKey.split("-")[1]);
-            if(!fileIndexChr.containsKey(chr))
+            if(!fileIndexChr.containsKey(rowKey.split("-")[0]))
                 return null;
-            if(!fileIndexPos.containsKey(chr))
-            {
-                //pos索引
-                indexReader = new BufferedRandomAccessFile(filePath + "/" + tableName + "-pos.idx", "r");
-
-                indexReader.seek(fileIndexChr.get(chr).first);
-
-                Long count = fileIndexChr.get(chr).second;
-                ArrayList<Pair<Long, Long>> arr = new ArrayList<Pair<Long, Long>>();
-                String line = null;
-
-                while( count>0 && (line = indexReader.readLine()) != null) {
-                    String[] values = line.split("\t");
-                    arr.add(new Pair<>(Long.valueOf(values[0]), Long.valueOf(values[1])));
-                    count --;
-                }
-                fileIndexPos.put(chr ,arr);
-                indexReader.close();
-            }
-            ArrayList<Pair<Long, Long>> array = fileIndexPos.get(chr);
-            int i = 0;
-            int j = array.size() - 1;
             String value = null;
-            long posMin = array.get(i).first;
-            long posMax = array.get(j).first;
-            long offset = -1;
-            //二分查找确定索引范围，再遍历找到索引
-            if(posSearch <=  posMax && posSearch >=posMin) {
-                while (i <= j) {
-                    int mid = (i + j) / 2;
-                    long pos = array.get(mid).first;
-                    if (pos == posSearch) {
-                        offset = array.get(mid).second;
-                        break;
-                    } else if (pos < posSearch)
-                        i = mid + 1;
-                    else//(pos > posSearch)
-                        j = mid - 1;
-                }
-                if(offset<0)
-                    offset = array.get(j).second;
+            long offset = getIndexOffset(tableName, rowKey);
+            if(offset >= 0) {
                 indexReader = new BufferedRandomAccessFile(filePath + "/" + tableName  + ".idx", "r");
                 indexReader.seek(offset);
                 String line = null;
@@ -139,13 +99,13 @@ public class TSVAdapter extends DBAdapter {
                         value = line.split("\t")[1];
                     }
                 }
+                indexReader.close();
             }
 
             if(value != null) {
                 System.out.println(rowKey + " " + value);
                 resultMap.put(rowKey, value);
             }
-            indexReader.close();
         }
         else if(tableName.contains("data"))//查找数据
         {
@@ -168,4 +128,114 @@ public class TSVAdapter extends DBAdapter {
 
         return resultMap;
     }
+
+    /**
+     * 读取chr的pos索引，每条染色体只读取一次
+     */
+    private ArrayList<Pair<Long, Long>> getPosIndex(String tableName, String chr) throws IOException {
+        if(!fileIndexPos.containsKey(chr))
+        {
+            //pos索引
+            indexReader = new BufferedRandomAccessFile(filePath + "/" + tableName + "-pos.idx", "r");
+
+            indexReader.seek(fileIndexChr.get(chr).first);
+
+            Long count = fileIndexChr.get(chr).second;
+            ArrayList<Pair<Long, Long>> arr = new ArrayList<Pair<Long, Long>>();
+            String line = null;
+
+            while( count>0 && (line = indexReader.readLine()) != null) {
+                String[] values = line.split("\t");
+                arr.add(new Pair<>(Long.valueOf(values[0]), Long.valueOf(values[1])));
+                count --;
+            }
+            fileIndexPos.put(chr ,arr);
+            indexReader.close();
+        }
+        return fileIndexPos.get(chr);
+    }
+
+    /**
+     * 二分查找pos索引，返回rowKey所在的numK行索引块在idx文件中的偏移量，找不到时返回-1
+     */
+    private long getIndexOffset(String tableName, String rowKey) throws IOException {
+        String chr = rowKey.split("-")[0];
+        long posSearch = Long.valueOf(rowKey.split("-")[1]);
+        if(!fileIndexChr.containsKey(chr))
+            return -1;
+        ArrayList<Pair<Long, Long>> array = getPosIndex(tableName, chr);
+        int i = 0;
+        int j = array.size() - 1;
+        long posMin = array.get(i).first;
+        long posMax = array.get(j).first;
+        if(posSearch > posMax || posSearch < posMin)
+            return -1;
+        //二分查找确定索引范围
+        while (i <= j) {
+            int mid = (i + j) / 2;
+            long pos = array.get(mid).first;
+            if (pos == posSearch)
+                return array.get(mid).second;
+            else if (pos < posSearch)
+                i = mid + 1;
+            else//(pos > posSearch)
+                j = mid - 1;
+        }
+        return array.get(j).second;
+    }
+
+    /**
+     * 按文件中的顺序查询，数据表按偏移量排序；索引表按chr在chr索引中的顺序(即参考序列顺序)和pos排序，
+     * 只打开一次idx文件，顺序向后读取索引块，相邻rowKey在同一个索引块中时不重复读取
+     */
+    @Override
+    public Map<String, HashMap<String, String>> getResults(String tableName,
+                                                           Collection<String> rowKeys) throws IOException {
+        List<String> keys = new ArrayList<>(rowKeys);
+        if(!tableName.contains("vcf")) {
+            keys.sort(Comparator.comparingLong(Long::valueOf));
+            return super.getResults(tableName, keys);
+        }
+
+        keys.removeIf(key -> !fileIndexChr.containsKey(key.split("-")[0]));
+        keys.sort(Comparator.comparingLong((String key) -> fileIndexChr.get(key.split("-")[0]).first)
+                .thenComparingLong(key -> Long.valueOf(key.split("-")[1])));
+
+        Map<String, HashMap<String, String>> results = new HashMap<>();
+        if(keys.isEmpty())
+            return results;
+
+        BufferedRandomAccessFile reader = new BufferedRandomAccessFile(filePath + "/" + tableName + ".idx", "r");
+        try {
+            long blockOffset = -1;
+            List<String> block = new ArrayList<>();
+            for(String rowKey : keys) {
+                long offset = getIndexOffset(tableName, rowKey);
+                if(offset < 0)
+                    continue;
+                if(offset != blockOffset) {
+                    reader.seek(offset);
+                    block.clear();
+                    String line = null;
+                    for(int k = 0; k < numK && (line = reader.readLine()) != null; k ++)
+                        block.add(line);
+                    blockOffset = offset;
+                }
+
+                String value = null;
+                for(String line : block) {
+                    if(line.startsWith(rowKey))
+                        value = line.split("\t")[1];
+                }
+                if(value != null) {
+                    HashMap<String, String> result = new HashMap<>();
+                    result.put(rowKey, value);
+                    results.put(rowKey, result);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return results;
+    }
 }
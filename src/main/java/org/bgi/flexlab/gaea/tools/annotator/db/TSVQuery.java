@@ -19,6 +19,8 @@ package org.bgi.flexlab.gaea.tools.annotator.db;
 import org.bgi.flexlab.gaea.tools.annotator.config.DatabaseInfo;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -26,6 +28,8 @@ public class TSVQuery extends DBQuery {
 
 	private static final long serialVersionUID = 805441802476012341L;
 
+	private static final String DATA_TABLE = "data";
+
 	/**
 	 * 根据condition查询数据库
 	 * @param condition
@@ -36,7 +40,7 @@ public class TSVQuery extends DBQuery {
 		List<String> fields = condition.getFields();
 		Results results = new Results();
 
-		HashMap<String,String> result = dbAdapter.getResult(condition.getRefTable().getIndexTable(), condition.getConditionString());
+		HashMap<String,String> result = getRow(condition.getRefTable().getIndexTable(), condition.getConditionString());
 		if (result ==null || result.isEmpty()) return null;
 		List<String> alts = condition.getAlts();
 
@@ -44,18 +48,18 @@ public class TSVQuery extends DBQuery {
 
 		String[] keys = keyStr.split(",");
 		for (String key : keys) {
-			result = dbAdapter.getResult("data", key);
-
-			HashMap<String,String> annoResult = new HashMap<>();
-			for (String field : fields) {
-				annoResult.put(field, result.get(field));
-			}
+			result = getRow(DATA_TABLE, key);
 
 			if (result ==null || result.isEmpty()){
 				System.err.println("Cann't find value from table:"+condition.getRefTable().getTable()+". Key:"+key);
 				return null;
 			}
 
+			HashMap<String,String> annoResult = new HashMap<>();
+			for (String field : fields) {
+				annoResult.put(field, result.get(field));
+			}
+
 			String resultAltStr = result.get("ALT");
 			if (resultAltStr == null) {
 				System.err.println("Alt is null:"+condition.getRefTable().getTable()+". Key:"+key);
@@ -82,6 +86,18 @@ public class TSVQuery extends DBQuery {
 		return results;
 	}
 
+	@Override
+	protected List<String> dataKeys(Condition condition, String indexKey, HashMap<String,String> indexRow) {
+		String keyStr = indexRow.get(indexKey);
+		if (keyStr == null) return Collections.emptyList();
+		return Arrays.asList(keyStr.split(","));
+	}
+
+	@Override
+	protected String dataTable(Condition condition) {
+		return DATA_TABLE;
+	}
+
 	public void connection(String dbName, DatabaseInfo.DbType dbType, String connInfo) throws IOException{
 		dbAdapter = DBAdapterFactory.createDbAdapter(dbType, connInfo);
 		dbAdapter.connection(dbName);
@@ -62,4 +62,9 @@ public class VCFQuery extends DBQuery {
 		dbAdapter = DBAdapterFactory.createDbAdapter(dbType, connInfo);
 		dbAdapter.connection(dbName);
 	}
+
+	@Override
+	boolean prefetchable() {
+		return false;
+	}
 }
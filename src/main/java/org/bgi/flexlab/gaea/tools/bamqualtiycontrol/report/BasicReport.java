@@ -27,6 +27,7 @@ import org.bgi.flexlab.gaea.tools.bamqualtiycontrol.counter.Tracker;
 import org.bgi.flexlab.gaea.tools.bamqualtiycontrol.counter.Tracker.BaseTracker;
 import org.bgi.flexlab.gaea.tools.bamqualtiycontrol.counter.Tracker.ReadsTracker;
 import org.bgi.flexlab.gaea.util.SamRecordDatum;
+import org.bgi.flexlab.gaea.util.SystemConfiguration;
 
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
@@ -70,12 +71,11 @@ public class BasicReport{
 			rTracker.setTrackerAttribute(ReadType.PE);
 		}
 			
-		String cigar = datum.getCigarString();
-		if (cigar.contains("S") || cigar.contains("H")) {
+		if (datum.hasCigarOperator(SystemConfiguration.BAM_CSOFT_CLIP, SystemConfiguration.BAM_CHARD_CLIP)) {
 			rTracker.setTrackerAttribute(ReadType.CLIPPED);
 		}
 		
-		if (cigar.contains("D") || cigar.contains("I")) {
+		if (datum.hasCigarOperator(SystemConfiguration.BAM_CDEL, SystemConfiguration.BAM_CINS)) {
 			rTracker.setTrackerAttribute(ReadType.INDEL);
 		}
 			
@@ -23,8 +23,8 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.bgi.flexlab.gaea.data.structure.region.RegionIndex;
 import org.bgi.flexlab.gaea.data.structure.region.SingleRegion;
-import org.bgi.flexlab.gaea.data.structure.region.SingleRegion.Regiondata;
 import org.bgi.flexlab.gaea.tools.mapreduce.bamqualitycontrol.BamQualityControlOptions;
 
 import java.io.IOException;
@@ -33,41 +33,18 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class CNVDepthReport {
-	private static Map<String, Map<Integer, Integer>> bedIndex = null;
+	/**
+	 * depth slot of a position is twice its rank among the covered positions
+	 * of the chromosome
+	 */
+	private static RegionIndex bedIndex = null;
 	private LaneDepth2[] depths;
 	private int currentLaneID;
 	private String currentChrName;
 	
 	public CNVDepthReport(int laneSize, SingleRegion region) {
 		if(bedIndex == null) {
-			bedIndex = new HashMap<String, Map<Integer,Integer>>();
-
-			for(Regiondata data : region.getRegions()) {
-				Map<Integer,Integer> bedRegionIndex;
-				int index;
-				int start = data.getStart();
-				int end = data.getEnd();
-				if(bedIndex.containsKey(data.getChrName())) {
-					bedRegionIndex = bedIndex.get(data.getChrName());
-					index = bedIndex.get(data.getChrName()).size() * 2;
-					for(int pos = start; pos <= end; pos++) {
-						if(!bedRegionIndex.containsKey(pos)) {
-							bedRegionIndex.put(pos, index);
-							index += 2;
-						}
-					}
-				} else {
-					bedRegionIndex = new HashMap<Integer, Integer>();
-					index = 0;
-					for(int pos = start; pos <= end; pos++) {
-						if(!bedRegionIndex.containsKey(pos)) {
-							bedRegionIndex.put(pos, index);
-							index += 2;
-						}
-					}
-					bedIndex.put(data.getChrName(), bedRegionIndex);
-				}
-			}
+			bedIndex = region.getIndex();
 		}
 		
 		depths = new LaneDepth2[laneSize];
@@ -169,15 +146,15 @@ public class CNVDepthReport {
 		private Map<String, WrappedIntArray> laneDepth = new HashMap<String, WrappedIntArray>();
 		
 		public LaneDepth2() {
-			for(String chrName : bedIndex.keySet()) {
-				WrappedIntArray depth = new WrappedIntArray(bedIndex.get(chrName).size() * 2);
+			for(String chrName : bedIndex.getChrNames()) {
+				WrappedIntArray depth = new WrappedIntArray((int) bedIndex.getCoveredLength(chrName) * 2);
 				
 				laneDepth.put(chrName, depth);
 			}
 		}
 		
 		public void add(String chrName, int position, int depth) {
-			int index = bedIndex.get(chrName).get(position);
+			int index = (int) bedIndex.rank(chrName, position) * 2;
 			if(index < 0) {
 				throw new RuntimeException("index < 0 when index position of CNV depth.");
 			}
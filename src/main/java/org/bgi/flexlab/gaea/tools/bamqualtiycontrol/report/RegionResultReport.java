@@ -134,7 +134,7 @@ public class RegionResultReport extends ResultReport{
 			if(options.isOutputUnmapped() && depth != 0 )
 				unmappedReport.updateUnmappedSites(pos, unmappedReport.getUnmappedSites(chrName));
 		}
-		if(options.isCnvDepth() && cnvRegion.posInRegion(chrName, (int) (pos)) != -1) {
+		if(options.isCnvDepth() && cnvRegion.getIndex().contains(chrName, pos)) {
 			cnvDepthReport.add(chrName, (int)pos, pd.getLaneDepth(i));
 		}
 		
@@ -19,6 +19,7 @@ package org.bgi.flexlab.gaea.tools.bamqualtiycontrol.report;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer.Context;
 import org.apache.hadoop.util.LineReader;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordDatumWritable;
 import org.bgi.flexlab.gaea.data.structure.positioninformation.depth.PositionDepth;
 import org.bgi.flexlab.gaea.data.structure.reference.ReferenceShare;
 import org.bgi.flexlab.gaea.util.SamRecordDatum;
@@ -47,7 +48,7 @@ public class ReportBuilder {
 			((RegionResultReport) report).initReports(sampleName);
 	}
 	
-	public boolean unmappedReport(long winNum, String chrName, Iterable<Text> values) {
+	public boolean unmappedReport(long winNum, String chrName, Iterable<SamRecordDatumWritable> values) {
 		return report.unmappedReport(winNum, chrName, values);
 	}
 	
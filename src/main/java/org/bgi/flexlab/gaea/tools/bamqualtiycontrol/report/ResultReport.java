@@ -25,6 +25,7 @@ import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.io.compress.CompressionOutputStream;
 import org.apache.hadoop.mapreduce.Reducer.Context;
 import org.apache.hadoop.util.LineReader;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordDatumWritable;
 import org.bgi.flexlab.gaea.data.structure.positioninformation.depth.PositionDepth;
 import org.bgi.flexlab.gaea.data.structure.reference.ReferenceShare;
 import org.bgi.flexlab.gaea.data.structure.region.SingleRegion;
@@ -93,7 +94,7 @@ public abstract class ResultReport {
 		Arrays.fill(insertSizeWithoutDup, 0);
 	}
 	
-	public boolean unmappedReport(long winNum, String chrName, Iterable<Text> values) {
+	public boolean unmappedReport(long winNum, String chrName, Iterable<SamRecordDatumWritable> values) {
 		return unmappedReport.constructMapReport(winNum, chrName, values, basicReport);
 	}
 	
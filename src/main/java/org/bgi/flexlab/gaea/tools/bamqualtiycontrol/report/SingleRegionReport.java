@@ -60,15 +60,7 @@ public class SingleRegionReport {
 		else
 			deep = dp.getNormalPosDepth();
 
-		int i = start;
-		while(i <= end) {
-			if((index = singleReigon.posInRegion(chrName, i + winStart)) >= 0) {
-				break;
-			}
-			else {
-				i++;
-			}
-		}
+		index = singleReigon.firstRegionInWindow(chrName, start + winStart, end + winStart);
 
 		if(index >= 0) {
 			while(withinChrAndBin(index, winStart, windowSize, chrName)) {
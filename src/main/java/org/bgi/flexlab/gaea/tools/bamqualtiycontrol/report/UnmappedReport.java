@@ -16,7 +16,7 @@
  *******************************************************************************/
 package org.bgi.flexlab.gaea.tools.bamqualtiycontrol.report;
 
-import org.apache.hadoop.io.Text;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordDatumWritable;
 import org.bgi.flexlab.gaea.tools.bamqualtiycontrol.counter.CounterProperty.ReadType;
 
 import java.util.ArrayList;
@@ -63,9 +63,9 @@ public class UnmappedReport {
 		return unmappedSites.get(chrName);
 	}
 	
-	public boolean constructMapReport(long winNum, String chrName, Iterable<Text> values, BasicReport basicReport) {
+	public boolean constructMapReport(long winNum, String chrName, Iterable<SamRecordDatumWritable> values, BasicReport basicReport) {
 		if(winNum < 0 || chrName.equals("-1")) {//unmapped
-			Iterator<Text> vals = values.iterator();
+			Iterator<SamRecordDatumWritable> vals = values.iterator();
 			while (vals.hasNext()) {
 				basicReport.getReadsTracker().setTrackerAttribute(ReadType.TOTALREADS);
 				vals.next();
@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +48,11 @@ public class BuildConnection {
 	 */
 	private Map<String, Reads> readInfoMap;
 	
+	/**
+	 * Map集合，key是染色体，value是这条染色体上所有map任务合并后的统计信息
+	 */
+	private Map<String, ChrStatistic> chrStatMap;
+	
 	private BufferedReader br ;
 	private FileSystem fs ;
 	
@@ -315,7 +321,17 @@ public class BuildConnection {
 			aprs.add(f);
 		}
 		
-		ref_length = max_pos - min_pos + 1;
+		/**
+		 * reducer只收到染色体上一个bin的reads，ref_length和indel_num按整条染色体的统计信息计算
+		 */
+		ChrStatistic stat = chrStatMap == null ? null : chrStatMap.get(key.getChr());
+		if(stat != null) {
+			d = Math.max(Math.min(100000000, mean - stat.getMaxReadLen()*2), 50);
+			ref_length = stat.getMaxEnd() - stat.getMinStart() + 1;
+			indel_num = stat.getIndelNum(upper, lower);
+		}else {
+			ref_length = max_pos - min_pos + 1;
+		}
 		if(indel_num == 0 || ref_length == 0) {
 			dist = d;
 		}else {
@@ -458,6 +474,47 @@ public class BuildConnection {
 	}
 	
 	
+	/**
+	 * 读取map任务输出的每条染色体的统计信息，并按染色体合并
+	 */
+	public void setChrStatistic() {
+		chrStatMap = readChrStatFile(options.getHdfsdir() + "/Sort/ChrConf/");
+	}
+	
+	
+	private Map<String, ChrStatistic> readChrStatFile(String chrconftxt){
+		br = null; fs = null;
+		
+		Map<String, ChrStatistic> map = new HashMap<String, ChrStatistic>();
+		
+		try {
+			fs = FileSystem.get(this.conf);
+			FileStatus[] flist = fs.listStatus(new Path(chrconftxt));
+			
+			for(FileStatus file : flist) {
+				
+				FSDataInputStream fsopen = fs.open(file.getPath());
+				br = new BufferedReader(new InputStreamReader(fsopen));
+				
+				String line = null;
+				while((line = br.readLine())!= null) {
+					String[] lines = line.split("\\t", -1);
+					
+					ChrStatistic stat = new ChrStatistic(lines);
+					if(map.containsKey(lines[0]))
+						map.get(lines[0]).merge(stat);
+					else
+						map.put(lines[0], stat);
+				}
+				br.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("read chromosome statistic failed: " + chrconftxt, e);
+		}
+		return map;
+	}
+	
+	
 	private Map<Integer, Integer> readInsertFile(String libconftxt){
 		br = null; fs = null;
 		
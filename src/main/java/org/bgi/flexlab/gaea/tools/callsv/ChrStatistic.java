@@ -0,0 +1,116 @@
+package org.bgi.flexlab.gaea.tools.callsv;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ChrStatistic类，保存一条染色体上所有APRs候选reads的统计信息<br>
+ * reducer只处理染色体上的一个bin，dist和ref_length仍按整条染色体计算
+ *
+ */
+public class ChrStatistic {
+
+	private int minStart;
+	private int maxEnd;
+	private int maxReadLen;
+	/**
+	 * FR类型reads的insert size分布，key是insert size，value是reads数目
+	 */
+	private Map<Integer, Integer> frInsert;
+
+	public ChrStatistic() {
+		this.minStart = Integer.MAX_VALUE;
+		this.maxEnd = 0;
+		this.maxReadLen = 0;
+		this.frInsert = new TreeMap<Integer, Integer>();
+	}
+
+	/**
+	 * 用一行中间文件（chr minStart maxEnd maxReadLen insert:num,...）初始化
+	 * @param lines 按\t切分后的一行
+	 */
+	public ChrStatistic(String[] lines) {
+		this.minStart = Integer.parseInt(lines[1]);
+		this.maxEnd = Integer.parseInt(lines[2]);
+		this.maxReadLen = Integer.parseInt(lines[3]);
+		this.frInsert = new TreeMap<Integer, Integer>();
+		if(lines.length > 4 && !lines[4].isEmpty()) {
+			for(String ins : lines[4].split(",")) {
+				String[] insNum = ins.split(":");
+				addInsert(Integer.parseInt(insNum[0]), Integer.parseInt(insNum[1]));
+			}
+		}
+	}
+
+	public int getMinStart() {
+		return minStart;
+	}
+
+	public int getMaxEnd() {
+		return maxEnd;
+	}
+
+	public int getMaxReadLen() {
+		return maxReadLen;
+	}
+
+	public Map<Integer, Integer> getFrInsert() {
+		return frInsert;
+	}
+
+	/**
+	 * 用一条输出到reducer的reads更新统计信息
+	 * @param r 一条reads的比对信息
+	 */
+	public void update(SamWritable r) {
+		minStart = Math.min(minStart, r.getStart());
+		maxEnd = Math.max(maxEnd, r.getEnd());
+		maxReadLen = Math.max(maxReadLen, r.getReadLen());
+		if(r.getType().equals("FR"))
+			addInsert(r.getInsert(), 1);
+	}
+
+	/**
+	 * 合并另一个map任务的统计信息
+	 * @param s 同一条染色体的统计信息
+	 */
+	public void merge(ChrStatistic s) {
+		minStart = Math.min(minStart, s.minStart);
+		maxEnd = Math.max(maxEnd, s.maxEnd);
+		maxReadLen = Math.max(maxReadLen, s.maxReadLen);
+		for(Map.Entry<Integer, Integer> entry : s.frInsert.entrySet()) {
+			addInsert(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void addInsert(int insert, int num) {
+		Integer pnum = frInsert.get(insert);
+		frInsert.put(insert, pnum == null ? num : pnum + num);
+	}
+
+	/**
+	 * 计算insert size大于upper或者小于lower的FR reads数目，即DEL和INS的reads数目
+	 */
+	public int getIndelNum(float upper, float lower) {
+		int indelNum = 0;
+		for(Map.Entry<Integer, Integer> entry : frInsert.entrySet()) {
+			if(entry.getKey() > upper || entry.getKey() < lower)
+				indelNum += entry.getValue();
+		}
+		return indelNum;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(minStart + "\t" + maxEnd + "\t" + maxReadLen + "\t");
+		boolean first = true;
+		for(Map.Entry<Integer, Integer> entry : frInsert.entrySet()) {
+			if(!first)
+				sb.append(",");
+			sb.append(entry.getKey() + ":" + entry.getValue());
+			first = false;
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,71 @@
+package org.bgi.flexlab.gaea.tools.callsv;
+
+import org.bgi.flexlab.gaea.tools.mapreduce.callsv.CallStructuralVariationOptions;
+
+/**
+ * GenomeBins类，将染色体划分为相互重叠的bin<br>
+ * bin k的核心区域是[k*binSize, (k+1)*binSize)，两侧各向外延伸overlap，
+ * overlap大于最大SV大小，因此一对APRs总能在同一个bin中相连。
+ * 只有第一个区域起点落在核心区域中的SV由这个bin输出，重叠区域中重复的SV被去掉
+ *
+ */
+public class GenomeBins {
+
+	/**
+	 * 区域延伸的余量，避免区域在bin的边界处被截断
+	 */
+	private final static int REGION_FLANK = 100000;
+
+	private int binSize;
+
+	private int overlap;
+
+	public GenomeBins(CallStructuralVariationOptions option) {
+		this(option.getBinsize(), option.getMaxsvsize());
+	}
+
+	/**
+	 * @param binSize bin核心区域的长度
+	 * @param maxSvSize 最大SV大小
+	 */
+	GenomeBins(int binSize, int maxSvSize) {
+		this.binSize = binSize;
+		this.overlap = maxSvSize + REGION_FLANK;
+	}
+
+	/**
+	 * binSize为0时不划分，每条染色体只有一个bin
+	 */
+	public boolean isWholeChromosome() {
+		return binSize <= 0;
+	}
+
+	/**
+	 * @param pos 比对上的位置
+	 * @return 包含pos的第一个bin
+	 */
+	public int getFirstBin(int pos) {
+		if(isWholeChromosome())
+			return 0;
+		return Math.max(0, Math.floorDiv(pos - overlap, binSize));
+	}
+
+	/**
+	 * @param pos 比对上的位置
+	 * @return 包含pos的最后一个bin
+	 */
+	public int getLastBin(int pos) {
+		if(isWholeChromosome())
+			return 0;
+		return Math.floorDiv(pos + overlap, binSize);
+	}
+
+	/**
+	 * 判断pos是否在bin的核心区域中
+	 */
+	public boolean isInCore(int bin, int pos) {
+		if(isWholeChromosome())
+			return true;
+		return Math.floorDiv(pos, binSize) == bin;
+	}
+}
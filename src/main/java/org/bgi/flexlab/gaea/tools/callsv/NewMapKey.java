@@ -14,6 +14,10 @@ import org.apache.hadoop.io.WritableComparable;
 public class NewMapKey implements WritableComparable<NewMapKey>{
 	
 	private String chr;
+	/**
+	 * 染色体上的bin编号
+	 */
+	private int bin;
 	private int pos;
 	private int end;
 	
@@ -41,6 +45,14 @@ public class NewMapKey implements WritableComparable<NewMapKey>{
 		this.chr = chr;
 	}
 
+	public int getBin() {
+		return bin;
+	}
+
+	public void setBin(int bin) {
+		this.bin = bin;
+	}
+
 	public int getPos() {
 		return pos;
 	}
@@ -59,26 +71,30 @@ public class NewMapKey implements WritableComparable<NewMapKey>{
 
 	public void readFields(DataInput in) throws IOException {
 		this.chr = in.readUTF();
+		this.bin = in.readInt();
 		this.pos = in.readInt();
 		this.end = in.readInt();
 	}
 
 	public void write(DataOutput out) throws IOException {
 		out.writeUTF(chr);
+		out.writeInt(bin);
 		out.writeInt(pos);
 		out.writeInt(end);
 	}
 	
 	@Override
 	public String toString() {
-		return this.chr + "\t" + this.pos + "\t" + this.end;
+		return this.chr + "\t" + this.bin + "\t" + this.pos + "\t" + this.end;
 	}
 
 	/**
-	 * 重写了compareTo（）方法，只比较chr
+	 * 重写了compareTo（）方法，依次比较chr，bin，pos和end
 	 */
 	public int compareTo(NewMapKey o) {
 		int num = o.getChr().compareTo(this.getChr());
+		if(num==0 && this.bin != o.bin)
+			return this.bin < o.bin ? -1 : 1;
 		if(num==0) {
 			int npos = this.pos - o.pos;
 			if(npos == 0) 
@@ -90,7 +106,7 @@ public class NewMapKey implements WritableComparable<NewMapKey>{
 
 	@Override
 	public int hashCode() {
-		return chr.hashCode();
+		return chr.hashCode() * 31 + bin;
 	}
 
 	@Override
@@ -98,7 +114,7 @@ public class NewMapKey implements WritableComparable<NewMapKey>{
 		if(!(obj instanceof NewMapKey))
 			throw new ClassCastException("Can not cast to NewMapKey class!");
 		NewMapKey n = (NewMapKey) obj;
-		 return this.chr.equals(n.chr) && this.pos==n.pos && this.end==n.end;
+		 return this.chr.equals(n.chr) && this.bin==n.bin && this.pos==n.pos && this.end==n.end;
 	}
 
 	
@@ -5,9 +5,16 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
@@ -106,6 +113,13 @@ public class HaplotypeCallerTraversal {
 
 	private boolean doNotRunPhysicalPhasing = false;
 
+	// threads to call assembly regions, every thread takes an engine from workerEngines
+	private int regionThreads = 1;
+
+	private ExecutorService regionExecutor = null;
+
+	private BlockingQueue<HaplotypeCallerEngine> workerEngines = null;
+
 	public HaplotypeCallerTraversal(RegionHdfsParser region, HaplotypeCallerOptions options, SAMFileHeader header) {
 		this.options = options;
 		this.region = region;
@@ -114,6 +128,21 @@ public class HaplotypeCallerTraversal {
 		hcEngine = new HaplotypeCallerEngine(hcArgs, header);
 		setHeader();
 		maxReadsPerAlignmentStart = options.getMaxReadsPerPosition();
+		regionThreads = options.getRegionThreads();
+		// haplotype bam writer can't be shared by engines
+		if (regionThreads > 1 && hcArgs.bamOutputPath == null)
+			initializeWorkers();
+	}
+
+	private void initializeWorkers() {
+		workerEngines = new ArrayBlockingQueue<HaplotypeCallerEngine>(regionThreads);
+		for (int i = 0; i < regionThreads; i++)
+			workerEngines.add(new HaplotypeCallerEngine(hcArgs, header));
+		regionExecutor = Executors.newFixedThreadPool(regionThreads, runnable -> {
+			Thread thread = new Thread(runnable, "assembly-region-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 
 	private void setHeader() {
@@ -183,6 +212,10 @@ public class HaplotypeCallerTraversal {
 		this.features = features;
 		hcArgs.dbsnp = features.getValues("DB");
 		hcEngine.initializeAnnotationEngine(hcArgs,ref);
+		if (workerEngines != null) {
+			for (HaplotypeCallerEngine engine : workerEngines)
+				engine.initializeAnnotationEngine(hcArgs, ref);
+		}
 		makeReadsShard(options.getReadShardSize(), options.getReadShardPadding(),win);
 	}
 
@@ -296,6 +329,11 @@ public class HaplotypeCallerTraversal {
 				hcEngine, minAssemblyRegionSize, maxAssemblyRegionSize, assemblyRegionPadding, activeProbThreshold,
 				maxProbPropagationDistance, options.getMaxReadsPerPosition(),true);
 
+		if (regionExecutor != null) {
+			processAssemblyRegions(assemblyRegionIter, features, writer, win);
+			return;
+		}
+
 		// Call into the tool implementation to process each assembly region
 		// from this shard.
 		while (assemblyRegionIter.hasNext()) {
@@ -303,10 +341,56 @@ public class HaplotypeCallerTraversal {
 			writeAssemblyRegion(assemblyRegion);
 			List<VariantContext> results = apply(assemblyRegion, features);
 			
-			for (VariantContext context : results) {
-				if(context.getStart() >= win.getStart() && context.getStart() <= win.getStop())
-					writer.write(context);
-			}
+			write(results, writer, win);
+		}
+	}
+
+	/**
+	 * regions are prepared in order on this thread, called by worker engines
+	 * and written in order, at most 2 * regionThreads regions are in flight
+	 */
+	private void processAssemblyRegions(final Iterator<AssemblyRegion> assemblyRegionIter,
+			final RefMetaDataTracker features, GaeaVariantContextWriter writer, Window win) {
+		final LinkedList<Future<List<VariantContext>>> results = new LinkedList<>();
+
+		while (assemblyRegionIter.hasNext()) {
+			final AssemblyRegion assemblyRegion = assemblyRegionIter.next();
+			writeAssemblyRegion(assemblyRegion);
+			hcEngine.prepareRegion(assemblyRegion, features);
+			results.add(regionExecutor.submit(() -> callRegion(assemblyRegion, features)));
+
+			while (results.size() > 2 * regionThreads || (!results.isEmpty() && results.peek().isDone()))
+				write(results.poll(), writer, win);
+		}
+
+		while (!results.isEmpty())
+			write(results.poll(), writer, win);
+	}
+
+	private List<VariantContext> callRegion(final AssemblyRegion region, final RefMetaDataTracker features)
+			throws InterruptedException {
+		final HaplotypeCallerEngine engine = workerEngines.take();
+		try {
+			return engine.callRegion(region, features);
+		} finally {
+			workerEngines.put(engine);
+		}
+	}
+
+	private void write(Future<List<VariantContext>> future, GaeaVariantContextWriter writer, Window win) {
+		try {
+			write(future.get(), writer, win);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e.toString());
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private void write(List<VariantContext> results, GaeaVariantContextWriter writer, Window win) {
+		for (VariantContext context : results) {
+			if(context.getStart() >= win.getStart() && context.getStart() <= win.getStop())
+				writer.write(context);
 		}
 	}
 
@@ -364,6 +448,11 @@ public class HaplotypeCallerTraversal {
 		this.shards.clear();
 	}
 	
+	public void close() {
+		if (regionExecutor != null)
+			regionExecutor.shutdownNow();
+	}
+	
 	public int getWindowReadsNumber() {
 		return this.readsSource.getReadsNumber();
 	}
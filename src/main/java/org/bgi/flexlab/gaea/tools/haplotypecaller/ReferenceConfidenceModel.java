@@ -253,7 +253,7 @@ public final class ReferenceConfidenceModel {
         return initializeIndelPLCache(ploidy)[nInformativeReads];
     }
 
-    private GenotypeLikelihoods[] initializeIndelPLCache(final int ploidy) {
+    private static synchronized GenotypeLikelihoods[] initializeIndelPLCache(final int ploidy) {
 
         if (indelPLCache.length <= ploidy) {
             indelPLCache = Arrays.copyOf(indelPLCache, ploidy << 1);
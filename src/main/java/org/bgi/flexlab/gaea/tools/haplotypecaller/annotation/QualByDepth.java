@@ -75,7 +75,7 @@ public final class QualByDepth extends InfoFieldAnnotation implements StandardAn
         double QD = qual / depth;
 
         // Hack: see note in the fixTooHighQD method below
-        QD = fixTooHighQD(QD);
+        QD = fixTooHighQD(QD, vc);
 
         return Collections.singletonMap(getKeyNames().get(0), String.format("%.2f", QD));
     }
@@ -97,6 +97,18 @@ public final class QualByDepth extends InfoFieldAnnotation implements StandardAn
         }
     }
 
+    /**
+     * same as fixTooHighQD(double), but the jitter is drawn from a generator seeded by the site of vc,
+     * so the value does not depend on which assembly regions were called before or on which thread
+     */
+    public static double fixTooHighQD(final double QD, final VariantContext vc) {
+        if ( QD < MAX_QD_BEFORE_FIXING ) {
+            return QD;
+        } else {
+            return IDEAL_HIGH_QD + GvcfMathUtils.getSiteRandomGenerator(vc.getContig(), vc.getStart()).nextGaussian() * JITTER_SIGMA;
+        }
+    }
+
     @Override
     public List<String> getKeyNames() { return Collections.singletonList(GaeaVCFConstants.QUAL_BY_DEPTH_KEY); }
 }
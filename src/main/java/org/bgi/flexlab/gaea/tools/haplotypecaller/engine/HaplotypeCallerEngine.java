@@ -707,6 +707,47 @@ public final class HaplotypeCallerEngine {
 				.anyMatch(Genotype::isCalled);
 	}
 
+	/**
+	 * Run the part of callRegion that changes reads in place. Reads are
+	 * shared with neighbouring regions, so regions prepared in traversal order
+	 * get the same reads as in serial calling. Reads of the region are then
+	 * replaced by copies, so the region can be called on another thread.
+	 */
+	public void prepareRegion(final AssemblyRegion region, final RefMetaDataTracker features) {
+		if (hcArgs.justDetermineActiveRegions) {
+			return;
+		}
+
+		if (hcArgs.sampleNameToUse != null) {
+			removeReadsFromAllSamplesExcept(hcArgs.sampleNameToUse, region);
+		}
+
+		boolean needsToBeFinalized = emitReferenceConfidence();
+		if (region.isActive()) {
+			if (hcArgs.genotypingOutputMode == GenotypingOutputMode.GENOTYPE_GIVEN_ALLELES) {
+				if (features.getValues(RefMetaDataTracker.ALLELE_VALUE).stream()
+						.anyMatch(VariantContext::isNotFiltered))
+					needsToBeFinalized = true;
+			} else if (region.size() != 0) {
+				needsToBeFinalized = true;
+			}
+		}
+		if (needsToBeFinalized) {
+			finalizeRegion(region);
+		}
+
+		final List<GaeaSamRecord> reads = new ArrayList<>(region.size());
+		for (final GaeaSamRecord read : region.getReads()) {
+			final GaeaSamRecord copy = read.copy();
+			if (read.getBaseQualities() != null) {
+				copy.setBaseQualities(read.getBaseQualities().clone());
+			}
+			reads.add(copy);
+		}
+		region.clearReads();
+		region.addAll(reads);
+	}
+
 	/**
 	 * Create an ref model result (ref model or no calls depending on mode) for an
 	 * active region without any variation (not is active, or assembled to just ref)
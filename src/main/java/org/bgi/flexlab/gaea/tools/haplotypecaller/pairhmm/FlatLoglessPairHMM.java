@@ -0,0 +1,252 @@
+package org.bgi.flexlab.gaea.tools.haplotypecaller.pairhmm;
+
+import static org.bgi.flexlab.gaea.tools.haplotypecaller.pairhmm.PairHMMModel.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.bgi.flexlab.gaea.data.structure.bam.GaeaSamRecord;
+import org.bgi.flexlab.gaea.tools.haplotypecaller.Haplotype;
+import org.bgi.flexlab.gaea.tools.haplotypecaller.LikelihoodMatrix;
+import org.bgi.flexlab.gaea.util.QualityUtils;
+
+/**
+ * Pure java version of LOGLESS_CACHING laid out for the JIT, selected with FLAT_LOGLESS_CACHING on hosts without the
+ * native AVX library.
+ *
+ * The three state matrices are single float arrays in row-major order (row stride paddedMaxHaplotypeLength), the
+ * per-read transition and prior values are unpacked into one float array per state, and each read row is computed in
+ * two passes: match and insertion only depend on the previous row so that loop has no carried dependency, while the
+ * deletion recurrence runs in a second scalar pass. Like the native implementation the float pass starts from 2^120
+ * and a read/haplotype pair whose probability falls below {@link #MIN_ACCEPTED} is recomputed with {@link LoglessPairHMM}.
+ *
+ * Haplotypes are scheduled in sorted order for every read, so haplotypes of the same length that share a prefix are
+ * adjacent and only the columns after the shared prefix are recomputed.
+ */
+public final class FlatLoglessPairHMM extends PairHMM {
+    static final float INITIAL_CONDITION = (float) Math.pow(2, 120);
+    static final double INITIAL_CONDITION_LOG10 = Math.log10(INITIAL_CONDITION);
+
+    // smallest scaled probability trusted from the float pass, same threshold as the native implementation
+    static final float MIN_ACCEPTED = 1e-28f;
+
+    static final Comparator<byte[]> HAPLOTYPE_ORDER = (a, b) -> {
+        if (a.length != b.length) {
+            return Integer.compare(a.length, b.length);
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return Byte.compare(a[i], b[i]);
+            }
+        }
+        return 0;
+    };
+
+    private float[] matchMatrix;
+    private float[] insertionMatrix;
+    private float[] deletionMatrix;
+
+    // per read row values, index 0 is unused as in the matrices
+    private float[] matchToMatchProb;
+    private float[] indelToMatchProb;
+    private float[] matchToInsertionProb;
+    private float[] insertionToInsertionProb;
+    private float[] matchToDeletionProb;
+    private float[] deletionToDeletionProb;
+    private float[] priorMatch;
+    private float[] priorMismatch;
+
+    private double[][] transition;
+
+    private final LoglessPairHMM doubleFallback = new LoglessPairHMM();
+
+    @Override
+    public void doNotUseTristateCorrection() {
+        doNotUseTristateCorrection = true;
+        doubleFallback.doNotUseTristateCorrection();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void initialize( final int readMaxLength, final int haplotypeMaxLength ) {
+        super.initialize(readMaxLength, haplotypeMaxLength);
+
+        final int size = paddedMaxReadLength * paddedMaxHaplotypeLength;
+        matchMatrix = new float[size];
+        insertionMatrix = new float[size];
+        deletionMatrix = new float[size];
+
+        matchToMatchProb = new float[paddedMaxReadLength];
+        indelToMatchProb = new float[paddedMaxReadLength];
+        matchToInsertionProb = new float[paddedMaxReadLength];
+        insertionToInsertionProb = new float[paddedMaxReadLength];
+        matchToDeletionProb = new float[paddedMaxReadLength];
+        deletionToDeletionProb = new float[paddedMaxReadLength];
+        priorMatch = new float[paddedMaxReadLength];
+        priorMismatch = new float[paddedMaxReadLength];
+
+        transition = PairHMMModel.createTransitionMatrix(maxReadLength);
+
+        doubleFallback.initialize(readMaxLength, haplotypeMaxLength);
+    }
+
+    /**
+     * Same as {@link PairHMM#computeLog10Likelihoods} but every read walks the haplotypes in sorted order and only
+     * recaches its own values on the first haplotype, so the shared haplotype prefix columns are reused.
+     */
+    @Override
+    public void computeLog10Likelihoods(final LikelihoodMatrix<Haplotype> logLikelihoods,
+                                      final List<GaeaSamRecord> processedReads,
+                                      final Map<GaeaSamRecord, byte[]> gcp) {
+        if (processedReads.isEmpty()) {
+            return;
+        }
+        if(doProfiling) {
+            startTime = System.nanoTime();
+        }
+        final List<Haplotype> alleles = logLikelihoods.alleles();
+        final int alleleCount = alleles.size();
+        final byte[][] alleleBases = new byte[alleleCount][];
+        int haplotypeMaxLength = 0;
+        for (int a = 0; a < alleleCount; a++) {
+            alleleBases[a] = alleles.get(a).getBases();
+            haplotypeMaxLength = Math.max(haplotypeMaxLength, alleleBases[a].length);
+        }
+        final int readMaxLength = findMaxReadLength(processedReads);
+        if (!initialized || readMaxLength > maxReadLength || haplotypeMaxLength > maxHaplotypeLength) {
+            initialize(readMaxLength, haplotypeMaxLength);
+        }
+
+        final Integer[] order = new Integer[alleleCount];
+        for (int a = 0; a < alleleCount; a++) {
+            order[a] = a;
+        }
+        Arrays.sort(order, (a, b) -> HAPLOTYPE_ORDER.compare(alleleBases[a], alleleBases[b]));
+
+        final int readCount = processedReads.size();
+        mLogLikelihoodArray = new double[readCount * alleleCount];
+        int readIndex = 0;
+        for(final GaeaSamRecord read : processedReads){
+            final byte[] readBases = read.getReadBases();
+            final byte[] readQuals = read.getBaseQualities();
+            final byte[] readInsQuals = read.getBaseInsertionQualities();
+            final byte[] readDelQuals = read.getBaseDeletionQualities();
+            final byte[] overallGCP = gcp.get(read);
+
+            for (int k = 0; k < alleleCount; k++) {
+                final int a = order[k];
+                final byte[] nextAlleleBases = k == alleleCount - 1 ? null : alleleBases[order[k + 1]];
+                final double lk = computeReadLikelihoodGivenHaplotypeLog10(alleleBases[a],
+                        readBases, readQuals, readInsQuals, readDelQuals, overallGCP, k == 0, nextAlleleBases);
+                logLikelihoods.set(a, readIndex, lk);
+                mLogLikelihoodArray[readIndex * alleleCount + a] = lk;
+            }
+            readIndex++;
+        }
+        if(doProfiling) {
+            threadLocalPairHMMComputeTimeDiff = (System.nanoTime() - startTime);
+            {
+                pairHMMComputeTime += threadLocalPairHMMComputeTimeDiff;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected double subComputeReadLikelihoodGivenHaplotypeLog10( final byte[] haplotypeBases,
+                                                                  final byte[] readBases,
+                                                                  final byte[] readQuals,
+                                                                  final byte[] insertionGOP,
+                                                                  final byte[] deletionGOP,
+                                                                  final byte[] overallGCP,
+                                                                  final int hapStartIndex,
+                                                                  final boolean recacheReadValues,
+                                                                  final int nextHapStartIndex) {
+        final int stride = paddedMaxHaplotypeLength;
+        final int hapEnd = paddedHaplotypeLength;
+        final float[] m = matchMatrix;
+        final float[] x = insertionMatrix;
+        final float[] y = deletionMatrix;
+
+        if (previousHaplotypeBases == null || previousHaplotypeBases.length != haplotypeBases.length) {
+            // set the initial value (free deletions in the beginning) for the first row in the deletion matrix
+            Arrays.fill(y, 0, hapEnd, INITIAL_CONDITION / haplotypeBases.length);
+        }
+
+        if ( ! constantsAreInitialized || recacheReadValues ) {
+            initializeReadValues(readQuals, insertionGOP, deletionGOP, overallGCP);
+            constantsAreInitialized = true;
+        }
+
+        final int start = hapStartIndex + 1;
+        for (int i = 1; i < paddedReadLength; i++) {
+            final int row = i * stride;
+            final int prev = row - stride;
+            final byte readBase = readBases[i - 1];
+            final float pMatch = priorMatch[i];
+            final float pMismatch = priorMismatch[i];
+            final float mm = matchToMatchProb[i];
+            final float gm = indelToMatchProb[i];
+            final float mx = matchToInsertionProb[i];
+            final float xx = insertionToInsertionProb[i];
+            final float my = matchToDeletionProb[i];
+            final float yy = deletionToDeletionProb[i];
+
+            // match and insertion only read the previous row
+            for (int j = start; j < hapEnd; j++) {
+                final byte hapBase = haplotypeBases[j - 1];
+                final float prior = (readBase == hapBase || readBase == (byte) 'N' || hapBase == (byte) 'N') ? pMatch : pMismatch;
+                m[row + j] = prior * (m[prev + j - 1] * mm + x[prev + j - 1] * gm + y[prev + j - 1] * gm);
+                x[row + j] = m[prev + j] * mx + x[prev + j] * xx;
+            }
+
+            // deletion carries along the row
+            float lastMatch = m[row + hapStartIndex];
+            float lastDeletion = y[row + hapStartIndex];
+            for (int j = start; j < hapEnd; j++) {
+                lastDeletion = lastMatch * my + lastDeletion * yy;
+                y[row + j] = lastDeletion;
+                lastMatch = m[row + j];
+            }
+        }
+
+        final int endRow = (paddedReadLength - 1) * stride;
+        float finalSumProbabilities = 0.0f;
+        for (int j = 1; j < hapEnd; j++) {
+            finalSumProbabilities += m[endRow + j] + x[endRow + j];
+        }
+
+        if (finalSumProbabilities < MIN_ACCEPTED) {
+            return doubleFallback.computeReadLikelihoodGivenHaplotypeLog10(haplotypeBases, readBases, readQuals,
+                    insertionGOP, deletionGOP, overallGCP, true, null);
+        }
+        return Math.log10(finalSumProbabilities) - INITIAL_CONDITION_LOG10;
+    }
+
+    /**
+     * Unpacks the transition probabilities and the match/mismatch priors of the read, one value per read row.
+     */
+    private void initializeReadValues(final byte[] readQuals, final byte[] insertionGOP, final byte[] deletionGOP, final byte[] overallGCP) {
+        PairHMMModel.qualToTransProbs(transition, insertionGOP, deletionGOP, overallGCP);
+        final double tristate = doNotUseTristateCorrection ? 1.0 : LoglessPairHMM.TRISTATE_CORRECTION;
+        for (int i = 1; i <= readQuals.length; i++) {
+            final double[] t = transition[i];
+            matchToMatchProb[i] = (float) t[matchToMatch];
+            indelToMatchProb[i] = (float) t[indelToMatch];
+            matchToInsertionProb[i] = (float) t[matchToInsertion];
+            insertionToInsertionProb[i] = (float) t[insertionToInsertion];
+            matchToDeletionProb[i] = (float) t[matchToDeletion];
+            deletionToDeletionProb[i] = (float) t[deletionToDeletion];
+
+            final byte qual = readQuals[i - 1];
+            priorMatch[i] = (float) QualityUtils.qualToProb(qual);
+            priorMismatch[i] = (float) (QualityUtils.qualToErrorProb(qual) / tristate);
+        }
+    }
+}
@@ -41,6 +41,12 @@ public abstract class PairHMM implements Closeable{
             final LoglessPairHMM hmm = new LoglessPairHMM();
             return hmm;
         }),
+        /* Pure java LOGLESS_CACHING on flat float arrays with haplotype prefix reuse, for hosts without the native library.
+           Computes in single precision like the native implementation, so results differ slightly from LOGLESS_CACHING */
+        FLAT_LOGLESS_CACHING(args -> {
+            final FlatLoglessPairHMM hmm = new FlatLoglessPairHMM();
+            return hmm;
+        }),
         /* Optimized AVX implementation of LOGLESS_CACHING called through JNI. Throws if AVX is not available */
         AVX_LOGLESS_CACHING(args -> {
             // Constructor will throw a UserException if AVX is not available
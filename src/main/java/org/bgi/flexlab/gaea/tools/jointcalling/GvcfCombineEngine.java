@@ -0,0 +1,229 @@
+package org.bgi.flexlab.gaea.tools.jointcalling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.bgi.flexlab.gaea.data.mapreduce.writable.GvcfRecordWritable;
+import org.bgi.flexlab.gaea.data.structure.location.GenomeLocationParser;
+import org.bgi.flexlab.gaea.data.structure.reference.ChromosomeInformationShare;
+import org.bgi.flexlab.gaea.tools.jointcalling.genotypegvcfs.annotation.StandardAnnotation;
+import org.bgi.flexlab.gaea.tools.jointcalling.util.ReferenceConfidenceVariantContextMerger;
+import org.bgi.flexlab.gaea.util.GaeaVCFConstants;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFConstants;
+
+/**
+ * combine the gVCF records of a batch of inputs into one multiple sample gVCF,
+ * like CombineGVCFs.
+ *
+ * records starting at the same position that carry real alternate alleles are
+ * merged by ReferenceConfidenceVariantContextMerger keeping NON_REF and the raw
+ * annotations. reference blocks are cut at every record start, record end and
+ * the base after a variant start, and each piece becomes one block holding the
+ * genotypes of every block covering it, so every sample of the batch keeps a
+ * record starting at each variant position of the batch.
+ *
+ * genotyping the shards picks, for every sample, the same record as genotyping
+ * the inputs: a sample inside its own variant is left out of the pieces that
+ * start there, and a sample whose variant is shorter than the merged record
+ * gets a piece at every base of the rest of it. INFO annotations of a merged
+ * record are batch level, so a site where the merged record of several samples
+ * stands in for one of them may sum DP or take rank sum medians differently.
+ */
+public class GvcfCombineEngine {
+	private static final String SOURCE = "GvcfCombine";
+
+	private final VariantAnnotatorEngine annotationEngine;
+	private final GenomeLocationParser parser;
+	private final boolean uniquifySamples;
+	private final String[][] sampleLists;
+
+	public GvcfCombineEngine(GenomeLocationParser parser, boolean uniquifySamples, String[][] sampleLists) {
+		this.parser = parser;
+		this.uniquifySamples = uniquifySamples;
+		this.sampleLists = sampleLists;
+		annotationEngine = new VariantAnnotatorEngine(
+				Arrays.asList(new String[] { StandardAnnotation.class.getSimpleName() }), new ArrayList<String>(),
+				Collections.<String>emptyList());
+	}
+
+	private static boolean isReferenceBlock(VariantContext vc) {
+		return vc.getNAlleles() == 2 && vc.getReference().length() == 1
+				&& vc.getAlternateAllele(0).equals(GaeaVCFConstants.NON_REF_SYMBOLIC_ALLELE);
+	}
+
+	/**
+	 * combined records of window [start,end], records of the window are read from iterator sorted by start position
+	 */
+	public List<VariantContext> combine(Iterator<GvcfRecordWritable> iterator, String chr, int start, int end,
+			ChromosomeInformationShare ref) {
+		List<VariantContext> blocks = new ArrayList<VariantContext>();
+		// variants of the batch overlapping the window, with their input index
+		List<VariantContext> variants = new ArrayList<VariantContext>();
+		final List<Integer> inputs = new ArrayList<Integer>();
+		TreeSet<Integer> breaks = new TreeSet<Integer>();
+		breaks.add(end + 1);
+
+		while (iterator.hasNext()) {
+			GvcfRecordWritable record = iterator.next();
+			VariantContext vc = record.getVariantContext(chr, sampleLists[record.getSampleIndex()]);
+			if (vc.getEnd() < start)
+				continue;
+			if (isReferenceBlock(vc)) {
+				blocks.add(vc);
+				breaks.add(Math.max(vc.getStart(), start));
+				if (vc.getEnd() < end)
+					breaks.add(vc.getEnd() + 1);
+			} else {
+				variants.add(vc);
+				inputs.add(record.getSampleIndex());
+				breaks.add(vc.getStart());
+				breaks.add(vc.getStart() + 1);
+				breaks.add(vc.getEnd() + 1);
+			}
+		}
+
+		// merged alleles follow the input order, as they do without pre-merge
+		final List<VariantContext> unsorted = new ArrayList<VariantContext>(variants);
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < variants.size(); i++)
+			order.add(i);
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int compare = Integer.compare(unsorted.get(a).getStart(), unsorted.get(b).getStart());
+				return compare != 0 ? compare : Integer.compare(inputs.get(a), inputs.get(b));
+			}
+		});
+		variants.clear();
+		for (int index : order)
+			variants.add(unsorted.get(index));
+		addSpanBreaks(variants, start, breaks);
+
+		List<VariantContext> combined = new ArrayList<VariantContext>();
+		List<VariantContext> activeBlocks = new ArrayList<VariantContext>();
+		List<VariantContext> activeVariants = new ArrayList<VariantContext>();
+		List<VariantContext> startingVariants = new ArrayList<VariantContext>();
+		int blockIndex = 0, variantIndex = 0;
+
+		Iterator<Integer> iter = breaks.tailSet(start).iterator();
+		int position = iter.next();
+		while (iter.hasNext()) {
+			int next = iter.next();
+			if (position > end)
+				break;
+
+			startingVariants.clear();
+			while (variantIndex < variants.size() && variants.get(variantIndex).getStart() <= position) {
+				VariantContext vc = variants.get(variantIndex++);
+				activeVariants.add(vc);
+				// variants spanning in from the previous window were written there
+				if (vc.getStart() == position)
+					startingVariants.add(vc);
+			}
+			if (!startingVariants.isEmpty()) {
+				VariantContext vc = ReferenceConfidenceVariantContextMerger.merge(startingVariants,
+						parser.createGenomeLocation(chr, position), null, false, uniquifySamples, annotationEngine);
+				if (vc != null)
+					combined.add(vc);
+			}
+
+			Iterator<VariantContext> active = activeBlocks.iterator();
+			while (active.hasNext()) {
+				if (active.next().getEnd() < position)
+					active.remove();
+			}
+			while (blockIndex < blocks.size() && blocks.get(blockIndex).getStart() <= position) {
+				VariantContext block = blocks.get(blockIndex++);
+				if (block.getEnd() >= position)
+					activeBlocks.add(block);
+			}
+			active = activeVariants.iterator();
+			while (active.hasNext()) {
+				if (active.next().getEnd() < position)
+					active.remove();
+			}
+			if (!activeBlocks.isEmpty()) {
+				VariantContext block = referenceBlock(chr, position, Math.min(next - 1, end), activeBlocks,
+						spannedSamples(activeVariants, position), ref);
+				if (block != null)
+					combined.add(block);
+			}
+
+			position = next;
+		}
+		return combined;
+	}
+
+	/**
+	 * a merged record spans its longest reference allele. samples whose own
+	 * record is shorter get a block piece at every base of the rest of the
+	 * span, so the merged record never stands in for them there. shorter
+	 * records of a variant spanning in from the previous window are not seen,
+	 * so its whole span is cut.
+	 */
+	private static void addSpanBreaks(List<VariantContext> variants, int start, TreeSet<Integer> breaks) {
+		int i = 0;
+		while (i < variants.size()) {
+			int position = variants.get(i).getStart();
+			int minEnd = position < start ? position : Integer.MAX_VALUE, maxEnd = position;
+			for (; i < variants.size() && variants.get(i).getStart() == position; i++) {
+				minEnd = Math.min(minEnd, variants.get(i).getEnd());
+				maxEnd = Math.max(maxEnd, variants.get(i).getEnd());
+			}
+			for (int base = minEnd + 1; base <= maxEnd; base++)
+				breaks.add(base);
+		}
+	}
+
+	/**
+	 * samples inside their own variant, a deletion, at position. without
+	 * pre-merge such a sample is called from the variant unless one of its
+	 * records starts there.
+	 */
+	private static Set<String> spannedSamples(List<VariantContext> activeVariants, int position) {
+		Set<String> samples = new HashSet<String>();
+		for (VariantContext vc : activeVariants) {
+			if (vc.getStart() < position)
+				samples.addAll(vc.getSampleNames());
+		}
+		return samples;
+	}
+
+	/**
+	 * block piece [start,end] with the genotypes of blocks, or null if none is left. samples
+	 * in spannedSamples only take a block starting here.
+	 */
+	private VariantContext referenceBlock(String chr, int start, int end, List<VariantContext> blocks,
+			Set<String> spannedSamples, ChromosomeInformationShare ref) {
+		Allele refAllele = Allele.create((byte) ref.getBase(start - 1), true);
+		List<Genotype> genotypes = new ArrayList<Genotype>();
+		for (VariantContext block : blocks) {
+			for (Genotype genotype : block.getGenotypes()) {
+				if (block.getStart() < start && spannedSamples.contains(genotype.getSampleName()))
+					continue;
+				List<Allele> alleles = new ArrayList<Allele>(genotype.getPloidy());
+				for (Allele allele : genotype.getAlleles())
+					alleles.add(allele.isReference() ? refAllele : allele);
+				genotypes.add(new GenotypeBuilder(genotype).alleles(alleles).make());
+			}
+		}
+		if (genotypes.isEmpty())
+			return null;
+		return new VariantContextBuilder(SOURCE, chr, start, end,
+				Arrays.asList(refAllele, GaeaVCFConstants.NON_REF_SYMBOLIC_ALLELE))
+						.attribute(VCFConstants.END_KEY, end).genotypes(genotypes).make();
+	}
+}
@@ -2,6 +2,7 @@ package org.bgi.flexlab.gaea.tools.jointcalling;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -13,7 +14,7 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
-import org.bgi.flexlab.gaea.data.exception.UserException;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.GvcfRecordWritable;
 import org.bgi.flexlab.gaea.data.structure.location.GenomeLocation;
 import org.bgi.flexlab.gaea.data.structure.location.GenomeLocationParser;
 import org.bgi.flexlab.gaea.data.structure.reference.ChromosomeInformationShare;
@@ -29,9 +30,6 @@ import org.bgi.flexlab.gaea.tools.jointcalling.util.MultipleVCFHeaderForJointCal
 import org.bgi.flexlab.gaea.tools.jointcalling.util.ReferenceConfidenceVariantContextMerger;
 import org.bgi.flexlab.gaea.tools.mapreduce.jointcalling.JointCallingOptions;
 import org.bgi.flexlab.gaea.util.GaeaVCFConstants;
-import org.seqdoop.hadoop_bam.LazyParsingGenotypesContext;
-import org.seqdoop.hadoop_bam.LazyVCFGenotypesContext.HeaderDataCache;
-import org.seqdoop.hadoop_bam.VariantContextWritable;
 
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
@@ -56,12 +54,22 @@ public class JointCallingEngine {
 	private boolean uniquifySamples = false;
 
 	// private ArrayList<VariantContext> variants = null;
-	private TreeMap<String, ArrayList<VariantContext>> variantsForSample = null;
+	private TreeMap<String, SampleIntervals> variantsForSample = null;
 	private String[] samples = null;
+	// genotype samples of every input, a pre-merged shard carries more than one
+	private String[][] sampleLists = null;
 
 	private VariantContext currentContext = null;
+	private String currentSample = null;
 
-	private int max_position = -1;
+	// window being called and the positions of it worth calling
+	private Iterator<GvcfRecordWritable> windowIterator = null;
+	private String windowChr = null;
+	private int windowStart;
+	private int windowEnd;
+	private ChromosomeInformationShare windowRef = null;
+	private final BitSet positions = new BitSet();
+	private int cursor = 0;
 
 	// the genotyping engine
 	private UnifiedGenotypingEngine genotypingEngine;
@@ -76,13 +84,12 @@ public class JointCallingEngine {
 			Arrays.asList(new String[] { StandardAnnotation.class.getSimpleName() }));
 
 	private final VCFHeader vcfHeader;
-	private HashMap<String,HeaderDataCache> vcfHeaderDateCaches = new HashMap<String,HeaderDataCache>();
 	
 	final Set<String> infoHeaderAltAllelesLineNames = new LinkedHashSet<>();
 
 	public JointCallingEngine(JointCallingOptions options, GenomeLocationParser parser, VCFHeader vcfheader,
 			MultipleVCFHeaderForJointCalling multiHeaders,String[] sampleArray) {
-		variantsForSample = new TreeMap<String, ArrayList<VariantContext>>();
+		variantsForSample = new TreeMap<String, SampleIntervals>();
 		this.INCLUDE_NON_VARIANTS = options.INCLUDE_NON_VARIANT;
 		this.uniquifySamples = options.isUniquifySamples();
 		this.parser = parser;
@@ -139,23 +146,16 @@ public class JointCallingEngine {
 
 		vcfHeader = new VCFHeader(headerLines, sampleNames);
 
-		for(String sample : multiHeaders.keySet()){
-			HeaderDataCache vcfHeaderDataCache = new HeaderDataCache();
-			vcfHeaderDataCache.setHeader(multiHeaders.getVCFHeader(sample));
-			vcfHeaderDateCaches.put(sample, vcfHeaderDataCache);
-		}
-
 		// now that we have all the VCF headers, initialize the annotations
 		// (this is particularly important to turn off RankSumTest dithering in
 		// integration tests)
-		Set<String> sampleNamesHashSet = new HashSet<String>();
-		for(String sample : sampleArray)
-			sampleNamesHashSet.add(sample);
+		Set<String> sampleNamesHashSet = new HashSet<String>(sampleNames);
 		annotationEngine.invokeAnnotationInitializationMethods(headerLines, sampleNamesHashSet);
 
 		GvcfMathUtils.resetRandomGenerator();
 		
 		this.samples = sampleArray;
+		this.sampleLists = multiHeaders.getSampleListsAsInputOrder(sampleArray);
 	}
 
 	public Set<String> getSampleList(VCFHeader header) {
@@ -171,113 +171,128 @@ public class JointCallingEngine {
 		annotationEngine.initializeDBs(dbsnps, parser);
 	}
 
-	public void purgeOutOfScopeRecords(GenomeLocation location) {
+	/**
+	 * start a new window, records of the window are read from iterator sorted by start position
+	 */
+	public void startWindow(Iterator<GvcfRecordWritable> iterator, String chr, int start, int end,
+			ChromosomeInformationShare ref) {
+		for (SampleIntervals intervals : variantsForSample.values())
+			intervals.clear();
+		this.windowIterator = iterator;
+		this.windowChr = chr;
+		this.windowStart = start;
+		this.windowEnd = end;
+		this.windowRef = ref;
+		this.positions.clear();
+		this.cursor = 0;
+		nextRecord();
+	}
 
-		for (String sample : variantsForSample.keySet()) {
-			Iterator<VariantContext> iter = variantsForSample.get(sample).iterator();
-			while (iter.hasNext()) {
-				VariantContext context = iter.next();
-				if (context.getEnd() < location.getStart())
-					iter.remove();
-			}
+	/**
+	 * next called variant of the current window, or null if the window is finished
+	 */
+	public VariantContext nextVariantContext() {
+		int position;
+		while ((position = nextPosition()) > 0) {
+			VariantContext vc = variantCalling(parser.createGenomeLocation(windowChr, position), windowRef);
+			if (vc != null)
+				return vc;
 		}
+		return null;
 	}
 
-	public void lazyLoad(Iterator<VariantContextWritable> iterator, GenomeLocation location) {
-		int curr = location.getStart();
-
-		if (curr <= max_position)
-			purgeOutOfScopeRecords(location);
-		else {
-			for (String sample : variantsForSample.keySet()) {
-				variantsForSample.get(sample).clear();
+	/**
+	 * next position worth calling. a position is only handed out after every
+	 * record starting at or before it has been loaded.
+	 */
+	private int nextPosition() {
+		while (true) {
+			int bit = positions.nextSetBit(cursor);
+			if (currentContext != null && (bit < 0 || windowStart + bit >= currentContext.getStart())) {
+				load(currentSample, currentContext);
+				nextRecord();
+				continue;
 			}
-			max_position = -1;
+			if (bit < 0)
+				return -1;
+			cursor = bit + 1;
+			return windowStart + bit;
 		}
+	}
 
-		if (currentContext == null) {
-			if (iterator.hasNext()) {
-				currentContext = iterator.next().get();
-			}
+	/**
+	 * decode the next shuffled record of the window
+	 */
+	private void nextRecord() {
+		if (windowIterator.hasNext()) {
+			GvcfRecordWritable record = windowIterator.next();
+			currentSample = samples[record.getSampleIndex()];
+			currentContext = record.getVariantContext(windowChr, sampleLists[record.getSampleIndex()]);
+		} else {
+			currentSample = null;
+			currentContext = null;
 		}
+	}
 
-		while (currentContext != null) {
-			if (currentContext.getStart() > curr)
-				break;
-			if (currentContext.getStart() <= curr && currentContext.getEnd() >= curr) {
-				GenotypesContext gc = currentContext.getGenotypes();
-				String sampleName = currentContext.getAttributeAsString("SM", null);
-				if (sampleName == null)
-					throw new RuntimeException("Not contains SM attribute");
-				
-				if (gc instanceof LazyParsingGenotypesContext)
-					((LazyParsingGenotypesContext) gc).getParser().setHeaderDataCache(vcfHeaderDateCaches.get(sampleName));
-				
-				if (variantsForSample.containsKey(sampleName)) {
-					variantsForSample.get(sampleName).add(currentContext);
-				} else {
-					ArrayList<VariantContext> list = new ArrayList<VariantContext>();
-					list.add(currentContext);
-					variantsForSample.put(sampleName, list);
-				}
-
-				if (max_position < currentContext.getEnd())
-					max_position = currentContext.getEnd();
-			}
+	private void load(String sampleName, VariantContext context) {
+		if (context.getEnd() < windowStart)
+			return;
 
-			if (iterator.hasNext()) {
-				currentContext = iterator.next().get();
-			} else
-				currentContext = null;
+		SampleIntervals intervals = variantsForSample.get(sampleName);
+		if (intervals == null) {
+			intervals = new SampleIntervals();
+			variantsForSample.put(sampleName, intervals);
 		}
-	}
-	
-	private VariantContext getValues(String sample,GenomeLocation loc,boolean requireStartHere){
-		if(variantsForSample.containsKey(sample) && variantsForSample.get(sample).size() > 0){
-			for(VariantContext vc : variantsForSample.get(sample)){
-				if ( ! requireStartHere || vc.getStart() == loc.getStart()){
-					return vc;
-				}
-			}
+		intervals.add(context);
+
+		if (INCLUDE_NON_VARIANTS) {
+			int from = Math.max(context.getStart(), windowStart);
+			int to = Math.min(context.getEnd(), windowEnd);
+			if (from <= to)
+				positions.set(from - windowStart, to - windowStart + 1);
+		} else if (context.getStart() >= windowStart && context.getStart() <= windowEnd && hasCandidateAllele(context)) {
+			positions.set(context.getStart() - windowStart);
 		}
-		
-		return null;
 	}
-	
-	private VariantContext getValues(String sample,GenomeLocation loc){
-		VariantContext vc = getValues(sample,loc,true);
-		
-		if(vc == null)
-			vc = getValues(sample,loc,false);
-		
-		return vc;
+
+	/**
+	 * a site can only be polymorphic after merging if some record starting there has an allele other than NON_REF
+	 */
+	private static boolean hasCandidateAllele(VariantContext context) {
+		for (Allele allele : context.getAlternateAlleles()) {
+			if (!allele.equals(GaeaVCFConstants.NON_REF_SYMBOLIC_ALLELE))
+				return true;
+		}
+		return false;
 	}
 
 	private List<VariantContext> getValues(GenomeLocation loc) {
 		List<VariantContext> list = new ArrayList<VariantContext>();
+		int position = loc.getStart();
 
 		if(this.samples != null){
 			for (String sample : samples) {
-				VariantContext vc = getValues(sample,loc);
-				if(vc != null)
-					list.add(vc);
+				SampleIntervals intervals = variantsForSample.get(sample);
+				if(intervals != null)
+					intervals.collect(position, list);
 			}
 		}else{
-			for (String sample : variantsForSample.keySet()) {
-				VariantContext vc = getValues(sample,loc);
-				if(vc != null)
-					list.add(vc);
+			for (SampleIntervals intervals : variantsForSample.values()) {
+				intervals.collect(position, list);
 			}
 		}
 		return list;
 	}
 
-	public VariantContext variantCalling(Iterator<VariantContextWritable> iterator, GenomeLocation location,
+	private VariantContext variantCalling(GenomeLocation location, ChromosomeInformationShare ref) {
+		return variantCalling(getValues(location), location, ref);
+	}
+
+	/**
+	 * merge and genotype the records of every input at location
+	 */
+	VariantContext variantCalling(final List<VariantContext> vcsAtThisLocus, GenomeLocation location,
 			ChromosomeInformationShare ref) {
-		if (location.getStart() != location.getStop())
-			throw new UserException("location must length is 1!");
-		lazyLoad(iterator, location);
-		final List<VariantContext> vcsAtThisLocus = getValues(location);
 		final Byte refBase = INCLUDE_NON_VARIANTS ? (byte) ref.getBase(location.getStart() - 1) : null;
 		final boolean removeNonRefSymbolicAllele = !INCLUDE_NON_VARIANTS;
 		final VariantContext combinedVC = ReferenceConfidenceVariantContextMerger.merge(vcsAtThisLocus, location,
@@ -285,6 +300,96 @@ public class JointCallingEngine {
 		return combinedVC == null ? null : regenotypeVC(new RefMetaDataTracker(location), ref, combinedVC);
 	}
 
+	/**
+	 * records of one input overlapping the current position, in load order.
+	 * the smallest end and largest start let most lookups skip the scan.
+	 */
+	private static class SampleIntervals {
+		private final ArrayList<VariantContext> records = new ArrayList<VariantContext>();
+		private int minEnd = Integer.MAX_VALUE;
+		private int maxStart = -1;
+		private boolean multiSample = false;
+
+		void add(VariantContext context) {
+			records.add(context);
+			minEnd = Math.min(minEnd, context.getEnd());
+			maxStart = Math.max(maxStart, context.getStart());
+			multiSample |= context.getNSamples() > 1;
+		}
+
+		void clear() {
+			records.clear();
+			minEnd = Integer.MAX_VALUE;
+			maxStart = -1;
+			multiSample = false;
+		}
+
+		/**
+		 * add the records to merge at position. every sample takes the record
+		 * starting at position if any, otherwise the first record covering it,
+		 * which for a single sample input is just one record.
+		 */
+		void collect(int position, List<VariantContext> list) {
+			if (!multiSample) {
+				VariantContext vc = get(position);
+				if (vc != null)
+					list.add(vc);
+				return;
+			}
+			if (minEnd < position)
+				purge(position);
+			Set<String> covered = new HashSet<String>();
+			for (VariantContext vc : records) {
+				if (vc.getStart() == position)
+					addUncovered(vc, covered, list);
+			}
+			for (VariantContext vc : records) {
+				if (vc.getStart() != position)
+					addUncovered(vc, covered, list);
+			}
+		}
+
+		private static void addUncovered(VariantContext vc, Set<String> covered, List<VariantContext> list) {
+			Set<String> uncovered = new HashSet<String>();
+			for (String sample : vc.getSampleNames()) {
+				if (covered.add(sample))
+					uncovered.add(sample);
+			}
+			if (uncovered.isEmpty())
+				return;
+			list.add(uncovered.size() == vc.getNSamples() ? vc : vc.subContextFromSamples(uncovered, false));
+		}
+
+		/**
+		 * record starting at position if any, otherwise the first record covering it
+		 */
+		VariantContext get(int position) {
+			if (minEnd < position)
+				purge(position);
+			if (records.isEmpty())
+				return null;
+			if (maxStart >= position) {
+				for (VariantContext vc : records) {
+					if (vc.getStart() == position)
+						return vc;
+				}
+			}
+			return records.get(0);
+		}
+
+		private void purge(int position) {
+			minEnd = Integer.MAX_VALUE;
+			Iterator<VariantContext> iter = records.iterator();
+			while (iter.hasNext()) {
+				int end = iter.next().getEnd();
+				if (end < position)
+					iter.remove();
+				else
+					minEnd = Math.min(minEnd, end);
+			}
+		}
+	}
+
 	protected VariantContext regenotypeVC(final RefMetaDataTracker tracker, final ChromosomeInformationShare ref,
 			final VariantContext originalVC) {
 		if (originalVC == null) {
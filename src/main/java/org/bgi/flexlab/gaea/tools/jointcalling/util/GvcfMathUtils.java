@@ -29,6 +29,14 @@ public class GvcfMathUtils extends MathUtils {
 		return randomGenerator;
 	}
 
+	/**
+	 * generator seeded by site, its draws do not depend on the order sites
+	 * are processed in
+	 */
+	public static Random getSiteRandomGenerator(final String contig, final int start) {
+		return new Random(GAEA_RANDOM_SEED ^ (((long) contig.hashCode() << 32) | (start & 0xffffffffL)));
+	}
+
 	public static void resetRandomGenerator() {
 		randomGenerator.setSeed(GAEA_RANDOM_SEED);
 	}
@@ -1,6 +1,5 @@
 package org.bgi.flexlab.gaea.tools.jointcalling.util;
 
-import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -8,26 +7,24 @@ import java.util.List;
 import java.util.Set;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileStatus;
-import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.bgi.flexlab.gaea.data.mapreduce.input.vcf.VCFHdfsLoader;
-import org.bgi.flexlab.gaea.data.mapreduce.output.vcf.VCFHdfsWriter;
+import org.apache.hadoop.mapreduce.Job;
 import org.bgi.flexlab.gaea.data.structure.header.GaeaVCFHeader;
-import org.seqdoop.hadoop_bam.util.VCFHeaderReader;
-import org.seqdoop.hadoop_bam.util.WrapSeekable;
+import org.bgi.flexlab.gaea.data.structure.header.VCFHeaderDictionary;
 
-import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.variant.vcf.VCFHeader;
 
 public class MultipleVCFHeaderForJointCalling extends GaeaVCFHeader implements Serializable {
 	
 	class VCFHeaderWithIndex{
 		public int index;
-		public VCFHeader header;
+		/**
+		 * index in header dictionary
+		 */
+		public int input;
 		
-		public VCFHeaderWithIndex(VCFHeader header,int index){
-			this.header = header;
+		public VCFHeaderWithIndex(int input,int index){
+			this.input = input;
 			this.index = index;
 		}
 	}
@@ -38,117 +35,111 @@ public class MultipleVCFHeaderForJointCalling extends GaeaVCFHeader implements S
 	
 	private String HEADER_DEFAULT_PATH = "vcfHeaders";
 	
+	private final static String DICTIONARY_NAME = "vcfHeaders.dict";
+	
+	private final static String CACHE_LINK = "VcfHeaderDictionary";
+	
 	private int currentIndex = 0;
+	
+	private transient VCFHeaderDictionary dictionary = null;
 
 	public MultipleVCFHeaderForJointCalling() {
 	}
 
 	public VCFHeader getVCFHeader(String sampleName) {
 		if (headers.containsKey(sampleName))
-			return headers.get(sampleName).header;
+			return dictionary.getHeader(headers.get(sampleName).input);
 		return null;
 	}
 	
 	public void headersConfig(List<Path> paths,String outputDir,Configuration conf){
-		getHeaders(paths);
+		getHeaders(paths, conf);
 		writeHeaders(outputDir,conf);
 	}
+	
+	/**
+	 * same as headersConfig, and ship the header dictionary to the tasks of job
+	 */
+	public void headersConfig(List<Path> paths,String outputDir,Job job){
+		headersConfig(paths, outputDir, job.getConfiguration());
+		distributeCache(job);
+	}
 
 	public void getHeaders(List<Path> paths) {
+		getHeaders(paths, new Configuration());
+	}
+	
+	public void getHeaders(List<Path> paths, Configuration conf) {
+		setDictionary(VCFHeaderDictionary.build(paths, conf));
+	}
+	
+	private void setDictionary(VCFHeaderDictionary dictionary) {
+		this.dictionary = dictionary;
+		headers.clear();
 		currentIndex = 0;
-		for (Path p : paths) {
-			VCFHdfsLoader loader = null;
-			try {
-				loader = new VCFHdfsLoader(p.toString());
-			} catch (IllegalArgumentException | IOException e) {
-				e.printStackTrace();
-			}
-			if (loader.getHeader().getSampleNamesInOrder().size() == 0)
+		for (int i = 0; i < dictionary.size(); i++) {
+			List<String> samples = dictionary.getSampleNames(i);
+			if (samples.size() == 0)
 				throw new RuntimeException("VCF header contains no samples!");
-			String name = loader.getHeader().getSampleNamesInOrder().get(0);
+			String name = samples.get(0);
 
-			if (headers.containsKey(name))
-				throw new RuntimeException("more than one VCF header contains same sample name!");
+			if (headers.containsKey(name)) {
+				// part files of one pre-merged shard share the same samples
+				if (!dictionary.getSampleNames(headers.get(name).input).equals(samples))
+					throw new RuntimeException("more than one VCF header contains same sample name!");
+				continue;
+			}
 			
-			VCFHeaderWithIndex headerWithIndex = new VCFHeaderWithIndex(loader.getHeader(),currentIndex);
+			headers.put(name, new VCFHeaderWithIndex(i,currentIndex));
 			currentIndex++;
-			headers.put(name, headerWithIndex);
-			loader.close();
 		}
 	}
 
 	public void writeHeaders(String outputDir,Configuration conf) {
-		conf.set(HEADER_DEFAULT_PATH, outputDir);
-		if(!outputDir.endsWith("/"))
-			outputDir = outputDir+"/";
-		for (String name : headers.keySet()) {
-			VCFHdfsWriter vcfHdfsWriter = null;
-			try {
-				vcfHdfsWriter = new VCFHdfsWriter(outputDir+name, false, false, conf);
-			} catch (IOException e) {
-				throw new RuntimeException(e.toString());
-			}
-	        vcfHdfsWriter.writeHeader(headers.get(name).header);
-	        vcfHdfsWriter.close();
-		}
+		Path path = new Path(outputDir, DICTIONARY_NAME);
+		conf.set(HEADER_DEFAULT_PATH, path.toString());
+		dictionary.write(path, conf);
 	}
 	
-	public VCFHeader readHeader(Path path,Configuration conf) throws IOException, ClassNotFoundException{
-		SeekableStream in = WrapSeekable.openPath(path.getFileSystem(conf), path);
-		VCFHeader header = VCFHeaderReader.readHeaderFrom(in);
-		in.close();
-		
-		return header;
+	public void distributeCache(Job job) {
+		VCFHeaderDictionary.distributeCache(new Path(job.getConfiguration().get(HEADER_DEFAULT_PATH)), CACHE_LINK, job);
 	}
 	
-	public void readHeaders(String outputDir,Configuration conf){
-		Path path = new Path(outputDir);
-		
-		currentIndex = 0;
-		FileSystem fs = null;
-		try {
-			fs = path.getFileSystem(conf);
-		
-			if(fs.isFile(path)){
-				VCFHeaderWithIndex headerWithIndex = new VCFHeaderWithIndex(readHeader(path,conf),0);
-				headers.put(path.getName(), headerWithIndex);
-			} else{
-				FileStatus stats[] = fs.listStatus(path);
-				
-				for (FileStatus file : stats) {
-					Path filePath = file.getPath();
-					if(!fs.isFile(filePath))
-						throw new RuntimeException("cann't not support sub dir");
-					VCFHeaderWithIndex headerWithIndex = new VCFHeaderWithIndex(readHeader(filePath,conf),currentIndex);
-					headers.put(filePath.getName(), headerWithIndex);
-					currentIndex++;
-				}
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e.toString());
-		} catch (ClassNotFoundException e) {
-			throw new RuntimeException(e.toString());
-		}
+	public void readHeaders(String dictionaryPath,Configuration conf){
+		setDictionary(VCFHeaderDictionary.load(dictionaryPath, CACHE_LINK, conf));
 	}
 	
 	public void readHeaders(Configuration conf){
-		String outputDir = conf.get(HEADER_DEFAULT_PATH);
-		readHeaders(outputDir,conf);
+		readHeaders(conf.get(HEADER_DEFAULT_PATH),conf);
 	}
 	
 	public Set<VCFHeader> getHeaders(){
 		Set<VCFHeader> headerSet = new HashSet<VCFHeader>();
 		for(VCFHeaderWithIndex headerWithIndex : headers.values()){
-			headerSet.add(headerWithIndex.header);
+			headerSet.add(dictionary.getHeader(headerWithIndex.input));
 		}
 		return headerSet;
 	}
 	
+	/**
+	 * genotype samples of every input, indexed as getSamplesAsInputOrder
+	 */
+	public String[][] getSampleListsAsInputOrder(String[] inputs){
+		String[][] sampleLists = new String[inputs.length][];
+		for(int i = 0; i < inputs.length; i++){
+			VCFHeaderWithIndex headerWithIndex = headers.get(inputs[i]);
+			if(headerWithIndex == null)
+				throw new RuntimeException("cann't find VCF header for " + inputs[i]);
+			sampleLists[i] = dictionary.getSampleNames(headerWithIndex.input).toArray(new String[0]);
+		}
+		return sampleLists;
+	}
+	
 	public String[] getSamplesAsInputOrder(){
 		String[] samples = new String[headers.size()];
 		
-		for(VCFHeaderWithIndex headerWithIndex : headers.values()){
-			samples[headerWithIndex.index] = headerWithIndex.header.getSampleNamesInOrder().get(0);
+		for(String name : headers.keySet()){
+			samples[headers.get(name).index] = name;
 		}
 		
 		return samples;
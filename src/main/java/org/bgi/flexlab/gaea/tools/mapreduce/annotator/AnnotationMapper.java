@@ -31,22 +31,30 @@ import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.VcfLineWritable;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
 import org.bgi.flexlab.gaea.data.structure.header.SingleVCFHeader;
+import org.bgi.flexlab.gaea.data.structure.reference.ReferenceShare;
 import org.bgi.flexlab.gaea.util.ChromosomeUtils;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
-public class AnnotationMapper extends Mapper<LongWritable, Text, Text, VcfLineWritable> {
+public class AnnotationMapper extends Mapper<LongWritable, Text, WindowsBasedWritable, VcfLineWritable> {
 
-	private Text resultKey;
+	public final static int WINDOW_SIZE = 1000;
+
+	private WindowsBasedWritable resultKey;
 	private VcfLineWritable resultValue;
 	private Configuration conf;
 	private HashMap<String, VCFCodec> vcfCodecs;
+	private HashMap<String, Integer> chromosomeIndexes;
 	@Override
 	protected void setup(Context context)
 			throws IOException, InterruptedException {
-		resultKey = new Text();
+		resultKey = new WindowsBasedWritable();
 		resultValue = new VcfLineWritable();
 		conf = context.getConfiguration();
 		vcfCodecs = new HashMap<>();
@@ -54,6 +62,10 @@ public class AnnotationMapper extends Mapper<LongWritable, Text, Text, VcfLineWr
 		AnnotatorOptions options = new AnnotatorOptions();
 		options.getOptionsFromHadoopConf(conf);
 
+		ReferenceShare genomeShare = new ReferenceShare();
+		genomeShare.loadChromosomeList(options.getReferenceSequencePath());
+		chromosomeIndexes = getChromosomeIndexes(genomeShare);
+
 		Path inputPath = new Path(options.getInputFilePath());
 		FileSystem fs = inputPath.getFileSystem(conf);
 		FileStatus[] files = fs.listStatus(inputPath);
@@ -86,28 +98,44 @@ public class AnnotationMapper extends Mapper<LongWritable, Text, Text, VcfLineWr
 		if (vcfLine.startsWith("#")) return;
 		VariantContext variantContext = vcfcodec.decode(vcfLine);
 
-		String chr = ChromosomeUtils.getNoChrName(variantContext.getContig());
+		Integer chrIndex = chromosomeIndexes.get(ChromosomeUtils.formatChrName(variantContext.getContig()));
+		if(chrIndex == null) {
+			context.getCounter("ERROR", "chromosome not in reference").increment(1);
+			return;
+		}
 
 		resultValue.set(fileName, vcfLine);
 
-		int startPrefix = variantContext.getStart()/1000;
-		int startRemainder = variantContext.getStart()%1000;
+		int start = variantContext.getStart();
+		int startPrefix = start/WINDOW_SIZE;
+		int startRemainder = start%WINDOW_SIZE;
 		if(startRemainder <= 5 && startPrefix > 0){
-			resultKey.set(chr+"-"+(startPrefix-1));
+			resultKey.set(chrIndex, startPrefix-1, start);
 			context.write(resultKey, resultValue);
 		}
 
-		if(startRemainder >= 995 && startPrefix > 0){
-			resultKey.set(chr+"-"+(startPrefix+1));
+		if(startRemainder >= WINDOW_SIZE - 5 && startPrefix > 0){
+			resultKey.set(chrIndex, startPrefix+1, start);
 			context.write(resultKey, resultValue);
 		}
 
-		resultKey.set(chr+"-"+startPrefix);
-//		System.out.println("mapper: " + resultKey.toString() + " " + vcfLine);
-		/*根据chr-start-end*/
+		/*根据chr-window分组，组内按start排序*/
+		resultKey.set(chrIndex, startPrefix, start);
 		context.write(resultKey, resultValue);
 
 	}
+
+	/**
+	 * index of the map output key for every chromosome of the reference, by sorted chromosome name
+	 */
+	static HashMap<String, Integer> getChromosomeIndexes(ReferenceShare genomeShare) {
+		List<String> chrNames = new ArrayList<>(genomeShare.getChromosomeInfoMap().keySet());
+		Collections.sort(chrNames);
+		HashMap<String, Integer> indexes = new HashMap<>();
+		for (int i = 0; i < chrNames.size(); i++)
+			indexes.put(chrNames.get(i), i);
+		return indexes;
+	}
 	
 	@Override
 	protected void cleanup(Context context)
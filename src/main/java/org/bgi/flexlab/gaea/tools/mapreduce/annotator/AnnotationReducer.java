@@ -28,6 +28,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.VcfLineWritable;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
 import org.bgi.flexlab.gaea.data.structure.header.SingleVCFHeader;
 import org.bgi.flexlab.gaea.data.structure.reference.ChromosomeInformationShare;
 import org.bgi.flexlab.gaea.data.structure.reference.ReferenceShare;
@@ -36,12 +37,11 @@ import org.bgi.flexlab.gaea.tools.annotator.SampleAnnotationContext;
 import org.bgi.flexlab.gaea.tools.annotator.VcfAnnoContext;
 import org.bgi.flexlab.gaea.tools.annotator.config.Config;
 import org.bgi.flexlab.gaea.tools.annotator.db.DBAnnotator;
-import org.bgi.flexlab.gaea.util.ChromosomeUtils;
 
 import java.io.IOException;
 import java.util.*;
 
-public class AnnotationReducer extends Reducer<Text, VcfLineWritable, Text, Text> {
+public class AnnotationReducer extends Reducer<WindowsBasedWritable, VcfLineWritable, Text, Text> {
 
 	private Text resultKey = new Text();
 	private Text resultValue = new Text();
@@ -71,8 +71,12 @@ public class AnnotationReducer extends Reducer<Text, VcfLineWritable, Text, Text
 
 		start = System.currentTimeMillis();
 		AnnotatorBuild annoBuild = new AnnotatorBuild(userConfig);
-		userConfig.setSnpEffectPredictor(annoBuild.createSnpEffPredictor());
-		annoBuild.buildForest();
+		if(options.getGeneModelPath() != null) {
+			annoBuild.loadSnapshot(new Path(options.getGeneModelPath()), conf, genomeShare);
+		} else {
+			userConfig.setSnpEffectPredictor(annoBuild.createSnpEffPredictor());
+			annoBuild.buildForest();
+		}
 		if(options.isDebug())
 			System.err.println("build SnpEffectPredictor耗时：" + (System.currentTimeMillis()-start)+"毫秒");
 		vcfCodecs = new HashMap<>();
@@ -113,58 +117,47 @@ public class AnnotationReducer extends Reducer<Text, VcfLineWritable, Text, Text
 	}
 
 	@Override
-	protected void reduce(Text key, Iterable<VcfLineWritable> values, Context context)
+	protected void reduce(WindowsBasedWritable key, Iterable<VcfLineWritable> values, Context context)
 			throws IOException, InterruptedException {
 		long start = System.currentTimeMillis();
-		Iterator<VcfLineWritable> iter =  values.iterator();
-		Map<String, VcfAnnoContext> posVariantInfo = new HashMap<>();
-		Map<Integer, String> posToPosKey = new HashMap<>();
-		List<Integer> positions = new ArrayList<>();
+		int window = key.getWindowsNumber();
+		List<VcfAnnoContext> windowVariants = new ArrayList<>();
+
+		// values arrive sorted by start, sites of one start are merged by end
+		Map<Integer, VcfAnnoContext> previousSites = new LinkedHashMap<>();
+		Map<Integer, VcfAnnoContext> currentSites = new LinkedHashMap<>();
+		int previousPos = -1;
+		int currentPos = -1;
 
-		while(iter.hasNext()) {
-			VcfLineWritable vcfInput =  iter.next();
+		for(VcfLineWritable vcfInput : values) {
 			String fileName = vcfInput.getFileName();
-			String vcfLine = vcfInput.getVCFLine();
-			VariantContext variantContext =  vcfCodecs.get(fileName).decode(vcfLine);
+			VariantContext variantContext =  vcfCodecs.get(fileName).decode(vcfInput.getVCFLine());
 			int pos = variantContext.getStart();
-			int end = variantContext.getEnd();
 
-
-			if(!positions.contains(pos))
-				positions.add(pos);
-			String posKey = pos + "-" + Integer.toString(end);
-			posToPosKey.put(pos, posKey);
-			if(posVariantInfo.containsKey(posKey)){
-				posVariantInfo.get(posKey).add(variantContext, fileName);
-			}else {
-				VcfAnnoContext vcfAnnoContext = new VcfAnnoContext(variantContext, fileName);
-				posVariantInfo.put(posKey, vcfAnnoContext);
+			if(pos != currentPos) {
+				closeSites(previousSites, previousPos, currentSites, currentPos, window, windowVariants);
+				Map<Integer, VcfAnnoContext> tmp = previousSites;
+				previousSites = currentSites;
+				previousPos = currentPos;
+				currentSites = tmp;
+				currentSites.clear();
+				currentPos = pos;
 			}
+
+			VcfAnnoContext site = currentSites.get(variantContext.getEnd());
+			if(site != null)
+				site.add(variantContext, fileName);
+			else
+				currentSites.put(variantContext.getEnd(), new VcfAnnoContext(variantContext, fileName));
 		}
+		closeSites(previousSites, previousPos, currentSites, currentPos, window, windowVariants);
 
-		Collections.sort(positions);
-
-		for(VcfAnnoContext vcfAnnoContext: posVariantInfo.values()){
-			String chr = ChromosomeUtils.getNoChrName(vcfAnnoContext.getContig());
-			String posPrefix = chr+"-"+vcfAnnoContext.getStart()/1000;
-
-			if(!posPrefix.equals(key.toString()))
-				continue;
-
-			// 标记附近有其他变异的点
-			int index = positions.indexOf(vcfAnnoContext.getStart());
-			if(index > 0 && vcfAnnoContext.getStart() - positions.get(index-1) <= 5){
-				String posKey = posToPosKey.get(positions.get(index-1));
-				VcfAnnoContext vcfAnnoContextNear = posVariantInfo.get(posKey);
-				for(SampleAnnotationContext sac: vcfAnnoContext.getSampleAnnoContexts().values()){
-					String sampleName = sac.getSampleName();
-					if(vcfAnnoContextNear.hasSample(sampleName)){
-						sac.setHasNearVar();
-						vcfAnnoContextNear.getSampleAnnoContexts().get(sampleName).setHasNearVar();
-					}
-				}
-			}
+		// 每个窗口对每个数据库只发一次批量查询
+		if (options.isUseDatabaseCache())
+			dbAnnotator.prefetch(windowVariants, "ANNO");
+		dbAnnotator.prefetch(windowVariants);
 
+		for(VcfAnnoContext vcfAnnoContext: windowVariants){
 			if(userConfig.getFields().contains("FLKSEQ")) {
 				ChromosomeInformationShare chrShare = genomeShare.getChromosomeInfo(vcfAnnoContext.getContig());
 				int lelfStart = vcfAnnoContext.getStart() - 11;
@@ -216,6 +209,34 @@ public class AnnotationReducer extends Reducer<Text, VcfLineWritable, Text, Text
 		}
 	}
 
+	/**
+	 * all sites of currentPos are read: mark the samples having a variant at the
+	 * previous start within 5bp, and keep the sites starting in this window
+	 */
+	private void closeSites(Map<Integer, VcfAnnoContext> previousSites, int previousPos,
+			Map<Integer, VcfAnnoContext> currentSites, int currentPos, int window, List<VcfAnnoContext> windowVariants) {
+		if(currentSites.isEmpty())
+			return;
+
+		// 标记附近有其他变异的点
+		if(!previousSites.isEmpty() && currentPos - previousPos <= 5) {
+			for(VcfAnnoContext vcfAnnoContext : currentSites.values()) {
+				for(VcfAnnoContext vcfAnnoContextNear : previousSites.values()) {
+					for(SampleAnnotationContext sac: vcfAnnoContext.getSampleAnnoContexts().values()){
+						String sampleName = sac.getSampleName();
+						if(vcfAnnoContextNear.hasSample(sampleName)){
+							sac.setHasNearVar();
+							vcfAnnoContextNear.getSampleAnnoContexts().get(sampleName).setHasNearVar();
+						}
+					}
+				}
+			}
+		}
+
+		if(currentPos / AnnotationMapper.WINDOW_SIZE == window)
+			windowVariants.addAll(currentSites.values());
+	}
+
 	@Override
 	protected void cleanup(Context context)
 			throws IOException, InterruptedException {
@@ -31,9 +31,12 @@ import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.bgi.flexlab.gaea.data.mapreduce.partitioner.FirstPartitioner;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.PairWritable;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.VcfLineWritable;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
 import org.bgi.flexlab.gaea.data.structure.header.SingleVCFHeader;
+import org.bgi.flexlab.gaea.data.structure.reference.ReferenceShare;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.BioJob;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.ToolsRunner;
+import org.bgi.flexlab.gaea.tools.annotator.config.Config;
 import org.seqdoop.hadoop_bam.VCFOutputFormat;
 
 import java.io.IOException;
@@ -63,14 +66,16 @@ public class Annotator extends ToolsRunner {
         options.setHadoopConf(remainArgs, conf);
         conf.set(VCFOutputFormat.OUTPUT_VCF_FORMAT_PROPERTY, "VCF");
         BioJob job = BioJob.getInstance(conf);
+        if(options.getGeneModelPath() != null)
+            prepareGeneModel(job);
 
         job.setJobName("GaeaAnnotator");
         job.setJarByClass(this.getClass());
-        job.setMapperClass(AnnotationMapper.class);
+        job.setWindowsBasicMapperClass(AnnotationMapper.class, AnnotationMapper.WINDOW_SIZE);
         job.setReducerClass(AnnotationReducer.class);
         job.setNumReduceTasks(options.getReducerNum());
 
-        job.setMapOutputKeyClass(Text.class);
+        job.setMapOutputKeyClass(WindowsBasedWritable.class);
         job.setMapOutputValueClass(VcfLineWritable.class);
 
 
@@ -108,6 +113,26 @@ public class Annotator extends ToolsRunner {
         return job.waitForCompletion(true) ? 0 : 1;
     }
 
+    /**
+     * build the gene model snapshot if it does not exist yet or its source fingerprint is stale,
+     * reducers load it from the distributed cache
+     */
+    private void prepareGeneModel(BioJob job) throws IOException {
+        Path snapshot = new Path(options.getGeneModelPath());
+        ReferenceShare genomeShare = new ReferenceShare();
+        genomeShare.loadChromosomeList(options.getReferenceSequencePath());
+        Config config = new Config(job.getConfiguration(), genomeShare);
+        AnnotatorBuild annoBuild = new AnnotatorBuild(config);
+        if(!annoBuild.isSnapshotCurrent(snapshot, conf)) {
+            long start = System.currentTimeMillis();
+            config.setSnpEffectPredictor(annoBuild.createSnpEffPredictor());
+            annoBuild.buildForest();
+            annoBuild.writeSnapshot(snapshot, conf);
+            System.err.println("build gene model snapshot: " + (System.currentTimeMillis() - start) + "ms");
+        }
+        AnnotatorBuild.distributeSnapshot(snapshot, job);
+    }
+
     private int runAnnoSort() throws Exception {
         if(options.getOutputFormat() == AnnotatorOptions.OutputFormat.VCF){
             return runVCFSort();
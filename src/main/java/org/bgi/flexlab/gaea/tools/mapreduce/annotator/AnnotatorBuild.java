@@ -16,6 +16,12 @@
  *******************************************************************************/
 package org.bgi.flexlab.gaea.tools.mapreduce.annotator;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.bgi.flexlab.gaea.data.structure.reference.ReferenceShare;
 import org.bgi.flexlab.gaea.tools.annotator.config.Config;
 import org.bgi.flexlab.gaea.tools.annotator.effect.SnpEffectPredictor;
 import org.bgi.flexlab.gaea.tools.annotator.effect.factory.SnpEffPredictorFactory;
@@ -26,12 +32,31 @@ import org.bgi.flexlab.gaea.tools.annotator.interval.Transcript;
 import org.bgi.flexlab.gaea.tools.annotator.interval.TranscriptSupportLevel;
 import org.bgi.flexlab.gaea.tools.annotator.util.Timer;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.net.URI;
 
 class AnnotatorBuild implements Serializable{
 	
 	private static final long serialVersionUID = 8558515853505312687L;
 	
+	static final String SNAPSHOT_CACHE_LINK = "geneModelSnapshot";
+	
+	private static final int SNAPSHOT_BUFFER_SIZE = 1 << 20;
+	
+	/**
+	 * layout version of the snapshot header and the serialized gene model,
+	 * raise it when the snapshot can't be read by older code
+	 */
+	static final int SNAPSHOT_VERSION = 1;
+	
 	private boolean debug; // Debug mode
 	private boolean verbose; // Be verbose
 	private boolean canonical = false; // Use only canonical transcripts
@@ -156,6 +181,107 @@ class AnnotatorBuild implements Serializable{
 		if (verbose) Timer.showStdErr("done.");
 	}
 	
+	/**
+	 * path, length and modification time of the config, gene info and
+	 * reference files the gene model is built from
+	 */
+	String sourceFingerprint(Configuration conf) throws IOException {
+		AnnotatorOptions options = config.getOptions();
+		String[] sources = {options.getConfigFile(), config.getGeneInfo(), options.getReferenceSequencePath()};
+		StringBuilder fingerprint = new StringBuilder();
+		for (String source : sources) {
+			Path path = new Path(source);
+			FileSystem fs = path.getFileSystem(conf);
+			FileStatus status = fs.getFileStatus(path);
+			fingerprint.append(fs.makeQualified(path)).append('\t');
+			fingerprint.append(status.getLen()).append('\t');
+			fingerprint.append(status.getModificationTime()).append('\n');
+		}
+		return fingerprint.toString();
+	}
+	
+	/**
+	 * source fingerprint of the snapshot header, null for a snapshot of
+	 * another version or without a header
+	 */
+	private static String readFingerprint(ObjectInputStream ois) {
+		try {
+			if (ois.readInt() != SNAPSHOT_VERSION)
+				return null;
+			return ois.readUTF();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * write the built SnpEffectPredictor (genes, transcripts, exons, sequences
+	 * and interval forest) as a gene model snapshot, after a header of the
+	 * version and the source fingerprint
+	 */
+	void writeSnapshot(Path path, Configuration conf) throws IOException {
+		String fingerprint = sourceFingerprint(conf);
+		FileSystem fs = path.getFileSystem(conf);
+		ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fs.create(path), SNAPSHOT_BUFFER_SIZE));
+		try {
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeUTF(fingerprint);
+			out.writeObject(config.getSnpEffectPredictor());
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * whether the snapshot exists and is built by this version from the
+	 * current sources
+	 */
+	boolean isSnapshotCurrent(Path path, Configuration conf) throws IOException {
+		FileSystem fs = path.getFileSystem(conf);
+		if (!fs.exists(path))
+			return false;
+		String fingerprint;
+		InputStream in = fs.open(path);
+		try {
+			fingerprint = readFingerprint(new ObjectInputStream(new BufferedInputStream(in)));
+		} catch (IOException e) {
+			fingerprint = null;
+		} finally {
+			in.close();
+		}
+		return sourceFingerprint(conf).equals(fingerprint);
+	}
+	
+	/**
+	 * use the gene model snapshot instead of createSnpEffPredictor and buildForest,
+	 * the snapshot is read from the distributed cache when it is there
+	 */
+	void loadSnapshot(Path path, Configuration conf, ReferenceShare genomeShare) throws IOException {
+		File local = new File(SNAPSHOT_CACHE_LINK);
+		InputStream in = local.exists() ? new FileInputStream(local) : path.getFileSystem(conf).open(path);
+		ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(in, SNAPSHOT_BUFFER_SIZE));
+		SnpEffectPredictor predictor;
+		try {
+			if (!sourceFingerprint(conf).equals(readFingerprint(ois)))
+				throw new RuntimeException("gene model snapshot " + path
+						+ " is not built by this version from the current config, gene info and reference, remove it to rebuild");
+			predictor = (SnpEffectPredictor) ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException(e.toString());
+		} finally {
+			ois.close();
+		}
+		
+		predictor.getGenome().setGenomeShare(genomeShare);
+		config.setGenome(predictor.getGenome());
+		config.setSnpEffectPredictor(predictor);
+	}
+	
+	static void distributeSnapshot(Path path, Job job) throws IOException {
+		URI uri = path.getFileSystem(job.getConfiguration()).makeQualified(path).toUri();
+		job.addCacheFile(URI.create(uri.toString() + "#" + SNAPSHOT_CACHE_LINK));
+	}
+	
 	/**
 	 * Show an error message and exit
 	 */
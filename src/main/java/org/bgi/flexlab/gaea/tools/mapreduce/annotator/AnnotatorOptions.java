@@ -45,6 +45,7 @@ public class AnnotatorOptions extends GaeaOptions implements HadoopOptions{
     private String inputFilePath;
 
     private String referenceSequencePath; //参考序列gaeaindex
+    private String geneModelPath;
 
     private boolean multiOutput = false;
     private boolean databaseCache = false;
@@ -67,6 +68,7 @@ public class AnnotatorOptions extends GaeaOptions implements HadoopOptions{
         addOption(null,"debug",      false, "for debug.");
         addOption("h", "help",       false, "help information.");
         addOption("R", "reducer", true, "reducer numbers [30]");
+        addOption("g", "geneModel", true, "gene model snapshot, built from the config and reference when the file does not exist or its sources changed");
 
         FormatHelpInfo(SOFTWARE_NAME,SOFTWARE_VERSION);
 
@@ -101,6 +103,7 @@ public class AnnotatorOptions extends GaeaOptions implements HadoopOptions{
         setUseDatabaseCache(getOptionBooleanValue("useDatabaseCache", false));
         setVerbose(getOptionBooleanValue("verbose", false));
         setDebug(getOptionBooleanValue("debug", false));
+        setGeneModelPath(cmdLine.getOptionValue("geneModel"));
     }
 
     @Override
@@ -215,6 +218,14 @@ public class AnnotatorOptions extends GaeaOptions implements HadoopOptions{
         this.databaseCache = databaseCache;
     }
 
+    public String getGeneModelPath() {
+        return geneModelPath;
+    }
+
+    public void setGeneModelPath(String geneModelPath) {
+        this.geneModelPath = geneModelPath;
+    }
+
     public boolean isUseDatabaseCache() {
         return useDatabaseCache;
     }
@@ -25,6 +25,8 @@ import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.bgi.flexlab.gaea.data.mapreduce.input.bam.GaeaAnySAMInputFormat;
 import org.bgi.flexlab.gaea.data.mapreduce.input.header.SamHdfsFileHeader;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordDatumWritable;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
 import org.bgi.flexlab.gaea.data.structure.reference.ReferenceShare;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.BioJob;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.ToolsRunner;
@@ -58,9 +60,9 @@ public class BamQualityControl extends ToolsRunner{
 
 		job.setJobName("BamQualityControl");
 		job.setJarByClass(BamQualityControl.class);
-		job.setMapperClass(BamQualityControlMapper.class);
+		job.setWindowsBasicMapperClass(BamQualityControlMapper.class, WINDOW_SIZE);
 		job.setReducerClass(BamQualityControlReducer.class);
-		job.setOutputKeyValue(Text.class, Text.class, 
+		job.setOutputKeyValue(WindowsBasedWritable.class, SamRecordDatumWritable.class, 
 				NullWritable.class, Text.class);
 		job.setNumReduceTasks(options.getReducerNum());
 		
@@ -21,36 +21,40 @@ import htsjdk.samtools.SAMReadGroupRecord;
 import org.apache.commons.lang.math.RandomUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.bgi.flexlab.gaea.data.mapreduce.input.header.SamHdfsFileHeader;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordDatumWritable;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordWritable;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
 import org.bgi.flexlab.gaea.data.structure.bam.GaeaSamRecord;
 import org.bgi.flexlab.gaea.util.SamRecordDatum;
 import org.bgi.flexlab.gaea.util.SamRecordUtils;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-public class BamQualityControlMapper extends Mapper<LongWritable, SamRecordWritable, Text, Text>{
+public class BamQualityControlMapper extends Mapper<LongWritable, SamRecordWritable, WindowsBasedWritable, SamRecordDatumWritable>{
 	/**
 	 * FileHeader
 	 */
 	private SAMFileHeader mFileHeader=null;
 	
-	private String sampleName = "";
-	
 	private int unmappedReadsNum = 0;
 	
 	private int randomkey = RandomUtils.nextInt();
 	
-	private Text outK;
+	private WindowsBasedWritable outK = new WindowsBasedWritable();
+	
+	private SamRecordDatumWritable outV = new SamRecordDatumWritable();
 	
-	private Text outV;
+	private SamRecordDatum unmappedDatum = new SamRecordDatum();
 	
 	private Map<String, Integer> rg2Index = new HashMap<String, Integer>();
 	
+	private Map<String, Integer> sampleIDs = new HashMap<String, Integer>();
+	
 	@Override
 	public void setup(Context context) throws IOException {
 		Configuration conf = context.getConfiguration();
@@ -64,15 +68,17 @@ public class BamQualityControlMapper extends Mapper<LongWritable, SamRecordWrita
 		SamRecordDatum datum = new SamRecordDatum();
 		String rgID = SamRecordUtils.getReadGroup(value.get());
 		GaeaSamRecord record = new GaeaSamRecord(mFileHeader, value.get());
-		sampleName = mFileHeader.getReadGroup(rgID).getSample();
-		if(datum.parseSam(record.getSAMString())) {
-			long winNum = -1;
-			winNum = datum.getPosition() / BamQualityControl.WINDOW_SIZE;
-			formatKeyValue(datum, rgID, winNum, true);
+		int sampleID = sampleIDs.get(mFileHeader.getReadGroup(rgID).getSample());
+		if(datum.parseBamQC(record)) {
+			datum.setRgIndex(rg2Index.get(rgID));
+			long winNum = datum.getPosition() / BamQualityControl.WINDOW_SIZE;
+			outK.set(sampleID, record.getReferenceIndex(), winNum, 0);
+			outV.set(datum);
 			context.write(outK, outV);
 			if (winNum != (datum.getEnd() / BamQualityControl.WINDOW_SIZE)) {
 				winNum++; 
-				formatKeyValue(datum, rgID, winNum, false);
+				datum.setIsrepeat(true);
+				outK.set(sampleID, record.getReferenceIndex(), winNum, 0);
 				context.write(outK, outV);
 			}
 		} else {
@@ -80,61 +86,23 @@ public class BamQualityControlMapper extends Mapper<LongWritable, SamRecordWrita
 				randomkey = RandomUtils.nextInt();
 				unmappedReadsNum = 0;
 			}
-			context.write(new Text(formatKey("-1:-1", randomkey)), new Text("1"));
+			// chromosome -1 is read back as SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX
+			outK.set(sampleID, -1, randomkey, 0);
+			outV.set(unmappedDatum);
+			context.write(outK, outV);
 			unmappedReadsNum++;
 		}
 	}
-	
-	private void formatKeyValue(SamRecordDatum datum, String rgID, long winNum, boolean sameWin) {
-		outK = new Text(formatKey(datum.getChrName(), winNum));
-		outV = new Text(formatValue(datum, rgID, sameWin));
-	}
 
-	private String formatValue(SamRecordDatum datum, String rgID, boolean sameWin) {
-		// TODO Auto-generated method stub
-		StringBuilder vBuilder = new StringBuilder();
-		vBuilder.append(datum.getFlag());
-		vBuilder.append("\t");
-		vBuilder.append(datum.getReadsSequence());
-		vBuilder.append("\t");
-		vBuilder.append(datum.getInsertSize());
-		vBuilder.append("\t");
-		vBuilder.append(datum.getPosition());
-		vBuilder.append("\t");
-		vBuilder.append(datum.getCigarString());
-		vBuilder.append("\t");
-		vBuilder.append(datum.getBestHitCount());
-		vBuilder.append("\t");
-		if(sameWin)
-			vBuilder.append("0");
-		else
-			vBuilder.append("1");
-		vBuilder.append("\t");
-		vBuilder.append(datum.getMappingQual());
-		vBuilder.append("\t");
-		vBuilder.append(rg2Index.get(rgID));
-		vBuilder.append("\t");
-		vBuilder.append(datum.getQualityString());
-		return vBuilder.toString();
-	}
-	
-	private String formatKey(String chr, long winNum) {
-		// TODO Auto-generated method stub
-		StringBuilder kBuilder = new StringBuilder();
-		kBuilder.append(sampleName);
-		kBuilder.append(":");
-		kBuilder.append(chr);
-		kBuilder.append(":");
-		kBuilder.append(winNum);
-		return kBuilder.toString();
-	}
-
-	private void assignIndexToReadGroup(SAMFileHeader mFileHeader2) {
-		// TODO Auto-generated method stub
-		int rgIndex = 0;
-		for(SAMReadGroupRecord rg : mFileHeader.getReadGroups()) {
-			rg2Index.put(rg.getId(), rgIndex);
-			rgIndex++;
+	/*
+	 * read group index of the value, and the key sample id of every sample
+	 * as WindowsBasedMapper assigns it
+	 */
+	private void assignIndexToReadGroup(SAMFileHeader mFileHeader) {
+		List<SAMReadGroupRecord> rgs = mFileHeader.getReadGroups();
+		for(int rgIndex = 0; rgIndex < rgs.size(); rgIndex++) {
+			rg2Index.put(rgs.get(rgIndex).getId(), rgIndex);
+			sampleIDs.put(rgs.get(rgIndex).getSample(), rgIndex);
 		}
 	}
 }
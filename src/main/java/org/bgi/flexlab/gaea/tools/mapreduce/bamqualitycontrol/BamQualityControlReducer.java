@@ -16,10 +16,15 @@
  *******************************************************************************/
 package org.bgi.flexlab.gaea.tools.mapreduce.bamqualitycontrol;
 
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.bgi.flexlab.gaea.data.mapreduce.input.header.SamHdfsFileHeader;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordDatumWritable;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
 import org.bgi.flexlab.gaea.data.structure.positioninformation.CompoundInformation;
 import org.bgi.flexlab.gaea.data.structure.positioninformation.depth.PositionDepth;
 import org.bgi.flexlab.gaea.data.structure.reference.ChromosomeInformationShare;
@@ -31,7 +36,7 @@ import org.bgi.flexlab.gaea.util.SamRecordDatum;
 
 import java.io.IOException;
 
-public class BamQualityControlReducer extends Reducer<Text, Text, NullWritable, Text>{
+public class BamQualityControlReducer extends Reducer<WindowsBasedWritable, SamRecordDatumWritable, NullWritable, Text>{
 	
 	private BamQualityControlOptions options;
 		
@@ -40,12 +45,15 @@ public class BamQualityControlReducer extends Reducer<Text, Text, NullWritable,
 	private ReportBuilder reportBuilder;
 		
 	private PositionDepth deep;
+	
+	private SAMFileHeader mFileHeader;
 				
 	@Override
 	protected void setup(Context context) throws IOException {
 		options = new BamQualityControlOptions();
 		Configuration conf = context.getConfiguration();
 		options.getOptionsFromHadoopConf(conf);
+		mFileHeader = SamHdfsFileHeader.getHeader(conf);
 		
 		reportBuilder = new ReportBuilder();
 		if ((options.getRegion() != null) || (options.getBedfile() != null))
@@ -56,11 +64,14 @@ public class BamQualityControlReducer extends Reducer<Text, Text, NullWritable,
 	}
 	
 	@Override
-	public void reduce(Text key, Iterable<Text> values,Context context) throws IOException, InterruptedException {
-		String[] keySplit = key.toString().split(":");	
-		String sampleName = keySplit[0];	
-		String chrName = keySplit[1];					
-		long winNum = Long.parseLong(keySplit[2]);		
+	public void reduce(WindowsBasedWritable key, Iterable<SamRecordDatumWritable> values,Context context) throws IOException, InterruptedException {
+		String sampleName = mFileHeader.getReadGroups().get(key.getSampleID()).getSample();
+		String chrName = "-1";
+		long winNum = -1;
+		if(key.getChromosomeIndex() != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+			chrName = mFileHeader.getSequence(key.getChromosomeIndex()).getSequenceName();
+			winNum = key.getWindowsNumber();
+		}
 		ChromosomeInformationShare chrInfo = null;
 		try{
 			chrInfo = reportType.getReference().getChromosomeInfo(chrName);
@@ -102,13 +113,9 @@ public class BamQualityControlReducer extends Reducer<Text, Text, NullWritable,
 		//position depth
 		deep = new PositionDepth(winSize, options.isGenderDepth(), reportBuilder.getSampleLaneSzie(sampleName));
 				
-		for(Text value : values) {
-			SamRecordDatum datum = new SamRecordDatum();
+		for(SamRecordDatumWritable value : values) {
+			SamRecordDatum datum = value.get();
 
-			if(!datum.parseBamQC(value.toString())) {
-				context.getCounter("Exception", "parse mapper output error").increment(1);
-				continue;
-			}
 			readPos = datum.getPosition(); 
 			if (readPos < 0) {
 				context.getCounter("Exception", "read start pos less than zero").increment(1);
@@ -11,6 +11,7 @@ import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.bgi.flexlab.gaea.data.mapreduce.input.bam.GaeaAnySAMInputFormat;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.BioJob;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.ToolsRunner;
+import org.bgi.flexlab.gaea.tools.callsv.ChrPartitionar;
 import org.bgi.flexlab.gaea.tools.callsv.NewMapKey;
 import org.bgi.flexlab.gaea.tools.callsv.ReduceGroupingComparator;
 import org.bgi.flexlab.gaea.tools.callsv.SamWritable;
@@ -59,7 +60,7 @@ public class CallStructuralVariation extends ToolsRunner{
 		job.setMapOutputValueClass(SamWritable.class);
 		job.setOutputKeyClass(NullWritable.class);
 		job.setOutputValueClass(Text.class);
-		//job1.setPartitionerClass(ChrPartitionar.class);
+		job.setPartitionerClass(ChrPartitionar.class);
 		job.setGroupingComparatorClass(ReduceGroupingComparator.class);
 
 		FileInputFormat.addInputPaths(job, options.getInput());
@@ -1,6 +1,7 @@
 package org.bgi.flexlab.gaea.tools.mapreduce.callsv;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
@@ -10,6 +11,8 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordWritable;
+import org.bgi.flexlab.gaea.tools.callsv.ChrStatistic;
+import org.bgi.flexlab.gaea.tools.callsv.GenomeBins;
 import org.bgi.flexlab.gaea.tools.callsv.MapComputer;
 import org.bgi.flexlab.gaea.tools.callsv.MapContextWriter;
 import org.bgi.flexlab.gaea.tools.callsv.NewMapKey;
@@ -22,8 +25,11 @@ public class CallStructuralVariationMapper extends Mapper<LongWritable, SamRecor
 
 	private Configuration conf;
 	private FSDataOutputStream out;
+	private FSDataOutputStream chrOut;
 	private CallStructuralVariationOptions option = new CallStructuralVariationOptions();
 	private MapComputer mc;
+	private GenomeBins bins;
+	private Map<String, ChrStatistic> chrStats = new HashMap<String, ChrStatistic>();
 	
 
 	@Override
@@ -35,9 +41,12 @@ public class CallStructuralVariationMapper extends Mapper<LongWritable, SamRecor
 		String filename = input.getPath().getName();
 		String libpath = option.getHdfsdir() + "/Sort/LibConf/" + filename + "-" + input.getStartVirtualOffset();
 		out = FileSystem.get(conf).create(new Path(libpath));
+		String chrpath = option.getHdfsdir() + "/Sort/ChrConf/" + filename + "-" + input.getStartVirtualOffset();
+		chrOut = FileSystem.get(conf).create(new Path(chrpath));
 		
 		mc = new MapComputer();
 		mc.setOption(option);
+		bins = new GenomeBins(option);
 	}
 	
 	@Override
@@ -48,7 +57,17 @@ public class CallStructuralVariationMapper extends Mapper<LongWritable, SamRecor
 		MapContextWriter res = mc.readClassify(record);	//classify all reads
 		
 		if (res != null) {
-			context.write(res.getKey(), res.getSam());
+			NewMapKey mapKey = res.getKey();
+			updateChrStatistic(res.getSam());
+			
+			/**
+			 * 输出到包含这条reads的每一个bin
+			 */
+			int lastBin = bins.getLastBin(mapKey.getPos());
+			for(int bin = bins.getFirstBin(mapKey.getPos()); bin <= lastBin; bin++) {
+				mapKey.setBin(bin);
+				context.write(mapKey, res.getSam());
+			}
 		}
 		
 	}
@@ -63,8 +82,24 @@ public class CallStructuralVariationMapper extends Mapper<LongWritable, SamRecor
 		}
 		out.flush();
 		out.close();
+		
+		for(Map.Entry<String, ChrStatistic> entry : chrStats.entrySet()) {
+			String writer = entry.getKey() + "\t" + entry.getValue().toString() + "\n";
+			chrOut.write(writer.getBytes());
+		}
+		chrOut.flush();
+		chrOut.close();
 		conf = null;
 		option = null;
 	}
 
+	private void updateChrStatistic(SamWritable sam) {
+		ChrStatistic stat = chrStats.get(sam.getChr());
+		if(stat == null) {
+			stat = new ChrStatistic();
+			chrStats.put(sam.getChr(), stat);
+		}
+		stat.update(sam);
+	}
+
 }
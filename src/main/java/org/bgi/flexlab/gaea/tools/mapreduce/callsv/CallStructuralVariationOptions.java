@@ -50,6 +50,10 @@ public class CallStructuralVariationOptions extends GaeaOptions implements Hadoo
 	 * maximum SV size 
 	 */
 	private int maxsvsize;
+	/**
+	 * size of genomic bins that SV evidence is partitioned into, 0 for whole chromosomes
+	 */
+	private int binsize;
 	/**
 	 * mean of insert
 	 */
@@ -73,6 +77,7 @@ public class CallStructuralVariationOptions extends GaeaOptions implements Hadoo
 		addOption("c", "maxcoverage", true, "maximum threshold of haploid sequence coverage for regions to be ignored [default: 1000]");
 		addOption("score", "minscore", true, "minimum scores for output SVs [default: 30]");
 		addOption("svsize", "maxsvsize", true, "maximum SV size [defailt: 1000000]");
+		addOption("binsize", "binsize", true, "size of genomic bins that SV evidence is partitioned into, bins overlap by more than maxsvsize. 0 for whole chromosomes [default: 10000000]");
 		
 		addOption("h", "help", false, "print help information.");
 		
@@ -117,6 +122,7 @@ public class CallStructuralVariationOptions extends GaeaOptions implements Hadoo
 		maxcoverage = getOptionIntValue("c", 1000);
 		minscore = getOptionIntValue("score", 30);
 		maxsvsize = getOptionIntValue("svsize", 1000000);
+		binsize = getOptionIntValue("binsize", 10000000);
 		
 		checkPara();
 		
@@ -262,5 +268,15 @@ public class CallStructuralVariationOptions extends GaeaOptions implements Hadoo
 	public void setMaxsvsize(int maxsvsize) {
 		this.maxsvsize = maxsvsize;
 	}
+
+
+	public int getBinsize() {
+		return binsize;
+	}
+
+
+	public void setBinsize(int binsize) {
+		this.binsize = binsize;
+	}
 	
 }
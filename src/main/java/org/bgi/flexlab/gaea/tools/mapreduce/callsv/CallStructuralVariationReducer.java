@@ -9,6 +9,7 @@ import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.bgi.flexlab.gaea.tools.callsv.BuildConnection;
+import org.bgi.flexlab.gaea.tools.callsv.GenomeBins;
 import org.bgi.flexlab.gaea.tools.callsv.LinkRegion;
 import org.bgi.flexlab.gaea.tools.callsv.NewMapKey;
 import org.bgi.flexlab.gaea.tools.callsv.Reads;
@@ -23,6 +24,7 @@ public class CallStructuralVariationReducer extends Reducer<NewMapKey, SamWritab
 	private CallStructuralVariationOptions option = new CallStructuralVariationOptions();
 	private Configuration conf;
 	private BuildConnection bc;
+	private GenomeBins bins;
 	
 
 	@Override
@@ -31,6 +33,8 @@ public class CallStructuralVariationReducer extends Reducer<NewMapKey, SamWritab
 		option.getOptionsFromHadoopConf(conf);
 		bc = new BuildConnection(conf, option);
 		bc.setUpperLower();
+		bc.setChrStatistic();
+		bins = new GenomeBins(option);
 		
 	}
 	
@@ -56,13 +60,22 @@ public class CallStructuralVariationReducer extends Reducer<NewMapKey, SamWritab
 			Region firstReg = regInfoMap.get(linkReg.getFirstRegion());
 			Region secondReg = regInfoMap.get(linkReg.getSecondRegion());
 			
+			/**
+			 * 相邻的bin有重叠，只输出第一个区域起点在当前bin核心区域中的SV，去掉重复的SV
+			 */
+			if(!bins.isInCore(key.getBin(), firstReg.getRegStart()))
+				continue;
+			
 			Text sv = bc.svCaller(linkReg, reads, firstReg, secondReg);
 			
 			if(sv != null) {
 				context.write(NullWritable.get(), sv);
 			}
 		}
-		
+	}
+	
+	@Override
+	protected void cleanup(Context context) throws IOException, InterruptedException {
 		bc.close();
 	}
 
@@ -29,11 +29,13 @@ import org.bgi.flexlab.gaea.data.mapreduce.input.fastq.FastqInputFormat;
 import org.bgi.flexlab.gaea.data.mapreduce.input.fastq.FastqMultipleSample;
 import org.bgi.flexlab.gaea.data.mapreduce.input.fastq.FastqRecordReader;
 import org.bgi.flexlab.gaea.data.mapreduce.input.fastq.FastqSample;
+import org.bgi.flexlab.gaea.data.mapreduce.input.fastq.PairedFastqInputFormat;
 import org.bgi.flexlab.gaea.data.structure.reads.report.FastqQualityControlReporterIO;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.BioJob;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.PairEndAggregatorMapper;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.ToolsRunner;
 
+import java.io.IOException;
 import java.util.Map;
 
 public class FastqQualityControl extends ToolsRunner {
@@ -55,19 +57,94 @@ public class FastqQualityControl extends ToolsRunner {
 
 		job.setJobName("GaeaFastqQC");
 		job.setJarByClass(FastqQualityControl.class);
+		job.setOutputFormatClass(TextOutputFormat.class);
+
+		FastqMultipleSample sample = null;
+		if (option.getMultiSampleList() != null
+				&& option.getMultiSampleList() != "") {
+			sample = new FastqMultipleSample(option.getMultiSampleList(), true);
+		}
+
+		if (hasAdaptorList(option, sample)) {
+			// adaptor lists are joined to the reads by read name
+			setPairEndAggregatorJob(job, option, sample);
+		} else {
+			setPairedInputJob(job, option, sample);
+		}
+
+		Path outputPath = new Path(option.getOutputDirectory() + "/out_fq");
+		FileOutputFormat.setOutputPath(job, outputPath);
+		MultipleOutputs.addNamedOutput(job, "filterStatistic",
+				TextOutputFormat.class, NullWritable.class, Text.class);
+		MultipleOutputs.addNamedOutput(job, "qualFreqStatistic",
+				TextOutputFormat.class, NullWritable.class, Text.class);
+
+		if (job.waitForCompletion(true)) {
+			FastqQualityControlReporterIO report = new FastqQualityControlReporterIO(
+					sample, option.isMultiStatis());
+			report.mergeReport(outputPath, conf,
+					new Path(option.getOutputDirectory()));
+			return 0;
+		} else {
+			return 1;
+		}
+	}
+
+	private boolean hasAdaptorList(FastqQualityControlOptions option,
+			FastqMultipleSample sample) {
+		if (sample == null)
+			return option.getAdapter1() != null || option.getAdapter2() != null;
+		for (FastqSample sl : sample.getSampleList().values()) {
+			if (sl.getAdapter1() != null || sl.getAdapter2() != null)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * map-only job, fq1 and fq2 are read side by side.
+	 */
+	private void setPairedInputJob(BioJob job,
+			FastqQualityControlOptions option, FastqMultipleSample sample)
+			throws IOException {
+		job.setMapperClass(FastqQualityControlMapper.class);
+		job.setInputFormatClass(PairedFastqInputFormat.class);
+		job.setNumReduceTasks(0);
+		job.setOutputKeyValue(NullWritable.class, Text.class);
+
+		if (sample != null) {
+			for (FastqSample sl : sample.getSampleList().values()) {
+				if (sl.getFastq1() == null) {
+					System.err.println(sl.getSampleName() + " has no fq1!");
+					System.exit(1);
+				}
+				if (sl.getFastq2() == null) {
+					System.err.println(sl.getSampleName() + " is SE data!");
+				}
+				PairedFastqInputFormat.addInputPair(job,
+						new Path(sl.getFastq1()),
+						sl.getFastq2() == null ? null : new Path(sl.getFastq2()));
+			}
+		} else if (option.getInputFastq1() != null) {
+			PairedFastqInputFormat.addInputPair(job,
+					new Path(option.getInputFastq1()),
+					option.getInputFastq2() == null ? null : new Path(
+							option.getInputFastq2()));
+		}
+	}
+
+	private void setPairEndAggregatorJob(BioJob job,
+			FastqQualityControlOptions option, FastqMultipleSample sample)
+			throws IOException {
 		job.setMapperClass(PairEndAggregatorMapper.class);
 		job.setReducerClass(FastqQualityControlReducer.class);
 
 		job.setInputFormatClass(FastqInputFormat.class);
-		job.setOutputFormatClass(TextOutputFormat.class);
 		job.setNumReduceTasks(option.getReducerNumber());
 		job.setOutputKeyValue(Text.class, Text.class, NullWritable.class,
 				Text.class);
 
-		FastqMultipleSample sample = null;
-		if (option.getMultiSampleList() != null
-				&& option.getMultiSampleList() != "") {
-			sample = new FastqMultipleSample(option.getMultiSampleList(), true);
+		if (sample != null) {
 			Map<String, FastqSample> sampleList = sample.getSampleList();
 
 			for (FastqSample sl : sampleList.values()) {
@@ -117,22 +194,5 @@ public class FastqQualityControl extends ToolsRunner {
 						AdaptorInputFormat.class);
 			}
 		}
-
-		Path outputPath = new Path(option.getOutputDirectory() + "/out_fq");
-		FileOutputFormat.setOutputPath(job, outputPath);
-		MultipleOutputs.addNamedOutput(job, "filterStatistic",
-				TextOutputFormat.class, NullWritable.class, Text.class);
-		MultipleOutputs.addNamedOutput(job, "qualFreqStatistic",
-				TextOutputFormat.class, NullWritable.class, Text.class);
-
-		if (job.waitForCompletion(true)) {
-			FastqQualityControlReporterIO report = new FastqQualityControlReporterIO(
-					sample, option.isMultiStatis());
-			report.mergeReport(outputPath, conf,
-					new Path(option.getOutputDirectory()));
-			return 0;
-		} else {
-			return 1;
-		}
 	}
-}
\ No newline at end of file
+}
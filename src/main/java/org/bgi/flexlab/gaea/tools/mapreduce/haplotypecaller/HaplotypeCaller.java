@@ -33,6 +33,8 @@ public class HaplotypeCaller extends ToolsRunner {
         
         job.setJarByClass(HaplotypeCaller.class);
         job.setWindowsBasicMapperClass(WindowsBasedSamRecordMapper.class, options.getWindowSize(),300);
+        if(options.isReadOnceShuffle())
+        	job.setReadOnceShuffle();
         job.setReducerClass(HaplotypeCallerReducer.class);
         
         job.setNumReduceTasks(options.getReducerNumber());
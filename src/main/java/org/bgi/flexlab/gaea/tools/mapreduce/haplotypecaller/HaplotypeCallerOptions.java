@@ -62,6 +62,10 @@ public class HaplotypeCallerOptions  extends GaeaOptions implements HadoopOption
 	
 	private int maxReadsPerPosition = 0;
 	
+	private boolean readOnceShuffle = false;
+	
+	private int regionThreads = 1;
+	
 	public HaplotypeCallerOptions() {
 		addOption("a","allSitePLs",false,"Annotate all sites with PLs");
 		addOption("A","annotateNDA",false,"If provided, we will annotate records with the number of alternate alleles that were discovered (but not necessarily genotyped) at a given site");
@@ -90,9 +94,11 @@ public class HaplotypeCallerOptions  extends GaeaOptions implements HadoopOption
 		addOption("R", "region", true, "One or more genomic intervals over which to operate");
 		addOption("s","stand_emit_conf",true,"The minimum phred-scaled confidence threshold at which variants should be emitted (and filtered with LowQual if less than the calling threshold");
 		addOption("S","stand_call_conf",true,"The minimum phred-scaled confidence threshold at which variants should be called");
+		addOption("t","regionThreads",true,"threads to call assembly regions of a window in each reducer[1]");
 		addOption("u","uniquifySamples",false,"Assume duplicate samples are present and uniquify all names with '.variant' and file number index");
 		addOption("U","useNewAFCalculator",false,"Use new AF model instead of the so-called exact model");
 		addOption("w", "keyWindow", true, "window size for key[10000]");
+		addOption("X", "readOnceShuffle", false, "shuffle every read once per window span and rebuild window overlaps in reducer[false]");
 		FormatHelpInfo(SOFTWARE_NAME,SOFTWARE_VERSION);
 	}
 	
@@ -138,6 +144,8 @@ public class HaplotypeCallerOptions  extends GaeaOptions implements HadoopOption
 		this.readShardSize = getOptionIntValue("c",-1);
 		this.readPaddingSize = getOptionIntValue("d",100);
 		this.maxReadsPerPosition = getOptionIntValue("D",0);
+		this.readOnceShuffle = getOptionBooleanValue("X",false);
+		this.regionThreads = getOptionIntValue("t",1);
 		
 		this.output = getOptionValue("o",null);
 		this.reference = getOptionValue("r",null);
@@ -250,6 +258,14 @@ public class HaplotypeCallerOptions  extends GaeaOptions implements HadoopOption
 		return list;
 	}
 	
+	public boolean isReadOnceShuffle() {
+		return readOnceShuffle;
+	}
+	
+	public int getRegionThreads() {
+		return regionThreads;
+	}
+	
 	public int getMaxReadsPerPosition(){
 		return this.maxReadsPerPosition;
 	}
@@ -11,11 +11,13 @@ import org.bgi.flexlab.gaea.data.mapreduce.util.VariantContextHadoopWriter;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordWritable;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
 import org.bgi.flexlab.gaea.data.structure.dbsnp.DbsnpShare;
+import org.bgi.flexlab.gaea.data.structure.dbsnp.KnownSitesShare;
 import org.bgi.flexlab.gaea.data.structure.reference.ChromosomeInformationShare;
 import org.bgi.flexlab.gaea.data.structure.reference.ReferenceShare;
 import org.bgi.flexlab.gaea.data.structure.reference.index.VcfIndex;
 import org.bgi.flexlab.gaea.data.structure.vcf.VCFLocalLoader;
 import org.bgi.flexlab.gaea.data.variant.filter.VariantRegionFilter;
+import org.bgi.flexlab.gaea.framework.tools.mapreduce.WindowsBasedOverlapBuffer;
 import org.bgi.flexlab.gaea.tools.haplotypecaller.HaplotypeCallerTraversal;
 import org.bgi.flexlab.gaea.tools.haplotypecaller.utils.RefMetaDataTracker;
 import org.bgi.flexlab.gaea.util.Window;
@@ -56,6 +58,10 @@ public class HaplotypeCallerReducer extends Reducer<WindowsBasedWritable, SamRec
 	private DbsnpShare alleleShare = null;
 	
 	private VCFLocalLoader alleleLoader = null;
+
+	private KnownSitesShare dbsnpSites = null;
+
+	private KnownSitesShare alleleSites = null;
 	
 	/**
 	 * vcf filter
@@ -68,6 +74,10 @@ public class HaplotypeCallerReducer extends Reducer<WindowsBasedWritable, SamRec
 	 * variant context writer
 	 */
 	private VariantContextHadoopWriter writer = null;
+	
+	private WindowsBasedOverlapBuffer overlapBuffer = null;
+	
+	private WindowsBasedOverlapBuffer.WindowsProcessor processor = null;
     
 	@Override
     protected void setup(Context context) throws IOException {
@@ -88,22 +98,31 @@ public class HaplotypeCallerReducer extends Reducer<WindowsBasedWritable, SamRec
         	dbsnpShare = new DbsnpShare(options.getDBSnp(), options.getReference());
         	dbsnpShare.loadChromosomeList(options.getDBSnp() + VcfIndex.INDEX_SUFFIX);
         	DBloader = new VCFLocalLoader(options.getDBSnp());
+        	dbsnpSites = KnownSitesShare.load(options.getDBSnp());
         }
         
         if(options.getAlleleFile() != null) {
         	alleleShare = new DbsnpShare(options.getAlleleFile(), options.getReference());
         	alleleShare.loadChromosomeList(options.getAlleleFile() + VcfIndex.INDEX_SUFFIX);
         	alleleLoader = new VCFLocalLoader(options.getAlleleFile());
+        	alleleSites = KnownSitesShare.load(options.getAlleleFile());
         }
         
         haplotypecaller = new HaplotypeCallerTraversal(region,options,header);
         
         writer = new VariantContextHadoopWriter(context,haplotypecaller.getVCFHeader());
+        
+        if(WindowsBasedOverlapBuffer.isReadOnce(conf)) {
+        	overlapBuffer = new WindowsBasedOverlapBuffer(conf, header);
+        	processor = (key, values) -> reduceWindows(key, values, context);
+        }
 	}
 	
-	private ArrayList<VariantContext> getRegionVatiantContext(String chr,int number,int winSize,int end,DbsnpShare dbsnpShare,VCFLocalLoader loader){
+	private ArrayList<VariantContext> getRegionVatiantContext(String chr,int number,int winSize,int end,DbsnpShare dbsnpShare,VCFLocalLoader loader,KnownSitesShare sites){
 		ArrayList<VariantContext> dbsnps = null;
-		if(dbsnpShare != null) {
+		if(sites != null) {
+			dbsnps = filter.loadFilter(sites, chr, number * winSize + 1, end);
+		} else if(dbsnpShare != null) {
 			long startPosition = dbsnpShare.getStartPosition(chr, number, winSize);
 			if(startPosition >= 0)
 				dbsnps = filter.loadFilter(loader, chr, startPosition, end);
@@ -118,7 +137,7 @@ public class HaplotypeCallerReducer extends Reducer<WindowsBasedWritable, SamRec
 		if(dbsnpShare != null) {
 			if(tracker == null)
 				tracker = new RefMetaDataTracker();
-			ArrayList<VariantContext> dbsnps = getRegionVatiantContext(chr,number,winSize,end,dbsnpShare,DBloader);
+			ArrayList<VariantContext> dbsnps = getRegionVatiantContext(chr,number,winSize,end,dbsnpShare,DBloader,dbsnpSites);
 			if(dbsnps == null)
 				dbsnps = new ArrayList<VariantContext>();
 			tracker.add(RefMetaDataTracker.DB_VALUE, dbsnps);
@@ -126,7 +145,7 @@ public class HaplotypeCallerReducer extends Reducer<WindowsBasedWritable, SamRec
 		if(alleleShare != null) {
 			if(tracker == null)
 				tracker = new RefMetaDataTracker();
-			ArrayList<VariantContext> dbsnps = getRegionVatiantContext(chr,number,winSize,end,alleleShare,alleleLoader);
+			ArrayList<VariantContext> dbsnps = getRegionVatiantContext(chr,number,winSize,end,alleleShare,alleleLoader,alleleSites);
 			if(dbsnps == null)
 				dbsnps = new ArrayList<VariantContext>();
 			tracker.add(RefMetaDataTracker.ALLELE_VALUE, dbsnps);
@@ -137,6 +156,13 @@ public class HaplotypeCallerReducer extends Reducer<WindowsBasedWritable, SamRec
 	
 	@Override
     public void reduce(WindowsBasedWritable key, Iterable<SamRecordWritable> values, Context context) throws IOException, InterruptedException {
+		if(overlapBuffer != null)
+			overlapBuffer.reduce(key, values, processor);
+		else
+			reduceWindows(key, values, context);
+	}
+	
+	private void reduceWindows(WindowsBasedWritable key, Iterable<SamRecordWritable> values, Context context) throws IOException, InterruptedException {
 		int index = key.getChromosomeIndex();
 		if(index < 0)
 			return;
@@ -158,7 +184,10 @@ public class HaplotypeCallerReducer extends Reducer<WindowsBasedWritable, SamRec
 	}
 	
 	@Override
-    protected void cleanup(Context context) {
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+		if(overlapBuffer != null)
+			overlapBuffer.flush(processor);
 		haplotypecaller.clear();
+		haplotypecaller.close();
     }
 }
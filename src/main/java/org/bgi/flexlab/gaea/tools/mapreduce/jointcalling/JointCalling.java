@@ -1,16 +1,24 @@
 package org.bgi.flexlab.gaea.tools.mapreduce.jointcalling;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.bgi.flexlab.gaea.data.mapreduce.output.vcf.GaeaVCFOutputFormat;
 import org.bgi.flexlab.gaea.data.mapreduce.output.vcf.VCFHdfsWriter;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.GvcfRecordWritable;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.BioJob;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.ToolsRunner;
@@ -27,6 +35,7 @@ import htsjdk.variant.vcf.VCFUtils;
 public class JointCalling extends ToolsRunner{
 	
 	public final static String INPUT_ORDER = "input.name.order";
+	public final static String MERGE_BATCH_SIZE = "joint.calling.merge.batch.size";
 	
 	public JointCalling(){
 		this.toolsDescription = "joing calling for gvcfs";
@@ -55,6 +64,69 @@ public class JointCalling extends ToolsRunner{
         return vcfHeader;
 	}
 
+	/*
+	 * combine every mergeBatch inputs into one multiple sample gvcf per pass
+	 * until no more than mergeBatch inputs are left for genotyping
+	 */
+	private List<Path> preMerge(String[] args, JointCallingOptions options, MultipleVCFHeaderForJointCalling inputHeaders) throws Exception {
+		List<Path> inputs = options.getInput();
+		int batchSize = options.getMergeBatchSize();
+		
+		int pass = 0;
+		while(batchSize > 1){
+			BioJob job = BioJob.getInstance();
+			Configuration conf = job.getConfiguration();
+			String[] remainArgs = remainArgs(args, conf);
+			options.setHadoopConf(remainArgs, conf);
+			conf.set(GaeaVCFOutputFormat.OUT_PATH_PROP, options.getVCFHeaderOutput() + "/vcfFileHeader.vcf");
+			conf.setInt(MERGE_BATCH_SIZE, batchSize);
+			
+			String passOutput = options.getPreMergeOutput() + "/pass" + pass;
+			MultipleVCFHeaderForJointCalling multiVcfHeader = inputHeaders;
+			if(pass == 0) {
+				multiVcfHeader.writeHeaders(options.getPreMergeOutput() + "/vcfHeaders" + pass, conf);
+				multiVcfHeader.distributeCache(job);
+			} else {
+				multiVcfHeader = new MultipleVCFHeaderForJointCalling();
+				multiVcfHeader.headersConfig(inputs, options.getPreMergeOutput() + "/vcfHeaders" + pass, job);
+			}
+			String[] order = multiVcfHeader.getSamplesAsInputOrder();
+			conf.set(INPUT_ORDER, Utils.join(",", order));
+			if(order.length <= batchSize)
+				break;
+			
+			job.setJobName("Gaea joint calling pre-merge pass " + pass);
+			job.setJarByClass(JointCalling.class);
+			job.setWindowsBasicMapperClass(JointCallingMapper.class, options.getWindowsSize(),0);
+			job.setReducerClass(JointCallingPreMergeReducer.class);
+			job.setNumReduceTasks(options.getReducerNumber());
+			job.setOutputKeyValue(WindowsBasedWritable.class,GvcfRecordWritable.class, NullWritable.class, Text.class);
+			job.setInputFormatClass(JointCallingVCFInputFormat.class);
+			LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+			
+			FileInputFormat.setInputPaths(job, inputs.toArray(new Path[inputs.size()]));
+			FileOutputFormat.setOutputPath(job, new Path(passOutput));
+			if(!job.waitForCompletion(true))
+				throw new RuntimeException("joint calling pre-merge pass " + pass + " failed!");
+			
+			Path outputPath = new Path(passOutput);
+			FileSystem fs = outputPath.getFileSystem(conf);
+			List<Path> shards = new ArrayList<Path>();
+			for(FileStatus batch : fs.listStatus(outputPath)){
+				if(!batch.isDirectory() || !batch.getPath().getName().startsWith(JointCallingPreMergeReducer.BATCH_PREFIX))
+					continue;
+				for(FileStatus part : fs.listStatus(batch.getPath())){
+					if(part.isFile())
+						shards.add(part.getPath());
+				}
+			}
+			inputs = shards;
+			pass++;
+		}
+		
+		return inputs;
+	}
+
 	@Override
 	public int run(String[] args) throws Exception {
 		BioJob job = BioJob.getInstance();
@@ -69,14 +141,24 @@ public class JointCalling extends ToolsRunner{
         conf.setBoolean(GaeaVCFOutputFormat.HEADER_MODIFY, true);
         
         MultipleVCFHeaderForJointCalling multiVcfHeader = new MultipleVCFHeaderForJointCalling();
-        multiVcfHeader.headersConfig(options.getInput(), options.getVCFHeaderOutput()+"/vcfHeaders", conf);
-        conf.set(INPUT_ORDER, Utils.join(",", multiVcfHeader.getSamplesAsInputOrder()));
-        
+        multiVcfHeader.getHeaders(options.getInput(), conf);
         VCFHeader vcfHeader = getVCFHeaderFromInput(multiVcfHeader.getHeaders());
         VCFHdfsWriter vcfHdfsWriter = new VCFHdfsWriter(conf.get(GaeaVCFOutputFormat.OUT_PATH_PROP), false, false, conf);
         vcfHdfsWriter.writeHeader(vcfHeader);
         vcfHdfsWriter.close();
         
+        List<Path> inputs = preMerge(args, options, multiVcfHeader);
+        
+        if(inputs == options.getInput()) {
+        	// nothing pre-merged, headers of inputs are read already
+        	multiVcfHeader.writeHeaders(options.getVCFHeaderOutput()+"/vcfHeaders", conf);
+        	multiVcfHeader.distributeCache(job);
+        } else {
+        	multiVcfHeader = new MultipleVCFHeaderForJointCalling();
+        	multiVcfHeader.headersConfig(inputs, options.getVCFHeaderOutput()+"/vcfHeaders", job);
+        }
+        conf.set(INPUT_ORDER, Utils.join(",", multiVcfHeader.getSamplesAsInputOrder()));
+        
         job.setJobName("Gaea joint calling");
         
         job.setJarByClass(JointCalling.class);
@@ -84,12 +166,12 @@ public class JointCalling extends ToolsRunner{
         job.setReducerClass(JointCallingReducer.class);
         
         job.setNumReduceTasks(options.getReducerNumber());
-        job.setOutputKeyValue(WindowsBasedWritable.class,VariantContextWritable.class, NullWritable.class, VariantContextWritable.class);
+        job.setOutputKeyValue(WindowsBasedWritable.class,GvcfRecordWritable.class, NullWritable.class, VariantContextWritable.class);
         
         job.setInputFormatClass(JointCallingVCFInputFormat.class);
 		job.setOutputFormatClass(GaeaVCFOutputFormat.class);
         
-        FileInputFormat.setInputPaths(job, options.getInput().toArray(new Path[options.getInput().size()]));
+        FileInputFormat.setInputPaths(job, inputs.toArray(new Path[inputs.size()]));
 		FileOutputFormat.setOutputPath(job, new Path(options.getOutput()));
 		
 		return job.waitForCompletion(true) ? 0 : 1;
@@ -9,6 +9,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.bgi.flexlab.gaea.data.mapreduce.output.vcf.GaeaVCFOutputFormat;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.GvcfRecordWritable;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
 import org.seqdoop.hadoop_bam.VariantContextWritable;
 import org.seqdoop.hadoop_bam.util.VCFHeaderReader;
@@ -20,13 +21,19 @@ import htsjdk.variant.vcf.VCFContigHeaderLine;
 import htsjdk.variant.vcf.VCFHeader;
 
 public class JointCallingMapper extends
-	Mapper<LongWritable, VariantContextWritable, WindowsBasedWritable, VariantContextWritable>{
+	Mapper<LongWritable, VariantContextWritable, WindowsBasedWritable, GvcfRecordWritable>{
 	
 	private int windowSize = 10000;
 	private HashMap<String,Integer> chrIndexs = null;
 	
+	private HashMap<String,Integer> sampleIndexs = null;
+	
+	private int mergeBatchSize = 0;
+	
 	private WindowsBasedWritable outKey = new WindowsBasedWritable();
 	
+	private GvcfRecordWritable outValue = new GvcfRecordWritable();
+	
 	private VCFHeader header = null;
 
 	@Override
@@ -44,6 +51,16 @@ public class JointCallingMapper extends
 			VCFContigHeaderLine line = lines.get(i);
 			chrIndexs.put(line.getID(), line.getContigIndex());
 		}
+		
+		sampleIndexs = new HashMap<String,Integer>();
+		String[] samples = conf.get(JointCalling.INPUT_ORDER).split(",");
+		for(int i = 0 ; i < samples.length ; i++)
+			sampleIndexs.put(samples[i], i);
+		
+		JointCallingOptions options = new JointCallingOptions();
+		options.getOptionsFromHadoopConf(conf);
+		windowSize = options.getWindowsSize();
+		mergeBatchSize = conf.getInt(JointCalling.MERGE_BATCH_SIZE, 0);
 	}
 	
 	@Override
@@ -56,12 +73,16 @@ public class JointCallingMapper extends
 		
 		int chrIndex = chrIndexs.get(variantContext.getContig());
 		
-		outKey.set(chrIndex, sWin, variantContext.getStart());
-		context.write(outKey, value);
+		Integer sampleIndex = sampleIndexs.get(variantContext.getAttributeAsString("SM", null));
+		if(sampleIndex == null)
+			throw new RuntimeException("unknown sample for " + variantContext.toStringWithoutGenotypes());
+		outValue.set(variantContext, sampleIndex);
 		
-		if(eWin != sWin){
-			outKey.set(chrIndex, eWin, variantContext.getStart());
-			context.write(outKey, value);
+		// pre-merge groups the inputs of one batch under the same key
+		int batch = mergeBatchSize > 0 ? sampleIndex / mergeBatchSize : 0;
+		for(int win = sWin ; win <= eWin ; win++){
+			outKey.set(batch, chrIndex, win, variantContext.getStart());
+			context.write(outKey, outValue);
 		}
 	}
 }
\ No newline at end of file
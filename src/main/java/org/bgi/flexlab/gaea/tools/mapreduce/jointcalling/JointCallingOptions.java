@@ -30,6 +30,7 @@ public class JointCallingOptions extends GaeaOptions implements HadoopOptions{
 	private int MAX_NUM_PL_VALUES = 100;//m
 	private int windows_size = 10000;//w
 	private int num_reducer = 100;//n
+	private int merge_batch_size = 0;//N
 	
 	private String output = null;//o
 	private String reference = null;//r
@@ -69,6 +70,7 @@ public class JointCallingOptions extends GaeaOptions implements HadoopOptions{
 		addOption("j","heterozygosity_stdev",true,"Standard deviation of eterozygosity for SNP and indel calling");
 		addOption("k", "knowSite", true, "known snp/indel file,the format is VCF4");
 		addOption("n", "reducer", true, "reducer numbers[100]");
+		addOption("N", "mergeBatch", true, "pre-merge gvcfs into shards of this many inputs per pass before genotyping, 0 is disable[0]");
 		addOption("m","max_num_PL_values",true,"Maximum number of PL values to output");
 		addOption("M","max_alternate_alleles",true,"Maximum number of alternate alleles to genotype");
 		addOption("o", "output", true, "output directory", true);
@@ -115,6 +117,7 @@ public class JointCallingOptions extends GaeaOptions implements HadoopOptions{
 		this.MAX_NUM_PL_VALUES = getOptionIntValue("m",100);
 		this.windows_size = getOptionIntValue("w",10000);
 		this.num_reducer = getOptionIntValue("n",100);
+		this.merge_batch_size = getOptionIntValue("N",0);
 		
 		this.output = getOptionValue("o",null);
 		this.reference = getOptionValue("r",null);
@@ -260,6 +263,17 @@ public class JointCallingOptions extends GaeaOptions implements HadoopOptions{
 		return this.num_reducer;
 	}
 	
+	public int getMergeBatchSize(){
+		return this.merge_batch_size;
+	}
+	
+	public String getPreMergeOutput(){
+		if(output.endsWith("/"))
+			return this.output+"premerge";
+		else
+			return this.output+"/premerge";
+	}
+	
 	public String getVCFHeaderOutput(){
 		return this.output;
 	}
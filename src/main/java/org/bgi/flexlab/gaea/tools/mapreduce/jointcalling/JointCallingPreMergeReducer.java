@@ -0,0 +1,125 @@
+package org.bgi.flexlab.gaea.tools.mapreduce.jointcalling;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.bgi.flexlab.gaea.data.mapreduce.output.vcf.GaeaVCFOutputFormat;
+import org.bgi.flexlab.gaea.data.mapreduce.output.vcf.VCFHdfsWriter;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.GvcfRecordWritable;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
+import org.bgi.flexlab.gaea.data.structure.location.GenomeLocationParser;
+import org.bgi.flexlab.gaea.data.structure.reference.ReferenceShare;
+import org.bgi.flexlab.gaea.tools.jointcalling.GvcfCombineEngine;
+import org.bgi.flexlab.gaea.tools.jointcalling.util.MultipleVCFHeaderForJointCalling;
+import org.seqdoop.hadoop_bam.util.VCFHeaderReader;
+import org.seqdoop.hadoop_bam.util.WrapSeekable;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFContigHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+
+/*
+ * combine the gvcfs of every batch of inputs into one multiple sample gvcf per
+ * batch, written under batch-NNNNN of the task output
+ */
+public class JointCallingPreMergeReducer extends Reducer<WindowsBasedWritable, GvcfRecordWritable, NullWritable, Text> {
+
+	public final static String BATCH_PREFIX = "batch-";
+
+	private int windowSize = 10000;
+	private int batchSize = 0;
+	private HashMap<Integer, String> contigs = null;
+	private GvcfCombineEngine engine = null;
+	private ReferenceShare genomeShare = null;
+	private VCFHeader header = null;
+	private String[][] sampleLists = null;
+	private HashMap<Integer, VCFHdfsWriter> writers = new HashMap<Integer, VCFHdfsWriter>();
+
+	@Override
+	protected void setup(Context context) throws IOException {
+		Configuration conf = context.getConfiguration();
+		contigs = new HashMap<Integer, String>();
+
+		Path path = new Path(conf.get(GaeaVCFOutputFormat.OUT_PATH_PROP));
+		SeekableStream in = WrapSeekable.openPath(path.getFileSystem(conf), path);
+		header = VCFHeaderReader.readHeaderFrom(in);
+		in.close();
+
+		if (header == null)
+			throw new RuntimeException("header is null !!!");
+
+		List<VCFContigHeaderLine> lines = header.getContigLines();
+		for (int i = 0; i < lines.size(); i++) {
+			VCFContigHeaderLine line = lines.get(i);
+			contigs.put(line.getContigIndex(), line.getID());
+		}
+
+		JointCallingOptions options = new JointCallingOptions();
+		options.getOptionsFromHadoopConf(conf);
+		windowSize = options.getWindowsSize();
+		batchSize = conf.getInt(JointCalling.MERGE_BATCH_SIZE, 0);
+
+		MultipleVCFHeaderForJointCalling headers = new MultipleVCFHeaderForJointCalling();
+		headers.readHeaders(conf);
+		sampleLists = headers.getSampleListsAsInputOrder(conf.get(JointCalling.INPUT_ORDER).split(","));
+
+		engine = new GvcfCombineEngine(new GenomeLocationParser(header.getSequenceDictionary()),
+				options.isUniquifySamples(), sampleLists);
+		genomeShare = new ReferenceShare();
+		genomeShare.loadChromosomeList(options.getReference());
+	}
+
+	private VCFHdfsWriter getWriter(int batch, Context context) throws IOException {
+		VCFHdfsWriter writer = writers.get(batch);
+		if (writer != null)
+			return writer;
+
+		Set<String> samples = new LinkedHashSet<String>();
+		for (int i = batch * batchSize; i < Math.min((batch + 1) * batchSize, sampleLists.length); i++) {
+			for (String sample : sampleLists[i])
+				samples.add(sample);
+		}
+
+		Path path = new Path(new Path(FileOutputFormat.getWorkOutputPath(context), String.format("%s%05d", BATCH_PREFIX, batch)),
+				FileOutputFormat.getUniqueFile(context, "part", ".vcf"));
+		writer = new VCFHdfsWriter(path.toString(), false, false, context.getConfiguration());
+		writer.writeHeader(new VCFHeader(header.getMetaDataInInputOrder(), samples));
+		writers.put(batch, writer);
+		return writer;
+	}
+
+	@Override
+	public void reduce(WindowsBasedWritable key, Iterable<GvcfRecordWritable> values, Context context)
+			throws IOException, InterruptedException {
+		int winNum = key.getWindowsNumber();
+		int start = Math.max(winNum * windowSize, 1);
+		int end = winNum * windowSize + windowSize - 1;
+		String chr = contigs.get(key.getChromosomeIndex());
+
+		List<VariantContext> combined = engine.combine(values.iterator(), chr, start, end,
+				genomeShare.getChromosomeInfo(chr));
+		if (combined.isEmpty())
+			return;
+
+		VCFHdfsWriter writer = getWriter(key.getSampleID(), context);
+		for (VariantContext vc : combined)
+			writer.add(vc);
+	}
+
+	@Override
+	protected void cleanup(Context context) {
+		for (VCFHdfsWriter writer : writers.values())
+			writer.close();
+		writers.clear();
+	}
+}
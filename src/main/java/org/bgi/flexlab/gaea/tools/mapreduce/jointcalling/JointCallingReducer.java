@@ -10,8 +10,10 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.bgi.flexlab.gaea.data.mapreduce.output.vcf.GaeaVCFOutputFormat;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.GvcfRecordWritable;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
 import org.bgi.flexlab.gaea.data.structure.dbsnp.DbsnpShare;
+import org.bgi.flexlab.gaea.data.structure.dbsnp.KnownSitesShare;
 import org.bgi.flexlab.gaea.data.structure.location.GenomeLocationParser;
 import org.bgi.flexlab.gaea.data.structure.reference.ReferenceShare;
 import org.bgi.flexlab.gaea.data.structure.reference.index.VcfIndex;
@@ -24,13 +26,12 @@ import org.seqdoop.hadoop_bam.util.VCFHeaderReader;
 import org.seqdoop.hadoop_bam.util.WrapSeekable;
 
 import htsjdk.samtools.seekablestream.SeekableStream;
-import htsjdk.variant.variantcontext.CommonInfo;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFContigHeaderLine;
 import htsjdk.variant.vcf.VCFHeader;
 
 public class JointCallingReducer
-		extends Reducer<WindowsBasedWritable, VariantContextWritable, NullWritable, VariantContextWritable> {
+		extends Reducer<WindowsBasedWritable, GvcfRecordWritable, NullWritable, VariantContextWritable> {
 
 	private int windowSize = 10000;
 	private HashMap<Integer, String> contigs = null;
@@ -42,6 +43,7 @@ public class JointCallingReducer
 	private ReferenceShare genomeShare = null;
 	private DbsnpShare dbsnpShare = null;
 	private VCFLocalLoader loader = null;
+	private KnownSitesShare knownSites = null;
 	private VariantRegionFilter filter = null;
 	private VCFHeader header = null;
 	private MultipleVCFHeaderForJointCalling headers = new MultipleVCFHeaderForJointCalling();
@@ -74,15 +76,15 @@ public class JointCallingReducer
 		headers.readHeaders(conf);
 		
 		String sampleStr = conf.get(JointCalling.INPUT_ORDER,null);
-		if(sampleStr != null)
-			engine = new JointCallingEngine(options, parser,header,headers,sampleStr.split(","));
-		else
-			engine = new JointCallingEngine(options, parser,header,headers,null);
+		if(sampleStr == null)
+			throw new RuntimeException("input sample order is not set!!!");
+		engine = new JointCallingEngine(options, parser,header,headers,sampleStr.split(","));
 		genomeShare = new ReferenceShare();
 		genomeShare.loadChromosomeList(options.getReference());
 		dbsnpShare = new DbsnpShare(options.getDBSnp(), options.getReference());
 		dbsnpShare.loadChromosomeList(options.getDBSnp() + VcfIndex.INDEX_SUFFIX);
 		loader = new VCFLocalLoader(options.getDBSnp());
+		knownSites = KnownSitesShare.load(options.getDBSnp());
 		filter = new VariantRegionFilter();
 		header = engine.getVCFHeader();
 		
@@ -91,7 +93,7 @@ public class JointCallingReducer
 	}
 
 	@Override
-	public void reduce(WindowsBasedWritable key, Iterable<VariantContextWritable> values, Context context)
+	public void reduce(WindowsBasedWritable key, Iterable<GvcfRecordWritable> values, Context context)
 			throws IOException, InterruptedException {
 		int winNum = key.getWindowsNumber();
 		int start = winNum * windowSize;
@@ -100,23 +102,19 @@ public class JointCallingReducer
 		int end = start + windowSize - 1;
 		String chr = contigs.get(key.getChromosomeIndex());
 		
-		long startPosition = dbsnpShare.getStartPosition(chr, winNum, options.getWindowsSize());
 		ArrayList<VariantContext> dbsnps = null;
-		if(startPosition >= 0)
-			dbsnps = filter.loadFilter(loader, chr, startPosition, end);
+		if(knownSites != null) {
+			dbsnps = filter.loadFilter(knownSites, chr, winNum * options.getWindowsSize() + 1, end);
+		} else {
+			long startPosition = dbsnpShare.getStartPosition(chr, winNum, options.getWindowsSize());
+			if(startPosition >= 0)
+				dbsnps = filter.loadFilter(loader, chr, startPosition, end);
+		}
 		engine.init(dbsnps);
 		
-		for (int iter = start; iter <= end; iter++) {
-			VariantContext variantContext = engine.variantCalling(values.iterator(),
-					parser.createGenomeLocation(chr, iter), genomeShare.getChromosomeInfo(chr));
-			if(variantContext == null)
-				continue;
-			CommonInfo info = variantContext.getCommonInfo();
-			HashMap<String,Object> maps = new HashMap<String,Object>();
-			maps.putAll(info.getAttributes());
-			maps.remove("SM");
-			info.setAttributes(maps);
-			
+		engine.startWindow(values.iterator(), chr, start, end, genomeShare.getChromosomeInfo(chr));
+		VariantContext variantContext;
+		while ((variantContext = engine.nextVariantContext()) != null) {
 			outValue.set(variantContext,header);
 			context.write(NullWritable.get(), outValue);
 		}
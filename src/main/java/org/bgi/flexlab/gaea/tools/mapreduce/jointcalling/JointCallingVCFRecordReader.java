@@ -42,6 +42,8 @@ public class JointCallingVCFRecordReader extends RecordReader<LongWritable, Vari
 	
 	private VCFHeader header = null;
 	
+	private String sampleName = null;
+	
 	private LazyVCFGenotypesContext.HeaderDataCache vcfHeaderDataCache =
     		new LazyVCFGenotypesContext.HeaderDataCache();
 
@@ -66,6 +68,10 @@ public class JointCallingVCFRecordReader extends RecordReader<LongWritable, Vari
 		header = (VCFHeader) ((FeatureCodecHeader) h).getHeaderValue();
 		
 		vcfHeaderDataCache.setHeader(header);
+		
+		if (header.getGenotypeSamples().isEmpty())
+			throw new IOException("No sample found in VCF header of " + file);
+		sampleName = header.getGenotypeSamples().get(0);
 
 		contigDict.clear();
 		int i = 0;
@@ -124,15 +130,13 @@ public class JointCallingVCFRecordReader extends RecordReader<LongWritable, Vari
 		final String line = it.next();
 		final VariantContext v = codec.decode(line);
 		
-		VariantContext vtemp = codec.decode(line);
-		
-		GenotypesContext gc = vtemp.getGenotypes();
+		GenotypesContext gc = v.getGenotypes();
 		if (gc instanceof LazyParsingGenotypesContext){
 			((LazyParsingGenotypesContext)gc).getParser().setHeaderDataCache(vcfHeaderDataCache);
 		}
 		
 		CommonInfo info = v.getCommonInfo();
-		info.putAttribute("SM",vtemp.getSampleNamesOrderedByName().get(0));
+		info.putAttribute("SM",sampleName);
 
 		Integer chromIdx = contigDict.get(v.getContig());
 		if (chromIdx == null)
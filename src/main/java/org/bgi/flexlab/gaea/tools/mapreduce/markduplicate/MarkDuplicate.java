@@ -82,6 +82,7 @@ public class MarkDuplicate extends ToolsRunner{
 
         job.setMapOutputKeyClass(DuplicationKeyWritable.class);
         job.setMapOutputValueClass(SamRecordWritable.class);
+        SamRecordWritable.setReuseRecordBuffer(conf, true);
 
         job.setOutputKeyClass(NullWritable.class);
         job.setOutputValueClass(SamRecordWritable.class);
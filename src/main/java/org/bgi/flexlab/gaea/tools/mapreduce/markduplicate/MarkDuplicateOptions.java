@@ -45,6 +45,7 @@ public class MarkDuplicateOptions extends GaeaOptions implements HadoopOptions {
     private int reducerNum;
     private int windowSize;
     private int extendSize;
+    private int maxRecordsInRam;
     FileSystem fs;
 
     public MarkDuplicateOptions() {
@@ -57,6 +58,7 @@ public class MarkDuplicateOptions extends GaeaOptions implements HadoopOptions {
         addOption("R", "reducer", true, "reducer numbers [30]");
         addOption("W", "windowSize", true, "window size that sharding the data [100000]");
         addOption("E", "extendSize", true, "The extend size (must greater than read length) [100]");
+        addOption("M", "maxRecordsInRam", true, "max reads of one duplication key kept in memory, the rest are spilled to local disk [100000]");
         addOption("h", "help", false, "print help information.");
         FormatHelpInfo(SOFTWARE_NAME,SOFTWARE_VERSION);
 
@@ -90,6 +92,7 @@ public class MarkDuplicateOptions extends GaeaOptions implements HadoopOptions {
         reducerNum = getOptionIntValue("R", 30);
         windowSize = getOptionIntValue("W", 100000);
         extendSize = getOptionIntValue("E", 100);
+        maxRecordsInRam = getOptionIntValue("M", 100000);
     }
 
     @Override
@@ -178,4 +181,8 @@ public class MarkDuplicateOptions extends GaeaOptions implements HadoopOptions {
     public int getExtendSize() {
         return extendSize;
     }
+
+    public int getMaxRecordsInRam() {
+        return maxRecordsInRam;
+    }
 }
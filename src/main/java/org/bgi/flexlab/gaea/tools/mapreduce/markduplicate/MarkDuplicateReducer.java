@@ -8,56 +8,61 @@ import org.apache.hadoop.mapreduce.Reducer;
 import org.bgi.flexlab.gaea.data.mapreduce.input.header.SamHdfsFileHeader;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.DuplicationKeyWritable;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordWritable;
-import org.bgi.flexlab.gaea.data.structure.bam.GaeaSamRecord;
-import org.bgi.flexlab.gaea.tools.markduplicate.MarkDuplicatesFunc;
+import org.bgi.flexlab.gaea.tools.markduplicate.DuplicateRecordBuffer;
+import org.bgi.flexlab.gaea.tools.markduplicate.ReadEndsTable;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.BitSet;
 
 public class MarkDuplicateReducer extends Reducer<DuplicationKeyWritable, SamRecordWritable, NullWritable, SamRecordWritable>{
-    private MarkDuplicatesFunc mark = new MarkDuplicatesFunc();
+    private MarkDuplicateOptions options = new MarkDuplicateOptions();
     private SAMFileHeader samHeader;
+    private ReadEndsTable readEnds = new ReadEndsTable();
+    private DuplicateRecordBuffer buffer = null;
+    private SamRecordWritable outputValue = new SamRecordWritable();
 
     @Override
     public void setup(Context context){
         Configuration conf = context.getConfiguration();
+        options.getOptionsFromHadoopConf(conf);
         samHeader = SamHdfsFileHeader.getHeader(conf);
+        buffer = new DuplicateRecordBuffer(samHeader, options.getMaxRecordsInRam());
     }
 
     public void reduce(DuplicationKeyWritable key, Iterable<SamRecordWritable> values, Context context) throws IOException, InterruptedException {
         //deal unmapped reads
         if(key.getChrIndex() == -1) {
             for(SamRecordWritable s : values) {
-            	GaeaSamRecord sam = new GaeaSamRecord(samHeader,s.get());
-                SamRecordWritable w = new SamRecordWritable();
-                w.set(sam);
-                context.write(NullWritable.get(), w);
+                s.get().setHeader(samHeader);
+                context.write(NullWritable.get(), s);
             }
             return;
         }
 
-        //collect reads cluster and mark duplicate
-        ArrayList<SAMRecord> sams = new ArrayList<>();
-        int n = 0;
+        //collect read ends of the cluster, reads are kept in memory or spilled
+        readEnds.clear();
+        buffer.clear();
         for(SamRecordWritable s : values) {
-        	GaeaSamRecord sam = new GaeaSamRecord(samHeader,s.get());
-            if (n>100000) {
-                sam.setDuplicateReadFlag(true);
-                SamRecordWritable w = new SamRecordWritable();
-                w.set(sam);
-                context.write(NullWritable.get(), w);
-            }else {
-                sams.add(sam);
-            }
-            n++;
+            SAMRecord sam = s.get();
+            sam.setHeader(samHeader);
+            buffer.add(sam, readEnds.add(sam));
         }
 
-        if(sams.size() > 1)
-            mark.markDup(sams);
-        for(SAMRecord sam : sams) {
-            SamRecordWritable w = new SamRecordWritable();
-            w.set(sam);
-            context.write(NullWritable.get(), w);
-        }
+        if(buffer.isSpilled())
+            context.getCounter("MarkDuplicate", "spilled duplication keys").increment(1);
+
+        final BitSet duplicates = readEnds.markDuplicates();
+        buffer.forEach((sam, index) -> {
+            if(duplicates.get(index))
+                sam.setDuplicateReadFlag(true);
+            outputValue.set(sam);
+            context.write(NullWritable.get(), outputValue);
+        });
+        buffer.clear();
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException {
+        buffer.clear();
     }
 }
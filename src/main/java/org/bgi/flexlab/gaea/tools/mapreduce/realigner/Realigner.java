@@ -88,9 +88,12 @@ public class Realigner extends ToolsRunner {
 		job.setOutputFormatClass(GaeaBamOutputFormat.class);
 		job.setOutputKeyValue(WindowsBasedWritable.class, SamRecordWritable.class, NullWritable.class,
 				SamRecordWritable.class);
+		SamRecordWritable.setReuseRecordBuffer(conf, true);
 
 		job.setJarByClass(Realigner.class);
 		job.setWindowsBasicMapperClass(WindowsBasedSamRecordMapper.class, option.getWindowsSize(),option.getExtendSize());
+		if(option.isReadOnceShuffle())
+			job.setReadOnceShuffle();
 		job.setReducerClass(RealignerReducer.class);
 		job.setNumReduceTasks(option.getReducerNumber());
 
@@ -42,6 +42,7 @@ public class RealignerOptions extends GaeaOptions implements HadoopOptions{
 	
 	private boolean samFormat;
 	private boolean multiSample;
+	private boolean readOnceShuffle;
 	
 	private double mismatchThreshold = 0.0;
 	private double LOD = 5.0;
@@ -84,6 +85,7 @@ public class RealignerOptions extends GaeaOptions implements HadoopOptions{
 		addOption("t", "mismatch", true, "fraction of base qualities needing to mismatch for a position to have high entropy[0]");
 		addOption("w", "keyWindow", true, "window size for key[10000]");
 		addOption("W", "window", true, "window size for calculating entropy or SNP clusters[10]");
+		addOption("X", "readOnceShuffle", false, "shuffle every read once per window span and rebuild window overlaps in reducer[false]");
 		FormatHelpInfo(SOFTWARE_NAME,SOFTWARE_VERSION);
 	}
 
@@ -130,6 +132,7 @@ public class RealignerOptions extends GaeaOptions implements HadoopOptions{
 		
 		samFormat = getOptionBooleanValue("s",false);
 		multiSample = getOptionBooleanValue("M",false);
+		readOnceShuffle = getOptionBooleanValue("X",false);
 		
 		if(output != null && !output.endsWith("/")){
 			output += "/";
@@ -140,6 +143,10 @@ public class RealignerOptions extends GaeaOptions implements HadoopOptions{
 		return multiSample;
 	}
 	
+	public boolean isReadOnceShuffle(){
+		return readOnceShuffle;
+	}
+	
 	public SAMFormat getInputFormat(){
 		if(samFormat)
 			return SAMFormat.SAM;
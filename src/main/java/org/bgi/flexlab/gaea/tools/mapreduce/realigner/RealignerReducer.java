@@ -32,12 +32,14 @@ import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
 import org.bgi.flexlab.gaea.data.structure.bam.GaeaSamRecord;
 import org.bgi.flexlab.gaea.data.structure.bam.filter.QualityControlFilter;
 import org.bgi.flexlab.gaea.data.structure.dbsnp.DbsnpShare;
+import org.bgi.flexlab.gaea.data.structure.dbsnp.KnownSitesShare;
 import org.bgi.flexlab.gaea.data.structure.reference.ReferenceShare;
 import org.bgi.flexlab.gaea.data.structure.reference.index.VcfIndex;
 import org.bgi.flexlab.gaea.data.structure.vcf.VCFLocalLoader;
+import org.bgi.flexlab.gaea.framework.tools.mapreduce.WindowsBasedOverlapBuffer;
 import org.bgi.flexlab.gaea.tools.realigner.RealignerEngine;
 import org.bgi.flexlab.gaea.tools.recalibrator.RecalibratorEngine;
-import org.bgi.flexlab.gaea.tools.recalibrator.table.RecalibratorTable;
+import org.bgi.flexlab.gaea.tools.recalibrator.table.RecalibratorFlatTable;
 import org.bgi.flexlab.gaea.util.SamRecordUtils;
 import org.bgi.flexlab.gaea.util.Window;
 
@@ -59,6 +61,9 @@ public class RealignerReducer
 	private RecalibratorEngine recalEngine = null;
 	private RealignerExtendOptions extendOption = new RealignerExtendOptions();
 
+	private WindowsBasedOverlapBuffer overlapBuffer = null;
+	private WindowsBasedOverlapBuffer.WindowsProcessor processor = null;
+
 	@Override
 	protected void setup(Context context) throws IOException {
 		Configuration conf = context.getConfiguration();
@@ -82,11 +87,17 @@ public class RealignerReducer
 		writer = new RecalibratorContextWriter(context, true);
 
 		engine = new RealignerEngine(option, genomeShare, dbsnpShare, loader, mHeader, writer);
+		engine.setKnownSites(KnownSitesShare.load(option.getKnowVariant()));
 
 		if (extendOption.isRecalibration()) {
 			recalEngine = new RecalibratorEngine(extendOption.getBqsrOptions(), genomeShare, mHeader,
 					extendOption.isRealignment(), writer);
 		}
+
+		if (WindowsBasedOverlapBuffer.isReadOnce(conf)) {
+			overlapBuffer = new WindowsBasedOverlapBuffer(conf, mHeader);
+			processor = (key, values) -> reduceWindows(key, values, context);
+		}
 	}
 
 	private boolean unmappedWindows(int chrIndex) {
@@ -152,14 +163,22 @@ public class RealignerReducer
 	@Override
 	public void reduce(WindowsBasedWritable key, Iterable<SamRecordWritable> values, Context context)
 			throws IOException, InterruptedException {
+		if (overlapBuffer != null)
+			overlapBuffer.reduce(key, values, processor);
+		else
+			reduceWindows(key, values, context);
+	}
+
+	private void reduceWindows(WindowsBasedWritable key, Iterable<SamRecordWritable> values, Context context)
+			throws IOException, InterruptedException {
 		int chrIndex = key.getChromosomeIndex();
 		int winNum = key.getWindowsNumber();
 		boolean unmapped = unmappedWindows(chrIndex);
 
 		if (unmapped) {
 			for (SamRecordWritable value : values) {
-				GaeaSamRecord record = new GaeaSamRecord(mHeader,value.get(),true);
-				writer.write(record);
+				value.get().setHeader(mHeader);
+				context.write(NullWritable.get(), value);
 			}
 			clear();
 			return;
@@ -199,8 +218,11 @@ public class RealignerReducer
 
 	@Override
 	protected void cleanup(Context context) throws IOException, InterruptedException {
+		if (overlapBuffer != null)
+			overlapBuffer.flush(processor);
+
 		if (extendOption.isRecalibration()) {
-			RecalibratorTable table = recalEngine.getTables();
+			RecalibratorFlatTable table = recalEngine.getTables();
 			writer.write(table);
 		}
 		writer.close();
@@ -16,14 +16,19 @@
  *******************************************************************************/
 package org.bgi.flexlab.gaea.tools.mapreduce.realigner;
 
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer.Context;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordWritable;
 import org.bgi.flexlab.gaea.data.structure.bam.GaeaSamRecord;
 import org.bgi.flexlab.gaea.tools.realigner.RealignerWriter;
 import org.bgi.flexlab.gaea.tools.recalibrator.RecalibratorWriter;
+import org.bgi.flexlab.gaea.tools.recalibrator.table.RecalibratorFlatTable;
 import org.bgi.flexlab.gaea.tools.recalibrator.table.RecalibratorTable;
 
 import java.io.IOException;
@@ -66,6 +71,23 @@ public class RecalibratorContextWriter extends RealignerWriter implements Recali
 		}
 	}
 
+	/**
+	 * write binary table to work output path, committed with task output
+	 */
+	@Override
+	public void write(RecalibratorFlatTable table) {
+		try {
+			Path path = new Path(FileOutputFormat.getWorkOutputPath(context), FileOutputFormat.getUniqueFile(context,
+					RECALIBRATOR_TABLE_TAG, RecalibratorFlatTable.BINARY_SUFFIX));
+			FileSystem fs = path.getFileSystem(context.getConfiguration());
+			FSDataOutputStream out = fs.create(path);
+			table.write(out);
+			out.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e.toString());
+		}
+	}
+
 	@Override
 	public void close() {
 		if(mos != null){
@@ -17,14 +17,10 @@
 package org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol;
 
 import hbparquet.hadoop.util.ContextUtil;
-import htsjdk.tribble.FeatureCodecHeader;
-import htsjdk.tribble.readers.AsciiLineReader;
-import htsjdk.tribble.readers.AsciiLineReaderIterator;
-import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.vcf.VCFCodec;
-import htsjdk.variant.vcf.VCFHeader;
-import htsjdk.variant.vcf.VCFHeaderLine;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.NullWritable;
@@ -34,26 +30,37 @@ import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.bgi.flexlab.gaea.data.mapreduce.input.vcf.VCFMultipleInputFormat;
 import org.bgi.flexlab.gaea.data.mapreduce.output.vcf.GaeaVCFOutputFormat;
-import org.bgi.flexlab.gaea.data.mapreduce.output.vcf.VCFHdfsWriter;
 import org.bgi.flexlab.gaea.data.mapreduce.util.HdfsFileManager;
 import org.bgi.flexlab.gaea.data.structure.header.MultipleVCFHeader;
+import org.bgi.flexlab.gaea.data.structure.variant.statistic.VariantBasicStatistic;
 import org.bgi.flexlab.gaea.data.structure.vcf.report.ReportDatum;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.BioJob;
 import org.bgi.flexlab.gaea.framework.tools.mapreduce.ToolsRunner;
+import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.hardfilter.HardFilterMapper;
+import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.variantrecalibratioin.VariantRecalibrationApplyMapper;
 import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.variantrecalibratioin.VariantRecalibrationMapper;
 import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.variantrecalibratioin.VariantRecalibrationReducer;
-import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.HardFilter;
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin.VCFRecalibrator;
 import org.seqdoop.hadoop_bam.KeyIgnoringVCFOutputFormat;
 import org.seqdoop.hadoop_bam.VariantContextWritable;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class VCFQualityControl extends ToolsRunner{
 	public static final String VQS_LOD_KEY = "VQSLOD"; // Log odds ratio of being a true variant versus being false under the trained gaussian mixture model
     public static final String CULPRIT_KEY = "culprit"; // The annotation which was the worst performing in the Gaussian mixture model, likely the reason why the variant was filtered out
+    public static final String RECAL_DIR = "/recal"; // recal tables and tranches of every input vcf under the output path
+    public static final String STATS_DIR = "stats"; // statistics of every split under the job output
     
     public VCFQualityControl() {
 		this.toolsDescription = "Gaea VCF quality control. This module contains two options to"
@@ -84,54 +91,139 @@ public class VCFQualityControl extends ToolsRunner{
 		
 		//merge header
 		vcfHeaders = new MultipleVCFHeader();
-		vcfHeaders.mergeHeader(new Path(options.getInputs()), options.getOutputPath(), job, false);
+		vcfHeaders.mergeHeader(new Path(options.getInputs()), options.getOutputPath(), job, true);
 				
 		if(options.isRecal()) {
-//			vqsr
+//			vqsr, train the models of every vcf
 			job.setJobName("Gaea variant quality score recalibration");
 			job.setJarByClass(VCFQualityControl.class);
 			job.setMapperClass(VariantRecalibrationMapper.class);
 			job.setReducerClass(VariantRecalibrationReducer.class);
 			job.setOutputKeyValue(IntWritable.class, Text.class, 
-					NullWritable.class, VariantContextWritable.class);
+					NullWritable.class, Text.class);
 			job.setNumReduceTasks(vcfHeaders.getFileNum());
 			
 			FileInputFormat.addInputPaths(job, options.getInputs());
 			job.setInputFormatClass(VCFMultipleInputFormat.class);
+			LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+			FileOutputFormat.setOutputPath(job, new Path(options.getOutputPath() + RECAL_DIR));
+			
+			if(!job.waitForCompletion(true))
+				return 1;
+			
+//			apply recal tables split by split
+			BioJob applyJob = BioJob.getInstance(conf);
+			applyJob.setJobName("Gaea apply recalibration");
+			applyJob.setJarByClass(VCFQualityControl.class);
+			applyJob.setMapperClass(VariantRecalibrationApplyMapper.class);
+			applyJob.setNumReduceTasks(0);
+			applyJob.setOutputKeyValue(NullWritable.class, VariantContextWritable.class, 
+					NullWritable.class, VariantContextWritable.class);
+			
+			FileInputFormat.addInputPaths(applyJob, options.getInputs());
+			applyJob.setInputFormatClass(VCFMultipleInputFormat.class);
 	
-			Path statistics = new Path(options.getOutputPath() + "/tmp");
-			//job.setOutputFormatClass(VariantRecalibrationOutputFormat.class);
-			job.setOutputFormatClass(GaeaVCFOutputFormat.class);
-			FileOutputFormat.setOutputPath(job, statistics);
+			Path output = new Path(options.getOutputPath() + "/tmp");
+			applyJob.setOutputFormatClass(GaeaVCFOutputFormat.class);
+			FileOutputFormat.setOutputPath(applyJob, output);
 			
-			return job.waitForCompletion(true) ? 0 : 1;
+			if(!applyJob.waitForCompletion(true))
+				return 1;
+			
+			writeStatistics(new Path(output, STATS_DIR), conf);
+			return 0;
 		} else {
-//			hard filter
-			HardFilter fe = new HardFilter(options.getFilterName(), options.getSnpFilter(), options.getIndelFilter());
-			for(Path vcfPath : options.getInputFiles()) {
-				AsciiLineReaderIterator iterator = new AsciiLineReaderIterator(new AsciiLineReader(HdfsFileManager.getInputStream(vcfPath, conf)));
-				VCFCodec codec = new VCFCodec();
-				VCFHeader vHeader = (VCFHeader)(((FeatureCodecHeader)codec.readHeader(iterator)).getHeaderValue());
-				String output = options.getOutputPath() + vcfPath.toString();
-				for(VCFHeaderLine headerLine : fe.filterHeaders())
-					vHeader.addMetaDataLine(headerLine);
-				
-				VCFHdfsWriter writer = new VCFHdfsWriter(output, false, false, conf);
-				writer.writeHeader(vHeader);
-				
-				ReportDatum report = null;
-				while(iterator.hasNext()){
-					VariantContext vc = codec.decode(iterator.next());
-					vc = fe.filter(vc);
-					ReportDatum datum = new ReportDatum.Builder(vc).isSnp().isIndel().isTransition().build();
-					if(report == null)
-						report = datum;
-					else
-						report.combine(datum);
-					writer.add(vc);
-				}
+//			hard filter split by split
+			job.setJobName("Gaea variant hard filter");
+			job.setJarByClass(VCFQualityControl.class);
+			job.setMapperClass(HardFilterMapper.class);
+			job.setNumReduceTasks(0);
+			job.setOutputKeyValue(NullWritable.class, VariantContextWritable.class, 
+					NullWritable.class, VariantContextWritable.class);
+			
+			FileInputFormat.addInputPaths(job, options.getInputs());
+			job.setInputFormatClass(VCFMultipleInputFormat.class);
+			
+			Path output = new Path(options.getOutputPath() + "/tmp");
+			job.setOutputFormatClass(GaeaVCFOutputFormat.class);
+			FileOutputFormat.setOutputPath(job, output);
+			
+			if(!job.waitForCompletion(true))
+				return 1;
+			
+			writeReports(new Path(output, STATS_DIR), conf);
+			return 0;
+		}
+	}
+	
+	/**
+	 * merge hard filter reports of all splits of every vcf
+	 * @param stats
+	 * @param conf
+	 * @throws IOException
+	 */
+	private void writeReports(Path stats, Configuration conf) throws IOException {
+		FileSystem fs = stats.getFileSystem(conf);
+		if(!fs.exists(stats))
+			return;
+		
+		Map<Integer, ReportDatum> merged = new TreeMap<Integer, ReportDatum>();
+		for(FileStatus status : fs.listStatus(stats)) {
+			int fileId = Integer.parseInt(status.getPath().getName().split("-")[0]);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(status.getPath())));
+			ReportDatum report = new ReportDatum.Builder().buildFrom(reader.readLine());
+			reader.close();
+			
+			if(merged.containsKey(fileId))
+				merged.get(fileId).combine(report);
+			else
+				merged.put(fileId, report);
+		}
+		
+		for(int fileId : merged.keySet()) {
+			String name = new Path(vcfHeaders.getFile(fileId)).getName();
+			FSDataOutputStream os = HdfsFileManager.getOutputStream(new Path(options.getOutputPath()+"/"+name+".report"), conf);
+			os.write(merged.get(fileId).formatReport().getBytes());
+			os.close();
+		}
+	}
+	
+	/**
+	 * merge statistics of all splits of every vcf
+	 * @param stats
+	 * @param conf
+	 * @throws IOException
+	 */
+	private void writeStatistics(Path stats, Configuration conf) throws IOException {
+		FileSystem fs = stats.getFileSystem(conf);
+		if(!fs.exists(stats))
+			return;
+		
+		Map<String, VariantBasicStatistic[]> merged = new TreeMap<String, VariantBasicStatistic[]>();
+		for(FileStatus status : fs.listStatus(stats)) {
+			String fileId = status.getPath().getName().split("-")[0];
+			DataInputStream in = new DataInputStream(new BufferedInputStream(fs.open(status.getPath())));
+			VariantBasicStatistic basic = VariantBasicStatistic.read(in);
+			VariantBasicStatistic filtered = VariantBasicStatistic.read(in);
+			in.close();
+			
+			VariantBasicStatistic[] statics = merged.get(fileId);
+			if(statics == null) {
+				merged.put(fileId, new VariantBasicStatistic[] {basic, filtered});
+			} else {
+				statics[0].merge(basic);
+				statics[1].merge(filtered);
 			}
-			return 1;
+		}
+		
+		for(VariantBasicStatistic[] statics : merged.values()) {
+			FSDataOutputStream os = HdfsFileManager.getOutputStream(new Path(options.getOutputPath()+"/"+statics[0].getSampleName()), conf);
+			os.write("before filter\n".getBytes());
+			os.write(statics[0].toString().getBytes());
+			os.write("\n".getBytes());
+			os.write("after filter\n".getBytes());
+			os.write(statics[1].toString().getBytes());
+			os.close();
 		}
 	}
 }
@@ -86,6 +86,7 @@ public class VCFQualityControlOptions extends GaeaOptions implements HadoopOptio
 						+ "for recalibrating both snps and indels simultaneously.");
 		addOption("m", "mode", true, "VQSR:The mode employed to perform vcf quality control(\"1\" is vcf recalibration."
 				+ "\"2\" is hard filter. Default:1");
+		addOption("n", "trainThreads", true, "VQSR:number of threads used to train the Gaussian mixture models.[1]");
 		addOption("O", "hdfsOutputPath", true, "VQSR:hdfs Output Path." + "");
 		addOption("o", "output", true, "The output local path.", true);
 		addOption("P", "percentBadVariants", true,
@@ -379,6 +380,8 @@ public class VCFQualityControlOptions extends GaeaOptions implements HadoopOptio
 
 			numKMeansIterations = getOptionIntValue("k", 30);
 
+			arguments.NUM_THREADS = getOptionIntValue("n", 1);
+
 			stdThreshold = getOptionDoubleValue("s", 14.0);
 
 			qualThreshold = getOptionDoubleValue("q", 80.0);
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.hardfilter;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.bgi.flexlab.gaea.data.mapreduce.util.HdfsFileManager;
+import org.bgi.flexlab.gaea.data.structure.header.MultipleVCFHeader;
+import org.bgi.flexlab.gaea.data.structure.vcf.report.ReportDatum;
+import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.VCFQualityControl;
+import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.VCFQualityControlOptions;
+import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.HardFilter;
+import org.seqdoop.hadoop_bam.VariantContextWritable;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * hard filter the records of a vcf split, the report of each split is
+ * written under stats of the output and merged by the driver
+ */
+public class HardFilterMapper extends Mapper<LongWritable, VariantContextWritable, NullWritable, VariantContextWritable>{
+	
+	private HardFilter filter;
+	
+	private MultipleVCFHeader headers;
+	
+	private Map<Integer, VCFHeader> filterHeaders = new HashMap<Integer, VCFHeader>();
+	
+	private Map<Integer, ReportDatum> reports = new HashMap<Integer, ReportDatum>();
+	
+	private VariantContextWritable vcWritable = new VariantContextWritable();
+	
+	@Override
+	protected void setup(Context context) throws IOException, InterruptedException {
+		VCFQualityControlOptions options = new VCFQualityControlOptions();
+		options.getOptionsFromHadoopConf(context.getConfiguration());
+		filter = new HardFilter(options.getFilterName(), options.getSnpFilter(), options.getIndelFilter());
+		headers = MultipleVCFHeader.load(context.getConfiguration());
+	}
+	
+	@Override
+	public void map(LongWritable key, VariantContextWritable value, Context context) throws IOException, InterruptedException {
+		VariantContext vc = value.get();
+		if(vc == null)
+			return;
+		
+		int fileId = (int) key.get();
+		VCFHeader header = filterHeaders.get(fileId);
+		if(header == null) {
+			header = filter.addFilterHeader(headers.getVcfHeader(fileId));
+			filterHeaders.put(fileId, header);
+		}
+		
+		vc = filter.filter(vc);
+		ReportDatum datum = new ReportDatum.Builder(vc).isSnp().isIndel().isTransition().build();
+		ReportDatum report = reports.get(fileId);
+		if(report == null)
+			reports.put(fileId, datum);
+		else
+			report.combine(datum);
+		
+		vcWritable.set(vc, header);
+		context.write(NullWritable.get(), vcWritable);
+	}
+	
+	@Override
+	protected void cleanup(Context context) throws IOException {
+		Path stats = new Path(FileOutputFormat.getWorkOutputPath(context), VCFQualityControl.STATS_DIR);
+		for(int fileId : reports.keySet()) {
+			FSDataOutputStream os = HdfsFileManager.getOutputStream(
+					new Path(stats, FileOutputFormat.getUniqueFile(context, String.valueOf(fileId), "")), context.getConfiguration());
+			os.write(reports.get(fileId).toString().getBytes());
+			os.close();
+		}
+	}
+}
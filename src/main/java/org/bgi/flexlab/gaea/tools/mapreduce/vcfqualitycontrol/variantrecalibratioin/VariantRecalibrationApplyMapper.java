@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.variantrecalibratioin;
+
+import htsjdk.samtools.reference.FastaSequenceFile;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.bgi.flexlab.gaea.data.mapreduce.input.bed.RegionHdfsParser;
+import org.bgi.flexlab.gaea.data.mapreduce.util.HdfsFileManager;
+import org.bgi.flexlab.gaea.data.structure.header.MultipleVCFHeader;
+import org.bgi.flexlab.gaea.data.structure.location.GenomeLocationParser;
+import org.bgi.flexlab.gaea.data.structure.variant.statistic.VariantBasicStatistic;
+import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.VCFQualityControl;
+import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.VCFQualityControlOptions;
+import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin.VCFRecalibrator;
+import org.seqdoop.hadoop_bam.VariantContextWritable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * apply the recal table and tranches of every input vcf to its records split
+ * by split, statistics of each split are written under stats of the output
+ * and merged by the driver
+ */
+public class VariantRecalibrationApplyMapper extends Mapper<LongWritable, VariantContextWritable, NullWritable, VariantContextWritable>{
+	private VCFQualityControlOptions options;
+	
+	private GenomeLocationParser genomeLocParser;
+	
+	private MultipleVCFHeader headers;
+	
+	private RegionHdfsParser region = null;
+	
+	private Map<Integer, VCFRecalibrator> recals = new HashMap<Integer, VCFRecalibrator>();
+	
+	private Map<Integer, VCFHeader> recalHeaders = new HashMap<Integer, VCFHeader>();
+	
+	private Map<Integer, VariantBasicStatistic> basicStatics = new HashMap<Integer, VariantBasicStatistic>();
+	
+	private Map<Integer, VariantBasicStatistic> filteredStatics = new HashMap<Integer, VariantBasicStatistic>();
+	
+	private VariantContextWritable vcWritable = new VariantContextWritable();
+	
+	@Override
+	protected void setup(Context context) throws IOException, InterruptedException {
+		Configuration conf = context.getConfiguration();
+		options = new VCFQualityControlOptions();
+		options.getOptionsFromHadoopConf(conf);
+		
+		FastaSequenceFile ref = new FastaSequenceFile(new File(options.getReference()), true);
+		genomeLocParser = new GenomeLocationParser(ref.getSequenceDictionary());
+		ref.close();
+		headers = MultipleVCFHeader.load(conf);
+		
+		if(options.getRegion() != null){
+			region = new RegionHdfsParser();
+            region.parseBedFileFromHDFS(options.getRegion(), false);
+		}
+	}
+	
+	private VCFRecalibrator getRecalibrator(int fileId, Configuration conf) throws IOException {
+		VCFRecalibrator recal = recals.get(fileId);
+		if(recal == null) {
+			recal = new VCFRecalibrator(options, conf);
+			Path recalDir = new Path(options.getOutputPath() + VCFQualityControl.RECAL_DIR);
+			recal.loadRecalibration(new Path(recalDir, fileId + VariantRecalibrationReducer.RECAL_SUFFIX),
+					new Path(recalDir, fileId + VariantRecalibrationReducer.TRANCHES_SUFFIX), genomeLocParser);
+			recals.put(fileId, recal);
+			recalHeaders.put(fileId, recal.addHeaderLine(headers.getVcfHeader(fileId)));
+			basicStatics.put(fileId, new VariantBasicStatistic(options.isIndividuals()));
+			filteredStatics.put(fileId, new VariantBasicStatistic(options.isIndividuals()));
+		}
+		return recal;
+	}
+	
+	@Override
+	public void map(LongWritable key, VariantContextWritable value, Context context) throws IOException, InterruptedException {
+		VariantContext vc = value.get();
+		if(vc == null)
+			return;
+		
+		if(region != null && !region.isReadInRegion(vc.getContig(), vc.getStart() - 1, vc.getEnd() - 1))
+			return;
+		
+		int fileId = (int) key.get();
+		VCFRecalibrator recal = getRecalibrator(fileId, context.getConfiguration());
+		basicStatics.get(fileId).variantStatic(vc);
+		vc = recal.applyRecalibration(vc);
+		if(vc.isNotFiltered()){
+			filteredStatics.get(fileId).variantStatic(vc);
+		}
+		vcWritable.set(vc, recalHeaders.get(fileId));
+		context.write(NullWritable.get(), vcWritable);
+	}
+	
+	@Override
+	protected void cleanup(Context context) throws IOException {
+		Path stats = new Path(FileOutputFormat.getWorkOutputPath(context), VCFQualityControl.STATS_DIR);
+		for(int fileId : recals.keySet()) {
+			FSDataOutputStream os = HdfsFileManager.getOutputStream(
+					new Path(stats, FileOutputFormat.getUniqueFile(context, String.valueOf(fileId), "")), context.getConfiguration());
+			basicStatics.get(fileId).write(os);
+			filteredStatics.get(fileId).write(os);
+			os.close();
+			recals.get(fileId).close();
+		}
+	}
+}
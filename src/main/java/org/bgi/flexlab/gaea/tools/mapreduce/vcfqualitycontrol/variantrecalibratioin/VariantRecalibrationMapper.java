@@ -85,15 +85,7 @@ public class VariantRecalibrationMapper extends Mapper<LongWritable, VariantCont
 		if(!validContext(vc))
 			return;
 		
-		boolean inRegion = false;
-		for(int i = vc.getStart() ; i <= vc.getEnd() ; i++){
-			if(region != null && region.isPositionInRegion(vc.getContig(), i - 1)) {
-                inRegion = true;
-                break;
-            }
-		}
-		
-		if(region != null && !inRegion)
+		if(region != null && !region.isReadInRegion(vc.getContig(), vc.getStart() - 1, vc.getEnd() - 1))
 			return;
 		
 		VariantDatumMessenger datum = new VariantDatumMessenger.Builder(manager, vc, options)
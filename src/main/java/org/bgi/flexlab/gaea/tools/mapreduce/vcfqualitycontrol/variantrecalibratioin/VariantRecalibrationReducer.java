@@ -17,125 +17,54 @@
 package org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.variantrecalibratioin;
 
 import htsjdk.samtools.reference.FastaSequenceFile;
-import htsjdk.tribble.readers.AsciiLineReader;
-import htsjdk.tribble.readers.AsciiLineReaderIterator;
-import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.vcf.VCFCodec;
-import htsjdk.variant.vcf.VCFHeader;
-import htsjdk.variant.vcf.VCFHeaderVersion;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
-import org.bgi.flexlab.gaea.data.mapreduce.input.bed.RegionHdfsParser;
-import org.bgi.flexlab.gaea.data.mapreduce.util.HdfsFileManager;
-import org.bgi.flexlab.gaea.data.structure.header.GaeaVCFHeader;
-import org.bgi.flexlab.gaea.data.structure.header.MultipleVCFHeader;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.bgi.flexlab.gaea.data.structure.location.GenomeLocationParser;
-import org.bgi.flexlab.gaea.data.structure.variant.statistic.VariantBasicStatistic;
-//import org.bgi.flexlab.gaea.data.structure.vcf.report.ReportDatum;
 import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.VCFQualityControlOptions;
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin.VCFRecalibrator;
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin.traindata.VariantDatumMessenger;
-import org.seqdoop.hadoop_bam.VariantContextWritable;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 
-
-public class VariantRecalibrationReducer extends Reducer<IntWritable, Text, NullWritable, VariantContextWritable>{
-	private VCFRecalibrator recal;
+/**
+ * train the models of one vcf file and write its recal table and tranches,
+ * the records are recalibrated by {@link VariantRecalibrationApplyMapper}
+ */
+public class VariantRecalibrationReducer extends Reducer<IntWritable, Text, NullWritable, Text>{
+	public static final String RECAL_SUFFIX = ".recal";
+	public static final String TRANCHES_SUFFIX = ".tranches";
+	
 	private VCFQualityControlOptions options;
-	private int fileId;
 	private GenomeLocationParser genomeLocParser;
-    private MultipleVCFHeader headers;
-    
-    private VariantBasicStatistic basicStatics = null;
-    
-    private VariantBasicStatistic filteredStatics = null;
-    
-    private RegionHdfsParser region = null;
     
 	@Override
 	protected void setup(Context context) throws IOException {
 		Configuration conf = context.getConfiguration();
         options = new VCFQualityControlOptions();
         options.getOptionsFromHadoopConf(conf);
-		recal = new VCFRecalibrator(options, conf);
 		FastaSequenceFile ref = new FastaSequenceFile(new File(options.getReference()), true);
 		genomeLocParser = new GenomeLocationParser(ref.getSequenceDictionary());
 		ref.close();
-		headers = (MultipleVCFHeader) GaeaVCFHeader.loadVcfHeader(false, conf);
-		
-		basicStatics = new VariantBasicStatistic(options.isIndividuals());
-		
-		filteredStatics = new VariantBasicStatistic(options.isIndividuals());
-		
-		if(options.getRegion() != null){
-			region = new RegionHdfsParser();
-            region.parseBedFileFromHDFS(options.getRegion(), false);
-		}
     }
 	
     @Override
 	public void reduce(IntWritable key, Iterable<Text> values,Context context) throws IOException, InterruptedException {
-    	fileId = key.get();
+    	int fileId = key.get();
+    	VCFRecalibrator recal = new VCFRecalibrator(options, context.getConfiguration());
     	for(Text value : values) {
 	    	VariantDatumMessenger msg = new VariantDatumMessenger.Builder().
 	    							buildFrom(value.toString(), genomeLocParser);
 	    	recal.addData(msg);
     	}
-    	recal.recalVCF(fileId, context);
+    	recal.recalVCF();
     	
-    	VCFHeader header = headers.getVcfHeader(fileId);
-    	header = recal.addHeaderLine(header);
-    	VCFCodec codec = new VCFCodec();
-		codec.setVCFHeader(header, VCFHeaderVersion.VCF4_2);
-    	InputStream is = HdfsFileManager.getInputStream(new Path(headers.getFile(fileId)), context.getConfiguration());
-		AsciiLineReaderIterator iterator = new AsciiLineReaderIterator(new AsciiLineReader(is));
-		while(iterator.hasNext()) {
-			VariantContext vc = codec.decode(iterator.next());
-			
-			if(vc == null)
-				continue;
-			
-			boolean inRegion = false;
-			for(int i = vc.getStart() ; i <= vc.getEnd() ; i++){
-				if(region != null && region.isPositionInRegion(vc.getContig(), i - 1)) {
-	                inRegion = true;
-	                break;
-	            }
-			}
-			
-			if(region !=null && !inRegion)
-				continue;
-			
-			basicStatics.variantStatic(vc);
-			vc = recal.applyRecalibration(vc);
-			//statistic(vc);
-			if(vc.isNotFiltered()){
-				filteredStatics.variantStatic(vc);
-			}
-			VariantContextWritable vcWritable = new VariantContextWritable();
-			vcWritable.set(vc,header);
-			context.write(NullWritable.get(), vcWritable);
-		}
-		iterator.close();
-    }
-    
-    @Override
-    public void cleanup(Context context) throws IOException {
-    	String sampleName = basicStatics.getSampleName();
-    	FSDataOutputStream os = HdfsFileManager.getOutputStream(new Path(options.getOutputPath()+"/"+sampleName), context.getConfiguration());
-		os.write("before filter\n".getBytes());
-		os.write(basicStatics.toString().getBytes());
-		os.write("\n".getBytes());
-		os.write("after filter\n".getBytes());
-		os.write(filteredStatics.toString().getBytes());
-		os.close();
+    	Path output = FileOutputFormat.getWorkOutputPath(context);
+    	recal.writeRecalibration(new Path(output, fileId + RECAL_SUFFIX), new Path(output, fileId + TRANCHES_SUFFIX));
     }
 }
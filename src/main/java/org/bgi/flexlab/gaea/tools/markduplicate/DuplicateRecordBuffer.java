@@ -0,0 +1,120 @@
+package org.bgi.flexlab.gaea.tools.markduplicate;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordWritable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * reads of one duplication key in input order, with their read ends index.
+ * Keys with at most maxRecordsInRam reads are kept in memory. Once a key has
+ * more reads, all of its reads are spilled to a local temporary file and only
+ * the read ends index stays in memory, the reads are streamed back from the
+ * file.
+ */
+public class DuplicateRecordBuffer {
+    public interface RecordHandler {
+        void handle(SAMRecord rec, int readEndsIndex) throws IOException, InterruptedException;
+    }
+
+    private final SAMFileHeader header;
+    private final int maxRecordsInRam;
+
+    private final ArrayList<SAMRecord> records = new ArrayList<>();
+    private final IntArrayList readEndsIndex = new IntArrayList();
+
+    private final SamRecordWritable writable = new SamRecordWritable();
+    private File spillFile = null;
+    private DataOutputStream spillOutput = null;
+    private int spillRecords = 0;
+
+    public DuplicateRecordBuffer(SAMFileHeader header, int maxRecordsInRam) {
+        this.header = header;
+        this.maxRecordsInRam = maxRecordsInRam;
+    }
+
+    public void add(SAMRecord rec, int index) throws IOException {
+        readEndsIndex.add(index);
+        if (spillFile == null) {
+            if (records.size() < maxRecordsInRam) {
+                records.add(rec);
+                return;
+            }
+            spillFile = File.createTempFile("markduplicate", ".spill");
+            spillOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+            for (SAMRecord buffered : records)
+                spill(buffered);
+            records.clear();
+        }
+        spill(rec);
+    }
+
+    private void spill(SAMRecord rec) throws IOException {
+        writable.set(rec);
+        writable.write(spillOutput);
+        spillRecords++;
+    }
+
+    public int size() {
+        return readEndsIndex.size();
+    }
+
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * visit reads in input order, from memory or from the spill file
+     */
+    public void forEach(RecordHandler handler) throws IOException, InterruptedException {
+        if (spillFile == null) {
+            int i = 0;
+            for (SAMRecord rec : records) {
+                handler.handle(rec, readEndsIndex.getInt(i++));
+            }
+            return;
+        }
+
+        spillOutput.close();
+        spillOutput = null;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)))) {
+            for (int i = 0; i < spillRecords; i++) {
+                writable.readFields(input);
+                SAMRecord rec = writable.get();
+                rec.setHeader(header);
+                handler.handle(rec, readEndsIndex.getInt(i));
+            }
+        } finally {
+            deleteSpillFile();
+        }
+    }
+
+    private void deleteSpillFile() throws IOException {
+        if (spillOutput != null) {
+            spillOutput.close();
+            spillOutput = null;
+        }
+        if (spillFile != null) {
+            if (!spillFile.delete() && spillFile.exists())
+                throw new IOException("cann't delete spill file " + spillFile);
+            spillFile = null;
+        }
+        spillRecords = 0;
+    }
+
+    public void clear() throws IOException {
+        records.clear();
+        readEndsIndex.clear();
+        deleteSpillFile();
+    }
+}
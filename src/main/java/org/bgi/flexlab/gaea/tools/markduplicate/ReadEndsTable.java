@@ -0,0 +1,262 @@
+package org.bgi.flexlab.gaea.tools.markduplicate;
+
+import htsjdk.samtools.SAMRecord;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.bgi.flexlab.gaea.util.RandomUtils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * read ends of one duplication key stored in primitive arrays, one entry
+ * per read name. Mates are paired by a 64 bit hash of the read name and the
+ * positions of both mates, and the hash is dropped when the pair is complete,
+ * so only reads still waiting for their mate are kept in the map.
+ */
+public class ReadEndsTable {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Long2IntOpenHashMap unpairedReads = new Long2IntOpenHashMap();
+
+    private byte[] orientation = new byte[INITIAL_CAPACITY];
+    private int[] read1SequenceIndex = new int[INITIAL_CAPACITY];
+    private int[] read1Coordinate = new int[INITIAL_CAPACITY];
+    private int[] read2SequenceIndex = new int[INITIAL_CAPACITY];
+    private int[] read2Coordinate = new int[INITIAL_CAPACITY];
+    private int[] score = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    public ReadEndsTable() {
+        unpairedReads.defaultReturnValue(-1);
+    }
+
+    public void clear() {
+        unpairedReads.clear();
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * add a read and return index of its read ends
+     * @param rec
+     * @return
+     */
+    public int add(SAMRecord rec) {
+        if (!rec.getReadPairedFlag() || rec.getMateUnmappedFlag())
+            return newReadEnds(rec);
+
+        long pairKey = pairKey(rec);
+        int index = unpairedReads.remove(pairKey);
+        if (index == -1) {
+            index = newReadEnds(rec);
+            unpairedReads.put(pairKey, index);
+        } else {
+            addMate(rec, index);
+        }
+        return index;
+    }
+
+    /**
+     * hash of read name and positions of both mates, the same for the two
+     * mates of a pair
+     */
+    static long pairKey(SAMRecord rec) {
+        long hash = FNV_OFFSET_BASIS;
+        String readName = rec.getReadName();
+        for (int i = 0; i < readName.length(); i++) {
+            hash ^= readName.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        long position = packPosition(rec.getReferenceIndex(), rec.getAlignmentStart());
+        long matePosition = packPosition(rec.getMateReferenceIndex(), rec.getMateAlignmentStart());
+        hash = hashLong(hash, Math.min(position, matePosition));
+        return hashLong(hash, Math.max(position, matePosition));
+    }
+
+    private static long packPosition(int sequenceIndex, int coordinate) {
+        return ((long) sequenceIndex << 32) | (coordinate & 0xffffffffL);
+    }
+
+    private static long hashLong(long hash, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash ^= (value >>> (i * Byte.SIZE)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private void ensureCapacity() {
+        if (size < score.length)
+            return;
+        int capacity = score.length * 2;
+        orientation = Arrays.copyOf(orientation, capacity);
+        read1SequenceIndex = Arrays.copyOf(read1SequenceIndex, capacity);
+        read1Coordinate = Arrays.copyOf(read1Coordinate, capacity);
+        read2SequenceIndex = Arrays.copyOf(read2SequenceIndex, capacity);
+        read2Coordinate = Arrays.copyOf(read2Coordinate, capacity);
+        score = Arrays.copyOf(score, capacity);
+    }
+
+    private int newReadEnds(SAMRecord rec) {
+        ensureCapacity();
+        int index = size++;
+        read1SequenceIndex[index] = rec.getReferenceIndex();
+        read1Coordinate[index] = rec.getReadNegativeStrandFlag() ? rec.getUnclippedEnd() : rec.getUnclippedStart();
+        orientation[index] = rec.getReadNegativeStrandFlag() ? ReadEnds.R : ReadEnds.F;
+        score[index] = getScore(rec);
+        read2SequenceIndex[index] = -1;
+        read2Coordinate[index] = -1;
+        // Doing this lets the ends object know that it's part of a pair
+        if (rec.getReadPairedFlag() && !rec.getMateUnmappedFlag()) {
+            read2SequenceIndex[index] = rec.getMateReferenceIndex();
+        }
+        return index;
+    }
+
+    private void addMate(SAMRecord rec, int index) {
+        if (!rec.getReadPairedFlag() || rec.getMateUnmappedFlag())
+            return;
+        int sequence = rec.getReferenceIndex();
+        int coordinate = rec.getReadNegativeStrandFlag() ? rec.getUnclippedEnd() : rec.getUnclippedStart();
+        boolean read1Negative = orientation[index] == ReadEnds.R;
+        if (sequence > read1SequenceIndex[index]
+                || (sequence == read1SequenceIndex[index] && coordinate >= read1Coordinate[index])) {
+            read2SequenceIndex[index] = sequence;
+            read2Coordinate[index] = coordinate;
+            orientation[index] = getOrientationByte(read1Negative, rec.getReadNegativeStrandFlag());
+        } else {
+            read2SequenceIndex[index] = read1SequenceIndex[index];
+            read2Coordinate[index] = read1Coordinate[index];
+            read1SequenceIndex[index] = sequence;
+            read1Coordinate[index] = coordinate;
+            orientation[index] = getOrientationByte(rec.getReadNegativeStrandFlag(), read1Negative);
+        }
+        score[index] += getScore(rec);
+    }
+
+    /**
+     * packed signature of read1 end
+     */
+    long read1Signature(int index) {
+        return ((long) read1SequenceIndex[index] << 32) | (read1Coordinate[index] & 0xffffffffL);
+    }
+
+    /**
+     * packed signature of orientation and read2 end
+     */
+    long read2Signature(int index) {
+        return ((long) orientation[index] << 56) | (((long) (read2SequenceIndex[index] + 1) & 0xffffffL) << 32)
+                | (read2Coordinate[index] & 0xffffffffL);
+    }
+
+    /**
+     * find duplicate read ends. In every cluster of identical read ends the
+     * one with the highest score is kept, ties are broken randomly.
+     * @return bit set of duplicate read ends index
+     */
+    public BitSet markDuplicates() {
+        BitSet duplicates = new BitSet(size);
+        if (size < 2)
+            return duplicates;
+
+        final long[] signature1 = new long[size];
+        final long[] signature2 = new long[size];
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            signature1[i] = read1Signature(i);
+            signature2[i] = read2Signature(i);
+            order[i] = i;
+        }
+
+        IntArrays.quickSort(order, new IntComparator() {
+            @Override
+            public int compare(int k1, int k2) {
+                int cmp = Long.compare(signature1[k1], signature1[k2]);
+                if (cmp == 0)
+                    cmp = Long.compare(signature2[k1], signature2[k2]);
+                if (cmp == 0)
+                    cmp = Integer.compare(k1, k2);
+                return cmp;
+            }
+
+            @Override
+            public int compare(Integer k1, Integer k2) {
+                return compare(k1.intValue(), k2.intValue());
+            }
+        });
+
+        int start = 0;
+        while (start < size) {
+            int end = start + 1;
+            while (end < size && signature1[order[end]] == signature1[order[start]]
+                    && signature2[order[end]] == signature2[order[start]])
+                end++;
+            if (end - start > 1)
+                markCluster(order, start, end, duplicates);
+            start = end;
+        }
+
+        return duplicates;
+    }
+
+    private void markCluster(int[] order, int start, int end, BitSet duplicates) {
+        int maxScore = Integer.MIN_VALUE;
+        int highScoreNumber = 0;
+        for (int i = start; i < end; i++) {
+            int s = score[order[i]];
+            if (s > maxScore) {
+                maxScore = s;
+                highScoreNumber = 1;
+            } else if (s == maxScore) {
+                highScoreNumber++;
+            }
+        }
+
+        //deal special case : multi high score
+        int keep = highScoreNumber > 1 ? RandomUtils.getRandomGenerator().nextInt(highScoreNumber) : 0;
+        for (int i = start; i < end; i++) {
+            int index = order[i];
+            if (score[index] == maxScore && keep-- == 0)
+                continue;
+            duplicates.set(index);
+        }
+    }
+
+    /**
+     * get score of a read, maybe we could add MQ into account
+     * @param rec
+     * @return
+     */
+    private int getScore(final SAMRecord rec) {
+        int score = 0;
+        for (final byte b : rec.getBaseQualities()) {
+            if (b >= 15) score += b;
+        }
+        return score;
+    }
+
+    /**
+     * get pair orientation
+     * @param read1NegativeStrand
+     * @param read2NegativeStrand
+     * @return
+     */
+    private byte getOrientationByte(final boolean read1NegativeStrand, final boolean read2NegativeStrand) {
+        if (read1NegativeStrand) {
+            if (read2NegativeStrand)  return ReadEnds.RR;
+            else return ReadEnds.RF;
+        }
+        else {
+            if (read2NegativeStrand)  return ReadEnds.FR;
+            else return ReadEnds.FF;
+        }
+    }
+}
@@ -46,6 +46,7 @@ import htsjdk.samtools.SAMFileHeader;
 import htsjdk.variant.variantcontext.VariantContext;
 import org.bgi.flexlab.gaea.data.structure.bam.GaeaSamRecord;
 import org.bgi.flexlab.gaea.data.structure.dbsnp.DbsnpShare;
+import org.bgi.flexlab.gaea.data.structure.dbsnp.KnownSitesShare;
 import org.bgi.flexlab.gaea.data.structure.location.GenomeLocation;
 import org.bgi.flexlab.gaea.data.structure.reference.ChromosomeInformationShare;
 import org.bgi.flexlab.gaea.data.structure.reference.ReferenceShare;
@@ -71,6 +72,7 @@ public class RealignerEngine {
 	private IndelRealigner indelRealigner = null;
 	private RealignerWriter writer = null;
 	private DbsnpShare dbsnpShare = null;
+	private KnownSitesShare knownSites = null;
 
 	private int start;
 	private int end;
@@ -85,6 +87,10 @@ public class RealignerEngine {
 		this.dbsnpShare = dbsnpShare;
 	}
 
+	public void setKnownSites(KnownSitesShare knownSites) {
+		this.knownSites = knownSites;
+	}
+
 	public void set(Window win, ArrayList<GaeaSamRecord> records, ArrayList<GaeaSamRecord> filterRecords) {
 		this.win = win;
 		if (win == null)
@@ -102,9 +108,6 @@ public class RealignerEngine {
 	}
 
 	private void setKnowIndels(VCFLocalLoader loader) {
-		if (loader == null) {
-			throw new RuntimeException("loader is null!!");
-		}
 		String referenceName = win.getContigName();
 		int WINDOWS_EXTEND = option.getExtendSize();
 
@@ -112,6 +115,16 @@ public class RealignerEngine {
 		end = (win.getStop() + WINDOWS_EXTEND) < mHeader.getSequence(referenceName).getSequenceLength()
 				? (win.getStop() + WINDOWS_EXTEND) : mHeader.getSequence(referenceName).getSequenceLength();
 
+		if (knownSites != null) {
+			knowIndels = indelFilter.loadFilter(knownSites, referenceName,
+					start / VcfIndex.WINDOW_SIZE * VcfIndex.WINDOW_SIZE + 1, end);
+			return;
+		}
+
+		if (loader == null) {
+			throw new RuntimeException("loader is null!!");
+		}
+
 		long startPosition = dbsnpShare.getStartPosition(referenceName, start / VcfIndex.WINDOW_SIZE, end / VcfIndex.WINDOW_SIZE,
 				VcfIndex.WINDOW_SIZE);
 
@@ -54,11 +54,10 @@ import org.bgi.flexlab.gaea.tools.recalibrator.RecalibratorUtil.Consistent;
 import org.bgi.flexlab.gaea.tools.recalibrator.RecalibratorUtil.SolidRecallMode;
 import org.bgi.flexlab.gaea.tools.recalibrator.covariate.Covariate;
 import org.bgi.flexlab.gaea.tools.recalibrator.covariate.CovariateUtil;
-import org.bgi.flexlab.gaea.tools.recalibrator.table.RecalibratorTable;
+import org.bgi.flexlab.gaea.tools.recalibrator.table.RecalibratorFlatTable;
 import org.bgi.flexlab.gaea.util.AlignmentUtil;
 import org.bgi.flexlab.gaea.util.BaseUtils;
 import org.bgi.flexlab.gaea.util.EventType;
-import org.bgi.flexlab.gaea.util.NestedObjectArray;
 
 import java.util.ArrayList;
 
@@ -69,7 +68,7 @@ public class RecalibratorEngine {
 	private BaseAndSNPInformation information = null;
 	private BaseRecalibrationFilter filter = null;
 	private Covariate[] covariates = null;
-	private RecalibratorTable recalibratorTables = null;
+	private RecalibratorFlatTable recalibratorTables = null;
 	private RealignerWriter writer = null;
 	private boolean isRealigment = false;
 
@@ -80,7 +79,7 @@ public class RecalibratorEngine {
 		information = new BaseAndSNPInformation();
 		filter = new BaseRecalibrationFilter();
 		this.covariates = CovariateUtil.initializeCovariates(option, mHeader);
-		recalibratorTables = new RecalibratorTable(this.covariates, mHeader.getReadGroups().size());
+		recalibratorTables = new RecalibratorFlatTable(this.covariates, mHeader.getReadGroups().size());
 		this.isRealigment = isRealigment;
 		this.writer = writer;
 	}
@@ -157,35 +156,8 @@ public class RecalibratorEngine {
 		final int[] keys = readCovariates.getKeySet(offset, eventType);
 		final int eventIndex = eventType.index;
 
-		final NestedObjectArray<RecalibratorDatum> rgRecalTable = recalibratorTables
-				.getTable(RecalibratorTable.Type.READ_GROUP_TABLE);
-
-		final RecalibratorDatum rgPreviousDatum = rgRecalTable.get(keys[0], eventIndex);
-		final RecalibratorDatum rgThisDatum = RecalibratorDatum.build(quality, isError);
-		if (rgPreviousDatum == null)
-			rgRecalTable.put(rgThisDatum, keys[0], eventIndex);
-		else
-			rgPreviousDatum.combine(rgThisDatum);
-
-		final NestedObjectArray<RecalibratorDatum> qualRecalTable = recalibratorTables
-				.getTable(RecalibratorTable.Type.QUALITY_SCORE_TABLE);
-		final RecalibratorDatum qualPreviousDatum = qualRecalTable.get(keys[0], keys[1], eventIndex);
-		if (qualPreviousDatum == null)
-			qualRecalTable.put(RecalibratorDatum.build(quality, isError), keys[0], keys[1], eventIndex);
-		else
-			qualPreviousDatum.increment(isError);
-
-		for (int i = 2; i < covariates.length; i++) {
-			if (keys[i] < 0)
-				continue;
-			final NestedObjectArray<RecalibratorDatum> covRecalTable = recalibratorTables.getTable(i);
-			final RecalibratorDatum covPreviousDatum = covRecalTable.get(keys[0], keys[1], keys[i], eventIndex);
-			if (covPreviousDatum == null)
-				covRecalTable.put(RecalibratorDatum.build(quality, isError), keys[0], keys[1], keys[i], eventIndex);
-			else
-				covPreviousDatum.increment(isError);
-		}
-		
+		recalibratorTables.update(keys, eventIndex, quality, isError);
+
 		return isError;
 	}
 
@@ -197,7 +169,7 @@ public class RecalibratorEngine {
 		}
 	}
 
-	public RecalibratorTable getTables() {
+	public RecalibratorFlatTable getTables() {
 		return this.recalibratorTables;
 	}
 }
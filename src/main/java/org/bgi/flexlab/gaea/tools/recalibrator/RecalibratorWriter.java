@@ -16,10 +16,13 @@
  *******************************************************************************/
 package org.bgi.flexlab.gaea.tools.recalibrator;
 
+import org.bgi.flexlab.gaea.tools.recalibrator.table.RecalibratorFlatTable;
 import org.bgi.flexlab.gaea.tools.recalibrator.table.RecalibratorTable;
 
 public interface RecalibratorWriter {
 	public void write(RecalibratorTable table);
+
+	public void write(RecalibratorFlatTable table);
 	
 	public void close();
 }
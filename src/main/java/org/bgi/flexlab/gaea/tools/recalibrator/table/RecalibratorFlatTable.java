@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.tools.recalibrator.table;
+
+import org.bgi.flexlab.gaea.data.exception.UserException;
+import org.bgi.flexlab.gaea.tools.recalibrator.RecalibratorDatum;
+import org.bgi.flexlab.gaea.tools.recalibrator.covariate.Covariate;
+import org.bgi.flexlab.gaea.util.EventType;
+import org.bgi.flexlab.gaea.util.QualityUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * recalibrator tables in flat primitive arrays. Every table keeps one block
+ * per read group, allocated at the first observation of the read group, and
+ * the cell of a key is computed from quality, covariate and event index.
+ * Only the recorded event types get cells. Binary tables hold the non-zero
+ * cells only and merge by adding them to the arrays.
+ */
+public class RecalibratorFlatTable {
+	public final static String BINARY_SUFFIX = ".bin";
+
+	private final static int MAGIC = 0x42515352;
+	private final static int VERSION = 2;
+
+	/**
+	 * the engine only counts mismatches, so SNP is the only recorded event
+	 */
+	public final static int RECORDED_EVENT_NUMBER = EventType.SNP.index + 1;
+
+	private final static double[] QUALITY_ERROR = new double[Byte.MAX_VALUE + 1];
+	static {
+		for (int i = 0; i < QUALITY_ERROR.length; i++)
+			QUALITY_ERROR[i] = QualityUtils.qualityToErrorProbability((double) i);
+	}
+
+	private final int readGroupNumber;
+	private final int qualityNumber;
+	private final int eventNumber;
+	private final int[] covariateNumber;
+	private final int[] blockSize;
+
+	/**
+	 * [table][read group][cell]
+	 */
+	private final long[][][] bases;
+	private final long[][][] mismatches;
+	private final double[][][] errors;
+
+	public RecalibratorFlatTable(final Covariate[] covariates, int readGroupNumber) {
+		this.readGroupNumber = readGroupNumber;
+		this.qualityNumber = covariates[RecalibratorTable.Type.QUALITY_SCORE_TABLE.index].maximumKeyValue() + 1;
+		this.eventNumber = RECORDED_EVENT_NUMBER;
+
+		int tableNumber = covariates.length;
+		covariateNumber = new int[tableNumber];
+		blockSize = new int[tableNumber];
+		for (int i = 0; i < tableNumber; i++) {
+			if (i == RecalibratorTable.Type.READ_GROUP_TABLE.index)
+				blockSize[i] = eventNumber;
+			else if (i == RecalibratorTable.Type.QUALITY_SCORE_TABLE.index)
+				blockSize[i] = qualityNumber * eventNumber;
+			else {
+				covariateNumber[i] = covariates[i].maximumKeyValue() + 1;
+				blockSize[i] = qualityNumber * covariateNumber[i] * eventNumber;
+			}
+		}
+
+		bases = new long[tableNumber][readGroupNumber][];
+		mismatches = new long[tableNumber][readGroupNumber][];
+		errors = new double[tableNumber][readGroupNumber][];
+	}
+
+	public int length() {
+		return blockSize.length;
+	}
+
+	private void allocate(int table, int readGroup) {
+		bases[table][readGroup] = new long[blockSize[table]];
+		mismatches[table][readGroup] = new long[blockSize[table]];
+		errors[table][readGroup] = new double[blockSize[table]];
+	}
+
+	private void add(int table, int readGroup, int cell, long baseNumber, long mismatchNumber, double error) {
+		if (bases[table][readGroup] == null)
+			allocate(table, readGroup);
+		bases[table][readGroup][cell] += baseNumber;
+		mismatches[table][readGroup][cell] += mismatchNumber;
+		errors[table][readGroup][cell] += error;
+	}
+
+	private int cell(int table, int[] keys, int eventIndex) {
+		if (table == RecalibratorTable.Type.READ_GROUP_TABLE.index)
+			return eventIndex;
+		if (table == RecalibratorTable.Type.QUALITY_SCORE_TABLE.index)
+			return keys[1] * eventNumber + eventIndex;
+		return (keys[1] * covariateNumber[table] + keys[table]) * eventNumber + eventIndex;
+	}
+
+	/**
+	 * count one base, keys are covariate keys of the base
+	 */
+	public void update(final int[] keys, final int eventIndex, final byte quality, final boolean isError) {
+		final int readGroup = keys[0];
+		final long mismatch = isError ? 1 : 0;
+		final double error = QUALITY_ERROR[quality];
+
+		for (int i = 0; i < blockSize.length; i++) {
+			if (i >= RecalibratorTable.Type.OPTIONAL_COVARIATE_TABLES_START.index && keys[i] < 0)
+				continue;
+			add(i, readGroup, cell(i, keys, eventIndex), 1, mismatch, error);
+		}
+	}
+
+	/**
+	 * add a datum of text table line, keys end with event index
+	 */
+	public void update(int table, int[] keys, RecalibratorDatum datum) {
+		if (keys[keys.length - 1] >= eventNumber)
+			throw new UserException("event " + EventType.eventFrom(keys[keys.length - 1]) + " isn't recorded!");
+		int[] covariateKeys = new int[blockSize.length];
+		covariateKeys[0] = keys[0];
+		if (table >= RecalibratorTable.Type.QUALITY_SCORE_TABLE.index)
+			covariateKeys[1] = keys[1];
+		if (table >= RecalibratorTable.Type.OPTIONAL_COVARIATE_TABLES_START.index)
+			covariateKeys[table] = keys[2];
+		add(table, keys[0], cell(table, covariateKeys, keys[keys.length - 1]), datum.getBasesNumber(),
+				datum.getMismatchNumber(), datum.expectedErrors());
+	}
+
+	public void merge(RecalibratorFlatTable other) {
+		if (other.length() != length() || other.readGroupNumber != readGroupNumber)
+			throw new UserException("recalibrator tables with different covariates cann't be merged!");
+
+		for (int i = 0; i < blockSize.length; i++) {
+			if (other.blockSize[i] != blockSize[i])
+				throw new UserException("recalibrator tables with different covariates cann't be merged!");
+			for (int rg = 0; rg < readGroupNumber; rg++) {
+				if (other.bases[i][rg] == null)
+					continue;
+				if (bases[i][rg] == null)
+					allocate(i, rg);
+				addArray(bases[i][rg], other.bases[i][rg]);
+				addArray(mismatches[i][rg], other.mismatches[i][rg]);
+				addArray(errors[i][rg], other.errors[i][rg]);
+			}
+		}
+	}
+
+	private static void addArray(long[] to, long[] from) {
+		for (int i = 0; i < to.length; i++)
+			to[i] += from[i];
+	}
+
+	private static void addArray(double[] to, double[] from) {
+		for (int i = 0; i < to.length; i++)
+			to[i] += from[i];
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(readGroupNumber);
+		out.writeInt(blockSize.length);
+		for (int size : blockSize)
+			out.writeInt(size);
+
+		for (int i = 0; i < blockSize.length; i++) {
+			for (int rg = 0; rg < readGroupNumber; rg++) {
+				if (bases[i][rg] == null)
+					continue;
+				int cellNumber = 0;
+				for (int j = 0; j < blockSize[i]; j++) {
+					if (bases[i][rg][j] != 0)
+						cellNumber++;
+				}
+				if (cellNumber == 0)
+					continue;
+
+				out.writeInt(i);
+				out.writeInt(rg);
+				out.writeInt(cellNumber);
+				for (int j = 0; j < blockSize[i]; j++) {
+					if (bases[i][rg][j] == 0)
+						continue;
+					out.writeInt(j);
+					out.writeLong(bases[i][rg][j]);
+					out.writeLong(mismatches[i][rg][j]);
+					out.writeDouble(errors[i][rg][j]);
+				}
+			}
+		}
+		out.writeInt(-1);
+	}
+
+	/**
+	 * read a binary table and add it to this table
+	 */
+	public void readAndMerge(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new UserException("not a binary recalibrator table!");
+		if (in.readInt() != VERSION)
+			throw new UserException("unsupported binary recalibrator table version!");
+		if (in.readInt() != readGroupNumber)
+			throw new UserException("recalibrator tables with different read groups cann't be merged!");
+		int tableNumber = in.readInt();
+		if (tableNumber != blockSize.length)
+			throw new UserException("recalibrator tables with different covariates cann't be merged!");
+		for (int i = 0; i < tableNumber; i++) {
+			if (in.readInt() != blockSize[i])
+				throw new UserException("recalibrator tables with different covariates cann't be merged!");
+		}
+
+		int table;
+		while ((table = in.readInt()) >= 0) {
+			int rg = in.readInt();
+			if (table >= blockSize.length || rg >= readGroupNumber)
+				throw new UserException("binary recalibrator table is broken!");
+			if (bases[table][rg] == null)
+				allocate(table, rg);
+			long[] b = bases[table][rg];
+			long[] m = mismatches[table][rg];
+			double[] e = errors[table][rg];
+			int cellNumber = in.readInt();
+			for (int k = 0; k < cellNumber; k++) {
+				int j = in.readInt();
+				if (j < 0 || j >= blockSize[table])
+					throw new UserException("binary recalibrator table is broken!");
+				b[j] += in.readLong();
+				m[j] += in.readLong();
+				e[j] += in.readDouble();
+			}
+		}
+	}
+
+	/**
+	 * convert to nested recalibrator table for report
+	 */
+	public RecalibratorTable toRecalibratorTable(final Covariate[] covariates) {
+		RecalibratorTable table = new RecalibratorTable(covariates, readGroupNumber);
+
+		for (int i = 0; i < blockSize.length; i++) {
+			for (int rg = 0; rg < readGroupNumber; rg++) {
+				if (bases[i][rg] == null)
+					continue;
+				for (int j = 0; j < blockSize[i]; j++) {
+					long baseNumber = bases[i][rg][j];
+					if (baseNumber == 0)
+						continue;
+					int event = j % eventNumber;
+					int rest = j / eventNumber;
+
+					if (i == RecalibratorTable.Type.READ_GROUP_TABLE.index) {
+						double quality = -10 * Math.log10(errors[i][rg][j] / baseNumber);
+						table.getTable(i).put(new RecalibratorDatum(baseNumber, mismatches[i][rg][j], quality), rg,
+								event);
+					} else if (i == RecalibratorTable.Type.QUALITY_SCORE_TABLE.index) {
+						table.getTable(i).put(new RecalibratorDatum(baseNumber, mismatches[i][rg][j], rest), rg,
+								rest, event);
+					} else {
+						int covariate = rest % covariateNumber[i];
+						int quality = rest / covariateNumber[i];
+						table.getTable(i).put(new RecalibratorDatum(baseNumber, mismatches[i][rg][j], quality), rg,
+								quality, covariate, event);
+					}
+				}
+			}
+		}
+
+		return table;
+	}
+}
@@ -43,30 +43,47 @@
 package org.bgi.flexlab.gaea.tools.recalibrator.table;
 
 import htsjdk.samtools.SAMFileHeader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.bgi.flexlab.gaea.data.mapreduce.util.HdfsFileManager;
 import org.bgi.flexlab.gaea.data.mapreduce.util.HdfsFilesReader;
 import org.bgi.flexlab.gaea.tools.mapreduce.realigner.RecalibratorContextWriter;
 import org.bgi.flexlab.gaea.tools.mapreduce.realigner.RecalibratorOptions;
 import org.bgi.flexlab.gaea.tools.recalibrator.RecalibratorDatum;
 import org.bgi.flexlab.gaea.tools.recalibrator.covariate.Covariate;
 import org.bgi.flexlab.gaea.tools.recalibrator.covariate.CovariateUtil;
-import org.bgi.flexlab.gaea.util.NestedObjectArray;
+
+import java.io.IOException;
 
 public class RecalibratorTableCombiner {
 	private HdfsFilesReader reader = null;
-	private RecalibratorTable tables = null;
+	private RecalibratorFlatTable tables = null;
 	private Covariate[] covariates = null;
 
 	public RecalibratorTableCombiner(RecalibratorOptions option, SAMFileHeader header) {
 		covariates = CovariateUtil.initializeCovariates(option, header);
-		tables = new RecalibratorTable(covariates, header.getReadGroups().size());
+		tables = new RecalibratorFlatTable(covariates, header.getReadGroups().size());
 	}
 	
 	private class RecalibratorPathFilter implements PathFilter {
 		@Override
 		public boolean accept(Path path) {
-			if (path.getName().startsWith(RecalibratorContextWriter.RECALIBRATOR_TABLE_TAG))
+			if (path.getName().startsWith(RecalibratorContextWriter.RECALIBRATOR_TABLE_TAG)
+					&& !path.getName().endsWith(RecalibratorFlatTable.BINARY_SUFFIX))
+				return true;
+			return false;
+		}
+	}
+
+	private class BinaryRecalibratorPathFilter implements PathFilter {
+		@Override
+		public boolean accept(Path path) {
+			if (path.getName().startsWith(RecalibratorContextWriter.RECALIBRATOR_TABLE_TAG)
+					&& path.getName().endsWith(RecalibratorFlatTable.BINARY_SUFFIX))
 				return true;
 			return false;
 		}
@@ -84,6 +101,8 @@ public class RecalibratorTableCombiner {
 	}
 
 	public void combineTable(String path) {
+		combineBinaryTable(path);
+
 		reader = new HdfsFilesReader();
 		reader.traversal(path,new RecalibratorPathFilter());
 
@@ -97,6 +116,23 @@ public class RecalibratorTableCombiner {
 		reader.clear();
 	}
 
+	private void combineBinaryTable(String path) {
+		Path p = new Path(path);
+		FileSystem fs = HdfsFileManager.getFileSystem(p, new Configuration());
+		try {
+			if (!fs.getFileStatus(p).isDirectory())
+				return;
+			for (FileStatus status : fs.listStatus(p, new BinaryRecalibratorPathFilter())) {
+				FSDataInputStream in = fs.open(status.getPath());
+				tables.readAndMerge(in);
+				in.close();
+				fs.delete(status.getPath(), false);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e.toString());
+		}
+	}
+
 	private void tableLineParser(String[] array) {
 		int[] keys = null;
 		int length = 2;
@@ -122,19 +158,10 @@ public class RecalibratorTableCombiner {
 	}
 
 	private void updateTable(int index, int[] keys, RecalibratorDatum datum) {
-		final NestedObjectArray<RecalibratorDatum> table = tables.getTable(index);
-		final RecalibratorDatum currDatum = table.get(keys);
-		if (currDatum == null)
-			table.put(datum, keys);
-		else {
-			if (index == 0)
-				currDatum.combine(datum);
-			else
-				currDatum.increment(datum);
-		}
+		tables.update(index, keys, datum);
 	}
 	
 	public RecalibratorTable getRecalibratorTable(){
-		return this.tables;
+		return tables.toRecalibratorTable(covariates);
 	}
 }
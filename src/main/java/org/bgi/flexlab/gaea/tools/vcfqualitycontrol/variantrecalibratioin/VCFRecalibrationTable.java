@@ -42,12 +42,10 @@
  *******************************************************************************/
 package org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin;
 
-import htsjdk.variant.variantcontext.Allele;
-import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.bgi.flexlab.gaea.data.exception.UserException;
-import org.bgi.flexlab.gaea.data.structure.header.VCFConstants;
-import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.VCFQualityControl;
+import org.bgi.flexlab.gaea.data.mapreduce.util.HdfsFileManager;
 import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.VCFQualityControlOptions;
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin.model.GaussianMixtureModel;
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin.model.VariantDataManager;
@@ -57,6 +55,8 @@ import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin.tranch
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin.tranche.TrancheManager;
 import org.bgi.flexlab.gaea.util.ExpandingArrayList;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.*;
 
@@ -82,16 +82,6 @@ public class VCFRecalibrationTable {
     private List<Tranche> tranches;
     
     
-    /**
-     * create dummy alleles to be used
-     */
-    private final List<Allele> alleles = new ArrayList<Allele>(2);   
-    
-    /**
-     * to be used for the important INFO tags
-     */
-    private final HashMap<String, Object> attributes = new HashMap<String, Object>(3);
-    
     /**
      * data of data manager
      */
@@ -108,8 +98,6 @@ public class VCFRecalibrationTable {
     	engine = new VariantRecalibrationEngine(options);
 		dataManager = new VariantDataManager( options.getUseAnnotations(), options );
 		data = dataManager.getData();
-		alleles.add(Allele.create("N", true));
-	    alleles.add(Allele.create("<VQSR>", false)); 
 	}
 	
 	/**
@@ -170,44 +158,35 @@ public class VCFRecalibrationTable {
         }
 	}
     
-	public VariantContext getData(String chrName, int start, int end) {
-    	ArrayList<Integer> index = dataIndex.get(chrName).get(start);
-    	if(index == null)
-    		return null;
-    	for(int i : index) {
-    		VariantDatum datum = data.get(i);
-    		if(datum.loc.getStart() == start && datum.loc.getStop() == end) {
-    			attributes.put(VCFConstants.END_KEY, datum.loc.getStop());
-                attributes.put(VCFQualityControl.VQS_LOD_KEY, String.format("%.4f", datum.lod));
-                attributes.put(VCFQualityControl.CULPRIT_KEY, (datum.worstAnnotation != -1 ? options.getUseAnnotations().get(datum.worstAnnotation) : "NULL"));
+	/**
+	 * write the recal table sorted by position, one fixed size entry
+	 * (contig index, start, stop, lod, culprit index) per datum, see
+	 * {@link VCFRecalibrationTableReader}
+	 * @param path
+	 * @param conf
+	 * @throws IOException
+	 */
+	public void write(Path path, Configuration conf) throws IOException {
+		List<VariantDatum> sorted = new ArrayList<VariantDatum>(data);
+		Collections.sort(sorted, new Comparator<VariantDatum>() {
+			@Override
+			public int compare(VariantDatum vd1, VariantDatum vd2) {
+				return VCFRecalibrationTableReader.compare(vd1.loc.getContigIndex(), vd1.loc.getStart(), vd1.loc.getStop(),
+						vd2.loc.getContigIndex(), vd2.loc.getStart(), vd2.loc.getStop());
+			}
+		});
 
-                VariantContextBuilder builder = new VariantContextBuilder("VQSR", datum.loc.getContig(), datum.loc.getStart(), datum.loc.getStop(), alleles).attributes(attributes);
-                return builder.make();
-    		}
-    		else if(datum.loc.getStart() > start)
-    			break;
-    	}
-    	return null;
-    }
-		
-    public void indexData() {
-    	dataIndex = new HashMap<String, Map<Integer,ArrayList<Integer>>>();
-    	int i = 0;
-    	while(i < data.size()) {
-    		VariantDatum datum = data.get(i);
-    		if(!dataIndex.containsKey(datum.loc.getContig())) {
-    			Map<Integer, ArrayList<Integer>> posIndex = new HashMap<Integer, ArrayList<Integer>>();
-    			dataIndex.put(datum.loc.getContig(), posIndex);
-    		}
-    		Map<Integer, ArrayList<Integer>> posIndex = dataIndex.get(datum.loc.getContig());
-    		if(!posIndex.containsKey(datum.loc.getStart())) {
-    			ArrayList<Integer> index = new ArrayList<Integer>();
-    			posIndex.put(datum.loc.getStart(), index);
-    		}
-    		posIndex.get(datum.loc.getStart()).add(i);
-    		i ++;
-    	}
-    }
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(HdfsFileManager.getOutputStream(path, conf)));
+		for(VariantDatum datum : sorted) {
+			out.writeInt(datum.loc.getContigIndex());
+			out.writeInt(datum.loc.getStart());
+			out.writeInt(datum.loc.getStop());
+			// same precision as the VQSLOD attribute of the text recal file
+			out.writeDouble(Double.valueOf(String.format("%.4f", datum.lod)));
+			out.writeInt(datum.worstAnnotation);
+		}
+		out.close();
+	}
     
     public List<Tranche> getTranches() {
     	return tranches;
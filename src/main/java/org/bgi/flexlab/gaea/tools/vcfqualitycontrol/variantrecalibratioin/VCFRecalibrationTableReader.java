@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * reader of the binary recal table written by {@link VCFRecalibrationTable#write}.
+ * 
+ * entries are sorted by contig index, start and stop, so a split of a sorted
+ * vcf looks its records up in table order: the cursor only moves forward
+ * through a buffered block of the table, a record missing from the table
+ * sorts before the cursor entry and is answered without any read, and a
+ * binary search with positional reads is only needed to find the first
+ * entry of a split.
+ */
+public class VCFRecalibrationTableReader implements Closeable {
+	public static final int ENTRY_SIZE = 24;
+
+	private static final int BLOCK_ENTRIES = 4096;
+
+	private final FSDataInputStream in;
+
+	private final long entries;
+
+	private final ByteBuffer block = ByteBuffer.allocate(BLOCK_ENTRIES * ENTRY_SIZE);
+
+	private final ByteBuffer single = ByteBuffer.allocate(ENTRY_SIZE);
+
+	private long blockStart = 0;
+
+	private int blockSize = 0;
+
+	/**
+	 * index of the entry after the last matched one
+	 */
+	private long cursor = 0;
+
+	private double lod;
+
+	private int culprit;
+
+	public VCFRecalibrationTableReader(Path path, Configuration conf) throws IOException {
+		FileSystem fs = path.getFileSystem(conf);
+		entries = fs.getFileStatus(path).getLen() / ENTRY_SIZE;
+		in = fs.open(path);
+	}
+
+	public static int compare(int contig1, int start1, int stop1, int contig2, int start2, int stop2) {
+		if (contig1 != contig2)
+			return contig1 < contig2 ? -1 : 1;
+		if (start1 != start2)
+			return start1 < start2 ? -1 : 1;
+		if (stop1 != stop2)
+			return stop1 < stop2 ? -1 : 1;
+		return 0;
+	}
+
+	/**
+	 * buffer holding entry index at its position, sequential reads fill the
+	 * block, random reads only read the entry
+	 */
+	private ByteBuffer entry(long index, boolean sequential) throws IOException {
+		if (index >= blockStart && index < blockStart + blockSize) {
+			block.position((int) (index - blockStart) * ENTRY_SIZE);
+			return block;
+		}
+		if (sequential) {
+			blockStart = index;
+			blockSize = (int) Math.min(BLOCK_ENTRIES, entries - index);
+			in.readFully(index * ENTRY_SIZE, block.array(), 0, blockSize * ENTRY_SIZE);
+			block.position(0);
+			return block;
+		}
+		in.readFully(index * ENTRY_SIZE, single.array(), 0, ENTRY_SIZE);
+		single.position(0);
+		return single;
+	}
+
+	private int compareAt(long index, boolean sequential, int contig, int start, int stop) throws IOException {
+		ByteBuffer buffer = entry(index, sequential);
+		int pos = buffer.position();
+		return compare(buffer.getInt(pos), buffer.getInt(pos + 4), buffer.getInt(pos + 8), contig, start, stop);
+	}
+
+	/**
+	 * index of the first entry not less than the key
+	 */
+	private long lowerBound(int contig, int start, int stop) throws IOException {
+		long low = 0, high = entries;
+		while (low < high) {
+			long mid = (low + high) >>> 1;
+			if (compareAt(mid, false, contig, start, stop) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * look the record up, lod and culprit of a found record are kept until the next call
+	 * @return true if the record is in the table
+	 */
+	public boolean seek(int contig, int start, int stop) throws IOException {
+		long index;
+		if (cursor < entries && compareAt(cursor, true, contig, start, stop) >= 0
+				&& (cursor == 0 || compareAt(cursor - 1, false, contig, start, stop) < 0))
+			index = cursor;
+		else
+			index = lowerBound(contig, start, stop);
+
+		if (index < entries && compareAt(index, true, contig, start, stop) == 0) {
+			ByteBuffer buffer = entry(index, true);
+			lod = buffer.getDouble(buffer.position() + 12);
+			culprit = buffer.getInt(buffer.position() + 20);
+			cursor = index + 1;
+			return true;
+		}
+		cursor = index;
+		return false;
+	}
+
+	public double getLod() {
+		return lod;
+	}
+
+	/**
+	 * index of the worst performing annotation, -1 if none
+	 */
+	public int getCulprit() {
+		return culprit;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -46,17 +46,21 @@ import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 import htsjdk.variant.vcf.*;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.mapreduce.Reducer.Context;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
 import org.bgi.flexlab.gaea.data.exception.UserException;
-import org.bgi.flexlab.gaea.data.structure.header.GaeaVCFHeader;
-import org.bgi.flexlab.gaea.data.structure.header.MultipleVCFHeader;
+import org.bgi.flexlab.gaea.data.mapreduce.util.HdfsFileManager;
+import org.bgi.flexlab.gaea.data.structure.location.GenomeLocationParser;
 import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.VCFQualityControl;
 import org.bgi.flexlab.gaea.tools.mapreduce.vcfqualitycontrol.VCFQualityControlOptions;
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin.traindata.ResourceManager;
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin.traindata.VariantDatumMessenger;
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol.variantrecalibratioin.tranche.Tranche;
 
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.*;
 
 public class VCFRecalibrator {
@@ -81,9 +85,14 @@ public class VCFRecalibrator {
     private VCFRecalibrationTable recalTable;
     
     /**
-     * headers which for get original vcf file
+     * reader of the recal table written by the training job
      */
-    private MultipleVCFHeader headers;
+    private VCFRecalibrationTableReader recalReader;
+    
+    /**
+     * parser for contig index of variants
+     */
+    private GenomeLocationParser genomeLocParser;
     
     /**
      * hadoop job Configuration file
@@ -99,7 +108,6 @@ public class VCFRecalibrator {
     public VCFRecalibrator(VCFQualityControlOptions options, Configuration conf) throws IOException {
     	this.conf = conf;
         this.options = options;
-        headers = (MultipleVCFHeader) GaeaVCFHeader.loadVcfHeader(false, this.conf);
         recalTable = new VCFRecalibrationTable(options);
         if (options.getIgnoreInputFilters() != null) {
             ignoreInputFilterSet.addAll(options.getIgnoreInputFilters());
@@ -110,24 +118,50 @@ public class VCFRecalibrator {
     	recalTable.addData(msg);
     }
     /**
-     * recal one vcf file
-     * @param id
-     * @param values
-     * @throws InterruptedException 
+     * train the models of one vcf file
      * @throws IOException
      */
-    public void recalVCF(int id, Context context) throws IOException, InterruptedException{
+    public void recalVCF() throws IOException {
     	long start,end;
     	start = System.currentTimeMillis();
     	recalTable.getRecalibrationTable();
     	end = System.currentTimeMillis();
     	System.err.println("recal table time:"+(end-start)/1000+"s");
     	
-    	start = System.currentTimeMillis();
-    	recalTable.indexData();
-    	end = System.currentTimeMillis();
-    	System.err.println("recal table index time:"+(end-start)/1000+"s");
-    	for (final Tranche t : recalTable.getTranches()) {
+    	selectTranches(recalTable.getTranches());
+    }
+    
+    /**
+     * write recal table and tranches of the trained vcf
+     * @param table
+     * @param tranchesPath
+     * @throws IOException
+     */
+    public void writeRecalibration(Path table, Path tranchesPath) throws IOException {
+    	recalTable.write(table, conf);
+    	FSDataOutputStream os = HdfsFileManager.getOutputStream(tranchesPath, conf);
+    	os.write(Tranche.tranchesString(recalTable.getTranches()).getBytes());
+    	os.close();
+    }
+    
+    /**
+     * load recal table and tranches written by {@link #writeRecalibration}
+     * @param table
+     * @param tranchesPath
+     * @param genomeLocParser
+     * @throws IOException
+     */
+    public void loadRecalibration(Path table, Path tranchesPath, GenomeLocationParser genomeLocParser) throws IOException {
+    	this.genomeLocParser = genomeLocParser;
+    	recalReader = new VCFRecalibrationTableReader(table, conf);
+    	BufferedReader reader = new BufferedReader(new InputStreamReader(HdfsFileManager.getInputStream(tranchesPath, conf)));
+    	selectTranches(Tranche.readTranches(reader, new File(tranchesPath.toString())));
+    	reader.close();
+    }
+    
+    private void selectTranches(List<Tranche> all) {
+    	tranches.clear();
+    	for (final Tranche t : all) {
             if (t.ts >= options.getTSFilterLevel()) {
                 tranches.add(t);
             }
@@ -135,6 +169,11 @@ public class VCFRecalibrator {
     	// this algorithm wants the tranches ordered from best (lowest truth sensitivity) to worst (highest truth sensitivity)
         Collections.reverse(tranches); 
     }
+    
+    public void close() throws IOException {
+    	if(recalReader != null)
+    		recalReader.close();
+    }
 
     public VCFHeader addHeaderLine(VCFHeader header) {
     	for(VCFHeaderLine headerLine : getAddingHeader()) {
@@ -210,32 +249,17 @@ public class VCFRecalibrator {
             return null;
         }
 
-        final VariantContext recalDatum = recalTable.getData(vc.getChr(), vc.getStart(), vc.getEnd());
-
         if (ResourceManager.checkVariationClass(vc, options.getMode()) && (vc.isNotFiltered() ||
         ignoreInputFilterSet.containsAll(vc.getFilters()))) {
 //        	final VariantContext recalDatum = getMatchingRecalVC(vc, recals);
 
-        	if (recalDatum == null) {
+        	if (!recalReader.seek(genomeLocParser.getContigIndex(vc.getContig()), vc.getStart(), vc.getEnd())) {
         		throw new UserException(
                     "Encountered input variant which isn't found in the input recal file. Please make sure VCFQualityControl and ApplyRecalibration were run on the same set of input variants. First seen at: " + vc);
                 }
 
-        	final String lodString = recalDatum.getAttributeAsString(VCFQualityControl.VQS_LOD_KEY, null);
-
-        	if (lodString == null) {
-        		throw new UserException(
-        			"Encountered a malformed record in the input recal file. There is no lod for the record at: " + vc);
-                }
-
-        	final double lod;
-
-        	try {
-        		lod = Double.valueOf(lodString);
-        	} catch (NumberFormatException e) {
-        		throw new UserException(
-        			"Encountered a malformed record in the input recal file. The lod is unreadable for the record at: " + vc);
-            }
+        	final double lod = recalReader.getLod();
+        	final int culprit = recalReader.getCulprit();
 
         	VariantContextBuilder builder = new VariantContextBuilder(vc);
         	String filterString = null;
@@ -243,7 +267,7 @@ public class VCFRecalibrator {
         	// Annotate the new record with its VQSLOD and the worst performing annotation
         	builder.attribute(VCFQualityControl.VQS_LOD_KEY, lod);
         	builder.attribute(VCFQualityControl.CULPRIT_KEY,
-        	recalDatum.getAttribute(VCFQualityControl.CULPRIT_KEY));
+        	(culprit != -1 ? options.getUseAnnotations().get(culprit) : "NULL"));
 
         	for (int i = tranches.size() - 1; i >= 0; i--) {
         		final Tranche tranche = tranches.get(i);
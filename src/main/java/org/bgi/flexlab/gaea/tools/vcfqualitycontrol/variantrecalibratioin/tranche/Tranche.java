@@ -175,46 +175,55 @@ public class Tranche {
      * @return
      */
     public static List<Tranche> readTranches(File f) {
-        String[] header = null;
-        List<Tranche> tranches = new ArrayList<Tranche>();
         try {
             BufferedReader reader = new BufferedReader(new FileReader(f));
-            String line = null;
-            while((line = reader.readLine()) != null){
-                if ( line.startsWith("#") )
-                    continue;
-
-                final String[] vals = line.split(",");
-                if( header == null ) {
-                    header = vals;
-                    if ( header.length == 5 || header.length == 8 || header.length == 10 )
-                        // old style tranches file, throw an error
-                        throw new MalformedFile(f, "Unfortunately your tranches file is from a previous version of this tool and cannot be used with the latest code.  Please rerun VariantRecalibrator");
-                    if ( header.length != 11 )
-                        throw new MalformedFile(f, "Expected 11 elements in header line " + line);
-                } else {
-                    if ( header.length != vals.length )
-                        throw new MalformedFile(f, "Line had too few/many fields.  Header = " + header.length + " vals " + vals.length + ". The line was: " + line);
-
-                    Map<String,String> bindings = new HashMap<String, String>();
-                    for ( int i = 0; i < vals.length; i++ ) bindings.put(header[i], vals[i]);
-                    tranches.add(new Tranche(getDouble(bindings,"targetTruthSensitivity", true),
-                            getDouble(bindings,"minVQSLod", true),
-                            getInteger(bindings,"numKnown", false),
-                            getDouble(bindings,"knownTiTv", false),
-                            getInteger(bindings,"numNovel", true),
-                            getDouble(bindings,"novelTiTv", true),
-                            getInteger(bindings,"accessibleTruthSites", false),
-                            getInteger(bindings,"callsAtTruthSites", false),
-                            Mode.valueOf(bindings.get("model").toUpperCase()),
-                            bindings.get("filterName")));
-                }
-            }
-
-            Collections.sort( tranches, new TrancheTruthSensitivityComparator() );
+            List<Tranche> tranches = readTranches(reader, f);
+            reader.close();
             return tranches;
         } catch( IOException e ) {
             throw new UserException.CouldNotReadInputFile(f, e);
         }
     }
+
+    /**
+     * Returns a list of tranches, sorted from most to least specific, read from a tranches file stream
+     */
+    public static List<Tranche> readTranches(BufferedReader reader, File f) throws IOException {
+        String[] header = null;
+        List<Tranche> tranches = new ArrayList<Tranche>();
+        String line = null;
+        while((line = reader.readLine()) != null){
+            if ( line.startsWith("#") )
+                continue;
+
+            final String[] vals = line.split(",");
+            if( header == null ) {
+                header = vals;
+                if ( header.length == 5 || header.length == 8 || header.length == 10 )
+                    // old style tranches file, throw an error
+                    throw new MalformedFile(f, "Unfortunately your tranches file is from a previous version of this tool and cannot be used with the latest code.  Please rerun VariantRecalibrator");
+                if ( header.length != 11 )
+                    throw new MalformedFile(f, "Expected 11 elements in header line " + line);
+            } else {
+                if ( header.length != vals.length )
+                    throw new MalformedFile(f, "Line had too few/many fields.  Header = " + header.length + " vals " + vals.length + ". The line was: " + line);
+
+                Map<String,String> bindings = new HashMap<String, String>();
+                for ( int i = 0; i < vals.length; i++ ) bindings.put(header[i], vals[i]);
+                tranches.add(new Tranche(getDouble(bindings,"targetTruthSensitivity", true),
+                        getDouble(bindings,"minVQSLod", true),
+                        getInteger(bindings,"numKnown", false),
+                        getDouble(bindings,"knownTiTv", false),
+                        getInteger(bindings,"numNovel", true),
+                        getDouble(bindings,"novelTiTv", true),
+                        getInteger(bindings,"accessibleTruthSites", false),
+                        getInteger(bindings,"callsAtTruthSites", false),
+                        Mode.valueOf(bindings.get("model").toUpperCase()),
+                        bindings.get("filterName")));
+            }
+        }
+
+        Collections.sort( tranches, new TrancheTruthSensitivityComparator() );
+        return tranches;
+    }
 }
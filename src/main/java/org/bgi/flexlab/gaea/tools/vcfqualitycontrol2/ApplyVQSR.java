@@ -150,7 +150,11 @@ public class ApplyVQSR extends ToolsRunner{
 			VariantContext vc = codec.decode(iterator.next());
 			recalibrator.apply(vc);
 		}
-		recalibrator.traversal();
+		try {
+			recalibrator.traversal();
+		} finally {
+			recalibrator.close();
+		}
 		iterator.close();
 	}
 	
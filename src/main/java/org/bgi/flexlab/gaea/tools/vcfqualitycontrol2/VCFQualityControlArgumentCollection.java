@@ -44,6 +44,12 @@ public class VCFQualityControlArgumentCollection {
 	     */
 	    public int NUM_KMEANS_ITERATIONS = 100;
 
+	    /**
+	     * This parameter determines the number of threads used to train the Gaussian mixture models. The trained
+	     * models do not depend on it.
+	     */
+	    public int NUM_THREADS = 1;
+
 	    /**
 	     * If a variant has annotations more than -std standard deviations away from mean, it won't be used for building
 	     * the Gaussian mixture model.
@@ -308,6 +308,14 @@ public class VariantRecalibrator {
 		}*/
 	}
 
+	public void close() {
+		engine.close();
+		if (tranchesStream != null)
+			tranchesStream.close();
+		if (recalWriter != null)
+			recalWriter.close();
+	}
+
 	public Report writeModelReport(final GaussianMixtureModel goodModel, final GaussianMixtureModel badModel,
 			final List<String> annotationList) {
 		final String formatString = "%.16E";
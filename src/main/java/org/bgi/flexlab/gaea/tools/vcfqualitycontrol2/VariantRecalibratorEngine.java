@@ -1,6 +1,7 @@
 package org.bgi.flexlab.gaea.tools.vcfqualitycontrol2;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol2.mode.GaussianMixtureModel;
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol2.util.RandomDataGenertorUtils;
@@ -17,12 +18,16 @@ public class VariantRecalibratorEngine {
 
     private final static double MIN_PROB_CONVERGENCE = 2E-3;
 
+    // pool for model training, null for single thread
+    private final ForkJoinPool pool;
+
     /////////////////////////////
     // Public Methods to interface with the Engine
     /////////////////////////////
 
     public VariantRecalibratorEngine( final VCFQualityControlArgumentCollection VRAC ) {
         this.VRAC = VRAC;
+        this.pool = VRAC.NUM_THREADS > 1 ? new ForkJoinPool( VRAC.NUM_THREADS ) : null;
     }
 
     public GaussianMixtureModel generateModel(final List<VariantDatum> data, final int maxGaussians ) {
@@ -40,10 +45,18 @@ public class VariantRecalibratorEngine {
                 VRAC.SHRINKAGE,
                 VRAC.DIRICHLET_PARAMETER,
                 VRAC.PRIOR_COUNTS );
+        model.setPool( pool );
         variationalBayesExpectationMaximization( model, data );
         return model;
     }
 
+    // shut down the training pool, models generated before keep evaluating in the calling thread
+    public void close() {
+        if( pool != null ) {
+            pool.shutdown();
+        }
+    }
+
     public void evaluateData( final List<VariantDatum> data, final GaussianMixtureModel model, final boolean evaluateContrastively ) {
         if( !model.isModelReadyForEvaluation ) {
             try {
@@ -4,6 +4,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol2.VariantDatum;
 import org.bgi.flexlab.gaea.tools.vcfqualitycontrol2.util.RandomDataGenertorUtils;
@@ -22,6 +26,14 @@ public class GaussianMixtureModel {
     public boolean isModelReadyForEvaluation;
     public boolean failedToConverge = false;
 
+    // training runs on this pool when it is set, every datum or Gaussian is computed by one task in the serial order
+    // so the trained model is the same as the single thread one
+    private ForkJoinPool pool = null;
+
+    // annotations of the training data in one array, datum after datum
+    private List<VariantDatum> flatData = null;
+    private double[] flatAnnotations = null;
+
     public GaussianMixtureModel( final int numGaussians, final int numVariantData, final int numAnnotations,
                                  final double shrinkage, final double dirichletParameter, final double priorCounts ) {
 
@@ -55,6 +67,38 @@ public class GaussianMixtureModel {
 
     }
 
+    public void setPool( final ForkJoinPool pool ) {
+        this.pool = pool;
+    }
+
+    private void forEach( final int size, final IntConsumer action ) {
+        if( pool == null || size < 2 ) {
+            for( int iii = 0; iii < size; iii++ ) {
+                action.accept(iii);
+            }
+            return;
+        }
+        try {
+            pool.submit(() -> IntStream.range(0, size).parallel().forEach(action)).get();
+        } catch( InterruptedException | ExecutionException e ) {
+            throw new RuntimeException(e.toString());
+        }
+    }
+
+    private double[] getAnnotations( final List<VariantDatum> data ) {
+        if( flatData != data ) {
+            final int numAnnotations = empiricalMu.length;
+            flatAnnotations = new double[data.size() * numAnnotations];
+            int offset = 0;
+            for( final VariantDatum datum : data ) {
+                System.arraycopy(datum.annotations, 0, flatAnnotations, offset, numAnnotations);
+                offset += numAnnotations;
+            }
+            flatData = data;
+        }
+        return flatAnnotations;
+    }
+
     public void initializeRandomModel( final List<VariantDatum> data, final int numKMeansIterations ) {
 
         // initialize random Gaussian means // BUGBUG: this is broken up this way to match the order of calls to rand.nextDouble() in the old code
@@ -77,42 +121,57 @@ public class GaussianMixtureModel {
     }
 
     private void initializeMeansUsingKMeans( final List<VariantDatum> data, final int numIterations ) {
+        final double[] annotations = getAnnotations( data );
+        final int numAnnotations = empiricalMu.length;
+        final int numGaussians = gaussians.size();
+        final int[] assignments = new int[data.size()];
+        final int[] numAssigned = new int[numGaussians];
 
         int ttt = 0;
         while( ttt++ < numIterations ) {
             // E step: assign each variant to the nearest cluster
-            for( final VariantDatum datum : data ) {
+            forEach( data.size(), datumIndex -> {
                 double minDistance = Double.MAX_VALUE;
-                MultivariateGaussian minGaussian = null;
-                datum.assignment = minGaussian;
-                for( final MultivariateGaussian gaussian : gaussians ) {
-                    final double dist = gaussian.calculateDistanceFromMeanSquared( datum );
+                int minGaussian = -1;
+                for( int gaussianIndex = 0; gaussianIndex < numGaussians; gaussianIndex++ ) {
+                    final double dist = gaussians.get(gaussianIndex).calculateDistanceFromMeanSquared( annotations, datumIndex * numAnnotations );
                     if( dist < minDistance ) {
                         minDistance = dist;
-                        minGaussian = gaussian;
+                        minGaussian = gaussianIndex;
                     }
                 }
-                datum.assignment = minGaussian;
-            }
+                assignments[datumIndex] = minGaussian;
+            });
 
             // M step: update gaussian means based on assigned variants
-            for( final MultivariateGaussian gaussian : gaussians ) {
+            forEach( numGaussians, gaussianIndex -> {
+                final MultivariateGaussian gaussian = gaussians.get(gaussianIndex);
                 gaussian.zeroOutMu();
-                int numAssigned = 0;
+                numAssigned[gaussianIndex] = 0;
 
-                for( final VariantDatum datum : data ) {
-                    if( datum.assignment.equals(gaussian) ) {
-                        numAssigned++;
-                        gaussian.incrementMu( datum );
+                for( int datumIndex = 0; datumIndex < assignments.length; datumIndex++ ) {
+                    if( assignments[datumIndex] == gaussianIndex ) {
+                        numAssigned[gaussianIndex]++;
+                        gaussian.incrementMu( annotations, datumIndex * numAnnotations, 1.0 );
                     }
                 }
-                if( numAssigned != 0 ) {
-                    gaussian.divideEqualsMu( ((double) numAssigned) );
+            });
+            // empty clusters draw new means in Gaussian order to keep the random sequence
+            for( int gaussianIndex = 0; gaussianIndex < numGaussians; gaussianIndex++ ) {
+                final MultivariateGaussian gaussian = gaussians.get(gaussianIndex);
+                if( numAssigned[gaussianIndex] != 0 ) {
+                    gaussian.divideEqualsMu( ((double) numAssigned[gaussianIndex]) );
                 } else {
                     gaussian.initializeRandomMu( RandomDataGenertorUtils.getRandomGenerator() );
                 }
             }
         }
+
+        int datumIndex = 0;
+        for( final VariantDatum datum : data ) {
+            final int assignment = assignments[datumIndex++];
+            datum.assignment = assignment < 0 ? null : gaussians.get(assignment);
+        }
     }
 
     public void expectationStep( final List<VariantDatum> data ) {
@@ -121,18 +180,25 @@ public class GaussianMixtureModel {
             gaussian.precomputeDenominatorForVariationalBayes( getSumHyperParameterLambda() );
         }
 
-        for( final VariantDatum datum : data ) {
-            final double[] pVarInGaussianLog10 = gaussians.stream().mapToDouble(g -> g.evaluateDatumLog10(datum)).toArray();
+        final double[] annotations = getAnnotations( data );
+        final int numAnnotations = empiricalMu.length;
+        final int numGaussians = gaussians.size();
+        forEach( data.size(), datumIndex -> {
+            final double[] pVarInGaussianLog10 = new double[numGaussians];
+            for( int gaussianIndex = 0; gaussianIndex < numGaussians; gaussianIndex++ ) {
+                pVarInGaussianLog10[gaussianIndex] = gaussians.get(gaussianIndex).evaluateDatumLog10( annotations, datumIndex * numAnnotations );
+            }
             final double[] pVarInGaussianNormalized = VCFQualityControlUtil.normalizeLog10DeleteMePlease( pVarInGaussianLog10, false);
-            int gaussianIndex = 0;
-            for( final MultivariateGaussian gaussian : gaussians ) {
-                gaussian.assignPVarInGaussian( pVarInGaussianNormalized[gaussianIndex++] );
+            for( int gaussianIndex = 0; gaussianIndex < numGaussians; gaussianIndex++ ) {
+                gaussians.get(gaussianIndex).assignPVarInGaussian( datumIndex, pVarInGaussianNormalized[gaussianIndex] );
             }
-        }
+        });
     }
 
     public void maximizationStep( final List<VariantDatum> data ) {
-        gaussians.forEach(g -> g.maximizeGaussian( data, empiricalMu, empiricalSigma, shrinkage, dirichletParameter, priorCounts));
+        final double[] annotations = getAnnotations( data );
+        forEach( gaussians.size(), gaussianIndex -> gaussians.get(gaussianIndex).maximizeGaussian( annotations, data.size(),
+                empiricalMu, empiricalSigma, shrinkage, dirichletParameter, priorCounts) );
     }
 
     private double getSumHyperParameterLambda() {
@@ -140,8 +206,11 @@ public class GaussianMixtureModel {
     }
 
     public void evaluateFinalModelParameters( final List<VariantDatum> data ) {
-        gaussians.forEach(g -> g.evaluateFinalModelParameters(data));
+        final double[] annotations = getAnnotations( data );
+        forEach( gaussians.size(), gaussianIndex -> gaussians.get(gaussianIndex).evaluateFinalModelParameters( annotations, data.size() ) );
         normalizePMixtureLog10();
+        flatData = null;
+        flatAnnotations = null;
     }
 
     public double normalizePMixtureLog10() {
@@ -1,7 +1,6 @@
 package org.bgi.flexlab.gaea.tools.vcfqualitycontrol2.mode;
 
 import java.util.Arrays;
-import java.util.List;
 import java.util.Random;
 
 import org.apache.commons.math3.special.Gamma;
@@ -70,13 +69,28 @@ public class MultivariateGaussian {
         return MathUtils.distanceSquared( datum.annotations, mu );
     }
 
+    /**
+     * same as calculateDistanceFromMeanSquared for the datum stored at offset of the flat annotation array
+     */
+    public double calculateDistanceFromMeanSquared( final double[] annotations, final int offset ) {
+        double dist = 0.0;
+        for( int iii = 0; iii < mu.length; iii++ ) {
+            dist += (annotations[offset + iii] - mu[iii]) * (annotations[offset + iii] - mu[iii]);
+        }
+        return dist;
+    }
+
     public void incrementMu( final VariantDatum datum ) {
         incrementMu( datum, 1.0 );
     }
 
     public void incrementMu( final VariantDatum datum, final double prob ) {
+        incrementMu( datum.annotations, 0, prob );
+    }
+
+    public void incrementMu( final double[] annotations, final int offset, final double prob ) {
         for( int jjj = 0; jjj < mu.length; jjj++ ) {
-            mu[jjj] += prob * datum.annotations[jjj];
+            mu[jjj] += prob * annotations[offset + jjj];
         }
     }
 
@@ -124,16 +138,21 @@ public class MultivariateGaussian {
     }
 
     public double evaluateDatumLog10( final VariantDatum datum ) {
+        return evaluateDatumLog10( datum.annotations, 0 );
+    }
+
+    /**
+     * evaluate the datum stored at offset of the flat annotation array, safe to call from several threads
+     */
+    public double evaluateDatumLog10( final double[] annotations, final int offset ) {
+        final double[][] sigmaInverse = cachedSigmaInverse.getArray();
         double sumKernel = 0.0;
-        final double[] crossProdTmp = new double[mu.length];
-        Arrays.fill(crossProdTmp, 0.0);
         for( int iii = 0; iii < mu.length; iii++ ) {
+            double crossProd = 0.0;
             for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                crossProdTmp[iii] += (datum.annotations[jjj] - mu[jjj]) * cachedSigmaInverse.get(jjj, iii);
+                crossProd += (annotations[offset + jjj] - mu[jjj]) * sigmaInverse[jjj][iii];
             }
-        }
-        for( int iii = 0; iii < mu.length; iii++ ) {
-            sumKernel += crossProdTmp[iii] * (datum.annotations[iii] - mu[iii]);
+            sumKernel += crossProd * (annotations[offset + iii] - mu[iii]);
         }
 
         return (( -0.5 * sumKernel ) / Math.log(10.0)) + cachedDenomLog10; // This is the definition of a Gaussian PDF Log10
@@ -143,23 +162,29 @@ public class MultivariateGaussian {
         pVarInGaussian[pVarInGaussianIndex++] = pVar;
     }
 
+    public void assignPVarInGaussian( final int datumIndex, final double pVar ) {
+        pVarInGaussian[datumIndex] = pVar;
+    }
+
     public void resetPVarInGaussian() {
         Arrays.fill(pVarInGaussian, 0.0);
         pVarInGaussianIndex = 0;
     }
 
-    public void maximizeGaussian(final List<VariantDatum> data, final double[] empiricalMu, final Matrix empiricalSigma,
+    /**
+     * annotations holds numData data of mu.length annotations each, one datum after another
+     */
+    public void maximizeGaussian(final double[] annotations, final int numData, final double[] empiricalMu, final Matrix empiricalSigma,
                                  final double SHRINKAGE, final double DIRICHLET_PARAMETER, final double DEGREES_OF_FREEDOM ) {
         sumProb = 1E-10;
         final Matrix wishart = new Matrix(mu.length, mu.length);
         zeroOutMu();
         zeroOutSigma();
 
-        int datumIndex = 0;
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian[datumIndex++];
+        for( int datumIndex = 0; datumIndex < numData; datumIndex++ ) {
+            final double prob = pVarInGaussian[datumIndex];
             sumProb += prob;
-            incrementMu( datum, prob );
+            incrementMu( annotations, datumIndex * mu.length, prob );
         }
         divideEqualsMu( sumProb );
 
@@ -171,17 +196,16 @@ public class MultivariateGaussian {
             }
         }
 
-        datumIndex = 0;
-        final Matrix pVarSigma = new Matrix(mu.length, mu.length);
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian[datumIndex++];
+        final double[][] sigmaArray = sigma.getArray();
+        for( int datumIndex = 0; datumIndex < numData; datumIndex++ ) {
+            final double prob = pVarInGaussian[datumIndex];
+            final int offset = datumIndex * mu.length;
             for( int iii = 0; iii < mu.length; iii++ ) {
-                double deltaMu = prob * (datum.annotations[iii]-mu[iii]);
+                double deltaMu = prob * (annotations[offset + iii]-mu[iii]);
                 for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                    pVarSigma.set(iii, jjj, deltaMu * (datum.annotations[jjj]-mu[jjj]));
+                    sigmaArray[iii][jjj] += deltaMu * (annotations[offset + jjj]-mu[jjj]);
                 }
             }
-            sigma.plusEquals( pVarSigma );
         }
 
         sigma.plusEquals( empiricalSigma );
@@ -198,29 +222,27 @@ public class MultivariateGaussian {
         resetPVarInGaussian(); // clean up some memory
     }
 
-    public void evaluateFinalModelParameters( final List<VariantDatum> data ) {
+    public void evaluateFinalModelParameters( final double[] annotations, final int numData ) {
         sumProb = 0.0;
         zeroOutMu();
         zeroOutSigma();
 
-        int datumIndex = 0;
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian[datumIndex++];
+        for( int datumIndex = 0; datumIndex < numData; datumIndex++ ) {
+            final double prob = pVarInGaussian[datumIndex];
             sumProb += prob;
-            incrementMu( datum, prob );
+            incrementMu( annotations, datumIndex * mu.length, prob );
         }
         divideEqualsMu( sumProb );
 
-        datumIndex = 0;
-        final Matrix pVarSigma = new Matrix(mu.length, mu.length);
-        for( final VariantDatum datum : data ) {
-            final double prob = pVarInGaussian[datumIndex++];
+        final double[][] sigmaArray = sigma.getArray();
+        for( int datumIndex = 0; datumIndex < numData; datumIndex++ ) {
+            final double prob = pVarInGaussian[datumIndex];
+            final int offset = datumIndex * mu.length;
             for( int iii = 0; iii < mu.length; iii++ ) {
                 for( int jjj = 0; jjj < mu.length; jjj++ ) {
-                    pVarSigma.set(iii, jjj, prob * (datum.annotations[iii]-mu[iii]) * (datum.annotations[jjj]-mu[jjj]));
+                    sigmaArray[iii][jjj] += prob * (annotations[offset + iii]-mu[iii]) * (annotations[offset + jjj]-mu[jjj]);
                 }
             }
-            sigma.plusEquals( pVarSigma );
         }
         sigma.timesEquals( 1.0 / sumProb );
 
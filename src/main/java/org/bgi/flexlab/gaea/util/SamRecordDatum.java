@@ -16,9 +16,17 @@
  *******************************************************************************/
 package org.bgi.flexlab.gaea.util;
 
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMRecord;
+import org.apache.hadoop.io.WritableUtils;
 import org.bgi.flexlab.gaea.data.structure.bam.ParseSAMBasic;
 import org.bgi.flexlab.gaea.data.structure.bam.SAMInformationBasic;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 
 
 /**
@@ -56,6 +64,11 @@ public class SamRecordDatum extends SAMInformationBasic {
 	 */
 	private int rgIndex;
 
+	/**
+	 * read bases as getBinaryBase codes, set instead of readSequence by readBamQC
+	 */
+	private byte[] binaryBases = null;
+
 	@Override
 	public boolean parseSam(String samRecord) {
 		String[] alignmentArray = ParseSAMBasic.splitSAM(samRecord);
@@ -194,4 +207,155 @@ public class SamRecordDatum extends SAMInformationBasic {
 		lenValue = ParseSAMBasic.parseCigar(position, cigarState);
 		return true;
 	}
+
+	/**
+	 * same fields as parseSam but read from the record without formatting it to SAM text,
+	 * read name and base qualities are not used by bam qc and are skipped
+	 */
+	public boolean parseBamQC(SAMRecord record) {
+		flag = record.getFlags();
+		if(isUnmapped())
+			return false;
+		chrName = record.getReferenceName();
+		position = record.getAlignmentStart() - 1;
+		if(position < 0)
+			return false;
+		mappingQual = (short) record.getMappingQuality();
+		if(record.getCigar().isEmpty())
+			return false;
+		int[] cigarValues = new int[record.getCigar().numCigarElements()];
+		int i = 0;
+		for(CigarElement element : record.getCigar().getCigarElements())
+			cigarValues[i++] = (element.getLength() << 4) | CigarOperator.enumToBinary(element.getOperator());
+		cigarState = new CigarState();
+		cigarState.parseCigar(cigarValues);
+		cigarString = null;
+
+		byte[] bases = record.getReadBases();
+		binaryBases = new byte[bases.length];
+		for(i = 0; i < bases.length; i++)
+			binaryBases[i] = (byte) ((bases[i] >> 1) & 0x07);
+		readSequence = null;
+		qualityString = null;
+
+		bestHitCount = parseBestHitCount(record);
+		insertSize = record.getInferredInsertSize();
+		lenValue = ParseSAMBasic.parseCigar(position, cigarState);
+		return true;
+	}
+
+	/**
+	 * same rule as ParseSAMBasic.parseBestHitCount on the SAM text tags
+	 */
+	private static int parseBestHitCount(SAMRecord record) {
+		int bestHitCount = 1;
+		for(SAMRecord.SAMTagAndValue tag : record.getAttributes()) {
+			if(tag.tag.equals("H0") || tag.tag.equals("X0")) {
+				bestHitCount = ((Number) tag.value).intValue();
+				break;
+			} else if(tag.tag.equals("XT") && tag.value.toString().equals("M")) {
+				bestHitCount = 2;//FIXME::not sure hit number
+			} else {
+				bestHitCount = 1;
+			}
+		}
+		return bestHitCount;
+	}
+
+	/**
+	 * binary form of the bam qc fields, base codes are packed two per byte
+	 */
+	public void writeBamQC(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, flag);
+		WritableUtils.writeVInt(out, position);
+		WritableUtils.writeVInt(out, mappingQual);
+		WritableUtils.writeVInt(out, insertSize);
+		WritableUtils.writeVInt(out, bestHitCount);
+		WritableUtils.writeVInt(out, rgIndex);
+		out.writeBoolean(isrepeat);
+
+		if(cigarState == null) {
+			WritableUtils.writeVInt(out, 0);
+		} else {
+			WritableUtils.writeVInt(out, cigarState.getCigar().size());
+			for(int cigar : cigarState.getCigar())
+				WritableUtils.writeVInt(out, cigar);
+		}
+
+		int length = binaryBases == null ? 0 : binaryBases.length;
+		WritableUtils.writeVInt(out, length);
+		for(int i = 0; i < length; i += 2) {
+			int high = binaryBases[i];
+			int low = i + 1 < length ? binaryBases[i + 1] : 0;
+			out.writeByte((high << 4) | low);
+		}
+	}
+
+	public void readBamQC(DataInput in) throws IOException {
+		flag = WritableUtils.readVInt(in);
+		position = WritableUtils.readVInt(in);
+		mappingQual = (short) WritableUtils.readVInt(in);
+		insertSize = WritableUtils.readVInt(in);
+		bestHitCount = WritableUtils.readVInt(in);
+		rgIndex = WritableUtils.readVInt(in);
+		isrepeat = in.readBoolean();
+
+		int cigarNum = WritableUtils.readVInt(in);
+		int[] cigarValues = new int[cigarNum];
+		for(int i = 0; i < cigarNum; i++)
+			cigarValues[i] = WritableUtils.readVInt(in);
+		cigarState = new CigarState();
+		cigarState.parseCigar(cigarValues);
+		cigarString = null;
+
+		int length = WritableUtils.readVInt(in);
+		binaryBases = new byte[length];
+		for(int i = 0; i < length; i += 2) {
+			int packed = in.readUnsignedByte();
+			binaryBases[i] = (byte) (packed >> 4);
+			if(i + 1 < length)
+				binaryBases[i + 1] = (byte) (packed & 0x0f);
+		}
+		readSequence = null;
+		qualityString = null;
+		lenValue = cigarNum == 0 ? new int[3] : ParseSAMBasic.parseCigar(position, cigarState);
+	}
+
+	@Override
+	public byte getBinaryBase(int i) {
+		if(binaryBases != null)
+			return binaryBases[i];
+		return super.getBinaryBase(i);
+	}
+
+	/**
+	 * cigar string is only kept by parseSam, rebuild it from the cigar values otherwise
+	 */
+	@Override
+	public String getCigarString() {
+		if(cigarString == null && cigarState != null) {
+			StringBuilder sb = new StringBuilder();
+			for(int cigar : cigarState.getCigar()) {
+				int[] cValue = ParseSAMBasic.getCigarValue(cigar);
+				sb.append(cValue[1]);
+				sb.append(SystemConfiguration.cigar2String.get(cValue[0]));
+			}
+			cigarString = sb.toString();
+		}
+		return cigarString;
+	}
+
+	/**
+	 * whether the cigar has any of the operators, operators are SystemConfiguration.BAM_C* values
+	 */
+	public boolean hasCigarOperator(int... operators) {
+		for(int cigar : cigarState.getCigar()) {
+			int op = ParseSAMBasic.getCigarValue(cigar)[0];
+			for(int operator : operators) {
+				if(op == operator)
+					return true;
+			}
+		}
+		return false;
+	}
 }
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.input.fastq;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * BGZF fastq is split at block starts, every record must be read by exactly
+ * one split. Plain gzip fastq must stay one split.
+ */
+public class FastqInputFormatTest {
+	private final static int READ_NUMBER = 3000;
+	// a block is ended right before every this many headers
+	private final static int FLUSH_INTERVAL = 400;
+	private final static long[] SPLIT_SIZES = {997, 4096, 10007, 65536};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File bgzf;
+	private List<Long> blockStarts;
+	private List<Long> flushedBlockStarts = new ArrayList<Long>();
+
+	@Before
+	public void setUp() throws IOException {
+		bgzf = folder.newFile("reads.fq.gz");
+		BlockCompressedOutputStream out = new BlockCompressedOutputStream(bgzf);
+		try {
+			writeReads(out, true);
+		} finally {
+			out.close();
+		}
+		blockStarts = readBlockStarts(bgzf);
+	}
+
+	/**
+	 * write the reads, full 64KB blocks leave records straddling blocks and
+	 * flushed blocks make headers start exactly at a block start
+	 */
+	private void writeReads(OutputStream out, boolean flush) throws IOException {
+		Random random = new Random(23);
+		for (int i = 0; i < READ_NUMBER; i++) {
+			if (flush && i > 0 && i % FLUSH_INTERVAL == 0) {
+				BlockCompressedOutputStream bgzfOut = (BlockCompressedOutputStream) out;
+				bgzfOut.flush();
+				flushedBlockStarts.add(bgzfOut.getFilePointer() >>> 16);
+			}
+			int length = 50 + random.nextInt(150);
+			StringBuilder seq = new StringBuilder();
+			StringBuilder qual = new StringBuilder();
+			for (int j = 0; j < length; j++) {
+				seq.append("ACGT".charAt(random.nextInt(4)));
+				// qualities may start with '@', as in real data
+				qual.append((char) ('@' + random.nextInt(30)));
+			}
+			out.write(("@read_" + i + "/1\n" + seq + "\n+\n" + qual + "\n")
+					.getBytes());
+		}
+	}
+
+	/**
+	 * block starts of a BGZF file, found by walking the block sizes
+	 */
+	private static List<Long> readBlockStarts(File file) throws IOException {
+		List<Long> starts = new ArrayList<Long>();
+		byte[] header = new byte[18];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			long position = 0;
+			while (position < file.length()) {
+				starts.add(position);
+				int read = 0;
+				while (read < header.length)
+					read += in.read(header, read, header.length - read);
+				int blockSize = (ByteBuffer.wrap(header)
+						.order(ByteOrder.LITTLE_ENDIAN).getShort(16) & 0xffff) + 1;
+				long skip = blockSize - header.length;
+				while (skip > 0)
+					skip -= in.skip(skip);
+				position += blockSize;
+			}
+		} finally {
+			in.close();
+		}
+		return starts;
+	}
+
+	private Configuration newConfiguration(long splitSize) {
+		Configuration conf = new Configuration();
+		conf.set("fs.defaultFS", "file:///");
+		conf.setLong(FileInputFormat.SPLIT_MAXSIZE, splitSize);
+		conf.setInt(FastqRecordReader.READ_NAME_TYPE, 0);
+		return conf;
+	}
+
+	@Test
+	public void testGuessNextBGZFBlockStart() throws IOException {
+		assertTrue(blockStarts.size() > 2);
+		assertTrue(blockStarts.containsAll(flushedBlockStarts));
+
+		Configuration conf = newConfiguration(Long.MAX_VALUE);
+		Path path = new Path(bgzf.getPath());
+		FSDataInputStream in = FileSystem.getLocal(conf).open(path);
+		try {
+			assertTrue(FastqBGZFSplitGuesser.isBGZF(in));
+			FastqBGZFSplitGuesser guesser = new FastqBGZFSplitGuesser(in,
+					bgzf.length());
+			for (int i = 1; i < blockStarts.size(); i++) {
+				long previous = blockStarts.get(i - 1);
+				long start = blockStarts.get(i);
+				assertEquals(start, guesser.guessNextBGZFBlockStart(previous + 1,
+						bgzf.length()));
+				assertEquals(start, guesser.guessNextBGZFBlockStart(start, start + 1));
+				// no block starts strictly inside the previous block
+				assertEquals(start, guesser.guessNextBGZFBlockStart(previous + 1,
+						start));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private Map<String, Integer> readAll(Job job, List<InputSplit> splits)
+			throws IOException, InterruptedException {
+		FastqInputFormat format = new FastqInputFormat();
+		Map<String, Integer> seen = new HashMap<String, Integer>();
+		for (InputSplit split : splits) {
+			TaskAttemptContext context = new TaskAttemptContextImpl(
+					job.getConfiguration(), new TaskAttemptID());
+			RecordReader<Text, Text> reader = format.createRecordReader(split,
+					context);
+			reader.initialize(split, context);
+			while (reader.nextKeyValue()) {
+				String key = reader.getCurrentKey().toString();
+				assertTrue(reader.getCurrentValue().toString()
+						.startsWith("@" + key + "/1\t"));
+				assertNull(split + " emits " + key + " twice", seen.put(key, 1));
+			}
+			reader.close();
+		}
+		return seen;
+	}
+
+	@Test
+	public void testBGZFSplitsEmitEveryReadOnce() throws Exception {
+		for (long splitSize : SPLIT_SIZES) {
+			Job job = Job.getInstance(newConfiguration(splitSize));
+			FileInputFormat.addInputPath(job, new Path(bgzf.getPath()));
+
+			List<InputSplit> splits = new FastqInputFormat().getSplits(job);
+			assertTrue(splits.size() > 1);
+			long end = 0;
+			for (InputSplit split : splits) {
+				FileSplit fileSplit = (FileSplit) split;
+				assertEquals("splits are contiguous", end, fileSplit.getStart());
+				assertTrue("split starts at a block start",
+						blockStarts.contains(fileSplit.getStart()));
+				end = fileSplit.getStart() + fileSplit.getLength();
+			}
+			assertEquals(bgzf.length(), end);
+
+			assertEquals("split size " + splitSize, READ_NUMBER,
+					readAll(job, splits).size());
+		}
+	}
+
+	@Test
+	public void testGzipIsOneSplit() throws Exception {
+		File gzip = folder.newFile("plain.fq.gz");
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip));
+		try {
+			writeReads(out, false);
+		} finally {
+			out.close();
+		}
+
+		Job job = Job.getInstance(newConfiguration(SPLIT_SIZES[0]));
+		FileInputFormat.addInputPath(job, new Path(gzip.getPath()));
+		List<InputSplit> splits = new FastqInputFormat().getSplits(job);
+		assertEquals(1, splits.size());
+		assertEquals(READ_NUMBER, readAll(job, splits).size());
+	}
+}
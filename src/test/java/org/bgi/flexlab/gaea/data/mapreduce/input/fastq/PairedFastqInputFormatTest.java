@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.input.fastq;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PairedFastqInputFormatTest {
+	private final static int READ_NUMBER = 2000;
+	private final static long[] SPLIT_SIZES = {997, 4096, 10007, 65536};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File fq1;
+	private File fq2;
+
+	@Before
+	public void setUp() throws IOException {
+		fq1 = folder.newFile("reads_1.fq");
+		fq2 = folder.newFile("reads_2.fq");
+		writePair(new FileWriter(fq1), new FileWriter(fq2), READ_NUMBER);
+	}
+
+	/**
+	 * read 2 lengths differ from read 1, so byte offsets of mates drift apart
+	 * and the mate lookup has to search. fq2 gets reads2 reads, the ones
+	 * beyond READ_NUMBER have no mate.
+	 */
+	private static void writePair(Writer out1, Writer out2, int reads2)
+			throws IOException {
+		Random random = new Random(17);
+		try {
+			for (int i = 0; i < READ_NUMBER; i++) {
+				writeRead(out1, i, 1, 20 + random.nextInt(130), random);
+				writeRead(out2, i, 2, 20 + random.nextInt(60), random);
+			}
+			for (int i = READ_NUMBER; i < reads2; i++)
+				writeRead(out2, i, 2, 20 + random.nextInt(60), random);
+		} finally {
+			out1.close();
+			out2.close();
+		}
+	}
+
+	private static Writer bgzfWriter(File file) {
+		return new OutputStreamWriter(new BlockCompressedOutputStream(file));
+	}
+
+	private static void writeRead(Writer out, int index, int flag, int length,
+			Random random) throws IOException {
+		StringBuilder seq = new StringBuilder();
+		StringBuilder qual = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			seq.append("ACGT".charAt(random.nextInt(4)));
+			// qualities may start with '@', as in real data
+			qual.append((char) ('@' + random.nextInt(30)));
+		}
+		out.write("@read_" + index + "/" + flag + "\n" + seq + "\n+\n" + qual
+				+ "\n");
+	}
+
+	private Configuration newConfiguration(long splitSize) {
+		Configuration conf = new Configuration();
+		conf.set("fs.defaultFS", "file:///");
+		conf.setLong(FileInputFormat.SPLIT_MAXSIZE, splitSize);
+		conf.setInt(FastqRecordReader.READ_NAME_TYPE, 0);
+		return conf;
+	}
+
+	private void checkPairsEmittedOnce(File first, File second, boolean split)
+			throws Exception {
+		for (long splitSize : SPLIT_SIZES) {
+			Job job = Job.getInstance(newConfiguration(splitSize));
+			PairedFastqInputFormat.addInputPair(job, new Path(first.getPath()),
+					new Path(second.getPath()));
+
+			PairedFastqInputFormat format = new PairedFastqInputFormat();
+			List<InputSplit> splits = format.getSplits(job);
+			if (split)
+				assertTrue(splits.size() > 1);
+			else
+				assertEquals(1, splits.size());
+
+			Map<String, Integer> seen = new HashMap<String, Integer>();
+			for (InputSplit inputSplit : splits) {
+				// splits go through serialization on the way to the mappers
+				PairedFastqSplit copy = new PairedFastqSplit();
+				DataOutputBuffer buffer = new DataOutputBuffer();
+				((PairedFastqSplit) inputSplit).write(buffer);
+				DataInputBuffer input = new DataInputBuffer();
+				input.reset(buffer.getData(), buffer.getLength());
+				copy.readFields(input);
+
+				TaskAttemptContext context = new TaskAttemptContextImpl(
+						job.getConfiguration(), new TaskAttemptID());
+				RecordReader<Text, Text> reader = format.createRecordReader(
+						copy, context);
+				reader.initialize(copy, context);
+				while (reader.nextKeyValue()) {
+					String key = reader.getCurrentKey().toString();
+					String[] reads = reader.getCurrentValue().toString()
+							.split("\n");
+					assertEquals(2, reads.length);
+					assertTrue(reads[0].startsWith("@" + key + "/1\t"));
+					assertTrue(reads[1].startsWith("@" + key + "/2\t"));
+					assertNull("split size " + splitSize + " emits " + key
+							+ " twice", seen.put(key, 1));
+				}
+				reader.close();
+			}
+			assertEquals("split size " + splitSize, READ_NUMBER, seen.size());
+		}
+	}
+
+	@Test
+	public void testPairedSplitsEmitEveryPairOnce() throws Exception {
+		checkPairsEmittedOnce(fq1, fq2, true);
+	}
+
+	@Test
+	public void testBGZFPairedSplitsEmitEveryPairOnce() throws Exception {
+		File bgzf1 = folder.newFile("reads_1.fq.gz");
+		File bgzf2 = folder.newFile("reads_2.fq.gz");
+		writePair(bgzfWriter(bgzf1), bgzfWriter(bgzf2), READ_NUMBER);
+		checkPairsEmittedOnce(bgzf1, bgzf2, true);
+	}
+
+	@Test
+	public void testPlainAndBGZFPairedSplitsEmitEveryPairOnce() throws Exception {
+		File bgzf2 = folder.newFile("reads_2.fq.gz");
+		writePair(new FileWriter(folder.newFile("unused_1.fq")),
+				bgzfWriter(bgzf2), READ_NUMBER);
+		checkPairsEmittedOnce(fq1, bgzf2, true);
+	}
+
+	@Test
+	public void testGzipPairIsOneSplit() throws Exception {
+		File gzip1 = folder.newFile("reads_1.fq.gz");
+		File gzip2 = folder.newFile("reads_2.fq.gz");
+		writePair(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(gzip1))),
+				new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(gzip2))),
+				READ_NUMBER);
+		checkPairsEmittedOnce(gzip1, gzip2, false);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testMissingMateOfLastReadFails() throws Exception {
+		File longer2 = folder.newFile("longer_2.fq");
+		writePair(new FileWriter(folder.newFile("unused_1.fq")),
+				new FileWriter(longer2), READ_NUMBER + 1);
+
+		Job job = Job.getInstance(newConfiguration(Long.MAX_VALUE));
+		PairedFastqInputFormat.addInputPair(job, new Path(fq1.getPath()),
+				new Path(longer2.getPath()));
+		PairedFastqInputFormat format = new PairedFastqInputFormat();
+		List<InputSplit> splits = format.getSplits(job);
+		assertEquals(1, splits.size());
+
+		TaskAttemptContext context = new TaskAttemptContextImpl(
+				job.getConfiguration(), new TaskAttemptID());
+		RecordReader<Text, Text> reader = format.createRecordReader(
+				splits.get(0), context);
+		reader.initialize(splits.get(0), context);
+		try {
+			while (reader.nextKeyValue())
+				;
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testPlainSplitsEmitEveryReadOnce() throws Exception {
+		for (long splitSize : SPLIT_SIZES) {
+			Job job = Job.getInstance(newConfiguration(splitSize));
+			FileInputFormat.addInputPath(job, new Path(fq1.getPath()));
+
+			FastqInputFormat format = new FastqInputFormat();
+			List<InputSplit> splits = format.getSplits(job);
+			assertTrue(splits.size() > 1);
+
+			Map<String, Integer> seen = new HashMap<String, Integer>();
+			for (InputSplit split : splits) {
+				TaskAttemptContext context = new TaskAttemptContextImpl(
+						job.getConfiguration(), new TaskAttemptID());
+				RecordReader<Text, Text> reader = format.createRecordReader(
+						split, context);
+				reader.initialize(split, context);
+				while (reader.nextKeyValue()) {
+					String key = reader.getCurrentKey().toString();
+					assertNotNull(reader.getCurrentValue());
+					assertNull("split size " + splitSize + " emits " + key
+							+ " twice", seen.put(key, 1));
+				}
+				reader.close();
+			}
+			assertEquals("split size " + splitSize, READ_NUMBER, seen.size());
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.partitioner;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw byte compare of serialized windows keys against the old deserialize
+ * and compareTo path used by the shuffle sort.
+ * Run with JMH on the test classpath: java -cp ... org.openjdk.jmh.Main WindowsBasedComparatorBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class WindowsBasedComparatorBenchmark {
+	private static final int KEYS = 1024;
+	private static final int RECORD_SIZE = Long.BYTES + Integer.BYTES;
+
+	private byte[] bytes;
+	private final WindowsBasedSort sort = new WindowsBasedSort();
+	private final WindowsBasedWritable key1 = new WindowsBasedWritable();
+	private final WindowsBasedWritable key2 = new WindowsBasedWritable();
+	private final DataInputBuffer buffer = new DataInputBuffer();
+
+	@Setup
+	public void setup() throws IOException {
+		Random random = new Random(20170601);
+		DataOutputBuffer out = new DataOutputBuffer();
+		WindowsBasedWritable key = new WindowsBasedWritable();
+		for (int i = 0; i < KEYS; i++) {
+			int winNum = random.nextInt(5000);
+			key.set(random.nextInt(4), random.nextInt(25), winNum, winNum * 10000 + random.nextInt(10000));
+			key.write(out);
+		}
+		bytes = new byte[out.getLength()];
+		System.arraycopy(out.getData(), 0, bytes, 0, out.getLength());
+	}
+
+	@Benchmark
+	public int rawCompare() {
+		int sum = 0;
+		for (int i = 1; i < KEYS; i++)
+			sum += sort.compare(bytes, (i - 1) * RECORD_SIZE, RECORD_SIZE, bytes, i * RECORD_SIZE, RECORD_SIZE);
+		return sum;
+	}
+
+	@Benchmark
+	public int deserializeCompare() throws IOException {
+		int sum = 0;
+		for (int i = 1; i < KEYS; i++) {
+			buffer.reset(bytes, (i - 1) * RECORD_SIZE, RECORD_SIZE);
+			key1.readFields(buffer);
+			buffer.reset(bytes, i * RECORD_SIZE, RECORD_SIZE);
+			key2.readFields(buffer);
+			sum += key1.compareTo(key2);
+		}
+		return sum;
+	}
+}
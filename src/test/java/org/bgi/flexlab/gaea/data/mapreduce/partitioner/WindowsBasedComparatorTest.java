@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.partitioner;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class WindowsBasedComparatorTest {
+	private static final int KEYS = 2000;
+	private static final int RECORD_SIZE = Long.BYTES + Integer.BYTES;
+
+	private final Random random = new Random(20170601);
+
+	/*
+	 * random sample, chromosome, window and position, including unmapped
+	 * chromosome (-1), negative windows and negative positions, which all
+	 * sign extend into the packed windows key
+	 */
+	private int[] randomFields() {
+		int winNum = random.nextInt(8) == 0 ? -random.nextInt(4) - 1 : random.nextInt(5000);
+		int position = random.nextInt(8) == 0 ? -random.nextInt(1000) - 1 : random.nextInt(Integer.MAX_VALUE);
+		return new int[] { random.nextInt(4), random.nextInt(26) - 1, winNum,
+				random.nextInt(4) == 0 ? winNum : position };
+	}
+
+	private static WindowsBasedWritable toKey(int[] fields) {
+		WindowsBasedWritable key = new WindowsBasedWritable();
+		key.set(fields[0], fields[1], fields[2], fields[3]);
+		return key;
+	}
+
+	/*
+	 * serialize all keys into one buffer behind a random prefix, so raw
+	 * compare is exercised at non zero offsets
+	 */
+	private byte[] serialize(WindowsBasedWritable[] keys, int prefix) throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		for (int i = 0; i < prefix; i++)
+			out.writeByte(random.nextInt());
+		for (WindowsBasedWritable key : keys)
+			key.write(out);
+		byte[] bytes = new byte[out.getLength()];
+		System.arraycopy(out.getData(), 0, bytes, 0, out.getLength());
+		return bytes;
+	}
+
+	private void checkSign(RawComparator<WindowsBasedWritable> comparator, boolean windowsOnly)
+			throws IOException {
+		int[][] fields = new int[KEYS][];
+		for (int i = 0; i < KEYS; i++)
+			fields[i] = randomFields();
+		/* duplicate some windows and whole keys so equality is covered too */
+		for (int i = 0; i < KEYS / 10; i++) {
+			int[] copy = fields[random.nextInt(KEYS)].clone();
+			if (random.nextBoolean())
+				copy[3] = random.nextInt();
+			fields[random.nextInt(KEYS)] = copy;
+		}
+		WindowsBasedWritable[] keys = new WindowsBasedWritable[KEYS];
+		for (int i = 0; i < KEYS; i++)
+			keys[i] = toKey(fields[i]);
+
+		int prefix = random.nextInt(7) + 1;
+		byte[] bytes = serialize(keys, prefix);
+
+		for (int i = 0; i < KEYS; i++) {
+			for (int n = 0; n < 20; n++) {
+				int j = random.nextInt(KEYS);
+				int expected = windowsOnly ? Long.compare(keys[i].getWindows(), keys[j].getWindows())
+						: keys[i].compareTo(keys[j]);
+				int raw = comparator.compare(bytes, prefix + i * RECORD_SIZE, RECORD_SIZE, bytes,
+						prefix + j * RECORD_SIZE, RECORD_SIZE);
+				assertEquals(keys[i] + " vs " + keys[j], Integer.signum(expected), Integer.signum(raw));
+				assertEquals(Integer.signum(expected), Integer.signum(comparator.compare(keys[i], keys[j])));
+			}
+		}
+	}
+
+	@Test
+	public void testGroupingComparatorMatchesWindows() throws IOException {
+		checkSign(new WindowsBasedComparator(), true);
+	}
+
+	@Test
+	public void testSortComparatorMatchesCompareTo() throws IOException {
+		checkSign(new WindowsBasedSort(), false);
+	}
+
+	@Test
+	public void testUnmappedAndNegativeWindowsSortFirst() throws IOException {
+		WindowsBasedWritable unmapped = new WindowsBasedWritable();
+		unmapped.set(0, -1, 0, 0);
+		WindowsBasedWritable negative = new WindowsBasedWritable();
+		negative.set(0, 0, -1, -1);
+		WindowsBasedWritable mapped = new WindowsBasedWritable();
+		mapped.set(0, 0, 0, 0);
+
+		byte[] bytes = serialize(new WindowsBasedWritable[] { unmapped, negative, mapped }, 0);
+		WindowsBasedSort sort = new WindowsBasedSort();
+		assertEquals(Integer.signum(unmapped.compareTo(mapped)),
+				Integer.signum(sort.compare(bytes, 0, RECORD_SIZE, bytes, 2 * RECORD_SIZE, RECORD_SIZE)));
+		assertEquals(Integer.signum(negative.compareTo(mapped)),
+				Integer.signum(sort.compare(bytes, RECORD_SIZE, RECORD_SIZE, bytes, 2 * RECORD_SIZE, RECORD_SIZE)));
+		assertEquals(-1, Integer.signum(sort.compare(bytes, 0, RECORD_SIZE, bytes, 2 * RECORD_SIZE, RECORD_SIZE)));
+	}
+}
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.writable;
+
+import htsjdk.tribble.readers.AsciiLineReader;
+import htsjdk.tribble.readers.AsciiLineReaderIterator;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.bgi.flexlab.gaea.util.GaeaVCFConstants;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * records decoded from GvcfRecordWritable must match the VCFCodec parse of
+ * the gVCF line they were encoded from
+ */
+public class GvcfRecordWritableTest {
+	private final static String HEADER = "##fileformat=VCFv4.2\n"
+			+ "##ALT=<ID=NON_REF,Description=\"Represents any possible alternative allele at this location\">\n"
+			+ "##FILTER=<ID=LowQual,Description=\"Low quality\">\n"
+			+ "##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n"
+			+ "##FORMAT=<ID=AD,Number=R,Type=Integer,Description=\"Allelic depths\">\n"
+			+ "##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Read depth\">\n"
+			+ "##FORMAT=<ID=GQ,Number=1,Type=Integer,Description=\"Genotype quality\">\n"
+			+ "##FORMAT=<ID=MIN_DP,Number=1,Type=Integer,Description=\"Minimum DP of the block\">\n"
+			+ "##FORMAT=<ID=PL,Number=G,Type=Integer,Description=\"Phred-scaled likelihoods\">\n"
+			+ "##FORMAT=<ID=SB,Number=4,Type=Integer,Description=\"Strand bias\">\n"
+			+ "##FORMAT=<ID=XO,Number=.,Type=String,Description=\"Test values\">\n"
+			+ "##INFO=<ID=END,Number=1,Type=Integer,Description=\"End of the block\">\n"
+			+ "##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Read depth\">\n"
+			+ "##INFO=<ID=DB,Number=0,Type=Flag,Description=\"dbSNP membership\">\n"
+			+ "##INFO=<ID=MQ,Number=1,Type=Float,Description=\"Mapping quality\">\n"
+			+ "##INFO=<ID=AC,Number=A,Type=Integer,Description=\"Allele count\">\n"
+			+ "##INFO=<ID=NEG,Number=1,Type=Integer,Description=\"Signed value\">\n"
+			+ "##INFO=<ID=ZP,Number=1,Type=String,Description=\"Zero padded value\">\n"
+			+ "##INFO=<ID=MZ,Number=1,Type=String,Description=\"Minus zero\">\n"
+			+ "##INFO=<ID=PLUS,Number=1,Type=String,Description=\"Plus signed value\">\n"
+			+ "##INFO=<ID=BIG,Number=1,Type=String,Description=\"Ten digit value\">\n"
+			+ "##contig=<ID=chr1,length=1000000>\n"
+			+ "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT";
+
+	private final static String[] SINGLE_SAMPLE_LINES = {
+			// reference blocks with and without END
+			"chr1\t100\t.\tA\t<NON_REF>\t.\t.\tEND=150\tGT:DP:GQ:MIN_DP:PL\t0/0:30:60:25:0,60,900",
+			"chr1\t151\t.\tC\t<NON_REF>\t.\t.\t.\tGT:DP:GQ:MIN_DP:PL\t0/0:3:6:3:0,6,90",
+			// variants carrying <NON_REF> and *
+			"chr1\t200\trs1\tG\tT,<NON_REF>\t123.45\tPASS\tDB;DP=40;MQ=60.00;AC=1,0\tGT:AD:DP:GQ:PL:SB"
+					+ "\t0/1:20,18,0:38:99:400,0,500,460,560,1020:10,10,9,9",
+			"chr1\t300\t.\tACT\tA,*,<NON_REF>\t50.1\tLowQual\tDP=12\tGT:AD:DP:GQ:PL"
+					+ "\t1/2:0,6,6,0:12:40:300,150,200,160,0,210,900,450,600,1200",
+			// integers with a sign or leading zeros, only plain ones are packed
+			"chr1\t400\t.\tC\tG,<NON_REF>\t10\t.\tNEG=-5;ZP=007;MZ=-0;PLUS=+5;BIG=1234567890\tGT:XO:SB"
+					+ "\t0|1:-3,7:01,2,-0,4",
+			"chr1\t500\t.\tT\tTA,<NON_REF>\t.\t.\tDP=0\tGT:XO\t./.:-3,007"
+	};
+
+	private final static String[] MULTIPLE_SAMPLE_LINES = {
+			// empty ./. of S1 and S3 are dropped
+			"chr1\t600\t.\tT\tC,<NON_REF>\t80\t.\tDP=20\tGT:AD:DP:GQ:PL"
+					+ "\t./.:.:.:.:.\t0/1:5,5,0:10:50:100,0,100,120,130,250\t./.",
+			// a no call with depth is kept
+			"chr1\t700\t.\tG\t<NON_REF>\t.\t.\tEND=720\tGT:DP:GQ:MIN_DP:PL"
+					+ "\t0/0:12:30:10:0,30,450\t./.:0:0:0:0,0,0\t0/0:8:21:7:0,21,315"
+	};
+
+	private static VCFCodec codec(String... samples) throws IOException {
+		StringBuilder text = new StringBuilder(HEADER);
+		for (String sample : samples)
+			text.append('\t').append(sample);
+		text.append('\n');
+		VCFCodec codec = new VCFCodec();
+		AsciiLineReaderIterator iterator = new AsciiLineReaderIterator(new AsciiLineReader(
+				new ByteArrayInputStream(text.toString().getBytes())));
+		VCFHeader header = (VCFHeader) codec.readActualHeader(iterator);
+		assertEquals(Arrays.asList(samples), header.getSampleNamesInOrder());
+		return codec;
+	}
+
+	/* encode every line and read it back through the writable serialization */
+	private static List<VariantContext> roundTrip(List<VariantContext> records, String[] samples)
+			throws IOException {
+		DataOutputBuffer buffer = new DataOutputBuffer();
+		GvcfRecordWritable writable = new GvcfRecordWritable();
+		for (int i = 0; i < records.size(); i++) {
+			writable.set(records.get(i), i);
+			writable.write(buffer);
+		}
+
+		DataInputBuffer input = new DataInputBuffer();
+		input.reset(buffer.getData(), buffer.getLength());
+		GvcfRecordWritable reader = new GvcfRecordWritable();
+		List<VariantContext> decoded = new ArrayList<VariantContext>();
+		for (int i = 0; i < records.size(); i++) {
+			reader.readFields(input);
+			assertEquals(i, reader.getSampleIndex());
+			decoded.add(reader.getVariantContext("chr1", samples));
+		}
+		return decoded;
+	}
+
+	private static boolean isEmpty(Genotype genotype) {
+		return genotype.isNoCall() && !genotype.hasGQ() && !genotype.hasDP() && !genotype.hasAD()
+				&& !genotype.hasPL() && genotype.getExtendedAttributes().isEmpty();
+	}
+
+	private static void assertSameRecord(VariantContext expected, VariantContext actual, boolean multiSample) {
+		String site = expected.getContig() + ":" + expected.getStart();
+		assertEquals(site, expected.getContig(), actual.getContig());
+		assertEquals(site, expected.getStart(), actual.getStart());
+		assertEquals(site, expected.getEnd(), actual.getEnd());
+		assertEquals(site, expected.getAlleles(), actual.getAlleles());
+		assertEquals(site, expected.getID(), actual.getID());
+		assertEquals(site, expected.hasLog10PError(), actual.hasLog10PError());
+		assertEquals(site, expected.getPhredScaledQual(), actual.getPhredScaledQual(), 0);
+		assertEquals(site, expected.filtersWereApplied(), actual.filtersWereApplied());
+		assertEquals(site, expected.getFilters(), actual.getFilters());
+		assertEquals(site, expected.getAttributes(), actual.getAttributes());
+
+		int kept = 0;
+		for (Genotype genotype : expected.getGenotypes()) {
+			Genotype decoded = actual.getGenotype(genotype.getSampleName());
+			if (multiSample && isEmpty(genotype)) {
+				assertNull(site + " keeps empty " + genotype.getSampleName(), decoded);
+				continue;
+			}
+			kept++;
+			assertNotNull(site + " drops " + genotype.getSampleName(), decoded);
+			assertEquals(site, genotype.getAlleles(), decoded.getAlleles());
+			assertEquals(site, genotype.isPhased(), decoded.isPhased());
+			assertEquals(site, genotype.hasGQ(), decoded.hasGQ());
+			assertEquals(site, genotype.getGQ(), decoded.getGQ());
+			assertEquals(site, genotype.hasDP(), decoded.hasDP());
+			assertEquals(site, genotype.getDP(), decoded.getDP());
+			assertArrayEquals(site, genotype.getAD(), decoded.getAD());
+			assertArrayEquals(site, genotype.getPL(), decoded.getPL());
+			assertEquals(site, genotype.getFilters(), decoded.getFilters());
+			assertEquals(site, genotype.getExtendedAttributes(), decoded.getExtendedAttributes());
+		}
+		assertEquals(site, kept, actual.getNSamples());
+	}
+
+	private static void checkRoundTrip(String[] lines, String... samples) throws IOException {
+		VCFCodec codec = codec(samples);
+		List<VariantContext> records = new ArrayList<VariantContext>();
+		for (String line : lines)
+			records.add(codec.decode(line));
+
+		List<VariantContext> decoded = roundTrip(records, samples);
+		for (int i = 0; i < records.size(); i++)
+			assertSameRecord(records.get(i), decoded.get(i), samples.length > 1);
+	}
+
+	@Test
+	public void testSingleSampleRoundTrip() throws IOException {
+		checkRoundTrip(SINGLE_SAMPLE_LINES, "S1");
+	}
+
+	@Test
+	public void testMultipleSampleRoundTrip() throws IOException {
+		checkRoundTrip(MULTIPLE_SAMPLE_LINES, "S1", "S2", "S3");
+	}
+
+	@Test
+	public void testReferenceBlockAndSymbolicAlleles() throws IOException {
+		VCFCodec codec = codec("S1");
+		List<VariantContext> records = new ArrayList<VariantContext>();
+		for (String line : SINGLE_SAMPLE_LINES)
+			records.add(codec.decode(line));
+		List<VariantContext> decoded = roundTrip(records, new String[] { "S1" });
+
+		// END is rebuilt from the span only for records that had it
+		assertEquals("150", decoded.get(0).getAttribute(VCFConstants.END_KEY));
+		assertEquals(150, decoded.get(0).getEnd());
+		assertTrue(!decoded.get(1).hasAttribute(VCFConstants.END_KEY));
+		assertEquals(151, decoded.get(1).getEnd());
+
+		assertEquals(GaeaVCFConstants.NON_REF_SYMBOLIC_ALLELE, decoded.get(0).getAlternateAllele(0));
+		assertEquals(Allele.SPAN_DEL, decoded.get(3).getAlternateAllele(1));
+		assertEquals(GaeaVCFConstants.NON_REF_SYMBOLIC_ALLELE, decoded.get(3).getAlternateAllele(2));
+		assertEquals(302, decoded.get(3).getEnd());
+	}
+
+	@Test
+	public void testIntegerValuesKeepTheirText() throws IOException {
+		VCFCodec codec = codec("S1");
+		VariantContext record = codec.decode(SINGLE_SAMPLE_LINES[4]);
+		VariantContext decoded = roundTrip(Arrays.asList(record), new String[] { "S1" }).get(0);
+
+		assertEquals("-5", decoded.getAttribute("NEG"));
+		assertEquals("007", decoded.getAttribute("ZP"));
+		assertEquals("-0", decoded.getAttribute("MZ"));
+		assertEquals("+5", decoded.getAttribute("PLUS"));
+		assertEquals("1234567890", decoded.getAttribute("BIG"));
+		Genotype genotype = decoded.getGenotype("S1");
+		assertEquals("-3,7", genotype.getExtendedAttribute("XO"));
+		assertEquals("01,2,-0,4", genotype.getExtendedAttribute("SB"));
+		assertTrue(genotype.isPhased());
+	}
+}
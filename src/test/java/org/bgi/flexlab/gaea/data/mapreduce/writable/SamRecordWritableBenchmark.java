@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.writable;
+
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.seqdoop.hadoop_bam.LazyBAMRecordFactory;
+import org.seqdoop.hadoop_bam.util.DataInputWrapper;
+import org.seqdoop.hadoop_bam.util.DataOutputWrapper;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read and write back a block of serialized records, as a reducer passing
+ * values through does: the old codec per record path against SamRecordWritable
+ * with and without the reused record buffer.
+ * Run with JMH on the test classpath: java -cp ... org.openjdk.jmh.Main SamRecordWritableBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SamRecordWritableBenchmark {
+	private static final int RECORDS = 1000;
+	private static final int READ_LENGTH = 150;
+
+	private byte[] bytes;
+	private final DataInputBuffer in = new DataInputBuffer();
+	private final DataOutputBuffer out = new DataOutputBuffer();
+	private final BamRecordCodec oldDecoder = new BamRecordCodec(null, new LazyBAMRecordFactory());
+	private SamRecordWritable writable;
+	private SamRecordWritable reuseWritable;
+
+	@Setup
+	public void setup() throws IOException {
+		SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+		dictionary.addSequence(new SAMSequenceRecord("chr1", 250000000));
+		SAMFileHeader header = new SAMFileHeader();
+		header.setSequenceDictionary(dictionary);
+
+		Random random = new Random(20170601);
+		DataOutputBuffer buffer = new DataOutputBuffer();
+		SamRecordWritable value = new SamRecordWritable();
+		for (int i = 0; i < RECORDS; i++) {
+			SAMRecord record = new SAMRecord(header);
+			record.setReadName("read_" + i);
+			record.setReferenceIndex(0);
+			record.setAlignmentStart(random.nextInt(249000000) + 1);
+			record.setMappingQuality(60);
+			record.setCigarString(READ_LENGTH + "M");
+			byte[] bases = new byte[READ_LENGTH];
+			byte[] qualities = new byte[READ_LENGTH];
+			for (int j = 0; j < READ_LENGTH; j++) {
+				bases[j] = (byte) "ACGT".charAt(random.nextInt(4));
+				qualities[j] = (byte) random.nextInt(41);
+			}
+			record.setReadBases(bases);
+			record.setBaseQualities(qualities);
+			record.setAttribute("RG", "sample1");
+			record.setAttribute("NM", random.nextInt(5));
+			value.set(record);
+			value.write(buffer);
+		}
+		bytes = new byte[buffer.getLength()];
+		System.arraycopy(buffer.getData(), 0, bytes, 0, buffer.getLength());
+
+		Configuration conf = new Configuration(false);
+		writable = new SamRecordWritable();
+		writable.setConf(conf);
+		SamRecordWritable.setReuseRecordBuffer(conf, true);
+		reuseWritable = new SamRecordWritable();
+		reuseWritable.setConf(conf);
+	}
+
+	@Benchmark
+	public int oldCodecPerRecord() throws IOException {
+		in.reset(bytes, bytes.length);
+		out.reset();
+		for (int i = 0; i < RECORDS; i++) {
+			oldDecoder.setInputStream(new DataInputWrapper(in));
+			SAMRecord record = oldDecoder.decode();
+			BAMRecordCodec codec = new BAMRecordCodec(record.getHeader());
+			codec.setOutputStream(new DataOutputWrapper(out));
+			codec.encode(record);
+		}
+		return out.getLength();
+	}
+
+	@Benchmark
+	public int sharedCodec() throws IOException {
+		return passThrough(writable, false);
+	}
+
+	@Benchmark
+	public int reuseBufferDecoded() throws IOException {
+		return passThrough(reuseWritable, true);
+	}
+
+	@Benchmark
+	public int reuseBufferUndecoded() throws IOException {
+		return passThrough(reuseWritable, false);
+	}
+
+	private int passThrough(SamRecordWritable value, boolean decode) throws IOException {
+		in.reset(bytes, bytes.length);
+		out.reset();
+		int sum = 0;
+		for (int i = 0; i < RECORDS; i++) {
+			value.readFields(in);
+			if (decode)
+				sum += value.get().getAlignmentStart();
+			value.write(out);
+		}
+		return sum + out.getLength();
+	}
+}
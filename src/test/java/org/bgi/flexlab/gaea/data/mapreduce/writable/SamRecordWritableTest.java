@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.mapreduce.writable;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SamRecordWritableTest {
+	private SAMFileHeader header;
+
+	@Before
+	public void setUp() {
+		SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+		dictionary.addSequence(new SAMSequenceRecord("chr1", 1000000));
+		dictionary.addSequence(new SAMSequenceRecord("chr2", 1000000));
+		header = new SAMFileHeader();
+		header.setSequenceDictionary(dictionary);
+	}
+
+	private SAMRecord mapped(String name, int start, String cigar, int length) {
+		SAMRecord record = new SAMRecord(header);
+		record.setReadName(name);
+		record.setReferenceIndex(0);
+		record.setAlignmentStart(start);
+		record.setMappingQuality(60);
+		record.setCigarString(cigar);
+		byte[] bases = new byte[length];
+		byte[] qualities = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bases[i] = (byte) "ACGT".charAt(i % 4);
+			qualities[i] = (byte) (i % 41);
+		}
+		record.setReadBases(bases);
+		record.setBaseQualities(qualities);
+		record.setMateReferenceIndex(1);
+		record.setMateAlignmentStart(start + 300);
+		record.setReadPairedFlag(true);
+		record.setInferredInsertSize(-300);
+		return record;
+	}
+
+	private SAMRecord unmapped() {
+		SAMRecord record = new SAMRecord(header);
+		record.setReadName("unmapped");
+		record.setReadUnmappedFlag(true);
+		record.setReferenceIndex(SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX);
+		record.setAlignmentStart(SAMRecord.NO_ALIGNMENT_START);
+		record.setMappingQuality(0);
+		record.setReadBases("ACGTN".getBytes());
+		record.setBaseQualities(SAMRecord.NULL_QUALS);
+		return record;
+	}
+
+	private SAMRecord longCigar() {
+		StringBuilder cigar = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+			cigar.append("1M1I");
+		cigar.append("1M");
+		return mapped("long_cigar", 500, cigar.toString(), 2001);
+	}
+
+	private SAMRecord withAttributes() {
+		SAMRecord record = mapped("attributes", 1000, "50M2D50M", 100);
+		record.setAttribute("RG", "sample1");
+		record.setAttribute("NM", 2);
+		record.setAttribute("XI", -70000);
+		record.setAttribute("BI", new int[] { 1, -2, 300000 });
+		record.setAttribute("BS", new short[] { 1, -2, 3 });
+		record.setAttribute("BC", new byte[] { 1, -2, 3 });
+		record.setAttribute("BF", new float[] { 0.5f, -1.5f });
+		return record;
+	}
+
+	private List<SAMRecord> records() {
+		List<SAMRecord> records = new ArrayList<SAMRecord>();
+		records.add(mapped("short", 100, "10M", 10));
+		records.add(unmapped());
+		records.add(longCigar());
+		records.add(withAttributes());
+		records.add(mapped("short_again", 200, "5S5M", 10));
+		return records;
+	}
+
+	private static byte[] write(List<SamRecordWritable> writables) throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		for (SamRecordWritable writable : writables)
+			writable.write(out);
+		return Arrays.copyOf(out.getData(), out.getLength());
+	}
+
+	private static SamRecordWritable newWritable(boolean reuse) {
+		Configuration conf = new Configuration(false);
+		SamRecordWritable.setReuseRecordBuffer(conf, reuse);
+		SamRecordWritable writable = new SamRecordWritable();
+		writable.setConf(conf);
+		return writable;
+	}
+
+	private byte[] encode(List<SAMRecord> records) throws IOException {
+		List<SamRecordWritable> writables = new ArrayList<SamRecordWritable>();
+		for (SAMRecord record : records) {
+			SamRecordWritable writable = new SamRecordWritable();
+			writable.set(record);
+			writables.add(writable);
+		}
+		return write(writables);
+	}
+
+	private void assertSameRecord(SAMRecord expected, SAMRecord actual) {
+		assertEquals(expected.getReadName(), actual.getReadName());
+		assertEquals(expected.getFlags(), actual.getFlags());
+		assertEquals(expected.getReferenceIndex(), actual.getReferenceIndex());
+		assertEquals(expected.getAlignmentStart(), actual.getAlignmentStart());
+		assertEquals(expected.getMappingQuality(), actual.getMappingQuality());
+		assertEquals(expected.getCigarString(), actual.getCigarString());
+		assertEquals(expected.getMateReferenceIndex(), actual.getMateReferenceIndex());
+		assertEquals(expected.getMateAlignmentStart(), actual.getMateAlignmentStart());
+		assertEquals(expected.getInferredInsertSize(), actual.getInferredInsertSize());
+		assertArrayEquals(expected.getReadBases(), actual.getReadBases());
+		assertEquals(expected.getBaseQualityString(), actual.getBaseQualityString());
+		assertEquals(expected.getAttributes().size(), actual.getAttributes().size());
+		for (SAMRecord.SAMTagAndValue tag : expected.getAttributes()) {
+			Object value = actual.getAttribute(tag.tag);
+			if (tag.value instanceof int[])
+				assertArrayEquals((int[]) tag.value, (int[]) value);
+			else if (tag.value instanceof short[])
+				assertArrayEquals((short[]) tag.value, (short[]) value);
+			else if (tag.value instanceof byte[])
+				assertArrayEquals((byte[]) tag.value, (byte[]) value);
+			else if (tag.value instanceof float[])
+				assertArrayEquals((float[]) tag.value, (float[]) value, 0f);
+			else
+				assertEquals(tag.tag, tag.value, value);
+		}
+	}
+
+	private void checkRoundTrip(boolean reuse) throws IOException {
+		List<SAMRecord> records = records();
+		byte[] bytes = encode(records);
+
+		/* one writable reads every record, so the reused buffer grows and shrinks */
+		SamRecordWritable writable = newWritable(reuse);
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(bytes, bytes.length);
+		for (SAMRecord expected : records) {
+			writable.readFields(in);
+			SAMRecord actual = writable.get();
+			/* decoded without a header, indexes are kept and names resolve once it is set */
+			assertNull(actual.getHeader());
+			assertSameRecord(expected, actual);
+			actual.setHeader(header);
+			assertEquals(expected.getReferenceName(), actual.getReferenceName());
+			assertEquals(expected.getMateReferenceName(), actual.getMateReferenceName());
+		}
+		assertEquals(0, in.available());
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		checkRoundTrip(false);
+	}
+
+	@Test
+	public void testRoundTripReuseBuffer() throws IOException {
+		checkRoundTrip(true);
+	}
+
+	@Test
+	public void testUnmappedRecord() throws IOException {
+		byte[] bytes = encode(Arrays.asList(unmapped()));
+		SamRecordWritable writable = newWritable(true);
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(bytes, bytes.length);
+		writable.readFields(in);
+
+		SAMRecord record = writable.get();
+		assertTrue(record.getReadUnmappedFlag());
+		assertEquals(SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX, record.getReferenceIndex().intValue());
+		assertEquals("*", record.getCigarString());
+		assertEquals("*", record.getBaseQualityString());
+	}
+
+	@Test
+	public void testUndecodedValueWrittenUnchanged() throws IOException {
+		byte[] bytes = encode(records());
+
+		List<SamRecordWritable> writables = new ArrayList<SamRecordWritable>();
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(bytes, bytes.length);
+		for (int i = 0; i < records().size(); i++) {
+			SamRecordWritable writable = newWritable(true);
+			writable.readFields(in);
+			/* decode every other value, the rest are copied from the buffer */
+			if (i % 2 == 0)
+				writable.get();
+			writables.add(writable);
+		}
+		assertArrayEquals(bytes, write(writables));
+	}
+
+	@Test
+	public void testSetAfterReadFields() throws IOException {
+		byte[] bytes = encode(Arrays.asList(longCigar()));
+		SamRecordWritable writable = newWritable(true);
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(bytes, bytes.length);
+		writable.readFields(in);
+
+		SAMRecord replacement = mapped("replacement", 10, "10M", 10);
+		writable.set(replacement);
+		assertSame(replacement, writable.get());
+		assertArrayEquals(encode(Arrays.asList(replacement)), write(Arrays.asList(writable)));
+	}
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.structure.dbsnp;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import org.bgi.flexlab.gaea.data.structure.vcf.AbstractVCFLoader.PositionalVariantContext;
+import org.bgi.flexlab.gaea.data.structure.vcf.VCFLocalLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * binary known sites must give the same window queries as the text vcf read
+ * by VCFLocalLoader from the offset of the window's first site
+ */
+public class KnownSitesShareTest {
+	private final static String[] CONTIGS = { "chr1", "chr2", "chrM" };
+	private final static int CONTIG_LENGTH = 20000;
+	private final static int WINDOW_SIZE = 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String vcf;
+	private VCFLocalLoader loader;
+	private KnownSitesShare sites;
+	// every site of the vcf with its file offset, in file order
+	private List<PositionalVariantContext> records = new ArrayList<PositionalVariantContext>();
+
+	/**
+	 * sorted sites with snps, multi-allelic sites, deletions, insertions,
+	 * several records at one position and missing ids
+	 */
+	private static String vcfText() {
+		StringBuilder text = new StringBuilder();
+		text.append("##fileformat=VCFv4.1\n");
+		for (String contig : CONTIGS)
+			text.append("##contig=<ID=").append(contig).append(",length=").append(CONTIG_LENGTH).append(">\n");
+		text.append("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n");
+
+		Random random = new Random(20170601);
+		int id = 1;
+		for (String contig : CONTIGS) {
+			// chrM is left with a single site
+			int number = contig.equals("chrM") ? 1 : 400;
+			int position = 1;
+			for (int i = 0; i < number; i++) {
+				position += random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(90);
+				String ref, alt;
+				switch (random.nextInt(4)) {
+				case 0:
+					ref = "A";
+					alt = "G,T";
+					break;
+				case 1:
+					ref = "CAG";
+					alt = "C";
+					break;
+				case 2:
+					ref = "T";
+					alt = "TAC";
+					break;
+				default:
+					ref = "G";
+					alt = "A";
+				}
+				String name = random.nextInt(3) == 0 ? "." : "rs" + id++;
+				text.append(contig).append('\t').append(position).append('\t').append(name).append('\t')
+						.append(ref).append('\t').append(alt).append("\t.\t.\t.\n");
+			}
+		}
+		return text.toString();
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		File file = folder.newFile("known.vcf");
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(vcfText());
+		} finally {
+			writer.close();
+		}
+		vcf = file.getPath();
+
+		loader = new VCFLocalLoader(vcf);
+		KnownSitesWriter sitesWriter = new KnownSitesWriter(KnownSitesShare.getSitesPath(vcf));
+		while (loader.hasNext()) {
+			PositionalVariantContext record = loader.next();
+			records.add(record);
+			sitesWriter.add(record.getVariantContext());
+		}
+		sitesWriter.close();
+		sites = KnownSitesShare.load(vcf);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		loader.close();
+		sites.clean();
+	}
+
+	/**
+	 * sites starting in [start, end] as the text vcf gives them
+	 */
+	private List<VariantContext> loaderQuery(String contig, int start, int end) throws IOException {
+		for (PositionalVariantContext record : records) {
+			VariantContext context = record.getVariantContext();
+			if (context.getContig().equals(contig) && context.getStart() >= start)
+				return loader.query(contig, record.getPosition(), end);
+		}
+		return new ArrayList<VariantContext>();
+	}
+
+	private static void assertSameSites(String message, List<VariantContext> expected, List<VariantContext> actual) {
+		assertEquals(message, expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			VariantContext e = expected.get(i);
+			VariantContext a = actual.get(i);
+			assertEquals(message, e.getContig(), a.getContig());
+			assertEquals(message, e.getStart(), a.getStart());
+			assertEquals(message, e.getEnd(), a.getEnd());
+			assertEquals(message, e.getID(), a.getID());
+			assertEquals(message, e.getAlleles(), a.getAlleles());
+			assertEquals(message, e.getReference(), a.getReference());
+		}
+	}
+
+	@Test
+	public void testWindowQueriesMatchLoader() throws IOException {
+		assertFalse(new File(KnownSitesShare.getSitesPath(vcf) + ".index.tmp").exists());
+		assertFalse(new File(KnownSitesShare.getSitesPath(vcf) + ".data.tmp").exists());
+
+		int total = 0;
+		for (String contig : CONTIGS) {
+			for (int start = 1; start <= CONTIG_LENGTH; start += WINDOW_SIZE) {
+				int end = start + WINDOW_SIZE - 1;
+				List<VariantContext> actual = sites.query(contig, start, end);
+				assertSameSites(contig + ":" + start + "-" + end, loaderQuery(contig, start, end), actual);
+				total += actual.size();
+			}
+		}
+		assertEquals(records.size(), total);
+	}
+
+	@Test
+	public void testSingleBaseAndEdgeQueries() throws IOException {
+		// every site position, the base after it and ranges past the last site
+		for (PositionalVariantContext record : records) {
+			VariantContext context = record.getVariantContext();
+			String contig = context.getContig();
+			int start = context.getStart();
+			assertSameSites(contig + ":" + start, loaderQuery(contig, start, start), sites.query(contig, start, start));
+			assertSameSites(contig + ":" + (start + 1), loaderQuery(contig, start + 1, start + 1),
+					sites.query(contig, start + 1, start + 1));
+		}
+		assertTrue(sites.query("chr1", CONTIG_LENGTH + 1, Integer.MAX_VALUE).isEmpty());
+		assertTrue(sites.query("chr3", 1, CONTIG_LENGTH).isEmpty());
+		// contig names are matched as ChromosomeUtils formats them
+		assertSameSites("2", sites.query("chr2", 1, CONTIG_LENGTH), sites.query("2", 1, CONTIG_LENGTH));
+	}
+
+	@Test
+	public void testUnsortedContigsAbort() throws IOException {
+		String output = folder.getRoot().getPath() + "/unsorted" + KnownSitesShare.SITES_SUFFIX;
+		KnownSitesWriter writer = new KnownSitesWriter(output);
+		try {
+			for (PositionalVariantContext record : records)
+				writer.add(record.getVariantContext());
+			writer.add(records.get(0).getVariantContext());
+			fail("chr1 after chrM is not sorted");
+		} catch (RuntimeException e) {
+			writer.abort();
+		}
+		assertFalse(new File(output).exists());
+		assertFalse(new File(output + ".index.tmp").exists());
+		assertFalse(new File(output + ".data.tmp").exists());
+		assertNull(KnownSitesShare.load(folder.getRoot().getPath() + "/unsorted"));
+	}
+}
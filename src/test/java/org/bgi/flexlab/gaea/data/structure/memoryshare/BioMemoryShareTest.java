@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.structure.memoryshare;
+
+import org.bgi.flexlab.gaea.data.exception.OutOfBoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+
+public class BioMemoryShareTest {
+	/**
+	 * sparse file over 3 GB, so it has the 2^31 boundary of int indexes and
+	 * a partly filled last segment
+	 */
+	private final static long FILE_SIZE = (3L << 30) + 12345;
+	private final static long[] BOUNDARIES = { 1L << 30, 1L << 31, 3L << 30 };
+	private final static int WINDOW = 64;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BioMemoryShare share;
+
+	private static byte expected(long index) {
+		return (byte) (index * 31 + (index >>> 29));
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		File file = folder.newFile("share.bin");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(FILE_SIZE);
+			byte[] bytes = new byte[2 * WINDOW];
+			for (long boundary : BOUNDARIES) {
+				for (int i = 0; i < bytes.length; i++)
+					bytes[i] = expected(boundary - WINDOW + i);
+				raf.seek(boundary - WINDOW);
+				raf.write(bytes);
+			}
+			raf.seek(FILE_SIZE - 1);
+			raf.write(expected(FILE_SIZE - 1));
+		} finally {
+			raf.close();
+		}
+
+		share = new BioMemoryShare();
+		share.loadChromosome(file.getPath());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		share.clean();
+	}
+
+	private static long expectedLong(long index, int bytes) {
+		long value = 0;
+		for (int i = 0; i < bytes; i++)
+			value = (value << Byte.SIZE) | (expected(index + i) & 0xff);
+		return value;
+	}
+
+	@Test
+	public void testFileSize() {
+		assertEquals(FILE_SIZE, share.getFileSize());
+		assertEquals(expected(FILE_SIZE - 1), share.getByte(FILE_SIZE - 1));
+		assertEquals(0, share.getByte(FILE_SIZE / 2 + 7));
+	}
+
+	@Test
+	public void testBytesAroundBoundaries() {
+		for (long boundary : BOUNDARIES) {
+			for (long index = boundary - WINDOW; index < boundary + WINDOW; index++)
+				assertEquals("index " + index, expected(index), share.getByte(index));
+		}
+	}
+
+	@Test
+	public void testRecordsAroundBoundaries() {
+		for (long boundary : BOUNDARIES) {
+			// records ending just before, straddling and starting at the boundary
+			for (long index = boundary - 2 * Long.BYTES; index <= boundary + Long.BYTES; index++) {
+				String message = "index " + index;
+				assertEquals(message, (short) expectedLong(index, Short.BYTES), share.getShort(index));
+				assertEquals(message, (int) expectedLong(index, Integer.BYTES), share.getInt(index));
+				assertEquals(message, expectedLong(index, Long.BYTES), share.getLong(index));
+				assertEquals(message, Float.intBitsToFloat((int) expectedLong(index, Integer.BYTES)),
+						share.getFloat(index), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testRangesAroundBoundaries() {
+		for (long boundary : BOUNDARIES) {
+			for (int shift = -WINDOW; shift <= 0; shift += 8) {
+				long index = boundary + shift;
+				byte[] expected = new byte[WINDOW];
+				for (int i = 0; i < WINDOW; i++)
+					expected[i] = expected(index + i);
+
+				byte[] bytes = new byte[WINDOW + 2];
+				share.getBytes(index, bytes, 1, WINDOW);
+				byte[] copied = new byte[WINDOW];
+				System.arraycopy(bytes, 1, copied, 0, WINDOW);
+				assertArrayEquals("index " + index, expected, copied);
+
+				ByteBuffer slice = share.slice(index, WINDOW);
+				assertEquals(WINDOW, slice.remaining());
+				byte[] sliced = new byte[WINDOW];
+				slice.get(sliced);
+				assertArrayEquals("index " + index, expected, sliced);
+			}
+		}
+	}
+
+	@Test(expected = OutOfBoundException.class)
+	public void testReadPastEnd() {
+		share.getBytes(FILE_SIZE - 4, new byte[8], 0, 8);
+	}
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.structure.region;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按碱基查询区域：原来的窗口哈希表和RegionIndex对比，
+ * 用测试classpath上的JMH运行：java -cp ... org.openjdk.jmh.Main RegionIndexBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RegionIndexBenchmark {
+	private final static String CHR_NAME = "chr1";
+	private final static int CHROMOSOME_LENGTH = 5000000;
+	private final static int READ_LENGTH = 150;
+	
+	private WindowRegionLookup lookup;
+	private RegionIndex index;
+	private int[] readStarts;
+	
+	@Setup
+	public void setUp() {
+		Random random = new Random(1);
+		lookup = new WindowRegionLookup();
+		index = new RegionIndex();
+		// 外显子大小的区域，约覆盖染色体的2%
+		int start = random.nextInt(5000);
+		while(start < CHROMOSOME_LENGTH) {
+			int end = start + 50 + random.nextInt(250);
+			lookup.add(CHR_NAME, start, end);
+			index.add(CHR_NAME, start, end);
+			start = end + 2000 + random.nextInt(10000);
+		}
+		
+		readStarts = new int[100000];
+		for(int i = 0; i < readStarts.length; i++)
+			readStarts[i] = random.nextInt(CHROMOSOME_LENGTH);
+	}
+	
+	@Benchmark
+	public int windowLookupPositions() {
+		int covered = 0;
+		for(int pos = 0; pos < CHROMOSOME_LENGTH; pos++) {
+			if(lookup.isPositionInRegion(CHR_NAME, pos))
+				covered++;
+		}
+		return covered;
+	}
+	
+	@Benchmark
+	public int regionIndexPositions() {
+		int covered = 0;
+		for(int pos = 0; pos < CHROMOSOME_LENGTH; pos++) {
+			if(index.contains(CHR_NAME, pos))
+				covered++;
+		}
+		return covered;
+	}
+	
+	@Benchmark
+	public int windowLookupReads() {
+		int overlapped = 0;
+		for(int start : readStarts) {
+			if(lookup.isReadInRegion(CHR_NAME, start, start + READ_LENGTH - 1))
+				overlapped++;
+		}
+		return overlapped;
+	}
+	
+	@Benchmark
+	public int regionIndexReads() {
+		int overlapped = 0;
+		for(int start : readStarts) {
+			if(index.overlaps(CHR_NAME, start, start + READ_LENGTH - 1))
+				overlapped++;
+		}
+		return overlapped;
+	}
+	
+	@Benchmark
+	public long windowLookupCnvSlots() {
+		long sum = 0;
+		for(int pos = 0; pos < CHROMOSOME_LENGTH; pos++)
+			sum += lookup.cnvSlot(CHR_NAME, pos);
+		return sum;
+	}
+	
+	@Benchmark
+	public long regionIndexCnvSlots() {
+		long sum = 0;
+		for(int pos = 0; pos < CHROMOSOME_LENGTH; pos++)
+			sum += index.rank(CHR_NAME, pos);
+		return sum;
+	}
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.structure.region;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertArrayEquals;
+
+public class RegionIndexTest {
+	private final static String[] CHROMOSOMES = {"chr1", "chr2", "chrM"};
+	private final static int CHROMOSOME_LENGTH = 20000;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * 按起点排序的随机区域，包含相邻、重叠、嵌套、单碱基、从0开始和跨1000bp窗口边界的区域
+	 */
+	private static List<int[]> randomRegions(Random random) {
+		List<int[]> regions = new ArrayList<int[]>();
+		regions.add(new int[] {0, 0});
+		regions.add(new int[] {998, 1001});
+		regions.add(new int[] {1002, 1010});
+		regions.add(new int[] {1005, 1999});
+		regions.add(new int[] {1100, 1200});
+		regions.add(new int[] {2000, 2000});
+		int start = 2500;
+		while(start < CHROMOSOME_LENGTH - 3000) {
+			int end = start + random.nextInt(random.nextBoolean() ? 20 : 1500);
+			regions.add(new int[] {start, end});
+			switch(random.nextInt(4)) {
+				case 0:
+					// 相邻
+					start = end + 1;
+					break;
+				case 1:
+					// 重叠
+					start = Math.max(start, end - random.nextInt(10));
+					break;
+				default:
+					start = end + 2 + random.nextInt(500);
+			}
+		}
+		return regions;
+	}
+	
+	private static BitSet covered(List<int[]> regions) {
+		BitSet bits = new BitSet();
+		for(int[] region : regions)
+			bits.set(region[0], region[1] + 1);
+		return bits;
+	}
+	
+	@Test
+	public void testMatchesWindowLookup() {
+		Random random = new Random(3);
+		RegionIndex index = new RegionIndex();
+		WindowRegionLookup lookup = new WindowRegionLookup();
+		BitSet[] bits = new BitSet[CHROMOSOMES.length];
+		for(int c = 0; c < CHROMOSOMES.length; c++) {
+			List<int[]> regions = randomRegions(random);
+			bits[c] = covered(regions);
+			// 区域乱序加入，RegionIndex应该自己排序
+			for(int i = regions.size() - 1; i >= 0; i--)
+				index.add(CHROMOSOMES[c], regions.get(i)[0], regions.get(i)[1]);
+			for(int[] region : regions)
+				lookup.add(CHROMOSOMES[c], region[0], region[1]);
+		}
+		
+		for(int c = 0; c < CHROMOSOMES.length; c++) {
+			String chrName = CHROMOSOMES[c];
+			assertEquals(bits[c].cardinality(), index.getCoveredLength(chrName));
+			assertEquals(lookup.cnvSize(chrName), index.getCoveredLength(chrName));
+			
+			long expectedBoundary = 0;
+			for(int pos = -2; pos < CHROMOSOME_LENGTH; pos++) {
+				boolean in = pos >= 0 && bits[c].get(pos);
+				assertEquals(chrName + ":" + pos, lookup.isPositionInRegion(chrName, pos) && pos >= 0, in);
+				assertEquals(chrName + ":" + pos, in, index.contains(chrName, pos));
+				if(pos >= 0)
+					assertEquals(chrName + ":" + pos, lookup.cnvSlot(chrName, pos), in ? index.rank(chrName, pos) * 2 : -1);
+				
+				int[] region = index.getRegion(chrName, pos);
+				if(in) {
+					assertEquals(bits[c].previousClearBit(pos) + 1, region[0]);
+					assertEquals(bits[c].nextClearBit(pos) - 1, region[1]);
+				} else {
+					assertNull(region);
+				}
+				
+				if(pos >= 0) {
+					int next = in ? bits[c].nextClearBit(pos) : bits[c].nextSetBit(pos);
+					expectedBoundary = next < 0 ? Long.MAX_VALUE : next;
+					assertEquals(chrName + ":" + pos, expectedBoundary, index.nextBoundary(chrName, pos));
+				}
+			}
+			
+			for(int n = 0; n < 20000; n++) {
+				int start = random.nextInt(CHROMOSOME_LENGTH);
+				int end = start + random.nextInt(random.nextBoolean() ? 5 : 300);
+				assertEquals(chrName + ":" + start + "-" + end, lookup.isReadInRegion(chrName, start, end),
+						index.overlaps(chrName, start, end));
+				// 随机顺序查询，不能依赖上一次命中的区域
+				int pos = random.nextInt(CHROMOSOME_LENGTH);
+				assertEquals(chrName + ":" + pos, bits[c].get(pos), index.contains(chrName, pos));
+			}
+		}
+		
+		assertFalse(index.contains("chrUn", 10));
+		assertEquals(-1, index.rank("chrUn", 10));
+		assertEquals(Long.MAX_VALUE, index.nextBoundary("chrUn", 10));
+		assertEquals(0, index.getCoveredLength("chrUn"));
+	}
+	
+	@Test
+	public void testSingleRegionIndex() throws IOException {
+		Random random = new Random(19);
+		File bed = folder.newFile("regions.bed");
+		List<List<int[]>> allRegions = new ArrayList<List<int[]>>();
+		Writer out = new FileWriter(bed);
+		try {
+			for(String chrName : CHROMOSOMES) {
+				List<int[]> regions = withoutNested(randomRegions(random));
+				allRegions.add(regions);
+				for(int[] region : regions)
+					out.write(chrName + "\t" + region[0] + "\t" + (region[1] + 1) + "\n");
+			}
+		} finally {
+			out.close();
+		}
+		
+		SingleRegion singleRegion = new SingleRegion();
+		singleRegion.parseRegionsFileFromHDFS(bed.getPath(), true, 0);
+		RegionIndex index = singleRegion.getIndex();
+		
+		int offset = 0;
+		for(int c = 0; c < CHROMOSOMES.length; c++) {
+			String chrName = CHROMOSOMES[c];
+			List<int[]> regions = allRegions.get(c);
+			BitSet bits = covered(regions);
+			for(int pos = 0; pos < CHROMOSOME_LENGTH; pos++) {
+				assertEquals(chrName + ":" + pos, bits.get(pos), index.contains(chrName, pos));
+				
+				// posInRegion返回包含pos的第一个区域
+				int expected = -1;
+				for(int i = 0; i < regions.size() && expected < 0; i++) {
+					if(regions.get(i)[0] <= pos && regions.get(i)[1] >= pos)
+						expected = offset + i;
+				}
+				assertEquals(chrName + ":" + pos, expected, singleRegion.posInRegion(chrName, pos));
+			}
+			// 和原来逐个位置查找窗口中第一个区域的结果相同
+			for(int winStart = 0; winStart < CHROMOSOME_LENGTH; winStart += 97) {
+				int winEnd = winStart + (winStart % 3 == 0 ? 2000 : 50) - 1;
+				int expected = -1;
+				for(int pos = winStart; pos <= winEnd && expected < 0; pos++)
+					expected = singleRegion.posInRegion(chrName, pos);
+				assertEquals(chrName + ":" + winStart, expected, singleRegion.firstRegionInWindow(chrName, winStart, winEnd));
+			}
+			for(int i = 0; i < regions.size(); i++) {
+				assertArrayEquals(regions.get(i), new int[] {singleRegion.getRegion(offset + i).getStart(),
+						singleRegion.getRegion(offset + i).getEnd()});
+			}
+			offset += regions.size();
+		}
+	}
+	
+	/**
+	 * 去掉被前面区域完全包含的区域，posInRegion的二分查找要求区域终点也是递增的
+	 */
+	private static List<int[]> withoutNested(List<int[]> regions) {
+		List<int[]> result = new ArrayList<int[]>();
+		for(int[] region : regions) {
+			if(result.isEmpty() || region[1] > result.get(result.size() - 1)[1])
+				result.add(region);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.data.structure.region;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 原来的区域查找方法：按1000bp窗口建哈希表，窗口ID->[start,end]列表，
+ * 每个区域按窗口切开保存。只用于和RegionIndex对比测试。
+ */
+class WindowRegionLookup {
+	private final static int WINDOW_SIZE = 1000;
+	
+	private Map<String, ArrayList<int[]>> index = new HashMap<String, ArrayList<int[]>>();
+	
+	/**
+	 * 区域内每个碱基在CNV深度数组中的位置，按区域顺序第一次出现时编号
+	 */
+	private Map<String, Map<Integer, Integer>> cnvIndex = new HashMap<String, Map<Integer, Integer>>();
+	
+	private static String windowID(String chrName, long position) {
+		return chrName + "." + (int) position / WINDOW_SIZE;
+	}
+	
+	public void add(String chrName, int start, int end) {
+		for(int i = start / WINDOW_SIZE; i <= end / WINDOW_SIZE; i++) {
+			int winStart = i == start / WINDOW_SIZE ? start : i * WINDOW_SIZE;
+			int winEnd = i == end / WINDOW_SIZE ? end : i * WINDOW_SIZE + WINDOW_SIZE - 1;
+			String id = windowID(chrName, (long) i * WINDOW_SIZE);
+			ArrayList<int[]> windows = index.get(id);
+			if(windows == null) {
+				windows = new ArrayList<int[]>();
+				index.put(id, windows);
+			}
+			windows.add(new int[] {winStart, winEnd});
+		}
+		
+		Map<Integer, Integer> positions = cnvIndex.get(chrName);
+		if(positions == null) {
+			positions = new HashMap<Integer, Integer>();
+			cnvIndex.put(chrName, positions);
+		}
+		int slot = positions.size() * 2;
+		for(int pos = start; pos <= end; pos++) {
+			if(!positions.containsKey(pos)) {
+				positions.put(pos, slot);
+				slot += 2;
+			}
+		}
+	}
+	
+	public boolean isPositionInRegion(String chrName, long position) {
+		ArrayList<int[]> windows = index.get(windowID(chrName, position));
+		if(windows == null)
+			return false;
+		for(int[] window : windows) {
+			if(position >= window[0] && position <= window[1])
+				return true;
+		}
+		return false;
+	}
+	
+	public boolean isReadInRegion(String chrName, long start, long end) {
+		if(isPositionInRegion(chrName, start) || isPositionInRegion(chrName, end))
+			return true;
+		for(long i = start + 1; i < end; i++) {
+			if(isPositionInRegion(chrName, i))
+				return true;
+		}
+		return false;
+	}
+	
+	public int cnvSlot(String chrName, int position) {
+		Integer slot = cnvIndex.get(chrName).get(position);
+		return slot == null ? -1 : slot;
+	}
+	
+	public int cnvSize(String chrName) {
+		Map<Integer, Integer> positions = cnvIndex.get(chrName);
+		return positions == null ? 0 : positions.size();
+	}
+}
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.framework.tools.mapreduce;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.bgi.flexlab.gaea.data.mapreduce.partitioner.WindowsBasedSpanPartitioner;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordWritable;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.WindowsBasedWritable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * windows rebuilt by WindowsBasedOverlapBuffer from the read once shuffle
+ * must hold the same reads as the default shuffle, which writes a read to
+ * each of its home, extend left and extend right windows
+ */
+public class WindowsBasedOverlapBufferTest {
+	private static final int WINDOWS_SIZE = 100;
+	private static final int WINDOWS_EXTEND_SIZE = 30;
+	private static final int WINDOWS_SPAN = 3;
+	private static final int CHROMOSOME_LENGTH = 5000;
+	private static final int SAMPLES = 2;
+
+	private SAMFileHeader header;
+	private Configuration conf;
+	private final Random random = new Random(20170601);
+
+	/* one shuffled map output record */
+	private static class Pair implements Comparable<Pair> {
+		private final WindowsBasedWritable key = new WindowsBasedWritable();
+		private final SAMRecord sam;
+
+		Pair(int sample, int chrIndex, int winNum, int position, SAMRecord sam) {
+			key.set(sample, chrIndex, winNum, position);
+			this.sam = sam;
+		}
+
+		@Override
+		public int compareTo(Pair other) {
+			return key.compareTo(other.key);
+		}
+	}
+
+	@Before
+	public void setUp() {
+		SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+		dictionary.addSequence(new SAMSequenceRecord("chr1", CHROMOSOME_LENGTH));
+		dictionary.addSequence(new SAMSequenceRecord("chr2", CHROMOSOME_LENGTH));
+		header = new SAMFileHeader();
+		header.setSequenceDictionary(dictionary);
+
+		conf = new Configuration(false);
+		conf.setInt(WindowsBasedMapper.WINDOWS_SIZE, WINDOWS_SIZE);
+		conf.setInt(WindowsBasedMapper.WINDOWS_EXTEND_SIZE, WINDOWS_EXTEND_SIZE);
+		conf.setInt(WindowsBasedSpanPartitioner.WINDOWS_SPAN, WINDOWS_SPAN);
+	}
+
+	private List<SAMRecord> randomReads(int count) {
+		List<SAMRecord> reads = new ArrayList<SAMRecord>();
+		for (int i = 0; i < count; i++) {
+			SAMRecord sam = new SAMRecord(header);
+			sam.setReadName("read" + i);
+			sam.setReferenceIndex(random.nextInt(2));
+			int length = random.nextInt(8) == 0 ? 150 + random.nextInt(250) : 20 + random.nextInt(80);
+			int start = 1 + random.nextInt(CHROMOSOME_LENGTH - length);
+			sam.setAlignmentStart(start);
+			sam.setCigarString(length + "M");
+			/* sample is kept in the mapping quality for this test */
+			sam.setMappingQuality(random.nextInt(SAMPLES));
+			reads.add(sam);
+		}
+		return reads;
+	}
+
+	private int[] winNums(SAMRecord sam) {
+		return WindowsBasedMapper.getExtendPosition(sam.getAlignmentStart(), sam.getAlignmentEnd(),
+				CHROMOSOME_LENGTH, WINDOWS_SIZE, WINDOWS_EXTEND_SIZE);
+	}
+
+	/* map output of WindowsBasedMapper.map for the default or the read once shuffle */
+	private List<Pair> shuffle(List<SAMRecord> reads, boolean readOnce) {
+		List<Pair> pairs = new ArrayList<Pair>();
+		int[] windows = new int[3];
+		for (SAMRecord sam : reads) {
+			int count = WindowsBasedMapper.getOutputWindows(winNums(sam), readOnce, WINDOWS_SPAN, windows);
+			for (int i = 0; i < count; i++)
+				pairs.add(new Pair(sam.getMappingQuality(), sam.getReferenceIndex(), windows[i],
+						sam.getAlignmentStart(), sam));
+		}
+		Collections.sort(pairs);
+		return pairs;
+	}
+
+	/*
+	 * group sorted pairs by windows like the reducer and hand every group to
+	 * the consumer, the result maps windows key to the reads it saw
+	 */
+	private interface GroupConsumer {
+		void reduce(WindowsBasedWritable key, List<SamRecordWritable> values) throws IOException,
+				InterruptedException;
+	}
+
+	private void group(List<Pair> pairs, GroupConsumer consumer) throws IOException, InterruptedException {
+		int i = 0;
+		while (i < pairs.size()) {
+			int j = i;
+			List<SamRecordWritable> values = new ArrayList<SamRecordWritable>();
+			while (j < pairs.size() && pairs.get(j).key.getWindows() == pairs.get(i).key.getWindows()) {
+				SamRecordWritable value = new SamRecordWritable();
+				value.set(pairs.get(j).sam);
+				values.add(value);
+				j++;
+			}
+			consumer.reduce(pairs.get(i).key, values);
+			i = j;
+		}
+	}
+
+	private static void record(TreeMap<Long, List<SAMRecord>> windows, WindowsBasedWritable key,
+			Iterable<SamRecordWritable> values) {
+		assertTrue("windows processed twice: " + key, !windows.containsKey(key.getWindows()));
+		List<SAMRecord> reads = new ArrayList<SAMRecord>();
+		for (SamRecordWritable value : values)
+			reads.add(value.get());
+		windows.put(key.getWindows(), reads);
+	}
+
+	private TreeMap<Long, List<SAMRecord>> expected(List<SAMRecord> reads) throws IOException, InterruptedException {
+		TreeMap<Long, List<SAMRecord>> windows = new TreeMap<Long, List<SAMRecord>>();
+		group(shuffle(reads, false), (key, values) -> record(windows, key, values));
+		return windows;
+	}
+
+	private TreeMap<Long, List<SAMRecord>> actual(List<SAMRecord> reads) throws IOException, InterruptedException {
+		TreeMap<Long, List<SAMRecord>> windows = new TreeMap<Long, List<SAMRecord>>();
+		WindowsBasedOverlapBuffer buffer = new WindowsBasedOverlapBuffer(conf, header);
+		WindowsBasedOverlapBuffer.WindowsProcessor processor = (key, values) -> record(windows, key, values);
+		group(shuffle(reads, true), (key, values) -> buffer.reduce(key, values, processor));
+		buffer.flush(processor);
+		return windows;
+	}
+
+	private static List<String> names(List<SAMRecord> reads) {
+		List<String> names = new ArrayList<String>();
+		for (SAMRecord sam : reads)
+			names.add(sam.getReadName());
+		Collections.sort(names);
+		return names;
+	}
+
+	private void checkSameWindows(List<SAMRecord> reads) throws IOException, InterruptedException {
+		TreeMap<Long, List<SAMRecord>> expected = expected(reads);
+		TreeMap<Long, List<SAMRecord>> actual = actual(reads);
+
+		assertEquals(expected.keySet(), actual.keySet());
+		for (Long windows : expected.keySet()) {
+			assertEquals("windows " + windows, names(expected.get(windows)), names(actual.get(windows)));
+			/* reads of a windows keep the default shuffle order of alignment start */
+			List<SAMRecord> windowsReads = actual.get(windows);
+			for (int i = 1; i < windowsReads.size(); i++)
+				assertTrue("windows " + windows + " is out of order", windowsReads.get(i - 1)
+						.getAlignmentStart() <= windowsReads.get(i).getAlignmentStart());
+		}
+	}
+
+	@Test
+	public void testSameReadsAsDefaultShuffle() throws IOException, InterruptedException {
+		checkSameWindows(randomReads(3000));
+	}
+
+	@Test
+	public void testSparseReads() throws IOException, InterruptedException {
+		/* few reads leave windows holding only carried reads and gaps between spans */
+		checkSameWindows(randomReads(40));
+	}
+
+	@Test
+	public void testReadsCrossingSpanBoundary() throws IOException, InterruptedException {
+		List<SAMRecord> reads = new ArrayList<SAMRecord>();
+		int boundary = WINDOWS_SPAN * WINDOWS_SIZE;
+		for (int i = 0; i < 10; i++) {
+			SAMRecord sam = new SAMRecord(header);
+			sam.setReadName("cross" + i);
+			sam.setReferenceIndex(0);
+			sam.setAlignmentStart(boundary - 60 + i * 10);
+			sam.setCigarString("100M");
+			sam.setMappingQuality(0);
+			reads.add(sam);
+		}
+		checkSameWindows(reads);
+	}
+}
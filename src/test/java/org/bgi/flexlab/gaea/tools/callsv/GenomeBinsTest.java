@@ -0,0 +1,107 @@
+package org.bgi.flexlab.gaea.tools.callsv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * GenomeBins测试：reads分配到的bin和bin的延伸范围一致，
+ * 跨越核心区域边界的SV只由一个bin输出
+ */
+public class GenomeBinsTest {
+
+	private final static int BIN_SIZE = 1000000;
+	private final static int MAX_SV_SIZE = 50000;
+	private final static int OVERLAP = MAX_SV_SIZE + 100000;
+
+	private final GenomeBins bins = new GenomeBins(BIN_SIZE, MAX_SV_SIZE);
+
+	/**
+	 * bin k的延伸范围是[k*binSize-overlap, (k+1)*binSize+overlap)
+	 */
+	private static boolean inExtendedBin(int bin, int pos) {
+		return pos >= (long) bin * BIN_SIZE - OVERLAP && pos < (long) (bin + 1) * BIN_SIZE + OVERLAP;
+	}
+
+	private void checkBins(int pos) {
+		int first = bins.getFirstBin(pos);
+		int last = bins.getLastBin(pos);
+		assertTrue(first >= 0 && first <= last);
+		for(int bin = Math.max(0, first - 2); bin <= last + 2; bin++)
+			assertEquals("pos " + pos + " bin " + bin, bin >= first && bin <= last, inExtendedBin(bin, pos));
+	}
+
+	@Test
+	public void testFirstAndLastBinAtEdges() {
+		int[] edges = {BIN_SIZE, 2 * BIN_SIZE, 10 * BIN_SIZE};
+		for(int edge : edges) {
+			for(int delta = -2; delta <= 2; delta++) {
+				checkBins(edge + delta);
+				checkBins(edge - OVERLAP + delta);
+				checkBins(edge + OVERLAP + delta);
+			}
+		}
+	}
+
+	@Test
+	public void testFirstAndLastBinNearZero() {
+		for(int pos = 0; pos <= 5; pos++) {
+			checkBins(pos);
+			assertEquals(0, bins.getFirstBin(pos));
+			assertEquals(0, bins.getLastBin(pos));
+		}
+		assertEquals(0, bins.getFirstBin(BIN_SIZE + OVERLAP - 1));
+		assertEquals(1, bins.getFirstBin(BIN_SIZE + OVERLAP));
+		assertEquals(0, bins.getLastBin(BIN_SIZE - OVERLAP - 1));
+		assertEquals(1, bins.getLastBin(BIN_SIZE - OVERLAP));
+	}
+
+	@Test
+	public void testCoreAtEdges() {
+		assertTrue(bins.isInCore(0, 0));
+		assertTrue(bins.isInCore(0, BIN_SIZE - 1));
+		assertFalse(bins.isInCore(0, BIN_SIZE));
+		assertTrue(bins.isInCore(1, BIN_SIZE));
+		assertTrue(bins.isInCore(1, 2 * BIN_SIZE - 1));
+		assertFalse(bins.isInCore(1, 2 * BIN_SIZE));
+	}
+
+	/**
+	 * SV两端的reads都到达且第一个区域起点在核心区域中的bin才输出这个SV
+	 */
+	private int emittedBins(int start, int end) {
+		int emitted = 0;
+		for(int bin = bins.getFirstBin(start); bin <= bins.getLastBin(start); bin++) {
+			boolean linked = bin >= bins.getFirstBin(end) && bin <= bins.getLastBin(end);
+			if(linked && bins.isInCore(bin, start))
+				emitted++;
+		}
+		return emitted;
+	}
+
+	@Test
+	public void testSvStraddlingCoreBoundaryEmittedOnce() {
+		int boundary = 3 * BIN_SIZE;
+		for(int start = boundary - MAX_SV_SIZE - 2; start <= boundary + 2; start += 997) {
+			for(int size = 1; size <= MAX_SV_SIZE; size += 4999) {
+				assertEquals("sv " + start + "-" + (start + size), 1, emittedBins(start, start + size));
+			}
+		}
+		assertEquals(1, emittedBins(boundary - 1, boundary - 1 + MAX_SV_SIZE));
+		assertEquals(1, emittedBins(boundary, boundary + MAX_SV_SIZE));
+		assertEquals(1, emittedBins(boundary - MAX_SV_SIZE, boundary));
+	}
+
+	@Test
+	public void testWholeChromosome() {
+		GenomeBins whole = new GenomeBins(0, MAX_SV_SIZE);
+		assertTrue(whole.isWholeChromosome());
+		assertEquals(0, whole.getFirstBin(250000000));
+		assertEquals(0, whole.getLastBin(250000000));
+		assertTrue(whole.isInCore(0, 250000000));
+		assertEquals(0, bins.getFirstBin(0));
+		assertFalse(bins.isWholeChromosome());
+	}
+}
@@ -0,0 +1,219 @@
+package org.bgi.flexlab.gaea.tools.haplotypecaller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.bgi.flexlab.gaea.data.mapreduce.output.vcf.GaeaVariantContextWriter;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordWritable;
+import org.bgi.flexlab.gaea.data.structure.reference.ChromosomeInformation;
+import org.bgi.flexlab.gaea.data.structure.reference.ChromosomeInformationShare;
+import org.bgi.flexlab.gaea.tools.haplotypecaller.annotation.QualByDepth;
+import org.bgi.flexlab.gaea.tools.haplotypecaller.utils.RefMetaDataTracker;
+import org.bgi.flexlab.gaea.tools.jointcalling.util.GvcfMathUtils;
+import org.bgi.flexlab.gaea.tools.mapreduce.haplotypecaller.HaplotypeCallerOptions;
+import org.bgi.flexlab.gaea.util.Window;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.variantcontext.writer.VCFEncoder;
+
+/**
+ * One window called serially and on the assembly region pool must give identical records.
+ */
+public class HaplotypeCallerTraversalTest {
+    private static final String CHR = "chr1";
+    private static final int CHR_LENGTH = 3000;
+    private static final int READ_LENGTH = 100;
+    private static final int READ_STEP = 3;
+    private static final String READ_GROUP = "rg1";
+
+    // 1-based sites: a het SNP, two close hom-var SNPs on one haplotype (high QD) and a het 3bp deletion
+    private static final int HET_SNP = 800;
+    private static final int HOM_SNP_1 = 1500;
+    private static final int HOM_SNP_2 = 1503;
+    private static final int HET_DELETION = 2200;
+    private static final int DELETION_LENGTH = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String reference = randomSequence(new Random(20170601), CHR_LENGTH);
+
+    private static String randomSequence(final Random random, final int length) {
+        final StringBuilder sequence = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sequence.append("ACGT".charAt(random.nextInt(4)));
+        }
+        return sequence.toString();
+    }
+
+    private static char alt(final char base) {
+        return base == 'A' ? 'G' : base == 'G' ? 'A' : base == 'C' ? 'T' : 'C';
+    }
+
+    private SAMFileHeader header() {
+        final SAMFileHeader header = new SAMFileHeader();
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        header.setSequenceDictionary(new SAMSequenceDictionary(Arrays.asList(new SAMSequenceRecord(CHR, CHR_LENGTH))));
+        final SAMReadGroupRecord readGroup = new SAMReadGroupRecord(READ_GROUP);
+        readGroup.setSample("sample1");
+        readGroup.setPlatform("ILLUMINA");
+        header.addReadGroup(readGroup);
+        return header;
+    }
+
+    private ChromosomeInformationShare chromosome() throws IOException {
+        final ChromosomeInformation information = new ChromosomeInformation();
+        information.setBinarySequence(reference);
+        final File file = folder.newFile();
+        information.outputChrInformation(file.getAbsolutePath());
+
+        final ChromosomeInformationShare share = new ChromosomeInformationShare();
+        share.loadChromosome(file.getAbsolutePath());
+        share.setChromosomeName(CHR);
+        share.setLength(CHR_LENGTH);
+        return share;
+    }
+
+    /**
+     * reads tiled over the chromosome, odd reads come from the alternate haplotype of the het sites
+     */
+    private List<SamRecordWritable> reads(final SAMFileHeader header) {
+        final List<SamRecordWritable> reads = new ArrayList<>();
+        int index = 0;
+        for (int start = 1; start + READ_LENGTH + DELETION_LENGTH <= CHR_LENGTH; start += READ_STEP, index++) {
+            final boolean altHaplotype = index % 2 == 1;
+            if (altHaplotype && start > HET_DELETION && start <= HET_DELETION + DELETION_LENGTH) {
+                continue;
+            }
+            final StringBuilder bases = new StringBuilder();
+            final StringBuilder cigar = new StringBuilder();
+            int matches = 0;
+            int position = start;
+            while (bases.length() < READ_LENGTH) {
+                char base = reference.charAt(position - 1);
+                if (position == HOM_SNP_1 || position == HOM_SNP_2 || (altHaplotype && position == HET_SNP)) {
+                    base = alt(base);
+                }
+                bases.append(base);
+                matches++;
+                if (altHaplotype && position == HET_DELETION && bases.length() < READ_LENGTH) {
+                    cigar.append(matches).append('M').append(DELETION_LENGTH).append('D');
+                    matches = 0;
+                    position += DELETION_LENGTH;
+                }
+                position++;
+            }
+            cigar.append(matches).append('M');
+
+            final SAMRecord read = new SAMRecord(header);
+            read.setReadName("read" + index);
+            read.setReferenceIndex(0);
+            read.setAlignmentStart(start);
+            read.setMappingQuality(60);
+            read.setCigarString(cigar.toString());
+            read.setReadString(bases.toString());
+            final byte[] qualities = new byte[READ_LENGTH];
+            Arrays.fill(qualities, (byte) 30);
+            read.setBaseQualities(qualities);
+            read.setReadNegativeStrandFlag(index % 4 >= 2);
+            read.setAttribute(SAMRecord.READ_GROUP_ID, READ_GROUP);
+
+            final SamRecordWritable writable = new SamRecordWritable();
+            writable.set(read);
+            reads.add(writable);
+        }
+        return reads;
+    }
+
+    private HaplotypeCallerOptions options(final int threads, final boolean gvcf) throws IOException {
+        final File input = folder.newFile();
+        try (Writer writer = new FileWriter(input)) {
+            writer.write(new File(folder.getRoot(), "input.bam").toURI().toString() + "\n");
+        }
+        final List<String> args = new ArrayList<>(Arrays.asList("-i", input.getAbsolutePath(), "-o",
+                folder.getRoot().getAbsolutePath(), "-r", "reference", "-t", String.valueOf(threads)));
+        if (gvcf) {
+            args.add("-f");
+        }
+        final HaplotypeCallerOptions options = new HaplotypeCallerOptions();
+        options.parse(args.toArray(new String[args.size()]));
+        return options;
+    }
+
+    /**
+     * calls the whole chromosome as one window and returns the encoded records
+     */
+    private List<String> callWindow(final int threads, final boolean gvcf) throws IOException {
+        final SAMFileHeader header = header();
+        final HaplotypeCallerTraversal traversal = new HaplotypeCallerTraversal(null, options(threads, gvcf), header);
+        final VCFEncoder encoder = new VCFEncoder(traversal.getVCFHeader(), true, false);
+        final List<String> records = new ArrayList<>();
+        final GaeaVariantContextWriter writer = new GaeaVariantContextWriter() {
+            @Override
+            public void write(final VariantContext context) {
+                records.add(encoder.encode(context));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try {
+            final Window win = new Window(CHR, 0, 1, CHR_LENGTH);
+            traversal.dataSourceReset(win, reads(header), chromosome(), new RefMetaDataTracker());
+            traversal.traverse(writer, win);
+            traversal.clear();
+        } finally {
+            traversal.close();
+        }
+        return records;
+    }
+
+    private void checkParallelMatchesSerial(final boolean gvcf) throws IOException {
+        final List<String> serial = callWindow(1, gvcf);
+        assertFalse(serial.isEmpty());
+        assertEquals(serial, callWindow(1, gvcf));
+        assertEquals(serial, callWindow(4, gvcf));
+    }
+
+    @Test
+    public void testParallelMatchesSerialVcf() throws IOException {
+        checkParallelMatchesSerial(false);
+    }
+
+    @Test
+    public void testParallelMatchesSerialGvcf() throws IOException {
+        checkParallelMatchesSerial(true);
+    }
+
+    @Test
+    public void testHighQDJitterIsSiteSeeded() {
+        final VariantContext vc = new VariantContextBuilder("test", CHR, 100, 100,
+                Arrays.asList(Allele.create("A", true), Allele.create("C"))).make();
+        final double first = QualByDepth.fixTooHighQD(50, vc);
+        // draws from the shared generator, as other regions or threads would, don't change the jitter
+        GvcfMathUtils.getRandomGenerator().nextGaussian();
+        assertEquals(first, QualByDepth.fixTooHighQD(50, vc), 0);
+        assertEquals(20.0, QualByDepth.fixTooHighQD(20, vc), 0);
+    }
+}
@@ -0,0 +1,113 @@
+package org.bgi.flexlab.gaea.tools.haplotypecaller.pairhmm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FlatLoglessPairHMMTest {
+    // the float pass is compared in log10 space, like the native implementation against LOGLESS_CACHING
+    private static final double ABSOLUTE_TOLERANCE = 1e-3;
+    private static final double RELATIVE_TOLERANCE = 1e-4;
+
+    private static void assertLikelihoodsEqual(final double[][] expected, final double[][] actual) {
+        for (int r = 0; r < expected.length; r++) {
+            for (int h = 0; h < expected[r].length; h++) {
+                final double tolerance = Math.max(ABSOLUTE_TOLERANCE, RELATIVE_TOLERANCE * Math.abs(expected[r][h]));
+                assertEquals("read " + r + " haplotype " + h, expected[r][h], actual[r][h], tolerance);
+            }
+        }
+    }
+
+    private static double[][] loglessLikelihoods(final PairHMMTestCase testCase) {
+        final LoglessPairHMM hmm = new LoglessPairHMM();
+        hmm.initialize(testCase.maxReadLength(), testCase.maxHaplotypeLength());
+        final double[][] likelihoods = new double[testCase.readBases.length][testCase.haplotypes.length];
+        for (int r = 0; r < testCase.readBases.length; r++) {
+            for (int h = 0; h < testCase.haplotypes.length; h++) {
+                // every pair from scratch, no cached rows or columns
+                likelihoods[r][h] = hmm.computeReadLikelihoodGivenHaplotypeLog10(testCase.haplotypes[h],
+                        testCase.readBases[r], testCase.readQuals[r], testCase.insertionGOP[r],
+                        testCase.deletionGOP[r], testCase.overallGCP[r], true, null);
+            }
+        }
+        return likelihoods;
+    }
+
+    private static void assertMatchesLogless(final PairHMMTestCase testCase) {
+        final FlatLoglessPairHMM hmm = new FlatLoglessPairHMM();
+        hmm.initialize(testCase.maxReadLength(), testCase.maxHaplotypeLength());
+        assertLikelihoodsEqual(loglessLikelihoods(testCase), testCase.computeLikelihoods(hmm, testCase.sortedHaplotypes()));
+    }
+
+    @Test
+    public void testRandomRegionsMatchLogless() {
+        final Random random = new Random(13);
+        for (int n = 0; n < 20; n++) {
+            final int readLength = 20 + random.nextInt(130);
+            final int haplotypeLength = readLength + random.nextInt(200);
+            assertMatchesLogless(PairHMMTestCase.random(random, 1 + random.nextInt(20), 1 + random.nextInt(16),
+                    readLength, haplotypeLength));
+        }
+    }
+
+    @Test
+    public void testSharedPrefixHaplotypes() {
+        // many SNP haplotypes of one length, so most columns come from the previous haplotype
+        final Random random = new Random(29);
+        final PairHMMTestCase snps = PairHMMTestCase.random(random, 10, 32, 100, 300);
+        final byte[] reference = snps.haplotypes[0];
+        for (int h = 1; h < snps.haplotypes.length; h++) {
+            final byte[] haplotype = reference.clone();
+            haplotype[random.nextInt(haplotype.length)] = 'A';
+            haplotype[random.nextInt(haplotype.length)] = 'T';
+            snps.haplotypes[h] = haplotype;
+        }
+        assertMatchesLogless(snps);
+    }
+
+    @Test
+    public void testVisitOrderDoesNotChangeResults() {
+        final Random random = new Random(41);
+        final PairHMMTestCase testCase = PairHMMTestCase.random(random, 8, 12, 80, 200);
+        final int[] sorted = testCase.sortedHaplotypes();
+        final int[] reversed = new int[sorted.length];
+        for (int h = 0; h < sorted.length; h++) {
+            reversed[h] = sorted[sorted.length - 1 - h];
+        }
+
+        final FlatLoglessPairHMM hmm = new FlatLoglessPairHMM();
+        hmm.initialize(testCase.maxReadLength(), testCase.maxHaplotypeLength());
+        final double[][] sortedLikelihoods = testCase.computeLikelihoods(hmm, sorted);
+        final double[][] reversedLikelihoods = testCase.computeLikelihoods(hmm, reversed);
+        for (int r = 0; r < sortedLikelihoods.length; r++) {
+            for (int h = 0; h < sortedLikelihoods[r].length; h++) {
+                assertEquals(sortedLikelihoods[r][h], reversedLikelihoods[r][h], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testUnderflowFallsBackToDouble() {
+        // a long high quality read against an unrelated haplotype is far below MIN_ACCEPTED in float
+        final Random random = new Random(53);
+        final byte[] haplotype = PairHMMTestCase.randomBases(random, 400);
+        final byte[] read = PairHMMTestCase.randomBases(random, 250);
+        final byte[] quals = PairHMMTestCase.filled(read.length, (byte) 40);
+        final byte[] gop = PairHMMTestCase.filled(read.length, (byte) 45);
+        final byte[] gcp = PairHMMTestCase.filled(read.length, (byte) 10);
+
+        final LoglessPairHMM logless = new LoglessPairHMM();
+        logless.initialize(read.length, haplotype.length);
+        final double expected = logless.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read, quals, gop, gop,
+                gcp, true, null);
+        assertTrue(expected < Math.log10(FlatLoglessPairHMM.MIN_ACCEPTED) - FlatLoglessPairHMM.INITIAL_CONDITION_LOG10);
+
+        final FlatLoglessPairHMM flat = new FlatLoglessPairHMM();
+        flat.initialize(read.length, haplotype.length);
+        assertEquals(expected, flat.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read, quals, gop, gop, gcp,
+                true, null), 0.0);
+    }
+}
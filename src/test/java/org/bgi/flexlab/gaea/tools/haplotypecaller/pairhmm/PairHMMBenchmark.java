@@ -0,0 +1,65 @@
+package org.bgi.flexlab.gaea.tools.haplotypecaller.pairhmm;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pure java PairHMM implementations on one active region, run with the JMH runner from the test classpath:
+ * java -cp ... org.openjdk.jmh.Main PairHMMBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PairHMMBenchmark {
+    @Param({"100", "150"})
+    public int readLength;
+
+    @Param({"8", "32"})
+    public int haplotypeNumber;
+
+    private PairHMMTestCase testCase;
+    private int[] sorted;
+    private int[] unsorted;
+    private LoglessPairHMM logless;
+    private FlatLoglessPairHMM flat;
+
+    @Setup
+    public void setUp() {
+        testCase = PairHMMTestCase.random(new Random(7), 200, haplotypeNumber, readLength, readLength + 300);
+        sorted = testCase.sortedHaplotypes();
+        unsorted = new int[haplotypeNumber];
+        for (int h = 0; h < haplotypeNumber; h++) {
+            unsorted[h] = h;
+        }
+
+        logless = new LoglessPairHMM();
+        logless.initialize(testCase.maxReadLength(), testCase.maxHaplotypeLength());
+        flat = new FlatLoglessPairHMM();
+        flat.initialize(testCase.maxReadLength(), testCase.maxHaplotypeLength());
+    }
+
+    @Benchmark
+    public double[][] loglessCaching() {
+        return testCase.computeLikelihoods(logless, unsorted);
+    }
+
+    @Benchmark
+    public double[][] flatLoglessCaching() {
+        return testCase.computeLikelihoods(flat, sorted);
+    }
+}
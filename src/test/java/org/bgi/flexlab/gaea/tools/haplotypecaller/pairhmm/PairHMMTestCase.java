@@ -0,0 +1,149 @@
+package org.bgi.flexlab.gaea.tools.haplotypecaller.pairhmm;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Random reads and haplotypes of one active region, shared by the PairHMM tests and benchmarks.
+ *
+ * Haplotypes are variants of one reference: SNPs keep the length, so haplotypes of the same length share prefixes,
+ * and insertions or deletions change it. Reads are sampled from the haplotypes with sequencing errors.
+ */
+final class PairHMMTestCase {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    final byte[][] haplotypes;
+    final byte[][] readBases;
+    final byte[][] readQuals;
+    final byte[][] insertionGOP;
+    final byte[][] deletionGOP;
+    final byte[][] overallGCP;
+
+    private PairHMMTestCase(final int readNumber, final int haplotypeNumber) {
+        haplotypes = new byte[haplotypeNumber][];
+        readBases = new byte[readNumber][];
+        readQuals = new byte[readNumber][];
+        insertionGOP = new byte[readNumber][];
+        deletionGOP = new byte[readNumber][];
+        overallGCP = new byte[readNumber][];
+    }
+
+    static PairHMMTestCase random(final Random random, final int readNumber, final int haplotypeNumber,
+                                  final int readLength, final int haplotypeLength) {
+        final PairHMMTestCase testCase = new PairHMMTestCase(readNumber, haplotypeNumber);
+
+        final byte[] reference = randomBases(random, haplotypeLength);
+        testCase.haplotypes[0] = reference;
+        for (int h = 1; h < haplotypeNumber; h++) {
+            final byte[] haplotype = reference.clone();
+            final int position = random.nextInt(haplotypeLength);
+            switch (random.nextInt(4)) {
+                case 0:
+                    // insertion of one to three bases
+                    final byte[] inserted = randomBases(random, 1 + random.nextInt(3));
+                    final byte[] longer = new byte[haplotypeLength + inserted.length];
+                    System.arraycopy(reference, 0, longer, 0, position);
+                    System.arraycopy(inserted, 0, longer, position, inserted.length);
+                    System.arraycopy(reference, position, longer, position + inserted.length, haplotypeLength - position);
+                    testCase.haplotypes[h] = longer;
+                    break;
+                case 1:
+                    // deletion of one to three bases
+                    final int deleted = Math.min(1 + random.nextInt(3), haplotypeLength - position);
+                    final byte[] shorter = new byte[haplotypeLength - deleted];
+                    System.arraycopy(reference, 0, shorter, 0, position);
+                    System.arraycopy(reference, position + deleted, shorter, position, shorter.length - position);
+                    testCase.haplotypes[h] = shorter;
+                    break;
+                default:
+                    haplotype[position] = BASES[(Arrays.binarySearch(BASES, haplotype[position]) + 1 + random.nextInt(3)) % 4];
+                    testCase.haplotypes[h] = haplotype;
+            }
+        }
+
+        for (int r = 0; r < readNumber; r++) {
+            final byte[] source = testCase.haplotypes[random.nextInt(haplotypeNumber)];
+            final int length = Math.min(readLength, source.length);
+            final int start = random.nextInt(source.length - length + 1);
+            final byte[] bases = Arrays.copyOfRange(source, start, start + length);
+            final byte[] quals = new byte[length];
+            for (int i = 0; i < length; i++) {
+                quals[i] = (byte) (PairHMM.BASE_QUALITY_SCORE_THRESHOLD + random.nextInt(23));
+                if (random.nextInt(100) == 0) {
+                    bases[i] = BASES[random.nextInt(4)];
+                }
+                if (random.nextInt(200) == 0) {
+                    bases[i] = 'N';
+                }
+            }
+            testCase.readBases[r] = bases;
+            testCase.readQuals[r] = quals;
+            testCase.insertionGOP[r] = filled(length, (byte) 45);
+            testCase.deletionGOP[r] = filled(length, (byte) 45);
+            testCase.overallGCP[r] = filled(length, (byte) 10);
+        }
+        return testCase;
+    }
+
+    static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bases[i] = BASES[random.nextInt(4)];
+        }
+        return bases;
+    }
+
+    static byte[] filled(final int length, final byte value) {
+        final byte[] bytes = new byte[length];
+        Arrays.fill(bytes, value);
+        return bytes;
+    }
+
+    int maxReadLength() {
+        int max = 0;
+        for (final byte[] read : readBases) {
+            max = Math.max(max, read.length);
+        }
+        return max;
+    }
+
+    int maxHaplotypeLength() {
+        int max = 0;
+        for (final byte[] haplotype : haplotypes) {
+            max = Math.max(max, haplotype.length);
+        }
+        return max;
+    }
+
+    /**
+     * Haplotype indexes in the order FlatLoglessPairHMM visits them.
+     */
+    int[] sortedHaplotypes() {
+        final Integer[] order = new Integer[haplotypes.length];
+        for (int h = 0; h < order.length; h++) {
+            order[h] = h;
+        }
+        Arrays.sort(order, (a, b) -> FlatLoglessPairHMM.HAPLOTYPE_ORDER.compare(haplotypes[a], haplotypes[b]));
+        final int[] sorted = new int[order.length];
+        for (int h = 0; h < order.length; h++) {
+            sorted[h] = order[h];
+        }
+        return sorted;
+    }
+
+    /**
+     * Likelihoods of every read against every haplotype, haplotypes visited in the given order with the prefix
+     * reuse of {@link PairHMM#computeLog10Likelihoods}.
+     */
+    double[][] computeLikelihoods(final PairHMM hmm, final int[] order) {
+        final double[][] likelihoods = new double[readBases.length][haplotypes.length];
+        for (int r = 0; r < readBases.length; r++) {
+            for (int k = 0; k < order.length; k++) {
+                final byte[] next = k == order.length - 1 ? null : haplotypes[order[k + 1]];
+                likelihoods[r][order[k]] = hmm.computeReadLikelihoodGivenHaplotypeLog10(haplotypes[order[k]],
+                        readBases[r], readQuals[r], insertionGOP[r], deletionGOP[r], overallGCP[r], k == 0, next);
+            }
+        }
+        return likelihoods;
+    }
+}
@@ -0,0 +1,468 @@
+package org.bgi.flexlab.gaea.tools.jointcalling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.GvcfRecordWritable;
+import org.bgi.flexlab.gaea.data.structure.location.GenomeLocationParser;
+import org.bgi.flexlab.gaea.data.structure.reference.ChromosomeInformation;
+import org.bgi.flexlab.gaea.data.structure.reference.ChromosomeInformationShare;
+import org.bgi.flexlab.gaea.tools.jointcalling.util.GvcfMathUtils;
+import org.bgi.flexlab.gaea.tools.jointcalling.util.MultipleVCFHeaderForJointCalling;
+import org.bgi.flexlab.gaea.tools.mapreduce.jointcalling.JointCallingOptions;
+import org.bgi.flexlab.gaea.util.GaeaVCFConstants;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import htsjdk.tribble.readers.AsciiLineReader;
+import htsjdk.tribble.readers.AsciiLineReaderIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.VCFEncoder;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+
+/**
+ * calling only the candidate positions of a window must give the same records
+ * as merging and genotyping every base of it, and genotyping gVCF shards
+ * pre-merged by GvcfCombineEngine must give the same records as genotyping the
+ * inputs.
+ */
+public class JointCallingEngineTest {
+	private final static String CHR = "chr1";
+	private final static int CHR_LENGTH = 3000;
+	private final static int WINDOW_SIZE = 1000;
+	// records lie in windows 0 to 2
+	private final static int WINDOW_NUMBER = 3;
+	private final static int MERGE_BATCH_SIZE = 2;
+
+	private final static String HEADER = "##fileformat=VCFv4.2\n"
+			+ "##ALT=<ID=NON_REF,Description=\"Represents any possible alternative allele at this location\">\n"
+			+ "##FORMAT=<ID=AD,Number=R,Type=Integer,Description=\"Allelic depths\">\n"
+			+ "##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Read depth\">\n"
+			+ "##FORMAT=<ID=GQ,Number=1,Type=Integer,Description=\"Genotype quality\">\n"
+			+ "##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n"
+			+ "##FORMAT=<ID=MIN_DP,Number=1,Type=Integer,Description=\"Minimum DP of the block\">\n"
+			+ "##FORMAT=<ID=PL,Number=G,Type=Integer,Description=\"Phred-scaled likelihoods\">\n"
+			+ "##FORMAT=<ID=SB,Number=4,Type=Integer,Description=\"Strand bias\">\n"
+			+ "##INFO=<ID=BaseQRankSum,Number=1,Type=Float,Description=\"Base quality rank sum\">\n"
+			+ "##INFO=<ID=ClippingRankSum,Number=1,Type=Float,Description=\"Clipping rank sum\">\n"
+			+ "##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Read depth\">\n"
+			+ "##INFO=<ID=END,Number=1,Type=Integer,Description=\"End of the block\">\n"
+			+ "##INFO=<ID=MLEAC,Number=A,Type=Integer,Description=\"Maximum likelihood allele count\">\n"
+			+ "##INFO=<ID=MLEAF,Number=A,Type=Float,Description=\"Maximum likelihood allele frequency\">\n"
+			+ "##INFO=<ID=MQRankSum,Number=1,Type=Float,Description=\"Mapping quality rank sum\">\n"
+			+ "##INFO=<ID=RAW_MQ,Number=1,Type=Float,Description=\"Raw mapping quality\">\n"
+			+ "##INFO=<ID=ReadPosRankSum,Number=1,Type=Float,Description=\"Read position rank sum\">\n"
+			+ "##contig=<ID=" + CHR + ",length=" + CHR_LENGTH + ">\n"
+			+ "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT";
+
+	private final static String[] SAMPLES = { "S1", "S2", "S3" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final String reference = randomSequence(new Random(20170601), CHR_LENGTH);
+
+	private static String randomSequence(Random random, int length) {
+		StringBuilder sequence = new StringBuilder(length);
+		for (int i = 0; i < length; i++)
+			sequence.append("ACGT".charAt(random.nextInt(4)));
+		return sequence.toString();
+	}
+
+	private static char transition(char base) {
+		return base == 'A' ? 'G' : base == 'G' ? 'A' : base == 'C' ? 'T' : 'C';
+	}
+
+	private static char transversion(char base) {
+		return base == 'A' ? 'C' : base == 'C' ? 'A' : base == 'G' ? 'T' : 'G';
+	}
+
+	private char base(int position) {
+		return reference.charAt(position - 1);
+	}
+
+	private String block(int start, int end, int depth) {
+		int gq = Math.min(99, depth * 3);
+		return CHR + "\t" + start + "\t.\t" + base(start) + "\t<NON_REF>\t.\t.\tEND=" + end
+				+ "\tGT:DP:GQ:MIN_DP:PL\t0/0:" + depth + ":" + gq + ":" + (depth - 2) + ":0," + gq + "," + (gq * 15);
+	}
+
+	private String snp(int position, boolean het, char alt) {
+		String alleles = base(position) + "\t" + alt + ",<NON_REF>";
+		if (het)
+			return CHR + "\t" + position + "\t.\t" + alleles + "\t400.77\t.\tBaseQRankSum=0.512;ClippingRankSum=0.000;"
+					+ "DP=30;MLEAC=1,0;MLEAF=0.500,0.00;MQRankSum=0.000;RAW_MQ=108000.00;ReadPosRankSum=-0.328"
+					+ "\tGT:AD:DP:GQ:PL:SB\t0/1:15,15,0:30:99:400,0,450,445,490,935:8,7,8,7";
+		return CHR + "\t" + position + "\t.\t" + alleles + "\t900.77\t.\tDP=30;MLEAC=2,0;MLEAF=1.00,0.00;RAW_MQ=108000.00"
+				+ "\tGT:AD:DP:GQ:PL:SB\t1/1:0,30,0:30:90:900,90,0,905,95,1000:0,0,15,15";
+	}
+
+	private String deletion(int position, int length) {
+		return CHR + "\t" + position + "\t.\t" + reference.substring(position - 1, position - 1 + length) + "\t"
+				+ base(position) + ",<NON_REF>\t350.73\t.\tBaseQRankSum=-0.210;ClippingRankSum=0.000;"
+				+ "DP=28;MLEAC=1,0;MLEAF=0.500,0.00;MQRankSum=0.000;RAW_MQ=100800.00;ReadPosRankSum=0.415"
+				+ "\tGT:AD:DP:GQ:PL:SB\t0/1:14,14,0:28:99:350,0,420,392,462,854:7,7,7,7";
+	}
+
+	/**
+	 * one gVCF input, a sample or a pre-merged shard of several
+	 */
+	private static class Input {
+		private final String[] samples;
+		private final List<String> lines;
+
+		Input(List<String> lines, String... samples) {
+			this.samples = samples;
+			this.lines = lines;
+		}
+	}
+
+	/**
+	 * single sample inputs. blocks of different samples overlap, deletions
+	 * span the window edges or cover variants of other samples, and S1 and S2,
+	 * merged into one batch, have different SNPs at 1500.
+	 */
+	private List<Input> inputs() {
+		List<Input> inputs = new ArrayList<Input>();
+		inputs.add(new Input(Arrays.asList(block(900, 996, 30), deletion(997, 5), block(998, 1499, 32),
+				snp(1500, true, transition(base(1500))), block(1501, 1995, 31), deletion(1996, 5),
+				block(1997, 2100, 30)), "S1"));
+		inputs.add(new Input(Arrays.asList(block(900, 1200, 25), snp(1201, true, transition(base(1201))),
+				block(1202, 1499, 27), snp(1500, true, transversion(base(1500))), block(1501, 1699, 28),
+				snp(1700, false, transition(base(1700))), block(1701, 2100, 26)), "S2"));
+		inputs.add(new Input(Arrays.asList(block(900, 1498, 20), deletion(1499, 3), block(1500, 1998, 22),
+				snp(1999, true, transition(base(1999))), block(2000, 2100, 21)), "S3"));
+		return inputs;
+	}
+
+	private static String headerText(String... samples) {
+		StringBuilder text = new StringBuilder(HEADER);
+		for (String sample : samples)
+			text.append('\t').append(sample);
+		return text.append('\n').toString();
+	}
+
+	private static VCFCodec codec(String... samples) throws IOException {
+		VCFCodec codec = new VCFCodec();
+		codec.readActualHeader(new AsciiLineReaderIterator(new AsciiLineReader(
+				new ByteArrayInputStream(headerText(samples).getBytes()))));
+		return codec;
+	}
+
+	private static VCFHeader header(String... samples) throws IOException {
+		return (VCFHeader) new VCFCodec().readActualHeader(new AsciiLineReaderIterator(new AsciiLineReader(
+				new ByteArrayInputStream(headerText(samples).getBytes()))));
+	}
+
+	private GenomeLocationParser parser;
+	private ChromosomeInformationShare ref;
+
+	@Before
+	public void setUp() throws IOException {
+		parser = new GenomeLocationParser(header(SAMPLES).getSequenceDictionary());
+
+		ChromosomeInformation information = new ChromosomeInformation();
+		information.setBinarySequence(reference);
+		File file = folder.newFile();
+		information.outputChrInformation(file.getAbsolutePath());
+		ref = new ChromosomeInformationShare();
+		ref.loadChromosome(file.getAbsolutePath());
+		ref.setChromosomeName(CHR);
+		ref.setLength(CHR_LENGTH);
+	}
+
+	private static int windowStart(int winNum) {
+		return Math.max(winNum * WINDOW_SIZE, 1);
+	}
+
+	private static int windowEnd(int winNum) {
+		return winNum * WINDOW_SIZE + WINDOW_SIZE - 1;
+	}
+
+	/**
+	 * engine over the inputs written as gVCF files, as the reducer sets it up
+	 */
+	private JointCallingEngine engine(List<Input> inputs, boolean includeNonVariant) throws IOException {
+		File list = folder.newFile();
+		List<Path> paths = new ArrayList<Path>();
+		try (Writer listWriter = new FileWriter(list)) {
+			for (Input input : inputs) {
+				File gvcf = folder.newFile();
+				try (Writer writer = new FileWriter(gvcf)) {
+					writer.write(headerText(input.samples));
+					for (String line : input.lines)
+						writer.write(line + "\n");
+				}
+				listWriter.write(gvcf.toURI().toString() + "\n");
+				paths.add(new Path(gvcf.toURI().toString()));
+			}
+		}
+
+		List<String> args = new ArrayList<String>(Arrays.asList("-i", list.getAbsolutePath(), "-o",
+				folder.getRoot().getAbsolutePath(), "-r", "reference", "-w", String.valueOf(WINDOW_SIZE)));
+		if (includeNonVariant)
+			args.add("-I");
+		JointCallingOptions options = new JointCallingOptions();
+		options.parse(args.toArray(new String[args.size()]));
+
+		MultipleVCFHeaderForJointCalling headers = new MultipleVCFHeaderForJointCalling();
+		headers.getHeaders(paths);
+		String[] sampleArray = headers.getSamplesAsInputOrder();
+		assertEquals(inputs.size(), sampleArray.length);
+		for (int i = 0; i < inputs.size(); i++)
+			assertEquals(inputs.get(i).samples[0], sampleArray[i]);
+
+		JointCallingEngine engine = new JointCallingEngine(options, parser, header(SAMPLES), headers, sampleArray);
+		engine.init(null);
+		return engine;
+	}
+
+	/**
+	 * serialized records the mapper sends to one window, sorted by start
+	 */
+	private static class Window {
+		private final DataOutputBuffer data = new DataOutputBuffer();
+		private int size = 0;
+
+		/**
+		 * the window values as the reducer iterates them, one reused writable
+		 */
+		Iterator<GvcfRecordWritable> values() {
+			final DataInputBuffer input = new DataInputBuffer();
+			input.reset(data.getData(), data.getLength());
+			final GvcfRecordWritable writable = new GvcfRecordWritable();
+			return new Iterator<GvcfRecordWritable>() {
+				private int read = 0;
+
+				@Override
+				public boolean hasNext() {
+					return read < size;
+				}
+
+				@Override
+				public GvcfRecordWritable next() {
+					try {
+						writable.readFields(input);
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+					read++;
+					return writable;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+
+	/**
+	 * window winNum of inputs, the first of them has input index firstIndex
+	 */
+	private static Window window(List<Input> inputs, int firstIndex, int winNum) throws IOException {
+		final List<VariantContext> records = new ArrayList<VariantContext>();
+		final List<Integer> indexes = new ArrayList<Integer>();
+		for (int i = 0; i < inputs.size(); i++) {
+			VCFCodec codec = codec(inputs.get(i).samples);
+			for (String line : inputs.get(i).lines) {
+				VariantContext vc = codec.decode(line);
+				if (vc.getStart() / WINDOW_SIZE <= winNum && vc.getEnd() / WINDOW_SIZE >= winNum) {
+					records.add(vc);
+					indexes.add(firstIndex + i);
+				}
+			}
+		}
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < records.size(); i++)
+			order.add(i);
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(records.get(a).getStart(), records.get(b).getStart());
+			}
+		});
+
+		Window window = new Window();
+		GvcfRecordWritable writable = new GvcfRecordWritable();
+		for (int index : order) {
+			writable.set(records.get(index), indexes.get(index));
+			writable.write(window.data);
+			window.size++;
+		}
+		return window;
+	}
+
+	private List<String> eventDriven(JointCallingEngine engine, List<Input> inputs) throws IOException {
+		GvcfMathUtils.resetRandomGenerator();
+		VCFEncoder encoder = new VCFEncoder(engine.getVCFHeader(), true, false);
+		List<String> calls = new ArrayList<String>();
+		for (int winNum = 0; winNum < WINDOW_NUMBER; winNum++) {
+			engine.startWindow(window(inputs, 0, winNum).values(), CHR, windowStart(winNum), windowEnd(winNum), ref);
+			VariantContext vc;
+			while ((vc = engine.nextVariantContext()) != null)
+				calls.add(encoder.encode(vc));
+		}
+		return calls;
+	}
+
+	/**
+	 * every single sample input takes the record starting at the position if
+	 * any, otherwise the first record covering it, and every base of the
+	 * window is called
+	 */
+	private List<String> perBase(JointCallingEngine engine, List<Input> inputs) throws IOException {
+		GvcfMathUtils.resetRandomGenerator();
+		VCFEncoder encoder = new VCFEncoder(engine.getVCFHeader(), true, false);
+		List<String> calls = new ArrayList<String>();
+		for (int winNum = 0; winNum < WINDOW_NUMBER; winNum++) {
+			List<List<VariantContext>> records = new ArrayList<List<VariantContext>>();
+			for (int i = 0; i < inputs.size(); i++)
+				records.add(new ArrayList<VariantContext>());
+			Iterator<GvcfRecordWritable> values = window(inputs, 0, winNum).values();
+			while (values.hasNext()) {
+				GvcfRecordWritable record = values.next();
+				records.get(record.getSampleIndex()).add(
+						record.getVariantContext(CHR, inputs.get(record.getSampleIndex()).samples));
+			}
+
+			for (int position = windowStart(winNum); position <= windowEnd(winNum); position++) {
+				List<VariantContext> vcs = new ArrayList<VariantContext>();
+				for (List<VariantContext> input : records) {
+					VariantContext covering = null;
+					for (VariantContext vc : input) {
+						if (vc.getStart() == position) {
+							covering = vc;
+							break;
+						}
+						if (covering == null && vc.getStart() <= position && vc.getEnd() >= position)
+							covering = vc;
+					}
+					if (covering != null)
+						vcs.add(covering);
+				}
+				VariantContext vc = engine.variantCalling(vcs, parser.createGenomeLocation(CHR, position), ref);
+				if (vc != null)
+					calls.add(encoder.encode(vc));
+			}
+		}
+		return calls;
+	}
+
+	/**
+	 * one pre-merge pass, as JointCallingPreMergeReducer writes every batch of
+	 * consecutive inputs into a shard
+	 */
+	private List<Input> preMerge(List<Input> inputs) throws IOException {
+		String[][] sampleLists = new String[inputs.size()][];
+		for (int i = 0; i < inputs.size(); i++)
+			sampleLists[i] = inputs.get(i).samples;
+		GvcfCombineEngine combineEngine = new GvcfCombineEngine(parser, false, sampleLists);
+
+		List<Input> shards = new ArrayList<Input>();
+		for (int first = 0; first < inputs.size(); first += MERGE_BATCH_SIZE) {
+			List<Input> batch = inputs.subList(first, Math.min(first + MERGE_BATCH_SIZE, inputs.size()));
+			List<String> samples = new ArrayList<String>();
+			for (Input input : batch)
+				samples.addAll(Arrays.asList(input.samples));
+			String[] shardSamples = samples.toArray(new String[samples.size()]);
+
+			VCFEncoder encoder = new VCFEncoder(header(shardSamples), true, false);
+			List<String> lines = new ArrayList<String>();
+			for (int winNum = 0; winNum < WINDOW_NUMBER; winNum++) {
+				for (VariantContext vc : combineEngine.combine(window(batch, first, winNum).values(), CHR,
+						windowStart(winNum), windowEnd(winNum), ref))
+					lines.add(encoder.encode(vc));
+			}
+			shards.add(new Input(lines, shardSamples));
+		}
+		return shards;
+	}
+
+	private void checkEventDrivenMatchesPerBase(boolean includeNonVariant) throws IOException {
+		List<Input> inputs = inputs();
+		JointCallingEngine engine = engine(inputs, includeNonVariant);
+		List<String> expected = perBase(engine, inputs);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, eventDriven(engine, inputs));
+		// windows of the same engine start from a clean state
+		assertEquals(expected, eventDriven(engine, inputs));
+	}
+
+	private void checkPreMergeMatchesDirect(boolean includeNonVariant) throws IOException {
+		List<Input> inputs = inputs();
+		List<String> expected = eventDriven(engine(inputs, includeNonVariant), inputs);
+		assertFalse(expected.isEmpty());
+
+		List<Input> shards = preMerge(inputs);
+		assertTrue(shards.size() > 1 && shards.size() < inputs.size());
+		assertEquals(expected, eventDriven(engine(shards, includeNonVariant), shards));
+	}
+
+	@Test
+	public void testVariantsOnly() throws IOException {
+		checkEventDrivenMatchesPerBase(false);
+	}
+
+	@Test
+	public void testIncludeNonVariant() throws IOException {
+		checkEventDrivenMatchesPerBase(true);
+	}
+
+	@Test
+	public void testPreMergeVariantsOnly() throws IOException {
+		checkPreMergeMatchesDirect(false);
+	}
+
+	@Test
+	public void testPreMergeIncludeNonVariant() throws IOException {
+		checkPreMergeMatchesDirect(true);
+	}
+
+	@Test
+	public void testPreMergeCutsBlocksAtVariants() throws IOException {
+		List<Input> shards = preMerge(inputs());
+		VCFCodec codec = codec(shards.get(0).samples);
+		List<Integer> variantStarts = Arrays.asList(997, 1201, 1500, 1700, 1996);
+		boolean merged = false;
+		int blockStarts = 0;
+		for (String line : shards.get(0).lines) {
+			VariantContext vc = codec.decode(line);
+			if (!vc.getAlternateAllele(0).equals(GaeaVCFConstants.NON_REF_SYMBOLIC_ALLELE)) {
+				// the SNPs of S1 and S2 at 1500 are one record
+				if (vc.getStart() == 1500)
+					merged = vc.getNAlleles() == 4;
+				continue;
+			}
+			if (variantStarts.contains(vc.getStart()))
+				blockStarts++;
+			// inside its deletions S1 is left to the deletion, except where its own block starts
+			if (vc.getStart() > 998 && vc.getStart() <= 1001 || vc.getStart() > 1997 && vc.getStart() <= 2000)
+				assertTrue(vc.getGenotype("S1").isNoCall());
+		}
+		assertTrue(merged);
+		// the block of the other sample of the batch is cut at 997, 1201, 1700 and 1996
+		assertEquals(4, blockStarts);
+	}
+}
@@ -0,0 +1,166 @@
+package org.bgi.flexlab.gaea.tools.markduplicate;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * reads of a key come back in input order with their read ends index, from
+ * memory or from the spill file.
+ */
+public class DuplicateRecordBufferTest {
+    private static final int MAX_RECORDS_IN_RAM = 10;
+
+    private SAMFileHeader header;
+
+    @Before
+    public void setUp() {
+        SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+        dictionary.addSequence(new SAMSequenceRecord("chr1", 1000000));
+        header = new SAMFileHeader();
+        header.setSequenceDictionary(dictionary);
+    }
+
+    private SAMRecord read(int i) {
+        SAMRecord rec = new SAMRecord(header);
+        rec.setReadName("read" + i);
+        rec.setReferenceIndex(0);
+        rec.setAlignmentStart(1000 + i);
+        rec.setMappingQuality(i % 61);
+        rec.setCigarString((i % 3 == 0 ? "2S48M" : "50M"));
+        byte[] bases = new byte[50];
+        byte[] qualities = new byte[50];
+        for (int j = 0; j < bases.length; j++) {
+            bases[j] = (byte) "ACGT".charAt((i + j) % 4);
+            qualities[j] = (byte) ((i + j) % 41);
+        }
+        rec.setReadBases(bases);
+        rec.setBaseQualities(qualities);
+        rec.setReadPairedFlag(true);
+        rec.setReadNegativeStrandFlag(i % 2 == 1);
+        rec.setMateReferenceIndex(0);
+        rec.setMateAlignmentStart(1300 + i);
+        rec.setInferredInsertSize(350);
+        rec.setAttribute("RG", "rg" + (i % 2));
+        return rec;
+    }
+
+    private static Set<String> spillFiles() {
+        Set<String> files = new HashSet<>();
+        File[] temporary = new File(System.getProperty("java.io.tmpdir")).listFiles();
+        if (temporary != null) {
+            for (File file : temporary) {
+                if (file.getName().startsWith("markduplicate") && file.getName().endsWith(".spill"))
+                    files.add(file.getName());
+            }
+        }
+        return files;
+    }
+
+    private List<SAMRecord> fill(DuplicateRecordBuffer buffer, int number) throws IOException {
+        List<SAMRecord> records = new ArrayList<>();
+        for (int i = 0; i < number; i++) {
+            SAMRecord rec = read(i);
+            records.add(rec);
+            // read ends indexes repeat for mates
+            buffer.add(rec, i / 2);
+        }
+        return records;
+    }
+
+    /**
+     * SAM text of the visited reads, the spilled reads share one reused record
+     */
+    private List<String> collect(DuplicateRecordBuffer buffer, final List<Integer> indexes)
+            throws IOException, InterruptedException {
+        final List<String> records = new ArrayList<>();
+        buffer.forEach((rec, index) -> {
+            assertSame(header, rec.getHeader());
+            records.add(rec.getSAMString());
+            indexes.add(index);
+        });
+        return records;
+    }
+
+    @Test
+    public void testInMemory() throws IOException, InterruptedException {
+        DuplicateRecordBuffer buffer = new DuplicateRecordBuffer(header, MAX_RECORDS_IN_RAM);
+        List<SAMRecord> records = fill(buffer, MAX_RECORDS_IN_RAM);
+        assertFalse(buffer.isSpilled());
+        assertEquals(MAX_RECORDS_IN_RAM, buffer.size());
+
+        final List<SAMRecord> visited = new ArrayList<>();
+        final List<Integer> indexes = new ArrayList<>();
+        buffer.forEach((rec, index) -> {
+            visited.add(rec);
+            indexes.add(index);
+        });
+        assertEquals(records.size(), visited.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertSame(records.get(i), visited.get(i));
+            assertEquals(i / 2, indexes.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testSpillRoundTrip() throws IOException, InterruptedException {
+        Set<String> before = spillFiles();
+        DuplicateRecordBuffer buffer = new DuplicateRecordBuffer(header, MAX_RECORDS_IN_RAM);
+        int number = MAX_RECORDS_IN_RAM * 5 + 3;
+        List<SAMRecord> records = fill(buffer, number);
+        assertTrue(buffer.isSpilled());
+        assertEquals(number, buffer.size());
+
+        List<Integer> indexes = new ArrayList<>();
+        List<String> reloaded = collect(buffer, indexes);
+        assertEquals(records.size(), reloaded.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(records.get(i).getSAMString(), reloaded.get(i));
+            assertEquals(i / 2, indexes.get(i).intValue());
+        }
+        // the spill file is deleted once the reads are replayed
+        assertFalse(buffer.isSpilled());
+        assertEquals(before, spillFiles());
+
+        // the buffer is reused for the next key
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        List<SAMRecord> next = fill(buffer, 3);
+        assertFalse(buffer.isSpilled());
+        indexes.clear();
+        assertEquals(Arrays.asList(next.get(0).getSAMString(), next.get(1).getSAMString(), next.get(2).getSAMString()),
+                collect(buffer, indexes));
+        assertEquals(Arrays.asList(0, 0, 1), indexes);
+    }
+
+    @Test
+    public void testClearDeletesSpillFile() throws IOException {
+        Set<String> before = spillFiles();
+        DuplicateRecordBuffer buffer = new DuplicateRecordBuffer(header, MAX_RECORDS_IN_RAM);
+        fill(buffer, MAX_RECORDS_IN_RAM + 1);
+        assertTrue(buffer.isSpilled());
+        assertEquals(1, spillFiles().size() - before.size());
+
+        // a failed key is cleared without replaying its reads
+        buffer.clear();
+        assertFalse(buffer.isSpilled());
+        assertEquals(0, buffer.size());
+        assertEquals(before, spillFiles());
+    }
+}
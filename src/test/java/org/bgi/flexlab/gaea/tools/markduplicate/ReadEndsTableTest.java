@@ -0,0 +1,437 @@
+package org.bgi.flexlab.gaea.tools.markduplicate;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.bgi.flexlab.gaea.util.RandomUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * read ends pairing, signatures and cluster marking, and the duplicates of
+ * whole keys against the read ends clusters of the removed MarkDuplicatesFunc.
+ */
+public class ReadEndsTableTest {
+    private static final int READ_LENGTH = 100;
+
+    private SAMFileHeader header;
+
+    @Before
+    public void setUp() {
+        SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+        dictionary.addSequence(new SAMSequenceRecord("chr1", 1000000));
+        dictionary.addSequence(new SAMSequenceRecord("chr2", 1000000));
+        header = new SAMFileHeader();
+        header.setSequenceDictionary(dictionary);
+    }
+
+    private SAMRecord read(String name, int sequence, int start, boolean negative, String cigar, int quality) {
+        SAMRecord rec = new SAMRecord(header);
+        rec.setReadName(name);
+        rec.setReferenceIndex(sequence);
+        rec.setAlignmentStart(start);
+        rec.setMappingQuality(60);
+        rec.setCigarString(cigar);
+        rec.setReadNegativeStrandFlag(negative);
+        byte[] bases = new byte[READ_LENGTH];
+        byte[] qualities = new byte[READ_LENGTH];
+        for (int i = 0; i < READ_LENGTH; i++) {
+            bases[i] = (byte) "ACGT".charAt(i % 4);
+            qualities[i] = (byte) quality;
+        }
+        rec.setReadBases(bases);
+        rec.setBaseQualities(qualities);
+        return rec;
+    }
+
+    private static void setMate(SAMRecord rec, SAMRecord mate, boolean first) {
+        rec.setReadPairedFlag(true);
+        rec.setFirstOfPairFlag(first);
+        rec.setSecondOfPairFlag(!first);
+        rec.setMateReferenceIndex(mate.getReferenceIndex());
+        rec.setMateAlignmentStart(mate.getAlignmentStart());
+        rec.setMateNegativeStrandFlag(mate.getReadNegativeStrandFlag());
+    }
+
+    private List<SAMRecord> pair(String name, int sequence1, int start1, boolean negative1, String cigar1,
+            int sequence2, int start2, boolean negative2, int quality) {
+        SAMRecord read1 = read(name, sequence1, start1, negative1, cigar1, quality);
+        SAMRecord read2 = read(name, sequence2, start2, negative2, READ_LENGTH + "M", quality);
+        setMate(read1, read2, true);
+        setMate(read2, read1, false);
+        return Arrays.asList(read1, read2);
+    }
+
+    private List<SAMRecord> pair(String name, int start1, int start2, int quality) {
+        return pair(name, 0, start1, false, READ_LENGTH + "M", 0, start2, true, quality);
+    }
+
+    /**
+     * mapped read whose mate is unmapped, its mate is in the unmapped key
+     */
+    private SAMRecord singleMapped(String name, int start, boolean negative, int quality) {
+        SAMRecord rec = read(name, 0, start, negative, READ_LENGTH + "M", quality);
+        rec.setReadPairedFlag(true);
+        rec.setFirstOfPairFlag(true);
+        rec.setMateUnmappedFlag(true);
+        rec.setMateReferenceIndex(0);
+        rec.setMateAlignmentStart(start);
+        return rec;
+    }
+
+    private static long signature1(int sequence, int coordinate) {
+        return ((long) sequence << 32) | (coordinate & 0xffffffffL);
+    }
+
+    private static long signature2(byte orientation, int sequence, int coordinate) {
+        return ((long) orientation << 56) | ((long) (sequence + 1) << 32) | (coordinate & 0xffffffffL);
+    }
+
+    @Test
+    public void testSignaturePacking() {
+        ReadEndsTable table = new ReadEndsTable();
+        // forward fragment on chr2, reverse fragment ending at its unclipped end
+        int forward = table.add(read("f", 1, 100, false, READ_LENGTH + "M", 30));
+        int reverse = table.add(read("r", 0, 100, true, "90M10S", 30));
+        // soft clip before the first base gives a negative unclipped start
+        int clipped = table.add(read("c", 0, 2, false, "5S95M", 30));
+        int paired = -1;
+        for (SAMRecord rec : pair("p", 0, 1000, false, "3S97M", 1, 500, true, 30))
+            paired = table.add(rec);
+        assertEquals(4, table.size());
+
+        assertEquals(signature1(1, 100), table.read1Signature(forward));
+        assertEquals(signature2(ReadEnds.F, -1, -1), table.read2Signature(forward));
+        assertEquals(signature1(0, 100 + READ_LENGTH - 1), table.read1Signature(reverse));
+        assertEquals(signature2(ReadEnds.R, -1, -1), table.read2Signature(reverse));
+        assertEquals(signature1(0, -3), table.read1Signature(clipped));
+        assertNotEquals(signature1(0, 3), table.read1Signature(clipped));
+
+        // read1 is the end on the lower sequence, the orientation is read1 then read2
+        assertEquals(signature1(0, 997), table.read1Signature(paired));
+        assertEquals(signature2(ReadEnds.FR, 1, 500 + READ_LENGTH - 1), table.read2Signature(paired));
+    }
+
+    @Test
+    public void testSignaturesEqualOnlyForEqualEnds() {
+        Random random = new Random(11);
+        ReadEndsTable table = new ReadEndsTable();
+        List<String> ends = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int sequence1 = random.nextInt(2);
+            int start1 = 1 + random.nextInt(3);
+            int sequence2 = random.nextInt(2);
+            int start2 = 1 + random.nextInt(3);
+            boolean negative1 = random.nextBoolean();
+            boolean negative2 = random.nextBoolean();
+            int index = -1;
+            for (SAMRecord rec : pair("p" + i, sequence1, start1, negative1, READ_LENGTH + "M", sequence2, start2,
+                    negative2, 30))
+                index = table.add(rec);
+            assertEquals(i, index);
+            ends.add(sequence1 + ":" + start1 + ":" + negative1 + ":" + sequence2 + ":" + start2 + ":" + negative2);
+        }
+        Set<String> distinct = new HashSet<>();
+        for (int i = 0; i < ends.size(); i++) {
+            for (int j = 0; j < ends.size(); j++) {
+                boolean same = table.read1Signature(i) == table.read1Signature(j)
+                        && table.read2Signature(i) == table.read2Signature(j);
+                assertEquals(ends.get(i) + " " + ends.get(j), sameEnds(ends.get(i), ends.get(j)), same);
+            }
+            distinct.add(normalize(ends.get(i)));
+        }
+        assertTrue(distinct.size() > 10);
+    }
+
+    /**
+     * whether two pairs, as sequence:start:negative of both mates, have the
+     * same read ends. The mates are ordered by end position, a mate at the
+     * position of the first one is read2.
+     */
+    private static boolean sameEnds(String ends1, String ends2) {
+        return normalize(ends1).equals(normalize(ends2));
+    }
+
+    private static String normalize(String ends) {
+        String[] fields = ends.split(":");
+        String mate1 = position(fields[0], fields[1], fields[2]);
+        String mate2 = position(fields[3], fields[4], fields[5]);
+        if (mate2.compareTo(mate1) < 0)
+            return mate2 + ":" + fields[5] + "|" + mate1 + ":" + fields[2];
+        return mate1 + ":" + fields[2] + "|" + mate2 + ":" + fields[5];
+    }
+
+    private static String position(String sequence, String start, String negative) {
+        int coordinate = Integer.parseInt(start) + (Boolean.parseBoolean(negative) ? READ_LENGTH - 1 : 0);
+        return String.format("%s:%08d", sequence, coordinate);
+    }
+
+    @Test
+    public void testAddMate() {
+        // either mate may come first
+        for (boolean reversed : new boolean[] { false, true }) {
+            ReadEndsTable table = new ReadEndsTable();
+            List<SAMRecord> mates = new ArrayList<>(pair("p", 1000, 1200, 30));
+            if (reversed)
+                Collections.reverse(mates);
+            assertEquals(0, table.add(mates.get(0)));
+            assertEquals(0, table.add(mates.get(1)));
+            assertEquals(1, table.size());
+            assertEquals(signature1(0, 1000), table.read1Signature(0));
+            assertEquals(signature2(ReadEnds.FR, 0, 1200 + READ_LENGTH - 1), table.read2Signature(0));
+        }
+
+        ReadEndsTable table = new ReadEndsTable();
+        List<SAMRecord> first = pair("p", 1000, 1200, 30);
+        List<SAMRecord> second = pair("p", 5000, 5200, 30);
+        // the same name at other positions is another pair
+        assertEquals(0, table.add(first.get(0)));
+        assertEquals(1, table.add(second.get(0)));
+        assertEquals(1, table.add(second.get(1)));
+        assertEquals(0, table.add(first.get(1)));
+        // a completed pair is not joined by a later read of the name
+        assertEquals(2, table.add(first.get(0)));
+        // reads without a mapped mate have their own ends
+        assertEquals(3, table.add(singleMapped("s", 1000, false, 30)));
+        assertEquals(4, table.add(singleMapped("s", 1000, false, 30)));
+        assertEquals(5, table.add(read("f", 0, 1000, false, READ_LENGTH + "M", 30)));
+        assertEquals(6, table.size());
+
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(0, table.add(first.get(1)));
+        assertEquals(0, table.add(first.get(0)));
+    }
+
+    @Test
+    public void testMarkClusterKeepsHighestScore() {
+        ReadEndsTable table = new ReadEndsTable();
+        int[] qualities = { 20, 40, 10, 30 };
+        for (int i = 0; i < qualities.length; i++) {
+            for (SAMRecord rec : pair("p" + i, 1000, 1200, qualities[i]))
+                table.add(rec);
+        }
+        // another cluster of one pair is never marked
+        for (SAMRecord rec : pair("other", 1000, 1300, 20))
+            table.add(rec);
+
+        BitSet duplicates = table.markDuplicates();
+        assertEquals(3, duplicates.cardinality());
+        assertFalse(duplicates.get(1));
+        assertFalse(duplicates.get(4));
+    }
+
+    @Test
+    public void testMarkClusterTieBreaking() {
+        // pairs 1, 2 and 4 share the highest score
+        int[] qualities = { 20, 30, 30, 25, 30, 10 };
+        int[] tied = { 1, 2, 4 };
+        BitSet kept = new BitSet();
+        for (long seed = 0; seed < 50; seed++) {
+            ReadEndsTable table = new ReadEndsTable();
+            for (int i = 0; i < qualities.length; i++) {
+                for (SAMRecord rec : pair("p" + i, 1000, 1200, qualities[i]))
+                    table.add(rec);
+            }
+            RandomUtils.resetRandomGenerator(seed);
+            BitSet duplicates = table.markDuplicates();
+
+            // the tied pairs are ordered by index, one of them is drawn with nextInt
+            int keep = tied[new Random(seed).nextInt(tied.length)];
+            assertEquals(qualities.length - 1, duplicates.cardinality());
+            assertFalse(duplicates.get(keep));
+            kept.set(keep);
+        }
+        assertEquals(tied.length, kept.cardinality());
+    }
+
+    /**
+     * a duplication key as the reducer gets it: pairs with a few read ends
+     * and scores so clusters have ties, fragments and reads with unmapped
+     * mates, in shuffled order
+     */
+    private List<SAMRecord> duplicationKey(Random random, int pairs) {
+        String[] cigars = { READ_LENGTH + "M", "3S97M", "97M3S" };
+        int[] qualities = { 10, 20, 25, 30 };
+        List<SAMRecord> key = new ArrayList<>();
+        for (int i = 0; i < pairs; i++) {
+            key.addAll(pair("p" + i, 0, 1000 + random.nextInt(3), random.nextInt(8) == 0,
+                    cigars[random.nextInt(cigars.length)], random.nextInt(10) == 0 ? 1 : 0, 1200 + random.nextInt(4),
+                    random.nextBoolean(), qualities[random.nextInt(qualities.length)]));
+        }
+        for (int i = 0; i < pairs / 10 + 1; i++) {
+            key.add(read("f" + i, 0, 1000 + random.nextInt(2), random.nextBoolean(), READ_LENGTH + "M",
+                    qualities[random.nextInt(qualities.length)]));
+            key.add(singleMapped("s" + i, 1000 + random.nextInt(2), random.nextBoolean(),
+                    qualities[random.nextInt(qualities.length)]));
+        }
+        Collections.shuffle(key, random);
+        return key;
+    }
+
+    private static String recordName(SAMRecord rec) {
+        return rec.getReadName() + (rec.getReadPairedFlag() ? (rec.getFirstOfPairFlag() ? "/1" : "/2") : "");
+    }
+
+    /**
+     * duplicate flags of a key marked as MarkDuplicateReducer does it, the
+     * reads come back from the buffer in input order
+     */
+    private Map<String, Boolean> markKey(List<SAMRecord> key, int maxRecordsInRam, boolean spilled)
+            throws IOException, InterruptedException {
+        RandomUtils.resetRandomGenerator();
+        ReadEndsTable table = new ReadEndsTable();
+        DuplicateRecordBuffer buffer = new DuplicateRecordBuffer(header, maxRecordsInRam);
+        for (SAMRecord rec : key)
+            buffer.add(rec, table.add(rec));
+        assertEquals(spilled, buffer.isSpilled());
+
+        BitSet duplicates = table.markDuplicates();
+        Map<String, Boolean> flags = new LinkedHashMap<>();
+        buffer.forEach((rec, index) -> flags.put(recordName(rec), duplicates.get(index)));
+        buffer.clear();
+
+        List<String> names = new ArrayList<>();
+        for (SAMRecord rec : key)
+            names.add(recordName(rec));
+        assertEquals(names, new ArrayList<>(flags.keySet()));
+        return flags;
+    }
+
+    /**
+     * read ends of every read name, built as the removed MarkDuplicatesFunc did
+     */
+    private static Map<String, ReadEnds> oldReadEnds(List<SAMRecord> key) {
+        Map<String, ReadEnds> readsEnds = new HashMap<>();
+        for (SAMRecord rec : key) {
+            ReadEnds ends = readsEnds.get(rec.getReadName());
+            if (ends == null) {
+                ends = new ReadEnds();
+                readsEnds.put(rec.getReadName(), ends);
+            }
+            if (ends.read1SequenceIndex == -1) {
+                ends.read1SequenceIndex = rec.getReferenceIndex();
+                ends.read1Coordinate = rec.getReadNegativeStrandFlag() ? rec.getUnclippedEnd() : rec.getUnclippedStart();
+                ends.orientation = rec.getReadNegativeStrandFlag() ? ReadEnds.R : ReadEnds.F;
+                ends.score = oldScore(rec);
+                if (rec.getReadPairedFlag() && !rec.getMateUnmappedFlag())
+                    ends.read2SequenceIndex = rec.getMateReferenceIndex();
+            } else if (rec.getReadPairedFlag() && !rec.getMateUnmappedFlag()) {
+                int sequence = rec.getReferenceIndex();
+                int coordinate = rec.getReadNegativeStrandFlag() ? rec.getUnclippedEnd() : rec.getUnclippedStart();
+                if (sequence > ends.read1SequenceIndex
+                        || (sequence == ends.read1SequenceIndex && coordinate >= ends.read1Coordinate)) {
+                    ends.read2SequenceIndex = sequence;
+                    ends.read2Coordinate = coordinate;
+                    ends.orientation = oldOrientation(ends.orientation == ReadEnds.R, rec.getReadNegativeStrandFlag());
+                } else {
+                    ends.read2SequenceIndex = ends.read1SequenceIndex;
+                    ends.read2Coordinate = ends.read1Coordinate;
+                    ends.read1SequenceIndex = sequence;
+                    ends.read1Coordinate = coordinate;
+                    ends.orientation = oldOrientation(rec.getReadNegativeStrandFlag(), ends.orientation == ReadEnds.R);
+                }
+                ends.score += oldScore(rec);
+            }
+        }
+        return readsEnds;
+    }
+
+    private static short oldScore(SAMRecord rec) {
+        short score = 0;
+        for (byte b : rec.getBaseQualities()) {
+            if (b >= 15)
+                score += b;
+        }
+        return score;
+    }
+
+    private static byte oldOrientation(boolean read1NegativeStrand, boolean read2NegativeStrand) {
+        if (read1NegativeStrand)
+            return read2NegativeStrand ? ReadEnds.RR : ReadEnds.RF;
+        return read2NegativeStrand ? ReadEnds.FR : ReadEnds.FF;
+    }
+
+    /**
+     * cluster of the old ClusterIndex, read2 is only compared for pairs
+     */
+    private static String oldCluster(ReadEnds ends) {
+        String cluster = ends.read1SequenceIndex + ":" + ends.read1Coordinate + ":" + ends.orientation;
+        if (ends.read2SequenceIndex != -1)
+            cluster += ":" + ends.read2SequenceIndex + ":" + ends.read2Coordinate;
+        return cluster;
+    }
+
+    /**
+     * the old clusters must be marked with exactly one highest score pair
+     * kept each. The old code chose the kept pair among the whole cluster, so
+     * only the clusters and the kept score are compared.
+     */
+    private static void assertMatchesOldClusters(List<SAMRecord> key, Map<String, Boolean> flags) {
+        Map<String, Boolean> nameFlags = new HashMap<>();
+        for (SAMRecord rec : key) {
+            Boolean duplicate = flags.get(recordName(rec));
+            Boolean previous = nameFlags.put(rec.getReadName(), duplicate);
+            assertTrue(rec.getReadName(), previous == null || previous.equals(duplicate));
+        }
+
+        Map<String, ReadEnds> readsEnds = oldReadEnds(key);
+        Map<String, List<String>> clusters = new HashMap<>();
+        for (Map.Entry<String, ReadEnds> entry : readsEnds.entrySet()) {
+            String cluster = oldCluster(entry.getValue());
+            if (!clusters.containsKey(cluster))
+                clusters.put(cluster, new ArrayList<>());
+            clusters.get(cluster).add(entry.getKey());
+        }
+
+        int duplicateClusters = 0;
+        for (Map.Entry<String, List<String>> cluster : clusters.entrySet()) {
+            int maxScore = Integer.MIN_VALUE;
+            List<String> kept = new ArrayList<>();
+            for (String name : cluster.getValue()) {
+                maxScore = Math.max(maxScore, readsEnds.get(name).score);
+                if (!nameFlags.get(name))
+                    kept.add(name);
+            }
+            assertEquals(cluster.getKey(), 1, kept.size());
+            assertEquals(cluster.getKey(), maxScore, readsEnds.get(kept.get(0)).score);
+            if (cluster.getValue().size() > 1)
+                duplicateClusters++;
+        }
+        assertTrue(duplicateClusters > 1);
+    }
+
+    @Test
+    public void testSmallKeyMatchesOldClusters() throws IOException, InterruptedException {
+        List<SAMRecord> key = duplicationKey(new Random(5), 60);
+        assertMatchesOldClusters(key, markKey(key, 1000, false));
+    }
+
+    @Test
+    public void testSpilledKeyMatchesOldClusters() throws IOException, InterruptedException {
+        List<SAMRecord> key = duplicationKey(new Random(7), 3000);
+        Map<String, Boolean> spilled = markKey(key, 500, true);
+        assertMatchesOldClusters(key, spilled);
+        // spilling doesn't change the marks
+        assertEquals(spilled, markKey(key, key.size(), false));
+    }
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.tools.recalibrator.table;
+
+import org.bgi.flexlab.gaea.data.structure.bam.GaeaSamRecord;
+import org.bgi.flexlab.gaea.tools.mapreduce.realigner.RecalibratorOptions;
+import org.bgi.flexlab.gaea.tools.recalibrator.ReadCovariates;
+import org.bgi.flexlab.gaea.tools.recalibrator.RecalibratorDatum;
+import org.bgi.flexlab.gaea.tools.recalibrator.covariate.Covariate;
+import org.bgi.flexlab.gaea.util.EventType;
+import org.bgi.flexlab.gaea.util.NestedObjectArray;
+import org.bgi.flexlab.gaea.util.NestedObjectArray.Leave;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RecalibratorFlatTableTest {
+	private final static int READ_GROUP_NUMBER = 4;
+	private final static int MAX_QUALITY = 60;
+	private final static int CYCLE_NUMBER = 300;
+	private final static int CONTEXT_NUMBER = 1024;
+
+	private static class FixedCovariate implements Covariate {
+		private final int maximumKey;
+
+		FixedCovariate(int maximumKey) {
+			this.maximumKey = maximumKey;
+		}
+
+		@Override
+		public void initialize(RecalibratorOptions option) {
+		}
+
+		@Override
+		public void recordValues(GaeaSamRecord read, ReadCovariates values) {
+		}
+
+		@Override
+		public Object getValue(String str) {
+			return Integer.parseInt(str);
+		}
+
+		@Override
+		public String formatKey(int key) {
+			return String.valueOf(key);
+		}
+
+		@Override
+		public int keyFromValue(Object value) {
+			return (Integer) value;
+		}
+
+		@Override
+		public int maximumKeyValue() {
+			return maximumKey;
+		}
+	}
+
+	private static Covariate[] covariates() {
+		return new Covariate[] { new FixedCovariate(READ_GROUP_NUMBER - 1), new FixedCovariate(MAX_QUALITY),
+				new FixedCovariate(CONTEXT_NUMBER - 1), new FixedCovariate(CYCLE_NUMBER - 1) };
+	}
+
+	/**
+	 * the per base update of the map based table, as RecalibratorEngine did
+	 * it before the flat table
+	 */
+	private static void updateMapTable(RecalibratorTable tables, int[] keys, int eventIndex, byte quality,
+			boolean isError) {
+		NestedObjectArray<RecalibratorDatum> rgTable = tables.getTable(RecalibratorTable.Type.READ_GROUP_TABLE);
+		RecalibratorDatum rgDatum = rgTable.get(keys[0], eventIndex);
+		if (rgDatum == null)
+			rgTable.put(RecalibratorDatum.build(quality, isError), keys[0], eventIndex);
+		else
+			rgDatum.combine(RecalibratorDatum.build(quality, isError));
+
+		NestedObjectArray<RecalibratorDatum> qualTable = tables.getTable(RecalibratorTable.Type.QUALITY_SCORE_TABLE);
+		RecalibratorDatum qualDatum = qualTable.get(keys[0], keys[1], eventIndex);
+		if (qualDatum == null)
+			qualTable.put(RecalibratorDatum.build(quality, isError), keys[0], keys[1], eventIndex);
+		else
+			qualDatum.increment(isError);
+
+		for (int i = 2; i < tables.length(); i++) {
+			if (keys[i] < 0)
+				continue;
+			NestedObjectArray<RecalibratorDatum> covTable = tables.getTable(i);
+			RecalibratorDatum covDatum = covTable.get(keys[0], keys[1], keys[i], eventIndex);
+			if (covDatum == null)
+				covTable.put(RecalibratorDatum.build(quality, isError), keys[0], keys[1], keys[i], eventIndex);
+			else
+				covDatum.increment(isError);
+		}
+	}
+
+	private static RecalibratorFlatTable roundTrip(RecalibratorFlatTable table, Covariate[] covariates)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		table.write(out);
+		out.close();
+
+		RecalibratorFlatTable read = new RecalibratorFlatTable(covariates, READ_GROUP_NUMBER);
+		read.readAndMerge(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		return read;
+	}
+
+	private static void assertSameTables(RecalibratorTable expected, RecalibratorTable actual) {
+		assertEquals(expected.length(), actual.length());
+		for (int i = 0; i < expected.length(); i++) {
+			List<Leave> leaves = expected.getTable(i).getAllLeaves();
+			assertEquals("table " + i, leaves.size(), actual.getTable(i).getAllLeaves().size());
+			for (Leave leave : leaves) {
+				RecalibratorDatum e = (RecalibratorDatum) leave.value;
+				RecalibratorDatum a = actual.getTable(i).get(leave.keys);
+				assertNotNull(a);
+				assertEquals(e.getBasesNumber(), a.getBasesNumber());
+				assertEquals(e.getMismatchNumber(), a.getMismatchNumber());
+				assertEquals(e.getEstimatedQuality(), a.getEstimatedQuality(), 1e-6);
+			}
+		}
+	}
+
+	@Test
+	public void testRoundTripMatchesMapTable() throws IOException {
+		Covariate[] covariates = covariates();
+		RecalibratorTable mapTable = new RecalibratorTable(covariates, READ_GROUP_NUMBER);
+		RecalibratorFlatTable flatTable = new RecalibratorFlatTable(covariates, READ_GROUP_NUMBER);
+
+		// read group 3 is never seen and must not be written
+		Random random = new Random(5);
+		for (int n = 0; n < 200000; n++) {
+			int[] keys = new int[covariates.length];
+			keys[0] = random.nextInt(READ_GROUP_NUMBER - 1);
+			keys[1] = 2 + random.nextInt(40);
+			keys[2] = random.nextInt(20) == 0 ? -1 : random.nextInt(CONTEXT_NUMBER);
+			keys[3] = random.nextInt(CYCLE_NUMBER);
+			boolean isError = random.nextInt(50) == 0;
+
+			updateMapTable(mapTable, keys, EventType.SNP.index, (byte) keys[1], isError);
+			flatTable.update(keys, EventType.SNP.index, (byte) keys[1], isError);
+		}
+
+		assertSameTables(mapTable, flatTable.toRecalibratorTable(covariates));
+		assertSameTables(mapTable, roundTrip(flatTable, covariates).toRecalibratorTable(covariates));
+	}
+
+	@Test
+	public void testSparseMerge() throws IOException {
+		Covariate[] covariates = covariates();
+		RecalibratorTable mapTable = new RecalibratorTable(covariates, READ_GROUP_NUMBER);
+		RecalibratorFlatTable merged = new RecalibratorFlatTable(covariates, READ_GROUP_NUMBER);
+
+		Random random = new Random(11);
+		int totalBytes = 0;
+		for (int part = 0; part < 3; part++) {
+			RecalibratorFlatTable flatTable = new RecalibratorFlatTable(covariates, READ_GROUP_NUMBER);
+			for (int n = 0; n < 1000; n++) {
+				int[] keys = { part, 10 + random.nextInt(3), random.nextInt(4), random.nextInt(8) };
+				boolean isError = random.nextBoolean();
+				updateMapTable(mapTable, keys, EventType.SNP.index, (byte) keys[1], isError);
+				flatTable.update(keys, EventType.SNP.index, (byte) keys[1], isError);
+			}
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			flatTable.write(out);
+			out.close();
+			totalBytes += bytes.size();
+			merged.readAndMerge(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		}
+
+		assertSameTables(mapTable, merged.toRecalibratorTable(covariates));
+		// a dense optional covariate block alone would be 61 * 1024 * 24 bytes
+		assertTrue(totalBytes < 61 * CONTEXT_NUMBER * 24);
+	}
+}
@@ -0,0 +1,99 @@
+package org.bgi.flexlab.gaea.tools.vcfqualitycontrol2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.bgi.flexlab.gaea.tools.vcfqualitycontrol2.mode.GaussianMixtureModel;
+import org.bgi.flexlab.gaea.tools.vcfqualitycontrol2.mode.MultivariateGaussian;
+import org.bgi.flexlab.gaea.tools.vcfqualitycontrol2.util.RandomDataGenertorUtils;
+import org.junit.Test;
+
+/**
+ * Training on the ForkJoinPool must give the same model and log-likelihoods as the single thread engine.
+ */
+public class VariantRecalibratorEngineTest {
+    private static final int NUM_DATA = 3000;
+    private static final int NUM_ANNOTATIONS = 4;
+    private static final int MAX_GAUSSIANS = 4;
+
+    /**
+     * three clusters of normalized annotations, regenerated for every run because training updates the data
+     */
+    private static List<VariantDatum> data() {
+        final Random random = new Random(20170601);
+        final double[][] centers = { { -1.5, 0.5, 0.0, 1.0 }, { 1.0, -1.0, 0.5, 0.0 }, { 0.0, 1.5, -1.0, -1.5 } };
+        final List<VariantDatum> data = new ArrayList<>(NUM_DATA);
+        for (int i = 0; i < NUM_DATA; i++) {
+            final double[] center = centers[i % centers.length];
+            final VariantDatum datum = new VariantDatum();
+            datum.annotations = new double[NUM_ANNOTATIONS];
+            datum.isNull = new boolean[NUM_ANNOTATIONS];
+            for (int j = 0; j < NUM_ANNOTATIONS; j++) {
+                datum.annotations[j] = center[j] + 0.4 * random.nextGaussian();
+            }
+            data.add(datum);
+        }
+        return data;
+    }
+
+    private static class TrainedModel {
+        final List<double[]> mu = new ArrayList<>();
+        final List<double[]> sigma = new ArrayList<>();
+        final List<Double> pMixtureLog10 = new ArrayList<>();
+        final double[] lods = new double[NUM_DATA];
+    }
+
+    private static TrainedModel train(final int threads) {
+        final VCFQualityControlArgumentCollection arguments = new VCFQualityControlArgumentCollection();
+        arguments.NUM_THREADS = threads;
+        final VariantRecalibratorEngine engine = new VariantRecalibratorEngine(arguments);
+        RandomDataGenertorUtils.resetRandomGenerator();
+        try {
+            final List<VariantDatum> data = data();
+            final GaussianMixtureModel model = engine.generateModel(data, MAX_GAUSSIANS);
+            engine.evaluateData(data, model, false);
+            assertFalse(model.failedToConverge);
+
+            final TrainedModel trained = new TrainedModel();
+            for (final MultivariateGaussian gaussian : model.getModelGaussians()) {
+                trained.mu.add(gaussian.mu.clone());
+                trained.sigma.add(gaussian.sigma.getRowPackedCopy());
+                trained.pMixtureLog10.add(gaussian.pMixtureLog10);
+            }
+            for (int i = 0; i < NUM_DATA; i++) {
+                trained.lods[i] = data.get(i).lod;
+            }
+            return trained;
+        } finally {
+            engine.close();
+        }
+    }
+
+    private static void assertSameModel(final TrainedModel expected, final TrainedModel actual) {
+        assertEquals(expected.mu.size(), actual.mu.size());
+        for (int i = 0; i < expected.mu.size(); i++) {
+            assertArrayEquals("mu of gaussian " + i, expected.mu.get(i), actual.mu.get(i), 0);
+            assertArrayEquals("sigma of gaussian " + i, expected.sigma.get(i), actual.sigma.get(i), 0);
+        }
+        assertEquals(expected.pMixtureLog10, actual.pMixtureLog10);
+        assertArrayEquals(expected.lods, actual.lods, 0);
+    }
+
+    @Test
+    public void testPoolMatchesSingleThread() {
+        final TrainedModel serial = train(1);
+        assertSameModel(serial, train(2));
+        assertSameModel(serial, train(4));
+    }
+
+    @Test
+    public void testCloseWithoutPool() {
+        // single thread engines have no pool and closing them is a no-op
+        new VariantRecalibratorEngine(new VCFQualityControlArgumentCollection()).close();
+    }
+}
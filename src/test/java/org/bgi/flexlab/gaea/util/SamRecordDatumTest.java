@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright (c) 2017, BGI-Shenzhen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>
+ *******************************************************************************/
+package org.bgi.flexlab.gaea.util;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.bgi.flexlab.gaea.data.mapreduce.writable.SamRecordDatumWritable;
+import org.bgi.flexlab.gaea.data.structure.bam.ParseSAMBasic;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SamRecordDatumTest {
+	private SAMFileHeader header;
+
+	@Before
+	public void setUp() {
+		SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+		dictionary.addSequence(new SAMSequenceRecord("chr1", 1000000));
+		header = new SAMFileHeader();
+		header.setSequenceDictionary(dictionary);
+	}
+
+	private SAMRecord mapped(String name, int start, String cigar, int length) {
+		SAMRecord record = new SAMRecord(header);
+		record.setReadName(name);
+		record.setReferenceIndex(0);
+		record.setAlignmentStart(start);
+		record.setMappingQuality(37);
+		record.setCigarString(cigar);
+		byte[] bases = new byte[length];
+		byte[] qualities = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bases[i] = (byte) "ACGTN".charAt(i % 5);
+			qualities[i] = (byte) (i % 41);
+		}
+		record.setReadBases(bases);
+		record.setBaseQualities(qualities);
+		record.setReadPairedFlag(true);
+		record.setProperPairFlag(true);
+		record.setMateReferenceIndex(0);
+		record.setMateAlignmentStart(start + 250);
+		record.setInferredInsertSize(350);
+		return record;
+	}
+
+	private SAMRecord unmapped() {
+		SAMRecord record = new SAMRecord(header);
+		record.setReadName("unmapped");
+		record.setReadUnmappedFlag(true);
+		record.setReferenceIndex(SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX);
+		record.setAlignmentStart(SAMRecord.NO_ALIGNMENT_START);
+		record.setMappingQuality(0);
+		record.setReadBases("ACGTN".getBytes());
+		record.setBaseQualities(SAMRecord.NULL_QUALS);
+		return record;
+	}
+
+	/*
+	 * odd and even read lengths, soft clips, indels and a read with a large cigar length
+	 */
+	private List<SAMRecord> records() {
+		List<SAMRecord> records = new ArrayList<SAMRecord>();
+		records.add(mapped("even", 100, "10M", 10));
+		records.add(mapped("odd", 1, "11M", 11));
+		records.add(mapped("one_base", 500, "1M", 1));
+		records.add(mapped("clipped", 200, "3S20M2I10M4D5M1S", 41));
+		records.add(mapped("long", 900000, "2S5000M3N60M1S", 5063));
+		return records;
+	}
+
+	private static byte[] write(SamRecordDatum... data) throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		for (SamRecordDatum datum : data)
+			datum.writeBamQC(out);
+		return Arrays.copyOf(out.getData(), out.getLength());
+	}
+
+	private static SamRecordDatum parse(SAMRecord record) {
+		SamRecordDatum datum = new SamRecordDatum();
+		assertTrue(datum.parseBamQC(record));
+		return datum;
+	}
+
+	/*
+	 * getSAMString ends with a newline, which the text rule would parse into a trailing X0 or H0 value
+	 */
+	private static String samString(SAMRecord record) {
+		return record.getSAMString().trim();
+	}
+
+	private static List<Integer> cigarValues(SamRecordDatum datum) {
+		return new ArrayList<Integer>(datum.getCigarState().getCigar());
+	}
+
+	private static void assertSameDatum(SamRecordDatum expected, SamRecordDatum actual, int length) {
+		assertEquals(expected.getFlag(), actual.getFlag());
+		assertEquals(expected.getPosition(), actual.getPosition());
+		assertEquals(expected.getMappingQual(), actual.getMappingQual());
+		assertEquals(expected.getInsertSize(), actual.getInsertSize());
+		assertEquals(expected.getBestHitCount(), actual.getBestHitCount());
+		assertEquals(expected.getRgIndex(), actual.getRgIndex());
+		assertEquals(expected.isRepeat(), actual.isRepeat());
+		assertEquals(cigarValues(expected), cigarValues(actual));
+		assertEquals(expected.getCigarString(), actual.getCigarString());
+		assertEquals(expected.getEnd(), actual.getEnd());
+		assertEquals(expected.getLength(), actual.getLength());
+		assertEquals(expected.getBaseCount(), actual.getBaseCount());
+		for (int i = 0; i < length; i++)
+			assertEquals("base " + i, expected.getBinaryBase(i), actual.getBinaryBase(i));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		List<SAMRecord> records = records();
+		SamRecordDatum[] data = new SamRecordDatum[records.size()];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = parse(records.get(i));
+			data[i].setRgIndex(i);
+		}
+		byte[] bytes = write(data);
+
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(bytes, bytes.length);
+		for (int i = 0; i < data.length; i++) {
+			SamRecordDatum actual = new SamRecordDatum();
+			actual.readBamQC(in);
+			assertSameDatum(data[i], actual, records.get(i).getReadLength());
+			assertEquals(records.get(i).getCigarString(), actual.getCigarString());
+		}
+		assertEquals(0, in.available());
+	}
+
+	@Test
+	public void testNibblePackedBases() throws IOException {
+		/* every base code in both halves of a byte, with odd and even lengths */
+		String bases = "ACGTNacgtn";
+		for (int length = 1; length <= bases.length(); length++) {
+			SAMRecord record = mapped("bases" + length, 10, length + "M", length);
+			record.setReadBases(bases.substring(0, length).getBytes());
+			record.setBaseQualities(new byte[length]);
+			byte[] bytes = write(parse(record));
+
+			DataInputBuffer in = new DataInputBuffer();
+			in.reset(bytes, bytes.length);
+			SamRecordDatum actual = new SamRecordDatum();
+			actual.readBamQC(in);
+			assertEquals(0, in.available());
+			for (int i = 0; i < length; i++)
+				assertEquals((byte) ((bases.charAt(i) >> 1) & 0x07), actual.getBinaryBase(i));
+			/* two bases a byte after the one byte base count, the low half of an odd last byte is 0 */
+			int packed = (length + 1) / 2;
+			assertEquals(length, bytes[bytes.length - packed - 1]);
+			if (length % 2 == 1)
+				assertEquals(0, bytes[bytes.length - 1] & 0x0f);
+		}
+	}
+
+	@Test
+	public void testCigarValues() {
+		SamRecordDatum datum = parse(mapped("clipped", 200, "3S20M2I10M4D5M1S", 41));
+		int[] expected = { (3 << 4) | SystemConfiguration.BAM_CSOFT_CLIP, (20 << 4) | SystemConfiguration.BAM_CMATCH,
+				(2 << 4) | SystemConfiguration.BAM_CINS, (10 << 4) | SystemConfiguration.BAM_CMATCH,
+				(4 << 4) | SystemConfiguration.BAM_CDEL, (5 << 4) | SystemConfiguration.BAM_CMATCH,
+				(1 << 4) | SystemConfiguration.BAM_CSOFT_CLIP };
+		List<Integer> values = cigarValues(datum);
+		assertEquals(expected.length, values.size());
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(expected[i], values.get(i).intValue());
+		assertTrue(datum.hasCigarOperator(SystemConfiguration.BAM_CINS));
+		assertTrue(datum.hasCigarOperator(SystemConfiguration.BAM_CREF_SKIP, SystemConfiguration.BAM_CDEL));
+		assertFalse(datum.hasCigarOperator(SystemConfiguration.BAM_CREF_SKIP));
+	}
+
+	@Test
+	public void testRepeatSetAfterWritableSet() throws IOException {
+		/* the mapper writes the same writable again after flipping isrepeat for the next window */
+		SamRecordDatum datum = parse(mapped("repeat", 100, "10M", 10));
+		SamRecordDatumWritable writable = new SamRecordDatumWritable();
+		writable.set(datum);
+		DataOutputBuffer out = new DataOutputBuffer();
+		writable.write(out);
+		datum.setIsrepeat(true);
+		writable.write(out);
+
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(), out.getLength());
+		SamRecordDatumWritable read = new SamRecordDatumWritable();
+		read.readFields(in);
+		SamRecordDatum first = read.get();
+		read.readFields(in);
+		SamRecordDatum second = read.get();
+		assertFalse(first.isRepeat());
+		assertTrue(second.isRepeat());
+		assertSameDatum(datum, second, 10);
+		assertEquals(0, in.available());
+	}
+
+	@Test
+	public void testUnmappedDatum() throws IOException {
+		SamRecordDatum datum = new SamRecordDatum();
+		assertFalse(datum.parseBamQC(unmapped()));
+		assertFalse(new SamRecordDatum().parseBamQC(mapped("no_cigar", 100, "*", 10)));
+
+		/* the mapper writes a never parsed datum for unmapped reads */
+		byte[] bytes = write(new SamRecordDatum());
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(bytes, bytes.length);
+		SamRecordDatum actual = new SamRecordDatum();
+		actual.readBamQC(in);
+		assertEquals(0, in.available());
+		assertEquals(0, actual.getFlag());
+		assertEquals(0, actual.getPosition());
+		assertTrue(actual.getCigarState().getCigar().isEmpty());
+		assertEquals("", actual.getCigarString());
+		assertEquals(0, actual.getEnd());
+		assertEquals(0, actual.getLength());
+		assertEquals(0, actual.getBaseCount());
+		assertArrayEquals(bytes, write(actual));
+	}
+
+	@Test
+	public void testMatchesParseSam() {
+		List<SAMRecord> records = records();
+		records.get(0).setAttribute("X0", 3);
+		records.get(1).setAttribute("XT", 'M');
+		records.get(2).setAttribute("XT", 'U');
+		records.get(3).setAttribute("NM", 2);
+		records.get(3).setAttribute("XT", 'M');
+		records.get(4).setAttribute("XT", 'M');
+		records.get(4).setAttribute("NM", 1);
+		for (SAMRecord record : records) {
+			record.setAttribute("RG", "rg1");
+			SamRecordDatum expected = new SamRecordDatum();
+			assertTrue(expected.parseSam(samString(record)));
+			SamRecordDatum actual = parse(record);
+
+			assertSameDatum(expected, actual, record.getReadLength());
+			assertEquals(expected.getChrName(), actual.getChrName());
+			assertEquals(expected.getCigarString(), actual.getCigarString());
+			assertEquals(ParseSAMBasic.parseBestHitCount(ParseSAMBasic.splitSAM(samString(record))),
+					actual.getBestHitCount());
+		}
+	}
+
+	@Test
+	public void testBestHitCount() {
+		/* tags in the order the record keeps them, H0 and X0 end the scan, any later tag resets XT:A:M */
+		Object[][] cases = {
+				{},
+				{ "H0", 4, "X0", 2 },
+				{ "XT", 'M', "X0", 5 },
+				{ "XT", 'M' },
+				{ "XT", 'M', "NM", 0 },
+				{ "NM", 0, "XT", 'M' },
+				{ "XT", 'U', "XT", 'M' },
+				{ "X0", 1, "XT", 'M' },
+		};
+		for (Object[] tags : cases) {
+			SAMRecord record = mapped("tags", 100, "10M", 10);
+			for (int i = 0; i < tags.length; i += 2)
+				record.setAttribute((String) tags[i], tags[i + 1]);
+			int expected = ParseSAMBasic.parseBestHitCount(ParseSAMBasic.splitSAM(samString(record)));
+			assertEquals(Arrays.toString(tags), expected, parse(record).getBestHitCount());
+		}
+	}
+}